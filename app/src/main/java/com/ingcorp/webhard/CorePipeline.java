@@ -0,0 +1,120 @@
+/*
+ * This file is part of MAME4droid.
+ *
+ * Copyright (C) 2024 David Valdeita (Seleuco)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Linking MAME4droid statically or dynamically with other modules is
+ * making a combined work based on MAME4droid. Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * In addition, as a special exception, the copyright holders of MAME4droid
+ * give you permission to combine MAME4droid with free software programs
+ * or libraries that are released under the GNU LGPL and with code included
+ * in the standard release of MAME under the MAME License (or modified
+ * versions of such code, with unchanged license). You may copy and
+ * distribute such a system following the terms of the GNU GPL for MAME4droid
+ * and the licenses of the other code concerned, provided that you include
+ * the source code of that other code when and as the GNU GPL requires
+ * distribution of source code.
+ *
+ * Note that people who make modified versions of MAME4idroid are not
+ * obligated to grant this special exception for their modified versions; it
+ * is their choice whether to do so. The GNU General Public License
+ * gives permission to release a modified version without this exception;
+ * this exception also makes it possible to release a modified version
+ * which carries forward this exception.
+ *
+ * MAME4droid is dual-licensed: Alternatively, you can license MAME4droid
+ * under a MAME license, as set out in http://mamedev.org/
+ */
+
+package com.ingcorp.webhard;
+
+import com.ingcorp.webhard.input.SharedInputBlock;
+import com.ingcorp.webhard.render.FrameExchange;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The part of the path between a core and the frontend that needs no Android: the input and state
+ * blocks the core is attached to and the exchange it hands its frames to. Emulator drives one for
+ * the app; a harness on a plain JVM can drive a SyntheticEmulatorCore through another.
+ */
+public final class CorePipeline {
+
+	private final SharedInputBlock inputBlock = new SharedInputBlock();
+
+	private final ByteBuffer stateBlock = EmulatorState.allocateBlock();
+
+	private volatile EmulatorState state = EmulatorState.NONE;
+
+	//replaced on every session so a reused process never shows the previous game's frames
+	private volatile FrameExchange frameExchange = new FrameExchange();
+
+	/**
+	 * Hands the core the input and state blocks.
+	 */
+	public void attach(EmulatorCore core) {
+		core.attach(inputBlock.getBuffer(), stateBlock);
+	}
+
+	public SharedInputBlock getInputBlock() {
+		return inputBlock;
+	}
+
+	public FrameExchange getFrameExchange() {
+		return frameExchange;
+	}
+
+	/**
+	 * Starts a new exchange, for when the core reallocates its frame buffers.
+	 *
+	 * @return the previous one.
+	 */
+	public FrameExchange replaceFrameExchange() {
+		FrameExchange old = frameExchange;
+		frameExchange = new FrameExchange();
+		return old;
+	}
+
+	public EmulatorState getState() {
+		return state;
+	}
+
+	/**
+	 * Reads the state block, from the emulator thread once the core has refreshed it.
+	 *
+	 * @return the new state, the same instance if nothing changed.
+	 */
+	public EmulatorState updateState() {
+		EmulatorState cur = EmulatorState.read(stateBlock, state);
+		state = cur;
+		return cur;
+	}
+
+	/**
+	 * Forgets the state, the frames and the input of the last session.
+	 */
+	public void reset() {
+		state = EmulatorState.NONE;
+		frameExchange = new FrameExchange();
+		for (int i = 0; i < SharedInputBlock.NUM_DIGITAL; i++)
+			inputBlock.setDigital(i, 0);
+		for (int i = 0; i < SharedInputBlock.NUM_ANALOG; i++)
+			inputBlock.setAnalog(i, 0, 0);
+	}
+}
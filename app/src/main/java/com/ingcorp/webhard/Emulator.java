@@ -58,123 +58,110 @@ import android.media.AudioTrack;
 import android.net.Uri;
 import android.os.Environment;
 import android.os.Process;
+import android.os.SharedMemory;
+import android.system.ErrnoException;
 import android.util.Log;
 import android.util.Size;
 import android.view.View;
 
+import com.ingcorp.webhard.audio.AudioPump;
+import com.ingcorp.webhard.audio.AudioRing;
+import com.ingcorp.webhard.audio.DynamicRateControl;
 import com.ingcorp.webhard.helpers.DialogHelper;
 import com.ingcorp.webhard.helpers.PrefsHelper;
+import com.ingcorp.webhard.helpers.StartupTracer;
+import com.ingcorp.webhard.input.ControlCustomizer;
 import com.ingcorp.webhard.input.TouchController;
+import com.ingcorp.webhard.render.FrameExchange;
+import com.ingcorp.webhard.render.FrameStats;
 import com.ingcorp.webhard.render.IGLRenderer;
 import com.ingcorp.webhard.views.EmulatorViewGL;
 import com.ingcorp.webhard.widgets.WarnWidget;
 
 import java.io.File;
 import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 
-public class Emulator {
+public class Emulator implements EmulatorKeys {
 
 	final static public String TAG = "EMULATOR";
 
-	//gets
-	final static public int IN_MENU = 1;
-	final static public int IN_GAME = 2;
-	final static public int NUMBTNS = 3;
-	final static public int NUMWAYS = 4;
-	final static public int IS_LIGHTGUN = 5;
-
-	//sets
-	final static public int EXIT_GAME = 1;
-
-	final static public int EXIT_PAUSE = 2;
-	final static public int SHOW_FPS = 3;
-
-	final static public int AUTO_FRAMESKIP = 4;
-	final static public int CHEATS = 5;
-	final static public int SKIP_GAMEINFO = 6;
-
-	final static public int DISABLE_DRC = 7;
-
-	final static public int DRC_USE_C = 8;
-
-	final static public int SIMPLE_UI = 9;
-
-	final static public int PAUSE = 11;
-	final static public int SOUND_VALUE = 13;
-
-	final static public int AUTOSAVE = 16;
-	final static public int SAVESTATE = 17;
-	final static public int LOADSTATE = 18;
-
-	final static public int OSD_RESOLUTION = 20;
-	final static public int EMU_RESOLUTION = 21;
-
-	final static public int ZOOM_TO_WINDOW = 22;
-
-	final static public int DOUBLE_BUFFER = 23;
-	final static public int PXASP1 = 24;
+	private static MAME4droid mm = null;
 
-	final static public int VBEAM2X = 34;
-	final static public int VFLICKER = 36;
-	final static public int SOUND_OPTIMAL_FRAMES = 48;
-	final static public int SOUND_OPTIMAL_SAMPLERATE = 49;
-	final static public int SOUND_ENGINE = 50;
+	private static boolean isEmulating = false;
 
-	final static public int MOUSE = 60;
-	final static public int REFRESH = 61;
-	final static public int USING_SAF = 62;
-	final static public int SAVESATES_IN_ROM_PATH = 63;
+	public static boolean isEmulating() {
+		return isEmulating;
+	}
 
-	final static public int WARN_ON_EXIT = 64;
+	private static final Object lock1 = new Object();
 
-	final static public int IS_MOUSE = 65;
+	//input and state blocks and the frame exchange of the running core
+	private static final CorePipeline pipeline = new CorePipeline();
+	private static final long VIDEO_RELEASE_TIMEOUT_MS = 500;
 
-	final static public int KEYBOARD = 66;
+	private static final EmulatorConfig config = new EmulatorConfig(new EmulatorConfig.Sink() {
+		public void setValues(int[] keys, int[] values, int count) {
+			core.setValues(keys, values, count);
+		}
 
-	final static public int NUM_PROCESSORS = 67;
-	final static public int NODEADZONEANDSAT = 68;
-	final static public int MAMEINI = 69;
-	final static public int SPEED_HACKS = 70;
-	final static public int AUTOFIRE = 71;
-	final static public int INPUTMACRO = 72;
-	final static public int HISCORE = 73;
+		public void setValueStr(int key, String value) {
+			Emulator.setValueStr(key, value);
+		}
+	});
 
-	//set str
-	final static public int SAF_PATH = 1;
-	final static public int ROM_NAME = 2;
-	final static public int VERSION = 3;
-	final static public int OVERLAY_EFECT = 4;
-	final static public int CLI_PARAMS = 5;
+	private static final FastForward fastForward = new FastForward();
 
-	//get str
-	final static public int MAME_VERSION = 1;
+	private static final RunAhead runAhead = new RunAhead();
 
-	//KEYS ACTIONS
-	final static public int KEY_DOWN = 1;
-	final static public int KEY_UP = 2;
+	//speed shown while fast-forwarding, only touched from the emulator thread
+	private static WarnWidget fastForwardHud = null;
 
-	//MOUSE ACTIONS
-	final static public int MOUSE_MOVE = 1;
-	final static public int MOUSE_BTN_DOWN = 2;
-	final static public int MOUSE_BTN_UP = 3;
-	final static public int MOUSE_MOVE_POINTER = 4;
+	//longest history rewind keeps an index for, the memory budget may hold less
+	private static final int REWIND_MAX_SECONDS = 600;
 
-	//TOUCH ACTIONS
-	final static public int FINGER_MOVE = 1;
-	final static public int FINGER_DOWN = 2;
-	final static public int FINGER_UP = 3;
+	//save state history of the current game, null when rewind is off; built and used on the emulator thread
+	private static volatile RewindBuffer rewindBuffer = null;
+	private static ByteBuffer rewindState = null;
+	private static SharedMemory rewindMemory = null;
+	private static ByteBuffer rewindArena = null;
+	private static int rewindInterval = 2;
+	private static int rewindCountdown = 0;
+	private static volatile boolean rewinding = false;
 
-	private static MAME4droid mm = null;
+	/**
+	 * Notified from the emulator thread when the core enters or leaves the MAME menu or a game.
+	 */
+	public interface StateListener {
+		void onMenuChanged(boolean inMenu);
 
-	private static boolean isEmulating = false;
+		void onGameChanged(boolean inGame);
+	}
 
-	public static boolean isEmulating() {
-		return isEmulating;
+	private static final List<StateListener> stateListeners = new CopyOnWriteArrayList<StateListener>();
+
+	/**
+	 * Work that needs the core between two frames, like taking or restoring an in-memory save state.
+	 */
+	public interface FrameTask {
+		/**
+		 * Runs on the emulator thread from inside bitblt, with the frame just rendered. With run-ahead
+		 * that frame was run ahead, but core.saveState() and core.loadState() still act on the real
+		 * timeline, the bridge only goes back to it after bitblt.
+		 */
+		void run(EmulatorCore core, ByteBuffer frame, int width, int height);
 	}
 
-	private static final Object lock1 = new Object();
+	private static final Queue<FrameTask> frameTasks = new ConcurrentLinkedQueue<FrameTask>();
 
-	private static ByteBuffer screenBuff = null;
+	//the core can save and load states in memory, checked when a game starts
+	private static volatile boolean memoryStates = false;
 
 	private static boolean emuFiltering = false;
 
@@ -208,23 +195,36 @@ public class Emulator {
 	private static int emu_visHeight = 240;
 
 	private static AudioTrack audioTrack = null;
+	private static AudioPump audioPump = null;
+
+	//what the bridge keeps of the sound for the native engine, emulator thread
+	private static int nativeAudioStep = 1;
 
 	private static boolean isDebug = false;
 	private static int videoRenderMode = PrefsHelper.PREF_RENDER_GL;
 
-	private static boolean inMenu = false;
-	private static boolean oldInMenu = false;
+	public static EmulatorState getState() {
+		return pipeline.getState();
+	}
 
 	public static boolean isInGame() {
-		return Emulator.getValue(Emulator.IN_GAME) == 1;
+		return pipeline.getState().isInGame();
 	}
 
 	public static boolean isInMenu() {
-		return inMenu;
+		return pipeline.getState().isInMenu();
 	}
 
 	public static boolean isInGameButNotInMenu() {
-		return isInGame() && !isInMenu();
+		return pipeline.getState().isInGameButNotInMenu();
+	}
+
+	public static void addStateListener(StateListener l) {
+		stateListeners.add(l);
+	}
+
+	public static void removeStateListener(StateListener l) {
+		stateListeners.remove(l);
 	}
 
 	private static boolean saveorload = false;
@@ -273,9 +273,43 @@ public class Emulator {
 		Emulator.portraitFull = portraitFull;
 	}
 
+	private static EmulatorCore core = new NativeEmulatorCore();
+
+	//what a core that runs in Java calls on us; the native bridge calls the same static methods itself
+	private static final EmulatorCore.Host host = new EmulatorCore.Host() {
+		public void changeVideo(int width, int height, int visWidth, int visHeight) {
+			Emulator.changeVideo(width, height, visWidth, visHeight);
+		}
+
+		public void initVideo() {
+			Emulator.initVideo();
+		}
+
+		public int bitblt(ByteBuffer frame) {
+			return Emulator.bitblt(frame);
+		}
+
+		public void initInput() {
+			Emulator.initInput();
+		}
+
+		public void initAudio(int freq, boolean stereo) {
+			Emulator.initAudio(freq, stereo);
+		}
+
+		public void writeAudio(ByteBuffer b, int size) {
+			Emulator.writeAudio(b, size);
+		}
+
+		public void endAudio() {
+			Emulator.endAudio();
+		}
+	};
+
 	static {
 		try {
 			System.loadLibrary("mame4droid-jni");
+			pipeline.attach(core);
 		} catch (java.lang.Error e) {
 			e.printStackTrace();
 		}
@@ -283,6 +317,50 @@ public class Emulator {
 		debugPaint.setARGB(255, 255, 255, 255);
 		debugPaint.setStyle(Style.STROKE);
 		debugPaint.setTextSize(16);
+
+		addStateListener(new StateListener() {
+			public void onMenuChanged(boolean inMenu) {
+				if (mm == null) return;
+
+				if (!inMenu)
+					mm.getInputHandler().resetInput(false);
+
+				if (!inMenu && isSaveorload())
+					setSaveorload(false);
+
+				final View v = mm.getInputView();
+				if (v != null) {
+					mm.runOnUiThread(new Runnable() {
+						public void run() {
+							v.invalidate();
+						}
+					});
+				}
+			}
+
+			public void onGameChanged(boolean inGame) {
+				if (!inGame)
+					setFastForward(false);
+				FrameStats stats = pipeline.getFrameExchange().getStats();
+				if (!inGame && stats.getFrames() > 0)
+					Log.d(TAG, "presentation " + stats);
+				stats.reset();
+				//the pacer refines it with the vsyncs each frame is really shown for
+				int refresh = pipeline.getState().getRefresh();
+				stats.setExpectedInterval(inGame && refresh > 0 ? 1000000000L / refresh : 0);
+				memoryStates = inGame && core.getStateSize() > 0;
+				if (mm == null) return;
+
+				if (!inGame && mm.getSaveStateHelper() != null)
+					mm.getSaveStateHelper().syncLater();
+
+				setupRewind(inGame);
+
+				//each game has its own run-ahead, the game is only known once it runs
+				runAhead.setAuto(mm.getPrefsHelper().isRunAheadAuto());
+				setRunAheadFrames(inGame ? mm.getPrefsHelper().getRunAheadFrames(getValueStr(ROM_NAME)) : 0);
+			}
+		});
 	}
 
 	public static int getEmulatedWidth() {
@@ -325,9 +403,15 @@ public class Emulator {
 		return mtx;
 	}
 
-	//synchronized
-	public static ByteBuffer getScreenBuffer() {
-		return screenBuff;
+	public static FrameExchange getFrameExchange() {
+		return pipeline.getFrameExchange();
+	}
+
+	/**
+	 * Loads the bridge and dlopens the core ahead of init, so the first launch does not pay for it.
+	 */
+	public static void preloadCore(String libPath) {
+		core.preload(libPath);
 	}
 
 	public static void setMAME4droid(MAME4droid mm) {
@@ -348,52 +432,227 @@ public class Emulator {
 		mtx.setScale((float) (window_width / (float) emu_width), (float) (window_height / (float) emu_height));
 	}
 
-	//synchronized
-	static void bitblt(ByteBuffer sScreenBuff) {
+	//called from the emulator thread with the buffer just filled, returns the index of the next one to fill
+	static int bitblt(ByteBuffer sScreenBuff) {
 
-		//Log.d("Thread Video", "fuera lock");
-		synchronized (lock1) {
-			try {
-				//Log.d("Thread Video", "dentro lock");
-				screenBuff = sScreenBuff;
-				Emulator.inMenu = Emulator.getValue(Emulator.IN_MENU) == 1;
+		FrameTask task;
+		while ((task = frameTasks.poll()) != null)
+			task.run(core, sScreenBuff, emu_width, emu_height);
 
-				if (inMenu != oldInMenu) {
+		rewindFrame();
 
-					if(!inMenu)
-						mm.getInputHandler().resetInput(false);
+		long now = System.nanoTime();
+		boolean present = fastForward.onFrame(now, pipeline.getState().getRefresh());
+		updateNativeAudioStep();
 
-					if (!inMenu && isSaveorload())
-						setSaveorload(false);
+		if (!present) {
+			updateState();
+			updateFastForwardHud();
+			return pipeline.getFrameExchange().skip();
+		}
 
-					final View v = mm.getInputView();
-					if (v != null) {
-						mm.runOnUiThread(new Runnable() {
-							public void run() {
-								v.invalidate();
-							}
-						});
-					}
-				}
-				oldInMenu = inMenu;
+		int next = pipeline.getFrameExchange().publish(sScreenBuff, emu_width, emu_height);
 
-				if (videoRenderMode == PrefsHelper.PREF_RENDER_GL) {
-					((EmulatorViewGL) mm.getEmuView()).requestRender();
-				} else {
-					Log.e("Thread Video", "Renderer not supported.");
-				}
-				//Log.d("Thread Video", "fin lock");
+		StartupTracer.firstFrame();
+
+		if (!fastForward.isActive() && runAhead.onFrame(now, pipeline.getState().getRefresh()))
+			runAheadTooSlow();
+
+		try {
+			updateState();
+			updateFastForwardHud();
+
+			if (videoRenderMode == PrefsHelper.PREF_RENDER_GL) {
+				//with vsync pacing the pacer asks for the render when it is time to show the frame
+				EmulatorViewGL view = (EmulatorViewGL) mm.getEmuView();
+				if (!view.isPaced())
+					view.requestRender();
+			} else {
+				Log.e("Thread Video", "Renderer not supported.");
+			}
+
+		} catch (/*Throwable*/NullPointerException t) {
+			Log.getStackTraceString(t);
+			t.printStackTrace();
+		}
+
+		return next;
+	}
 
-			} catch (/*Throwable*/NullPointerException t) {
-				Log.getStackTraceString(t);
-				t.printStackTrace();
+	//the native audio engine never hands the sound to writeAudio(), it is filtered in the bridge; like
+	//there, nothing is heard while rewinding
+	private static void updateNativeAudioStep() {
+		int step = rewinding ? 0 : fastForward.getAudioStep();
+		if (step != nativeAudioStep) {
+			nativeAudioStep = step;
+			core.setNativeAudioStep(step);
+		}
+	}
+
+	//the bridge refreshed the state block just before calling us
+	private static void updateState() {
+		EmulatorState prev = pipeline.getState();
+		EmulatorState cur = pipeline.updateState();
+		if (cur == prev)
+			return;
+
+		if (cur.isInMenu() != prev.isInMenu()) {
+			for (StateListener l : stateListeners)
+				l.onMenuChanged(cur.isInMenu());
+		}
+		if (cur.isInGame() != prev.isInGame()) {
+			for (StateListener l : stateListeners)
+				l.onGameChanged(cur.isInGame());
+		}
+	}
+
+	private static void updateFastForwardHud() {
+		if (!fastForward.pollSpeedUpdate() && fastForward.isActive() == (fastForwardHud != null))
+			return;
+
+		if (!fastForward.isActive()) {
+			if (fastForwardHud != null) {
+				fastForwardHud.end();
+				fastForwardHud = null;
 			}
+			return;
+		}
+
+		String text = String.format(Locale.US, ">> %.1fx", fastForward.getSpeed());
+		if (fastForwardHud == null) {
+			fastForwardHud = new WarnWidget(mm, "", text, Color.WHITE, true, false);
+			fastForwardHud.init();
+		} else
+			fastForwardHud.notifyText(text);
+	}
+
+	//emulator thread, the history starts with every game and is freed when it ends
+	private static void setupRewind(boolean inGame) {
+		RewindBuffer r = rewindBuffer;
+		rewinding = false;
+		if (r != null)
+			Log.d(TAG, "rewind: " + r.getCount() + " states in " + r.getUsedBytes() / 1024 + " KB, " + r.getDropped() + " dropped, last capture " + r.getLastCaptureNs() / 1000 + " us");
+		releaseRewind();
+
+		if (!inGame || !mm.getPrefsHelper().isRewind())
+			return;
+
+		rewindInterval = Math.max(1, mm.getPrefsHelper().getRewindInterval());
+		rewindCountdown = 1;
+		int size = core.getStateSize();
+		if (size <= 0) {
+			Log.w(TAG, "rewind: the core has no in-memory save states");
+			new WarnWidget.WarnWidgetHelper(mm, "Rewind is not supported by this MAME build", 3, Color.YELLOW, true);
+			return;
+		}
+		buildRewind(size);
+	}
+
+	//emulator thread; the budget covers the arena, the work buffers and the index, only the arena is big
+	//and it is mapped outside the Java heap
+	private static boolean buildRewind(int stateSize) {
+		releaseRewind();
+		int budget = mm.getPrefsHelper().getRewindMemory() * 1024 * 1024;
+		//room for the state to grow a little before everything has to be rebuilt
+		int maxStateSize = stateSize + stateSize / 8;
+		int refresh = pipeline.getState().getRefresh() > 0 ? pipeline.getState().getRefresh() : 60;
+		int maxStates = REWIND_MAX_SECONDS * refresh / rewindInterval;
+		int arenaSize = RewindBuffer.getArenaSize(budget, maxStateSize, maxStates);
+		if (arenaSize < maxStateSize) {
+			Log.w(TAG, "rewind: " + budget + " bytes do not fit states of " + stateSize + " bytes");
+			new WarnWidget.WarnWidgetHelper(mm, "Rewind memory too small for this game, try a bigger size", 3, Color.YELLOW, true);
+			return false;
+		}
+		try {
+			rewindMemory = SharedMemory.create("rewind", arenaSize);
+			rewindArena = rewindMemory.mapReadWrite();
+			rewindState = ByteBuffer.allocateDirect(maxStateSize);
+			rewindBuffer = new RewindBuffer(rewindArena, maxStateSize, maxStates);
+		} catch (ErrnoException | OutOfMemoryError e) {
+			Log.w(TAG, "rewind: no memory for " + budget + " bytes", e);
+			releaseRewind();
+			new WarnWidget.WarnWidgetHelper(mm, "Not enough memory for rewind, try a smaller size", 3, Color.YELLOW, true);
+			return false;
+		}
+		return true;
+	}
+
+	//emulator thread, nothing may touch the arena afterwards
+	private static void releaseRewind() {
+		rewindBuffer = null;
+		rewindState = null;
+		if (rewindArena != null) {
+			SharedMemory.unmap(rewindArena);
+			rewindArena = null;
+		}
+		if (rewindMemory != null) {
+			rewindMemory.close();
+			rewindMemory = null;
+		}
+	}
+
+	//emulator thread, before the frame is shown: steps back while rewinding, else keeps a state every few frames
+	private static void rewindFrame() {
+		RewindBuffer r = rewindBuffer;
+		if (r == null || pipeline.getState().isInMenu())
+			return;
+
+		if (rewinding) {
+			int size = r.rewind(rewindState);
+			if (size > 0)
+				core.loadState(rewindState, size);
+			return;
+		}
+
+		if (--rewindCountdown > 0)
+			return;
+		rewindCountdown = rewindInterval;
+
+		int size = core.saveState(rewindState);
+		if (size == 0) {
+			//the state outgrew the buffers, the history starts again with bigger ones
+			int needed = core.getStateSize();
+			if (needed <= r.getMaxStateSize() || !buildRewind(needed))
+				return;
+			r = rewindBuffer;
+			size = core.saveState(rewindState);
+		}
+		if (size > 0)
+			r.capture(rewindState, size);
+	}
+
+	private static void runAheadTooSlow() {
+		Log.w(TAG, "run-ahead of " + runAhead.getFrames() + " frames turned off, speed ratio " + runAhead.getLastRatio());
+		setRunAheadFrames(0);
+		if (mm != null)
+			new WarnWidget.WarnWidgetHelper(mm, "Run-ahead turned off, this device is too slow for it", 3, Color.YELLOW, true);
+	}
+
+	/**
+	 * Called from the emulator thread before the bridge frees or reuses its frame buffers. The
+	 * producer starts again from buffer 0 with a new exchange, and a frame the GL thread took from
+	 * the old one is done with once the thread runs its next queued event.
+	 */
+	static public void initVideo() {
+		FrameExchange old = pipeline.replaceFrameExchange();
+		if (old.getPublishedFrames() == 0 || mm == null || !(mm.getEmuView() instanceof EmulatorViewGL))
+			return;
+
+		final CountDownLatch released = new CountDownLatch(1);
+		((EmulatorViewGL) mm.getEmuView()).queueEvent(released::countDown);
+		try {
+			if (!released.await(VIDEO_RELEASE_TIMEOUT_MS, TimeUnit.MILLISECONDS))
+				Log.w("Thread Video", "renderer did not release the frame buffers");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
 		}
 	}
 
 	//synchronized
 	static public void changeVideo(final int newWidth, final int newHeight, int newVisWidth, int newVisHeight) {
 
+		StartupTracer.mark(StartupTracer.STAGE_CHANGE_VIDEO);
+
 		Log.d("Thread Video", "changeVideo emu_width:" + emu_width + " emu_height: " + emu_height + " newWidth:" + newWidth + " newHeight: " + newHeight + " newVisWidth:" + newVisWidth + " newVisHeight: " + newVisHeight);
 		synchronized (lock1) {
 
@@ -434,6 +693,7 @@ public class Emulator {
 	}
 
 	static public void initInput() {
+		updateState();
 		Log.d("initInput", "initInput isInGame:" + isInGame() + " isInMenu:" + isInMenu());
 		mm.runOnUiThread(new Runnable() {
 			public void run() {
@@ -537,22 +797,58 @@ public class Emulator {
 
 		audioTrack = trackBuilder.build();
 
+		//a few emulated frames of slack between the emulator thread and the pump
+		AudioRing ring = new AudioRing(bytesPerFrame * 4, (stereo ? 2 : 1) * 2);
+		Log.d("audio", "Ring size:" + ring.getCapacity());
+
 		audioTrack.play();
+
+		//with rate control hold about 2.5 emulated frames queued in all, the pump sizes the track
+		//buffer for it and grows it on underruns, so the low latency warm up in writeAudio is skipped
+		if (mm.getPrefsHelper().isSoundRateControl()) {
+			audioPump = new AudioPump(audioTrack, ring, new DynamicRateControl(), samplesPerFrame * 5 / 2, samplesPerFrame);
+			sound_isLowLatency_adjust = false;
+		} else {
+			audioPump = new AudioPump(audioTrack, ring);
+		}
+		audioPump.start();
 	}
 
 	public static void endAudio() {
+		if (audioPump != null)
+			audioPump.quit();
 		if (audioTrack != null) {
 			audioTrack.stop();
+			if (audioPump != null)
+				audioPump.join();
 			audioTrack.release();
 		}
+		if (audioPump != null) {
+			AudioRing ring = audioPump.getRing();
+			Log.d("audio", "overruns:" + ring.getOverruns() + " dropped bytes:" + ring.getDroppedBytes()
+				+ " underruns:" + audioPump.getUnderruns());
+			if (audioPump.getRateControl() != null)
+				Log.d("audio", audioPump.getRateControl().toString());
+		}
+		audioPump = null;
 		audioTrack = null;
 	}
 
-	public static void writeAudio(byte[] b, int sz) {
+	public static AudioPump getAudioPump() {
+		return audioPump;
+	}
+
+	//the bridge reuses the same direct buffer for every chunk, so it is copied to the ring before returning
+	public static void writeAudio(ByteBuffer b, int sz) {
 
-		if (audioTrack != null) {
+		if (audioTrack != null && audioPump != null) {
 
-			audioTrack.write(b, 0, sz, AudioTrack.WRITE_NON_BLOCKING);
+			AudioRing ring = audioPump.getRing();
+			sz = rewinding ? 0 : fastForward.filterAudio(b, sz, ring.getFrameBytes());
+			if (sz > 0) {
+				ring.write(b, sz);
+				audioPump.wakeUp();
+			}
 
 			if (sound_isLowLatency_adjust) {
 				if (sound_frames_to_warmup == 20) {
@@ -586,6 +882,11 @@ public class Emulator {
 	public static void pause() {
 		//Log.d("EMULATOR", "PAUSE");
 
+		if (audioPump != null)
+			audioPump.setPaused(true);
+
+		core.pauseNativeAudio(true);
+
 		if (audioTrack != null) {
 			try {
 				audioTrack.pause();
@@ -616,6 +917,11 @@ public class Emulator {
 
 		if (audioTrack != null)
 			audioTrack.play();
+
+		if (audioPump != null)
+			audioPump.setPaused(false);
+
+		core.pauseNativeAudio(false);
 	}
 
 	//EMULATOR
@@ -625,6 +931,8 @@ public class Emulator {
 
 		if (isEmulating) return;
 
+		StartupTracer.mark(StartupTracer.STAGE_EMULATE);
+
 		Thread t = new Thread(new Runnable() {
 
 			public void run() {
@@ -646,7 +954,8 @@ public class Emulator {
 				boolean extROM = false;
 				isEmulating = true;
 				Size sz = mm.getMainHelper().getWindowSize();
-				init(libPath, resPath, Math.max(sz.getWidth(), sz.getHeight()), Math.min(sz.getWidth(), sz.getHeight()));
+				StartupTracer.mark(StartupTracer.STAGE_INIT);
+				core.init(libPath, resPath, Math.max(sz.getWidth(), sz.getHeight()), Math.min(sz.getWidth(), sz.getHeight()));
 				final String versionName = mm.getMainHelper().getVersion();
 				Emulator.setValueStr(Emulator.VERSION, versionName);
 
@@ -735,9 +1044,17 @@ public class Emulator {
 					}
 				}
 
+				//a new run starts from the core defaults, so everything has to be pushed again
+				config.invalidate();
 				mm.getMainHelper().updateEmuValues();
 
-				runT();
+				StartupTracer.mark(StartupTracer.STAGE_CORE_START);
+				core.run(host);
+
+				Log.d(TAG, "frames published:" + pipeline.getFrameExchange().getPublishedFrames()
+					+ " skipped:" + pipeline.getFrameExchange().getSkippedFrames()
+					+ " dropped:" + pipeline.getFrameExchange().getDroppedFrames()
+					+ " duplicated:" + pipeline.getFrameExchange().getDuplicatedFrames());
 
 				if (extROM) {
 
@@ -746,10 +1063,19 @@ public class Emulator {
 						f.delete();
 					}
 				}
+				final boolean reuse = mm.getPrefsHelper().isReuseSession();
+				if (reuse)
+					resetSession();
+
 				mm.runOnUiThread(new Runnable() {
 					public void run() {
-						mm.finishAndRemoveTask();
-						android.os.Process.killProcess(android.os.Process.myPid());
+						if (reuse) {
+							//keep the process, the library and the SAF caches warm for the next game
+							mm.finish();
+						} else {
+							mm.finishAndRemoveTask();
+							android.os.Process.killProcess(android.os.Process.myPid());
+						}
 					}
 				});
 			}
@@ -766,20 +1092,183 @@ public class Emulator {
 		t.start();
 	}
 
+	//leaves the static state as a fresh process would have it, the core is init'ed again on the next emulate
+	private static void resetSession() {
+		Log.d(TAG, "resetting session for reuse");
+		isEmulating = false;
+		paused = true;
+		saveorload = false;
+		inOptions = false;
+		needsRestart = false;
+		pipeline.reset();
+		fastForward.stop();
+		runAhead.setFrames(0);
+		runAhead.reset();
+		rewinding = false;
+		updateNativeAudioStep();
+		releaseRewind();
+		frameTasks.clear();
+		memoryStates = false;
+		if (fastForwardHud != null) {
+			fastForwardHud.end();
+			fastForwardHud = null;
+		}
+
+		DialogHelper.savedDialog = DialogHelper.DIALOG_NONE;
+		ControlCustomizer.setEnabled(false);
+	}
+
 	public static int getValue(int key) {
-		return getValue(key, 0);
+		return core.getValue(key, 0);
 	}
 
 	public static String getValueStr(int key) {
-		return getValueStr(key, 0);
+		return core.getValueStr(key, 0);
 	}
 
 	public static void setValue(int key, int value) {
-		setValue(key, 0, value);
+		core.setValue(key, 0, value);
 	}
 
 	public static void setValueStr(int key, String value) {
-		setValueStr(key, 0, value);
+		core.setValueStr(key, 0, value);
+	}
+
+	public static void setValues(int[] keys, int[] values) {
+		core.setValues(keys, values, Math.min(keys.length, values.length));
+	}
+
+	public static EmulatorCore getCore() {
+		return core;
+	}
+
+	/**
+	 * Replaces the core, e.g. with a SyntheticEmulatorCore to load the frontend without MAME. Only
+	 * valid while nothing is running.
+	 */
+	public static void setCore(EmulatorCore value) {
+		if (isEmulating)
+			throw new IllegalStateException("core changed while emulating");
+		core = value;
+		pipeline.attach(core);
+		config.invalidate();
+	}
+
+	public static EmulatorConfig getConfig() {
+		return config;
+	}
+
+	public static FastForward getFastForward() {
+		return fastForward;
+	}
+
+	public static boolean isFastForward() {
+		return fastForward.isActive();
+	}
+
+	/**
+	 * Unthrottles the core, up to the speed and with the sound handling chosen in the settings.
+	 */
+	public static void setFastForward(boolean enable) {
+		if (enable == fastForward.isActive())
+			return;
+		if (enable)
+			fastForward.start(mm.getPrefsHelper().getFastForwardSpeed(), mm.getPrefsHelper().getFastForwardAudio());
+		else
+			fastForward.stop();
+		pushFastForward(config);
+		config.commit();
+		//running ahead would cost N+1 times the fast-forward speed
+		applyRunAhead();
+	}
+
+	public static RunAhead getRunAhead() {
+		return runAhead;
+	}
+
+	/**
+	 * Runs the given number of frames ahead from now on, 0 turns run-ahead off.
+	 */
+	public static void setRunAheadFrames(int frames) {
+		runAhead.setFrames(frames);
+		runAhead.reset();
+		applyRunAhead();
+	}
+
+	/**
+	 * Queues work for the emulator thread, it runs before the next frame is shown. Nothing runs while
+	 * the emulation is paused.
+	 */
+	public static void runOnFrame(FrameTask task) {
+		frameTasks.add(task);
+	}
+
+	/**
+	 * @return true if the core of the running game can save and load states in memory.
+	 */
+	public static boolean hasMemoryStates() {
+		return memoryStates;
+	}
+
+	public static boolean isRewindEnabled() {
+		return rewindBuffer != null;
+	}
+
+	public static boolean isRewinding() {
+		return rewinding;
+	}
+
+	/**
+	 * Steps back through the recorded states, one per frame, while on. Does nothing if rewind is off
+	 * for the current game.
+	 */
+	public static void setRewinding(boolean on) {
+		if (on == rewinding || (on && rewindBuffer == null))
+			return;
+		rewinding = on;
+		//the states loaded must be the shown ones
+		applyRunAhead();
+	}
+
+	private static void applyRunAhead() {
+		if (!isEmulating)
+			return;
+		int n = fastForward.isActive() || rewinding ? 0 : runAhead.getFrames();
+		if (!core.setRunAhead(n) && n > 0) {
+			runAhead.setFrames(0);
+			if (mm != null)
+				new WarnWidget.WarnWidgetHelper(mm, "Run-ahead is not supported by this MAME build", 3, Color.YELLOW, true);
+		}
+	}
+
+	/**
+	 * Stages the throttle options for the current fast-forward state, without committing them.
+	 */
+	public static void pushFastForward(EmulatorConfig config) {
+		boolean on = fastForward.isActive();
+		int max = fastForward.getMaxSpeed();
+		config.put(THROTTLE, !on || max > 0);
+		config.put(SPEED, on && max > 0 ? max * 100 : 100);
+	}
+
+	//INPUT, written to the shared block and picked up by the bridge once per frame
+	public static void setDigitalData(int i, long data) {
+		pipeline.getInputBlock().setDigital(i, data);
+	}
+
+	public static void setAnalogData(int i, float v1, float v2) {
+		pipeline.getInputBlock().setAnalog(i, v1, v2);
+	}
+
+	public static void setMouseData(int i, int mouseAction, int button, float cx, float cy) {
+		if (mouseAction == MOUSE_MOVE)
+			pipeline.getInputBlock().moveMouse(cx, cy);
+		else if (mouseAction == MOUSE_BTN_DOWN || mouseAction == MOUSE_BTN_UP)
+			pipeline.getInputBlock().mouseButton(button, mouseAction == MOUSE_BTN_DOWN);
+	}
+
+	public static void setTouchData(int i, int touchAction, float cx, float cy) {
+		pipeline.getInputBlock().touch(i, cx, cy, touchAction == FINGER_DOWN, touchAction == FINGER_UP);
 	}
 
 	static int safOpenFile(String pathName, String mode) {
@@ -826,17 +1315,29 @@ public class Emulator {
 		mm.getSAFHelper().closeDir(dirId);
 	}
 
-	//native
-	protected static native void init(String libPath, String resPath, int nativeWidth, int nativeHeight);
-	protected static native void runT();
-	synchronized public static native void setDigitalData(int i, long data);
-	synchronized public static native void setAnalogData(int i, float v1, float v2);
-	public static native int getValue(int key, int i);
-	public static native String getValueStr(int key, int i);
-	public static native void setValue(int key, int i, int value);
-	public static native void setValueStr(int key, int i, String value);
-	public static native int setKeyData(int keyCode, int keyAction, char keyChar);
-	public static native int setMouseData(int i, int mouseAction, int button, float cx, float cy);
-	public static native int setTouchData(int i, int touchAction, float cx, float cy);
+	//native, only called through NativeEmulatorCore
+	static native void init(String libPath, String resPath, int nativeWidth, int nativeHeight);
+	static native void runT();
+	static native void preload(String libPath);
+
+	static native void setInputBlock(ByteBuffer block);
+
+	static native void setStateBlock(ByteBuffer block);
+
+	static native void setNativeAudio(boolean enable);
+
+	static native void pauseNativeAudio(boolean pause);
+
+	static native void setNativeAudioStep(int step);
+	static native int getValue(int key, int i);
+	static native String getValueStr(int key, int i);
+	static native void setValue(int key, int i, int value);
+	static native void setValueStr(int key, int i, String value);
+	static native void setValues(int[] keys, int[] values, int count);
+	static native int setKeyData(int keyCode, int keyAction, char keyChar);
+	static native boolean setRunAhead(int frames);
+	static native int getStateSize();
+	static native int saveState(ByteBuffer dst);
+	static native boolean loadState(ByteBuffer src, int size);
 
 }
@@ -0,0 +1,181 @@
+/*
+ * This file is part of MAME4droid.
+ *
+ * Copyright (C) 2024 David Valdeita (Seleuco)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Linking MAME4droid statically or dynamically with other modules is
+ * making a combined work based on MAME4droid. Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * In addition, as a special exception, the copyright holders of MAME4droid
+ * give you permission to combine MAME4droid with free software programs
+ * or libraries that are released under the GNU LGPL and with code included
+ * in the standard release of MAME under the MAME License (or modified
+ * versions of such code, with unchanged license). You may copy and
+ * distribute such a system following the terms of the GNU GPL for MAME4droid
+ * and the licenses of the other code concerned, provided that you include
+ * the source code of that other code when and as the GNU GPL requires
+ * distribution of source code.
+ *
+ * Note that people who make modified versions of MAME4idroid are not
+ * obligated to grant this special exception for their modified versions; it
+ * is their choice whether to do so. The GNU General Public License
+ * gives permission to release a modified version without this exception;
+ * this exception also makes it possible to release a modified version
+ * which carries forward this exception.
+ *
+ * MAME4droid is dual-licensed: Alternatively, you can license MAME4droid
+ * under a MAME license, as set out in http://mamedev.org/
+ */
+
+package com.ingcorp.webhard;
+
+/**
+ * Java side copy of the option values pushed to the core. Values are staged with put() and
+ * commit() sends only the keys whose value differs from the last push, in a single JNI call.
+ * The model must be invalidated whenever the core may have lost them, i.e. before each run.
+ */
+public final class EmulatorConfig {
+
+	//option keys are small consecutive ints, see the constants in Emulator
+	public static final int MAX_KEYS = 128;
+
+	public interface Sink {
+		void setValues(int[] keys, int[] values, int count);
+
+		void setValueStr(int key, String value);
+	}
+
+	private final Sink sink;
+
+	private final int[] pushed = new int[MAX_KEYS];
+	private final boolean[] known = new boolean[MAX_KEYS];
+	private final String[] pushedStr = new String[MAX_KEYS];
+
+	//reused between commits so a push allocates nothing
+	private final int[] dirtyKeys = new int[MAX_KEYS];
+	private final int[] dirtyValues = new int[MAX_KEYS];
+	private final boolean[] dirty = new boolean[MAX_KEYS];
+	private int numDirty = 0;
+
+	private long commits = 0;
+	private long sentValues = 0;
+	private long skippedValues = 0;
+
+	public EmulatorConfig(Sink sink) {
+		this.sink = sink;
+	}
+
+	public synchronized void put(int key, int value) {
+		if (key < 0 || key >= MAX_KEYS)
+			throw new IllegalArgumentException("option key out of range: " + key);
+		if (known[key] && pushed[key] == value && !dirty[key]) {
+			skippedValues++;
+			return;
+		}
+		if (dirty[key]) {
+			for (int i = 0; i < numDirty; i++) {
+				if (dirtyKeys[i] == key) {
+					dirtyValues[i] = value;
+					break;
+				}
+			}
+			return;
+		}
+		dirty[key] = true;
+		dirtyKeys[numDirty] = key;
+		dirtyValues[numDirty] = value;
+		numDirty++;
+	}
+
+	public void put(int key, boolean value) {
+		put(key, value ? 1 : 0);
+	}
+
+	/**
+	 * String values are rare and not batched; they are sent right away if they changed.
+	 */
+	public synchronized void putStr(int key, String value) {
+		if (key < 0 || key >= MAX_KEYS)
+			throw new IllegalArgumentException("option key out of range: " + key);
+		if (value == null || value.equals(pushedStr[key])) {
+			skippedValues++;
+			return;
+		}
+		sink.setValueStr(key, value);
+		pushedStr[key] = value;
+		sentValues++;
+	}
+
+	/**
+	 * @return the number of values sent to the core.
+	 */
+	public synchronized int commit() {
+		int n = 0;
+		//drop staged values that ended up equal to the pushed ones
+		for (int i = 0; i < numDirty; i++) {
+			int key = dirtyKeys[i];
+			dirty[key] = false;
+			if (known[key] && pushed[key] == dirtyValues[i]) {
+				skippedValues++;
+				continue;
+			}
+			dirtyKeys[n] = key;
+			dirtyValues[n] = dirtyValues[i];
+			n++;
+		}
+		numDirty = 0;
+		if (n == 0)
+			return 0;
+
+		sink.setValues(dirtyKeys, dirtyValues, n);
+
+		for (int i = 0; i < n; i++) {
+			pushed[dirtyKeys[i]] = dirtyValues[i];
+			known[dirtyKeys[i]] = true;
+		}
+		commits++;
+		sentValues += n;
+		return n;
+	}
+
+	/**
+	 * Forgets everything pushed so the next commit sends every staged value again.
+	 */
+	public synchronized void invalidate() {
+		for (int i = 0; i < MAX_KEYS; i++) {
+			known[i] = false;
+			pushedStr[i] = null;
+		}
+	}
+
+	public synchronized boolean isPushed(int key, int value) {
+		return key >= 0 && key < MAX_KEYS && known[key] && pushed[key] == value;
+	}
+
+	public long getCommits() {
+		return commits;
+	}
+
+	public long getSentValues() {
+		return sentValues;
+	}
+
+	public long getSkippedValues() {
+		return skippedValues;
+	}
+}
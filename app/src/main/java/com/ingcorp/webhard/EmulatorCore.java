@@ -0,0 +1,144 @@
+/*
+ * This file is part of MAME4droid.
+ *
+ * Copyright (C) 2024 David Valdeita (Seleuco)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Linking MAME4droid statically or dynamically with other modules is
+ * making a combined work based on MAME4droid. Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * In addition, as a special exception, the copyright holders of MAME4droid
+ * give you permission to combine MAME4droid with free software programs
+ * or libraries that are released under the GNU LGPL and with code included
+ * in the standard release of MAME under the MAME License (or modified
+ * versions of such code, with unchanged license). You may copy and
+ * distribute such a system following the terms of the GNU GPL for MAME4droid
+ * and the licenses of the other code concerned, provided that you include
+ * the source code of that other code when and as the GNU GPL requires
+ * distribution of source code.
+ *
+ * Note that people who make modified versions of MAME4idroid are not
+ * obligated to grant this special exception for their modified versions; it
+ * is their choice whether to do so. The GNU General Public License
+ * gives permission to release a modified version without this exception;
+ * this exception also makes it possible to release a modified version
+ * which carries forward this exception.
+ *
+ * MAME4droid is dual-licensed: Alternatively, you can license MAME4droid
+ * under a MAME license, as set out in http://mamedev.org/
+ */
+
+package com.ingcorp.webhard;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Everything Emulator needs from the emulation core. NativeEmulatorCore is the MAME build loaded
+ * through mame4droid-jni.c; SyntheticEmulatorCore is a pure Java stand-in that drives the same
+ * callbacks, so the frame, audio and input paths can run without the native library.
+ */
+public interface EmulatorCore {
+
+	/**
+	 * Callbacks a running core makes into the frontend, always from the emulator thread.
+	 * They mirror the static methods the bridge calls on Emulator.
+	 */
+	interface Host {
+		/**
+		 * Called before the video buffers are (re)allocated, the next bitblt fills buffer 0.
+		 */
+		void initVideo();
+
+		void changeVideo(int width, int height, int visWidth, int visHeight);
+
+		/**
+		 * @return the index of the video buffer the core must fill next.
+		 */
+		int bitblt(ByteBuffer frame);
+
+		void initInput();
+
+		void initAudio(int freq, boolean stereo);
+
+		void writeAudio(ByteBuffer b, int size);
+
+		void endAudio();
+	}
+
+	void preload(String libPath);
+
+	/**
+	 * Hands the core the shared input (see SharedInputBlock) and state (see EmulatorState) blocks.
+	 */
+	void attach(ByteBuffer inputBlock, ByteBuffer stateBlock);
+
+	void init(String libPath, String resPath, int nativeWidth, int nativeHeight);
+
+	/**
+	 * Runs the core until the game is exited. Blocks the calling thread.
+	 */
+	void run(Host host);
+
+	int getValue(int key, int i);
+
+	String getValueStr(int key, int i);
+
+	void setValue(int key, int i, int value);
+
+	void setValueStr(int key, int i, String value);
+
+	void setValues(int[] keys, int[] values, int count);
+
+	int setKeyData(int keyCode, int keyAction, char keyChar);
+
+	void setNativeAudio(boolean enable);
+
+	void pauseNativeAudio(boolean pause);
+
+	/**
+	 * Filters the sound that goes to the native audio engine from the next chunk on, see
+	 * FastForward.getAudioStep(): 0 drops it, n keeps one sample out of every n.
+	 */
+	void setNativeAudioStep(int step);
+
+	/**
+	 * Runs the given number of frames ahead of the shown one, 0 to stop. Only valid once the core is
+	 * init'ed.
+	 *
+	 * @return false if the core cannot run ahead.
+	 */
+	boolean setRunAhead(int frames);
+
+	/**
+	 * @return the bytes of an in-memory save state of the running game, 0 if the core has none.
+	 */
+	int getStateSize();
+
+	/**
+	 * Saves the state of the running game into a direct buffer. Only valid from inside Host.bitblt().
+	 * With run-ahead it is the state of the real timeline, not the one of the frame shown.
+	 *
+	 * @return the bytes written, 0 on failure.
+	 */
+	int saveState(ByteBuffer dst);
+
+	/**
+	 * Loads a state saved by saveState(), it takes effect before the next frame. Only valid from
+	 * inside Host.bitblt(). With run-ahead it replaces the real timeline the bridge goes back to.
+	 */
+	boolean loadState(ByteBuffer src, int size);
+}
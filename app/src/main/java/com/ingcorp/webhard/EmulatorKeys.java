@@ -0,0 +1,144 @@
+/*
+ * This file is part of MAME4droid.
+ *
+ * Copyright (C) 2024 David Valdeita (Seleuco)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Linking MAME4droid statically or dynamically with other modules is
+ * making a combined work based on MAME4droid. Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * In addition, as a special exception, the copyright holders of MAME4droid
+ * give you permission to combine MAME4droid with free software programs
+ * or libraries that are released under the GNU LGPL and with code included
+ * in the standard release of MAME under the MAME License (or modified
+ * versions of such code, with unchanged license). You may copy and
+ * distribute such a system following the terms of the GNU GPL for MAME4droid
+ * and the licenses of the other code concerned, provided that you include
+ * the source code of that other code when and as the GNU GPL requires
+ * distribution of source code.
+ *
+ * Note that people who make modified versions of MAME4idroid are not
+ * obligated to grant this special exception for their modified versions; it
+ * is their choice whether to do so. The GNU General Public License
+ * gives permission to release a modified version without this exception;
+ * this exception also makes it possible to release a modified version
+ * which carries forward this exception.
+ *
+ * MAME4droid is dual-licensed: Alternatively, you can license MAME4droid
+ * under a MAME license, as set out in http://mamedev.org/
+ */
+
+package com.ingcorp.webhard;
+
+/**
+ * The keys of the values exchanged with the core through getValue(), setValue() and their string
+ * variants, and the input actions. They are shared with mame4droid-jni.c, so they never change.
+ * Kept apart from Emulator so cores and tools that run without Android can use them.
+ */
+public interface EmulatorKeys {
+
+	//gets
+	final static public int IN_MENU = 1;
+	final static public int IN_GAME = 2;
+	final static public int NUMBTNS = 3;
+	final static public int NUMWAYS = 4;
+	final static public int IS_LIGHTGUN = 5;
+
+	//sets
+	final static public int EXIT_GAME = 1;
+
+	final static public int EXIT_PAUSE = 2;
+	final static public int SHOW_FPS = 3;
+
+	final static public int AUTO_FRAMESKIP = 4;
+	final static public int CHEATS = 5;
+	final static public int SKIP_GAMEINFO = 6;
+
+	final static public int DISABLE_DRC = 7;
+
+	final static public int DRC_USE_C = 8;
+
+	final static public int SIMPLE_UI = 9;
+
+	final static public int PAUSE = 11;
+	final static public int SOUND_VALUE = 13;
+
+	final static public int AUTOSAVE = 16;
+	final static public int SAVESTATE = 17;
+	final static public int LOADSTATE = 18;
+
+	final static public int OSD_RESOLUTION = 20;
+	final static public int EMU_RESOLUTION = 21;
+
+	final static public int ZOOM_TO_WINDOW = 22;
+
+	final static public int DOUBLE_BUFFER = 23;
+	final static public int PXASP1 = 24;
+
+	final static public int VBEAM2X = 34;
+	final static public int VFLICKER = 36;
+	final static public int SOUND_OPTIMAL_FRAMES = 48;
+	final static public int SOUND_OPTIMAL_SAMPLERATE = 49;
+	final static public int SOUND_ENGINE = 50;
+
+	final static public int MOUSE = 60;
+	final static public int REFRESH = 61;
+	final static public int USING_SAF = 62;
+	final static public int SAVESATES_IN_ROM_PATH = 63;
+
+	final static public int WARN_ON_EXIT = 64;
+
+	final static public int IS_MOUSE = 65;
+
+	final static public int KEYBOARD = 66;
+
+	final static public int NUM_PROCESSORS = 67;
+	final static public int NODEADZONEANDSAT = 68;
+	final static public int MAMEINI = 69;
+	final static public int SPEED_HACKS = 70;
+	final static public int AUTOFIRE = 71;
+	final static public int INPUTMACRO = 72;
+	final static public int HISCORE = 73;
+	//fast-forward, as the MAME throttle and speed (percent of real time) options
+	final static public int THROTTLE = 74;
+	final static public int SPEED = 75;
+
+	//set str
+	final static public int SAF_PATH = 1;
+	final static public int ROM_NAME = 2;
+	final static public int VERSION = 3;
+	final static public int OVERLAY_EFECT = 4;
+	final static public int CLI_PARAMS = 5;
+
+	//get str
+	final static public int MAME_VERSION = 1;
+
+	//KEYS ACTIONS
+	final static public int KEY_DOWN = 1;
+	final static public int KEY_UP = 2;
+
+	//MOUSE ACTIONS
+	final static public int MOUSE_MOVE = 1;
+	final static public int MOUSE_BTN_DOWN = 2;
+	final static public int MOUSE_BTN_UP = 3;
+	final static public int MOUSE_MOVE_POINTER = 4;
+
+	//TOUCH ACTIONS
+	final static public int FINGER_MOVE = 1;
+	final static public int FINGER_DOWN = 2;
+	final static public int FINGER_UP = 3;
+}
@@ -0,0 +1,156 @@
+/*
+ * This file is part of MAME4droid.
+ *
+ * Copyright (C) 2024 David Valdeita (Seleuco)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Linking MAME4droid statically or dynamically with other modules is
+ * making a combined work based on MAME4droid. Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * In addition, as a special exception, the copyright holders of MAME4droid
+ * give you permission to combine MAME4droid with free software programs
+ * or libraries that are released under the GNU LGPL and with code included
+ * in the standard release of MAME under the MAME License (or modified
+ * versions of such code, with unchanged license). You may copy and
+ * distribute such a system following the terms of the GNU GPL for MAME4droid
+ * and the licenses of the other code concerned, provided that you include
+ * the source code of that other code when and as the GNU GPL requires
+ * distribution of source code.
+ *
+ * Note that people who make modified versions of MAME4idroid are not
+ * obligated to grant this special exception for their modified versions; it
+ * is their choice whether to do so. The GNU General Public License
+ * gives permission to release a modified version without this exception;
+ * this exception also makes it possible to release a modified version
+ * which carries forward this exception.
+ *
+ * MAME4droid is dual-licensed: Alternatively, you can license MAME4droid
+ * under a MAME license, as set out in http://mamedev.org/
+ */
+
+package com.ingcorp.webhard;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Immutable snapshot of the core values the UI polls on the touch path. The bridge refreshes
+ * the shared block once per emulated frame and a new snapshot is only built when something changed.
+ * The layout must match the STATE_* offsets in mame4droid-jni.c.
+ */
+public final class EmulatorState {
+
+	static final int IN_GAME_OFFSET = 0;
+	static final int IN_MENU_OFFSET = 4;
+	static final int IS_LIGHTGUN_OFFSET = 8;
+	static final int IS_MOUSE_OFFSET = 12;
+	static final int NUMWAYS_OFFSET = 16;
+	static final int NUMBTNS_OFFSET = 20;
+	static final int REFRESH_OFFSET = 24;
+	static final int SIZE = 28;
+
+	//what getValue answered before the core was running
+	static final EmulatorState NONE = new EmulatorState(false, false, false, false, -1, -1, -1);
+
+	private final boolean inGame;
+	private final boolean inMenu;
+	private final boolean lightgun;
+	private final boolean mouse;
+	private final int numWays;
+	private final int numButtons;
+	private final int refresh;
+
+	private EmulatorState(boolean inGame, boolean inMenu, boolean lightgun, boolean mouse, int numWays, int numButtons, int refresh) {
+		this.inGame = inGame;
+		this.inMenu = inMenu;
+		this.lightgun = lightgun;
+		this.mouse = mouse;
+		this.numWays = numWays;
+		this.numButtons = numButtons;
+		this.refresh = refresh;
+	}
+
+	static ByteBuffer allocateBlock() {
+		ByteBuffer block = ByteBuffer.allocateDirect(SIZE).order(ByteOrder.nativeOrder());
+		block.putInt(IN_GAME_OFFSET, 0);
+		block.putInt(IN_MENU_OFFSET, 0);
+		block.putInt(IS_LIGHTGUN_OFFSET, 0);
+		block.putInt(IS_MOUSE_OFFSET, 0);
+		block.putInt(NUMWAYS_OFFSET, NONE.numWays);
+		block.putInt(NUMBTNS_OFFSET, NONE.numButtons);
+		block.putInt(REFRESH_OFFSET, NONE.refresh);
+		return block;
+	}
+
+	/**
+	 * Returns current if the block still holds the same values, so the common case allocates nothing.
+	 */
+	static EmulatorState read(ByteBuffer block, EmulatorState current) {
+		boolean inGame = block.getInt(IN_GAME_OFFSET) == 1;
+		boolean inMenu = block.getInt(IN_MENU_OFFSET) == 1;
+		boolean lightgun = block.getInt(IS_LIGHTGUN_OFFSET) == 1;
+		boolean mouse = block.getInt(IS_MOUSE_OFFSET) == 1;
+		int numWays = block.getInt(NUMWAYS_OFFSET);
+		int numButtons = block.getInt(NUMBTNS_OFFSET);
+		int refresh = block.getInt(REFRESH_OFFSET);
+
+		if (current.inGame == inGame && current.inMenu == inMenu && current.lightgun == lightgun
+			&& current.mouse == mouse && current.numWays == numWays && current.numButtons == numButtons
+			&& current.refresh == refresh)
+			return current;
+
+		return new EmulatorState(inGame, inMenu, lightgun, mouse, numWays, numButtons, refresh);
+	}
+
+	public boolean isInGame() {
+		return inGame;
+	}
+
+	public boolean isInMenu() {
+		return inMenu;
+	}
+
+	public boolean isInGameButNotInMenu() {
+		return inGame && !inMenu;
+	}
+
+	public boolean isLightgun() {
+		return lightgun;
+	}
+
+	public boolean isMouse() {
+		return mouse;
+	}
+
+	public int getNumWays() {
+		return numWays;
+	}
+
+	public int getNumButtons() {
+		return numButtons;
+	}
+
+	public int getRefresh() {
+		return refresh;
+	}
+
+	@Override
+	public String toString() {
+		return "EmulatorState{inGame=" + inGame + " inMenu=" + inMenu + " lightgun=" + lightgun + " mouse=" + mouse
+			+ " ways=" + numWays + " buttons=" + numButtons + " refresh=" + refresh + "}";
+	}
+}
@@ -0,0 +1,216 @@
+/*
+ * This file is part of MAME4droid.
+ *
+ * Copyright (C) 2024 David Valdeita (Seleuco)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Linking MAME4droid statically or dynamically with other modules is
+ * making a combined work based on MAME4droid. Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * In addition, as a special exception, the copyright holders of MAME4droid
+ * give you permission to combine MAME4droid with free software programs
+ * or libraries that are released under the GNU LGPL and with code included
+ * in the standard release of MAME under the MAME License (or modified
+ * versions of such code, with unchanged license). You may copy and
+ * distribute such a system following the terms of the GNU GPL for MAME4droid
+ * and the licenses of the other code concerned, provided that you include
+ * the source code of that other code when and as the GNU GPL requires
+ * distribution of source code.
+ *
+ * Note that people who make modified versions of MAME4idroid are not
+ * obligated to grant this special exception for their modified versions; it
+ * is their choice whether to do so. The GNU General Public License
+ * gives permission to release a modified version without this exception;
+ * this exception also makes it possible to release a modified version
+ * which carries forward this exception.
+ *
+ * MAME4droid is dual-licensed: Alternatively, you can license MAME4droid
+ * under a MAME license, as set out in http://mamedev.org/
+ */
+
+package com.ingcorp.webhard;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Fast-forward state shared by the UI (which turns it on and off) and the emulator thread (which
+ * decimates the presented frames and the audio and measures the achieved speed). The core itself
+ * is unthrottled through the THROTTLE and SPEED option keys, see Emulator.setFastForward().
+ */
+public final class FastForward {
+
+	//what happens to the sound while fast-forwarding
+	public static final int AUDIO_MUTE = 0;
+	public static final int AUDIO_SKIP = 1;//plays only the sound of the presented frames, keeps the pitch
+	public static final int AUDIO_COMPRESS = 2;//keeps one sample out of every n, raises the pitch
+
+	private static final long SPEED_WINDOW_NS = 500000000L;
+
+	private volatile boolean active = false;
+	private volatile int maxSpeed = 0;
+	private volatile int audioMode = AUDIO_SKIP;
+
+	//emulator thread
+	private long lastPresented = 0;
+	private int framesSincePresented = 0;
+	private int decimation = 1;
+	private boolean presented = true;
+	private int audioPhase = 0;
+	private long windowStart = 0;
+	private int windowFrames = 0;
+
+	private volatile float speed = 1;
+	private volatile boolean speedUpdated = false;
+
+	/**
+	 * @param maxSpeed speed cap as a multiple of real time, 0 runs as fast as the device can.
+	 */
+	public void start(int maxSpeed, int audioMode) {
+		this.maxSpeed = Math.max(0, maxSpeed);
+		this.audioMode = audioMode;
+		active = true;
+	}
+
+	public void stop() {
+		active = false;
+	}
+
+	public boolean isActive() {
+		return active;
+	}
+
+	public int getMaxSpeed() {
+		return maxSpeed;
+	}
+
+	public int getAudioMode() {
+		return audioMode;
+	}
+
+	/**
+	 * @return the emulated speed over the last half second, as a multiple of real time.
+	 */
+	public float getSpeed() {
+		return speed;
+	}
+
+	/**
+	 * @return true once after every new speed measurement.
+	 */
+	public boolean pollSpeedUpdate() {
+		if (!speedUpdated)
+			return false;
+		speedUpdated = false;
+		return true;
+	}
+
+	/**
+	 * Called from the emulator thread for every emulated frame.
+	 *
+	 * @param refresh the refresh rate of the emulated screen, the speed is relative to it.
+	 * @return false if the frame must not be presented.
+	 */
+	public boolean onFrame(long now, int refresh) {
+		if (windowStart == 0)
+			windowStart = now;
+		windowFrames++;
+		long elapsed = now - windowStart;
+		if (elapsed >= SPEED_WINDOW_NS) {
+			float fps = windowFrames * 1000000000f / elapsed;
+			speed = fps / (refresh > 0 ? refresh : 60);
+			windowStart = now;
+			windowFrames = 0;
+			speedUpdated = true;
+		}
+
+		if (!active) {
+			decimation = 1;
+			framesSincePresented = 0;
+			presented = true;
+			return true;
+		}
+
+		//show about one frame per emulated refresh whatever the speed, so every nth frame where n
+		//follows the speed within a frame; 1/8 of slack keeps a steady n despite the jitter
+		long period = 1000000000L / (refresh > 0 ? refresh : 60);
+		framesSincePresented++;
+		presented = now - lastPresented >= period - period / 8;
+		if (presented) {
+			decimation = framesSincePresented;
+			framesSincePresented = 0;
+			lastPresented = now;
+		}
+		return presented;
+	}
+
+	/**
+	 * The same filter as filterAudio() for the native audio engine, which the sound does not reach
+	 * Java for. Called from the emulator thread after onFrame().
+	 *
+	 * @return 0 to drop the sound of the frame, n to keep one sample out of every n.
+	 */
+	public int getAudioStep() {
+		if (!active)
+			return 1;
+		switch (audioMode) {
+			case AUDIO_SKIP:
+				return presented ? 1 : 0;
+			case AUDIO_COMPRESS:
+				return Math.max(1, decimation);
+			default:
+				return 0;
+		}
+	}
+
+	/**
+	 * Called from the emulator thread with every chunk of sound the core produced. In AUDIO_COMPRESS
+	 * mode the samples kept are packed in place at the start of b.
+	 *
+	 * @param frameBytes bytes of one sample for all channels.
+	 * @return the bytes from the start of b to queue, 0 to drop the chunk.
+	 */
+	public int filterAudio(ByteBuffer b, int size, int frameBytes) {
+		if (!active) {
+			audioPhase = 0;
+			return size;
+		}
+
+		switch (audioMode) {
+			case AUDIO_SKIP:
+				return presented ? size : 0;
+			case AUDIO_COMPRESS: {
+				int n = decimation;
+				if (n <= 1)
+					return size;
+				int frames = size / frameBytes;
+				int out = 0;
+				//the phase carries over so the kept samples stay evenly spaced across chunks
+				for (int i = audioPhase; i < frames; i += n) {
+					if (out != i) {
+						for (int j = 0; j < frameBytes; j++)
+							b.put(out * frameBytes + j, b.get(i * frameBytes + j));
+					}
+					out++;
+				}
+				audioPhase = (audioPhase - frames % n + n) % n;
+				return out * frameBytes;
+			}
+			default:
+				return 0;
+		}
+	}
+}
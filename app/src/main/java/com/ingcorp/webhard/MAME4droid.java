@@ -64,6 +64,7 @@ import com.ingcorp.webhard.helpers.DialogHelper;
 import com.ingcorp.webhard.helpers.MainHelper;
 import com.ingcorp.webhard.helpers.PrefsHelper;
 import com.ingcorp.webhard.helpers.SAFHelper;
+import com.ingcorp.webhard.helpers.SaveStateHelper;
 import com.ingcorp.webhard.helpers.ScraperHelper;
 import com.ingcorp.webhard.input.ControlCustomizer;
 import com.ingcorp.webhard.input.GameController;
@@ -84,6 +85,7 @@ public class MAME4droid extends Activity {
 	protected DialogHelper dialogHelper = null;
 	protected SAFHelper safHelper = null;
 	protected ScraperHelper scraperHelper = null;
+	protected SaveStateHelper saveStateHelper = null;
 
 	protected InputHandler inputHandler = null;
 
@@ -107,6 +109,10 @@ public class MAME4droid extends Activity {
 		return scraperHelper;
 	}
 
+	public SaveStateHelper getSaveStateHelper() {
+		return saveStateHelper;
+	}
+
 	public View getEmuView() {
 		return emuView;
 	}
@@ -145,6 +151,8 @@ public class MAME4droid extends Activity {
 
 		scraperHelper = new ScraperHelper(this);
 
+		saveStateHelper = new SaveStateHelper(this);
+
 		inputHandler = new InputHandler(this);
 
 		mainHelper.detectDevice();
@@ -356,6 +364,8 @@ public class MAME4droid extends Activity {
 		if(scraperHelper!=null){
 			scraperHelper.pause();
 		}
+		if (saveStateHelper != null)
+			saveStateHelper.syncLater();
 
 		//System.out.println("OnPause");
 	}
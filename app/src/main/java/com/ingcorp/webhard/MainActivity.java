@@ -23,8 +23,10 @@ import com.google.android.play.core.review.ReviewManagerFactory;
 import com.ingcorp.webhard.adapter.GamePagerAdapter;
 import com.ingcorp.webhard.base.Constants;
 import com.ingcorp.webhard.fragment.GameFragment;
+import com.ingcorp.webhard.helpers.StartupTracer;
 import com.ingcorp.webhard.helpers.UtilHelper;
 import com.ingcorp.webhard.manager.AdMobManager;
+import com.ingcorp.webhard.manager.EmulatorPrewarmer;
 import com.ingcorp.webhard.manager.GameListManager;
 
 import java.io.File;
@@ -85,6 +87,10 @@ public class MainActivity extends FragmentActivity {
         loadInterstitialAd();
         initializeAndCleanup();
 
+        // 게임 목록을 보는 동안 에뮬레이터 미리 준비
+        EmulatorPrewarmer.getInstance(this).prewarm();
+        StartupTracer.init(this);
+
         // 알림 권한 요청만 먼저 실행
 //        if (BuildConfig.DEBUG) {
 //            resetReviewRequestState();
@@ -0,0 +1,124 @@
+/*
+ * This file is part of MAME4droid.
+ *
+ * Copyright (C) 2024 David Valdeita (Seleuco)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Linking MAME4droid statically or dynamically with other modules is
+ * making a combined work based on MAME4droid. Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * In addition, as a special exception, the copyright holders of MAME4droid
+ * give you permission to combine MAME4droid with free software programs
+ * or libraries that are released under the GNU LGPL and with code included
+ * in the standard release of MAME under the MAME License (or modified
+ * versions of such code, with unchanged license). You may copy and
+ * distribute such a system following the terms of the GNU GPL for MAME4droid
+ * and the licenses of the other code concerned, provided that you include
+ * the source code of that other code when and as the GNU GPL requires
+ * distribution of source code.
+ *
+ * Note that people who make modified versions of MAME4idroid are not
+ * obligated to grant this special exception for their modified versions; it
+ * is their choice whether to do so. The GNU General Public License
+ * gives permission to release a modified version without this exception;
+ * this exception also makes it possible to release a modified version
+ * which carries forward this exception.
+ *
+ * MAME4droid is dual-licensed: Alternatively, you can license MAME4droid
+ * under a MAME license, as set out in http://mamedev.org/
+ */
+
+package com.ingcorp.webhard;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The MAME core behind mame4droid-jni.c. The natives stay declared on Emulator because the
+ * bridge resolves its symbols and callbacks against that class; the host passed to run() is
+ * therefore not used, the bridge always calls Emulator's static callbacks.
+ */
+final class NativeEmulatorCore implements EmulatorCore {
+
+	public void preload(String libPath) {
+		Emulator.preload(libPath);
+	}
+
+	public void attach(ByteBuffer inputBlock, ByteBuffer stateBlock) {
+		Emulator.setInputBlock(inputBlock);
+		Emulator.setStateBlock(stateBlock);
+	}
+
+	public void init(String libPath, String resPath, int nativeWidth, int nativeHeight) {
+		Emulator.init(libPath, resPath, nativeWidth, nativeHeight);
+	}
+
+	public void run(Host host) {
+		Emulator.runT();
+	}
+
+	public int getValue(int key, int i) {
+		return Emulator.getValue(key, i);
+	}
+
+	public String getValueStr(int key, int i) {
+		return Emulator.getValueStr(key, i);
+	}
+
+	public void setValue(int key, int i, int value) {
+		Emulator.setValue(key, i, value);
+	}
+
+	public void setValueStr(int key, int i, String value) {
+		Emulator.setValueStr(key, i, value);
+	}
+
+	public void setValues(int[] keys, int[] values, int count) {
+		Emulator.setValues(keys, values, count);
+	}
+
+	public int setKeyData(int keyCode, int keyAction, char keyChar) {
+		return Emulator.setKeyData(keyCode, keyAction, keyChar);
+	}
+
+	public void setNativeAudio(boolean enable) {
+		Emulator.setNativeAudio(enable);
+	}
+
+	public void pauseNativeAudio(boolean pause) {
+		Emulator.pauseNativeAudio(pause);
+	}
+
+	public void setNativeAudioStep(int step) {
+		Emulator.setNativeAudioStep(step);
+	}
+
+	public boolean setRunAhead(int frames) {
+		return Emulator.setRunAhead(frames);
+	}
+
+	public int getStateSize() {
+		return Emulator.getStateSize();
+	}
+
+	public int saveState(ByteBuffer dst) {
+		return Emulator.saveState(dst);
+	}
+
+	public boolean loadState(ByteBuffer src, int size) {
+		return Emulator.loadState(src, size);
+	}
+}
@@ -0,0 +1,394 @@
+/*
+ * This file is part of MAME4droid.
+ *
+ * Copyright (C) 2024 David Valdeita (Seleuco)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Linking MAME4droid statically or dynamically with other modules is
+ * making a combined work based on MAME4droid. Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * In addition, as a special exception, the copyright holders of MAME4droid
+ * give you permission to combine MAME4droid with free software programs
+ * or libraries that are released under the GNU LGPL and with code included
+ * in the standard release of MAME under the MAME License (or modified
+ * versions of such code, with unchanged license). You may copy and
+ * distribute such a system following the terms of the GNU GPL for MAME4droid
+ * and the licenses of the other code concerned, provided that you include
+ * the source code of that other code when and as the GNU GPL requires
+ * distribution of source code.
+ *
+ * Note that people who make modified versions of MAME4idroid are not
+ * obligated to grant this special exception for their modified versions; it
+ * is their choice whether to do so. The GNU General Public License
+ * gives permission to release a modified version without this exception;
+ * this exception also makes it possible to release a modified version
+ * which carries forward this exception.
+ *
+ * MAME4droid is dual-licensed: Alternatively, you can license MAME4droid
+ * under a MAME license, as set out in http://mamedev.org/
+ */
+
+package com.ingcorp.webhard;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Bounded history of save states for rewinding. Only the newest state is kept whole; every capture
+ * stores the XOR of the new state against the previous one in a circular arena of a fixed size.
+ * Consecutive states differ in little memory, so the delta only holds the runs of 8 byte words that
+ * changed, deflated. When the arena is full the oldest deltas are dropped. Rewinding undoes the
+ * newest delta. Not thread safe, it is only used from the emulator thread.
+ * The arena is given by the caller, so it can live outside the Java heap; getArenaSize() tells how
+ * big it can be for a memory budget once the work buffers and the index are taken out of it.
+ */
+public final class RewindBuffer {
+
+	private final ByteBuffer arena;
+	private final int arenaSize;
+	private final int maxStates;
+	private final int[] offsets;
+	private final int[] lengths;
+	private int first = 0;
+	private int count = 0;
+	private int writePos = 0;
+	private int usedBytes = 0;
+
+	//the state as 8 byte words, the last one padded with zeros
+	private final int maxStateSize;
+	private int stateSize = 0;
+	private int words = 0;
+	private final long[] current;
+	//runs of changed words before and after deflating
+	private final byte[] runs;
+	private final ByteBuffer runsBuffer;
+	private final byte[] packed;
+
+	//view over the last source, the caller saves every state into the same buffer
+	private ByteBuffer source = null;
+	private LongBuffer sourceWords = null;
+	//words of the source being compared, from blockStart to blockEnd
+	private final long[] block = new long[BLOCK_WORDS];
+	private int blockStart = 0;
+	private int blockEnd = 0;
+
+	private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+	private final Inflater inflater = new Inflater();
+
+	private long lastCaptureNs = 0;
+	private long dropped = 0;
+
+	private static final int BLOCK_WORDS = 2048;
+
+	//worst case every other word changed: two 4 byte lengths and a word per run
+	private static int runsSize(int words) {
+		return words * 8 + 16;
+	}
+
+	private static int packedSize(int runsSize) {
+		return runsSize + runsSize / 8 + 64;
+	}
+
+	/**
+	 * @return the arena bytes left in budget once the state buffer the caller saves into, the work
+	 * buffers and the index of maxStates deltas are counted, or 0 if they do not fit in it.
+	 */
+	public static int getArenaSize(int budget, int maxStateSize, int maxStates) {
+		long words = (maxStateSize + 7) / 8;
+		long work = maxStateSize + words * 8 + BLOCK_WORDS * 8 + runsSize((int) words) + packedSize(runsSize((int) words));
+		long index = maxStates * 8L;
+		return (int) Math.max(0, budget - work - index);
+	}
+
+	/**
+	 * @param arena        holds the compressed deltas, from its position 0 to its capacity.
+	 * @param maxStateSize largest state capture() accepts.
+	 * @param maxStates    most deltas kept, whatever room is left in the arena.
+	 */
+	public RewindBuffer(ByteBuffer arena, int maxStateSize, int maxStates) {
+		this.arena = arena.duplicate();
+		arenaSize = arena.capacity();
+		this.maxStates = Math.max(1, maxStates);
+		offsets = new int[this.maxStates];
+		lengths = new int[this.maxStates];
+
+		this.maxStateSize = maxStateSize;
+		int n = (maxStateSize + 7) / 8;
+		current = new long[n];
+		runs = new byte[runsSize(n)];
+		runsBuffer = ByteBuffer.wrap(runs).order(ByteOrder.nativeOrder());
+		packed = new byte[packedSize(runs.length)];
+	}
+
+	/**
+	 * Forgets every state, e.g. when the game changes.
+	 */
+	public void clear() {
+		first = 0;
+		count = 0;
+		writePos = 0;
+		usedBytes = 0;
+		stateSize = 0;
+	}
+
+	/**
+	 * @return the states that can be rewound to besides the current one.
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * @return the bytes the deltas take in the arena.
+	 */
+	public int getUsedBytes() {
+		return usedBytes;
+	}
+
+	public int getCapacity() {
+		return arenaSize;
+	}
+
+	public int getMaxStateSize() {
+		return maxStateSize;
+	}
+
+	/**
+	 * @return the time the last capture took, delta and compression included.
+	 */
+	public long getLastCaptureNs() {
+		return lastCaptureNs;
+	}
+
+	/**
+	 * @return the deltas dropped so far to make room for newer ones.
+	 */
+	public long getDropped() {
+		return dropped;
+	}
+
+	/**
+	 * Adds a state, read from the start of src, to the history.
+	 *
+	 * @param size at most getMaxStateSize().
+	 */
+	public void capture(ByteBuffer src, int size) {
+		if (size > maxStateSize)
+			throw new IllegalArgumentException("state of " + size + " bytes, at most " + maxStateSize);
+
+		long start = System.nanoTime();
+
+		if (src != source) {
+			source = src;
+			ByteBuffer b = src.duplicate().order(ByteOrder.nativeOrder());
+			b.clear();
+			sourceWords = b.asLongBuffer();
+		}
+
+		if (size != stateSize) {
+			//a new game or a core that changed its state layout, the old deltas do not apply
+			clear();
+			words = (size + 7) / 8;
+			stateSize = size;
+			int full = size / 8;
+			sourceWords.clear();
+			sourceWords.get(current, 0, full);
+			if (full < words)
+				current[full] = readTail(src, size);
+			lastCaptureNs = System.nanoTime() - start;
+			return;
+		}
+
+		//compared against the source a block at a time, no copy of the whole incoming state is kept
+		long[] cur = current;
+		ByteBuffer out = runsBuffer;
+		out.clear();
+		blockStart = 0;
+		blockEnd = 0;
+		int last = 0;
+		int i = 0;
+		while (i < words) {
+			if (cur[i] == word(src, i)) {
+				i++;
+				continue;
+			}
+			//the length is only known at the end of the run
+			out.putInt(i - last);
+			int lengthPos = out.position();
+			out.putInt(0);
+			int run = i;
+			long w;
+			while (i < words && cur[i] != (w = word(src, i))) {
+				out.putLong(cur[i] ^ w);
+				cur[i] = w;
+				i++;
+			}
+			out.putInt(lengthPos, i - run);
+			last = i;
+		}
+
+		deflater.reset();
+		deflater.setInput(runs, 0, out.position());
+		deflater.finish();
+		int n = 0;
+		while (!deflater.finished() && n < packed.length)
+			n += deflater.deflate(packed, n, packed.length - n);
+		if (!deflater.finished() || n > arenaSize) {
+			//cannot be stored, so the chain back from the new state is broken
+			dropped += count;
+			first = 0;
+			count = 0;
+			writePos = 0;
+			usedBytes = 0;
+			lastCaptureNs = System.nanoTime() - start;
+			return;
+		}
+
+		store(n);
+		lastCaptureNs = System.nanoTime() - start;
+	}
+
+	private void store(int n) {
+		int pos = writePos;
+		boolean wrapped = false;
+		if (pos + n > arenaSize) {
+			pos = 0;
+			wrapped = true;
+		}
+
+		//the entries ahead of the write position are the oldest, drop the ones in the way; after a
+		//wrap that is also every entry left at the end of the arena
+		while (count > 0) {
+			int o = offsets[first];
+			boolean tail = wrapped && o >= writePos;
+			boolean overlap = o < pos + n && o + lengths[first] > pos;
+			if (!tail && !overlap && count < maxStates)
+				break;
+			usedBytes -= lengths[first];
+			first = (first + 1) % maxStates;
+			count--;
+			dropped++;
+		}
+
+		arena.clear();
+		arena.position(pos);
+		arena.put(packed, 0, n);
+		int i = (first + count) % maxStates;
+		offsets[i] = pos;
+		lengths[i] = n;
+		count++;
+		usedBytes += n;
+		writePos = pos + n;
+	}
+
+	/**
+	 * Steps back one state and writes it to the start of dst. With no delta left it writes the oldest
+	 * state again, so a held rewind stops there.
+	 *
+	 * @return the size of the state written, 0 if there is none.
+	 */
+	public int rewind(ByteBuffer dst) {
+		if (stateSize == 0)
+			return 0;
+
+		if (count > 0) {
+			int i = (first + count - 1) % maxStates;
+			arena.clear();
+			arena.position(offsets[i]);
+			arena.get(packed, 0, lengths[i]);
+			inflater.reset();
+			inflater.setInput(packed, 0, lengths[i]);
+			int n = 0;
+			try {
+				while (!inflater.finished() && n < runs.length)
+					n += inflater.inflate(runs, n, runs.length - n);
+			} catch (DataFormatException e) {
+				n = -1;
+			}
+			count--;
+			usedBytes -= lengths[i];
+			writePos = offsets[i];
+			if (n < 0 || !undo(n)) {
+				clear();
+				return 0;
+			}
+		}
+
+		write(current, dst, stateSize);
+		return stateSize;
+	}
+
+	private boolean undo(int n) {
+		long[] cur = current;
+		ByteBuffer in = runsBuffer;
+		in.clear();
+		in.limit(n);
+		int i = 0;
+		while (in.remaining() >= 8) {
+			i += in.getInt();
+			int len = in.getInt();
+			if (i < 0 || len < 0 || i + len > words || in.remaining() < len * 8)
+				return false;
+			for (int j = 0; j < len; j++)
+				cur[i + j] ^= in.getLong();
+			i += len;
+		}
+		return true;
+	}
+
+	//word i of the source, read in blocks; the words are asked for in order
+	private long word(ByteBuffer src, int i) {
+		if (i >= blockEnd) {
+			int full = stateSize / 8;
+			blockStart = i;
+			blockEnd = Math.min(words, i + BLOCK_WORDS);
+			int n = Math.min(full, blockEnd) - i;
+			if (n > 0) {
+				sourceWords.position(i);
+				sourceWords.get(block, 0, n);
+			}
+			if (blockEnd > full)
+				block[full - i] = readTail(src, stateSize);
+		}
+		return block[i - blockStart];
+	}
+
+	//the partial last word, byte by byte and padded with zeros
+	private static long readTail(ByteBuffer src, int size) {
+		int full = size / 8 * 8;
+		long w = 0;
+		for (int j = full; j < size; j++)
+			w |= (src.get(j) & 0xffL) << (8 * (j - full));
+		return w;
+	}
+
+	private static void write(long[] src, ByteBuffer dst, int size) {
+		ByteBuffer b = dst.duplicate().order(ByteOrder.nativeOrder());
+		b.clear();
+		int full = size / 8;
+		b.asLongBuffer().put(src, 0, full);
+		if (full * 8 < size) {
+			long w = src[full];
+			for (int j = full * 8; j < size; j++)
+				b.put(j, (byte) (w >>> (8 * (j - full * 8))));
+		}
+	}
+}
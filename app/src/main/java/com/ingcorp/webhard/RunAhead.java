@@ -0,0 +1,141 @@
+/*
+ * This file is part of MAME4droid.
+ *
+ * Copyright (C) 2024 David Valdeita (Seleuco)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Linking MAME4droid statically or dynamically with other modules is
+ * making a combined work based on MAME4droid. Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * In addition, as a special exception, the copyright holders of MAME4droid
+ * give you permission to combine MAME4droid with free software programs
+ * or libraries that are released under the GNU LGPL and with code included
+ * in the standard release of MAME under the MAME License (or modified
+ * versions of such code, with unchanged license). You may copy and
+ * distribute such a system following the terms of the GNU GPL for MAME4droid
+ * and the licenses of the other code concerned, provided that you include
+ * the source code of that other code when and as the GNU GPL requires
+ * distribution of source code.
+ *
+ * Note that people who make modified versions of MAME4idroid are not
+ * obligated to grant this special exception for their modified versions; it
+ * is their choice whether to do so. The GNU General Public License
+ * gives permission to release a modified version without this exception;
+ * this exception also makes it possible to release a modified version
+ * which carries forward this exception.
+ *
+ * MAME4droid is dual-licensed: Alternatively, you can license MAME4droid
+ * under a MAME license, as set out in http://mamedev.org/
+ */
+
+package com.ingcorp.webhard;
+
+/**
+ * Run-ahead setting of the current game and its automatic mode. With N frames of run-ahead the core
+ * emulates N+1 frames for every one shown, so when the shown frame rate stays below the refresh of
+ * the game for a few seconds the device cannot keep up and run-ahead has to be turned off.
+ */
+public final class RunAhead {
+
+	public static final int MAX_FRAMES = 4;
+
+	private static final long WINDOW_NS = 2000000000L;
+	//longer gaps are pauses, dialogs or loads, not slowness
+	private static final long GAP_NS = 250000000L;
+	private static final float MIN_RATIO = 0.95f;
+	private static final int SLOW_WINDOWS = 2;
+
+	private volatile int frames = 0;
+	private volatile boolean auto = true;
+
+	//emulator thread
+	private long windowStart = 0;
+	private long last = 0;
+	private int windowFrames = 0;
+	private int slowWindows = 0;
+
+	private volatile float lastRatio = 1;
+
+	public int getFrames() {
+		return frames;
+	}
+
+	public void setFrames(int n) {
+		frames = Math.max(0, Math.min(MAX_FRAMES, n));
+	}
+
+	public boolean isAuto() {
+		return auto;
+	}
+
+	public void setAuto(boolean value) {
+		auto = value;
+	}
+
+	/**
+	 * @return the shown frame rate over the last window, relative to the refresh of the game.
+	 */
+	public float getLastRatio() {
+		return lastRatio;
+	}
+
+	/**
+	 * Restarts the measure, e.g. when N changes or after a pause.
+	 */
+	public void reset() {
+		windowStart = 0;
+		last = 0;
+		windowFrames = 0;
+		slowWindows = 0;
+	}
+
+	/**
+	 * Called from the emulator thread for every frame shown.
+	 *
+	 * @return true when the automatic mode decided the device is too slow for the current N.
+	 */
+	public boolean onFrame(long now, int refresh) {
+		if (frames == 0)
+			return false;
+
+		if (last != 0 && now - last > GAP_NS)
+			windowStart = 0;
+		last = now;
+
+		if (windowStart == 0) {
+			windowStart = now;
+			windowFrames = 0;
+			return false;
+		}
+
+		windowFrames++;
+		long elapsed = now - windowStart;
+		if (elapsed < WINDOW_NS)
+			return false;
+
+		float fps = windowFrames * 1000000000f / elapsed;
+		lastRatio = fps / (refresh > 0 ? refresh : 60);
+		if (lastRatio < MIN_RATIO)
+			slowWindows++;
+		else
+			slowWindows = 0;
+		windowStart = now;
+		windowFrames = 0;
+
+		return auto && slowWindows >= SLOW_WINDOWS;
+	}
+}
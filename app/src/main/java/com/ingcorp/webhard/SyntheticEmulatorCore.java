@@ -0,0 +1,418 @@
+/*
+ * This file is part of MAME4droid.
+ *
+ * Copyright (C) 2024 David Valdeita (Seleuco)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Linking MAME4droid statically or dynamically with other modules is
+ * making a combined work based on MAME4droid. Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * In addition, as a special exception, the copyright holders of MAME4droid
+ * give you permission to combine MAME4droid with free software programs
+ * or libraries that are released under the GNU LGPL and with code included
+ * in the standard release of MAME under the MAME License (or modified
+ * versions of such code, with unchanged license). You may copy and
+ * distribute such a system following the terms of the GNU GPL for MAME4droid
+ * and the licenses of the other code concerned, provided that you include
+ * the source code of that other code when and as the GNU GPL requires
+ * distribution of source code.
+ *
+ * Note that people who make modified versions of MAME4idroid are not
+ * obligated to grant this special exception for their modified versions; it
+ * is their choice whether to do so. The GNU General Public License
+ * gives permission to release a modified version without this exception;
+ * this exception also makes it possible to release a modified version
+ * which carries forward this exception.
+ *
+ * MAME4droid is dual-licensed: Alternatively, you can license MAME4droid
+ * under a MAME license, as set out in http://mamedev.org/
+ */
+
+package com.ingcorp.webhard;
+
+import com.ingcorp.webhard.input.SharedInputBlock;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Pure Java core that produces RGBA frames, 16 bit PCM audio and state changes at the configured
+ * rates through the same Host callbacks the native bridge uses. It has no Android dependency, so
+ * the frame handoff, audio and input paths can be loaded on a plain JVM, see CorePipeline.
+ */
+public final class SyntheticEmulatorCore implements EmulatorCore, EmulatorKeys {
+
+	public static final int NUM_VIDEO_BUFFERS = 3;
+	public static final int BYTES_PER_PIXEL = 4;
+
+	private static final int NUM_VALUES = 128;
+
+	//frame number, tone phase and in menu flag ahead of the simulated memory
+	private static final int STATE_HEADER = 8 + 8 + 4;
+	//bytes of simulated memory written every frame, about what a game changes
+	private static final int RAM_WRITES = 256;
+
+	private final int width;
+	private final int height;
+	private final int fps;
+	private final int sampleRate;
+
+	private boolean stereo = true;
+	private int numWays = 8;
+	private int numButtons = 6;
+	private int menuToggleFrames = 0;
+	private long maxFrames = 0;
+	private double toneHz = 440;
+	private byte[] ram = new byte[0];
+	private double phase = 0;
+
+	private ByteBuffer inputBlock;
+	private ByteBuffer stateBlock;
+
+	private final int[] values = new int[NUM_VALUES];
+
+	private volatile boolean exit = false;
+	private volatile boolean paused = false;
+	private volatile boolean running = false;
+	private volatile boolean throttle = true;
+	private volatile int speedPercent = 100;
+	private volatile int runAhead = 0;
+	private boolean inMenu = false;
+
+	private volatile long frames = 0;
+	private volatile long audioFrames = 0;
+	private volatile long aheadFrames = 0;
+
+	/**
+	 * @param fps frames per second to pace to, or 0 to run unthrottled.
+	 */
+	public SyntheticEmulatorCore(int width, int height, int fps, int sampleRate) {
+		this.width = width;
+		this.height = height;
+		this.fps = fps;
+		this.sampleRate = sampleRate;
+	}
+
+	public void setStereo(boolean stereo) {
+		this.stereo = stereo;
+	}
+
+	public void setControls(int numWays, int numButtons) {
+		this.numWays = numWays;
+		this.numButtons = numButtons;
+	}
+
+	/**
+	 * Toggles the in menu flag every n frames, 0 disables it.
+	 */
+	public void setMenuToggleFrames(int n) {
+		menuToggleFrames = n;
+	}
+
+	/**
+	 * Exits on its own after n frames, 0 runs until EXIT_GAME or stop().
+	 */
+	public void setMaxFrames(long n) {
+		maxFrames = n;
+	}
+
+	public void setToneHz(double hz) {
+		toneHz = hz;
+	}
+
+	/**
+	 * Gives the game a simulated memory of the given size that changes a little every frame and goes
+	 * into its save states, 0 leaves the states with just the frame number.
+	 */
+	public void setStateRam(int bytes) {
+		ram = new byte[bytes];
+	}
+
+	public void stop() {
+		exit = true;
+	}
+
+	public boolean isRunning() {
+		return running;
+	}
+
+	public long getFrames() {
+		return frames;
+	}
+
+	public long getAudioFrames() {
+		return audioFrames;
+	}
+
+	/**
+	 * @return the frames emulated ahead and thrown away by run-ahead.
+	 */
+	public long getAheadFrames() {
+		return aheadFrames;
+	}
+
+	public void preload(String libPath) {
+	}
+
+	public void attach(ByteBuffer inputBlock, ByteBuffer stateBlock) {
+		this.inputBlock = inputBlock;
+		this.stateBlock = stateBlock;
+	}
+
+	public void init(String libPath, String resPath, int nativeWidth, int nativeHeight) {
+	}
+
+	public void run(Host host) {
+		exit = false;
+		paused = false;
+		inMenu = false;
+		frames = 0;
+		audioFrames = 0;
+		aheadFrames = 0;
+		phase = 0;
+		Arrays.fill(ram, (byte) 0);
+		running = true;
+
+		ByteBuffer[] video = new ByteBuffer[NUM_VIDEO_BUFFERS];
+		for (int i = 0; i < NUM_VIDEO_BUFFERS; i++)
+			video[i] = ByteBuffer.allocateDirect(width * height * BYTES_PER_PIXEL).order(ByteOrder.nativeOrder());
+		int[] row = new int[width];
+
+		int channels = stereo ? 2 : 1;
+		int rate = fps > 0 ? fps : 60;
+		int maxSamples = sampleRate / rate + 1;
+		ByteBuffer audio = ByteBuffer.allocateDirect(maxSamples * channels * 2).order(ByteOrder.nativeOrder());
+		ShortBuffer samples = audio.asShortBuffer();
+		double step = 2 * Math.PI * toneHz / sampleRate;
+
+		try {
+			host.initVideo();
+			host.changeVideo(width, height, width, height);
+			publishState();
+			host.initInput();
+			host.initAudio(sampleRate, stereo);
+
+			long next = System.nanoTime();
+			int back = 0;
+
+			while (!exit && (maxFrames <= 0 || frames < maxFrames)) {
+				if (paused) {
+					LockSupport.parkNanos(2000000);
+					next = System.nanoTime();
+					continue;
+				}
+
+				long input = inputBlock != null ? inputBlock.getLong(SharedInputBlock.DIGITAL_OFFSET) : 0;
+				render(video[back], row, frames, input);
+				touchRam(frames);
+
+				//the frames are a function of their number, so running ahead is rendering the next
+				//ones over the real one and rolling back is not counting them
+				int ahead = inMenu ? 0 : runAhead;
+				for (int i = 1; i <= ahead; i++)
+					render(video[back], row, frames + i, input);
+				aheadFrames += ahead;
+
+				if (menuToggleFrames > 0 && frames > 0 && frames % menuToggleFrames == 0)
+					inMenu = !inMenu;
+				publishState();
+
+				int nextBack = host.bitblt(video[back]);
+				if (nextBack < 0 || nextBack >= NUM_VIDEO_BUFFERS)
+					throw new IllegalStateException("bitblt returned invalid buffer " + nextBack);
+				back = nextBack;
+
+				//spread the rounding so the long run average is exactly sampleRate
+				int n = (int) ((frames + 1) * sampleRate / rate - frames * sampleRate / rate);
+				samples.clear();
+				for (int i = 0; i < n; i++) {
+					short s = (short) (Math.sin(phase) * 8000);
+					phase += step;
+					for (int c = 0; c < channels; c++)
+						samples.put(s);
+				}
+				if (phase > 2 * Math.PI)
+					phase -= 2 * Math.PI * Math.floor(phase / (2 * Math.PI));
+				host.writeAudio(audio, n * channels * 2);
+				audioFrames += n;
+
+				frames++;
+
+				//SPEED is in percent of real time, THROTTLE 0 runs unpaced
+				long period = throttle && fps > 0 ? 100000000000L / ((long) fps * Math.max(1, speedPercent)) : 0;
+				if (period > 0) {
+					next += period;
+					long wait = next - System.nanoTime();
+					if (wait > 0)
+						LockSupport.parkNanos(wait);
+					else if (-wait > period)
+						next = System.nanoTime();//too far behind, do not try to catch up
+				}
+			}
+		} finally {
+			host.endAudio();
+			running = false;
+		}
+	}
+
+	private void render(ByteBuffer frame, int[] row, long n, long input) {
+		IntBuffer pixels = frame.asIntBuffer();
+		int base = (int) (n * 3) & 0xff;
+		int bar = (int) (n % width);
+		int tint = input != 0 ? 0x00ff00 : 0;
+		for (int y = 0; y < height; y++) {
+			int c = 0xff000000 | ((base + y) & 0xff) << 16 | tint | (y * 255 / height);
+			for (int x = 0; x < width; x++)
+				row[x] = x == bar ? 0xffffffff : c;
+			pixels.put(row);
+		}
+	}
+
+	private void touchRam(long n) {
+		int len = ram.length;
+		if (len == 0)
+			return;
+		//a hot area written every frame and a few scattered bytes like sprites and the stack
+		int hot = Math.min(len, RAM_WRITES / 2);
+		for (int i = 0; i < hot; i++)
+			ram[i] = (byte) (n + i);
+		for (int i = 0; i < RAM_WRITES / 2; i++)
+			ram[(int) ((n * 7919 + i * 104729L) % len)] = (byte) n;
+	}
+
+	private void publishState() {
+		if (stateBlock == null)
+			return;
+		stateBlock.putInt(EmulatorState.IN_GAME_OFFSET, 1);
+		stateBlock.putInt(EmulatorState.IN_MENU_OFFSET, inMenu ? 1 : 0);
+		stateBlock.putInt(EmulatorState.IS_LIGHTGUN_OFFSET, 0);
+		stateBlock.putInt(EmulatorState.IS_MOUSE_OFFSET, 0);
+		stateBlock.putInt(EmulatorState.NUMWAYS_OFFSET, numWays);
+		stateBlock.putInt(EmulatorState.NUMBTNS_OFFSET, numButtons);
+		stateBlock.putInt(EmulatorState.REFRESH_OFFSET, fps > 0 ? fps : 60);
+	}
+
+	public int getValue(int key, int i) {
+		switch (key) {
+			case IN_MENU:
+				return inMenu ? 1 : 0;
+			case IN_GAME:
+				return running ? 1 : 0;
+			case NUMBTNS:
+				return numButtons;
+			case NUMWAYS:
+				return numWays;
+			case REFRESH:
+				return fps > 0 ? fps : 60;
+			default:
+				return 0;
+		}
+	}
+
+	public String getValueStr(int key, int i) {
+		return key == ROM_NAME ? "synthetic" : "";
+	}
+
+	public void setValue(int key, int i, int value) {
+		if (key < 0 || key >= NUM_VALUES)
+			return;
+		values[key] = value;
+		switch (key) {
+			case EXIT_GAME:
+				if (value == 1)
+					exit = true;
+				break;
+			case PAUSE:
+				paused = value == 1;
+				break;
+			case EXIT_PAUSE:
+				if (value == 1)
+					paused = false;
+				break;
+			case THROTTLE:
+				throttle = value != 0;
+				break;
+			case SPEED:
+				speedPercent = value;
+				break;
+		}
+	}
+
+	public void setValueStr(int key, int i, String value) {
+	}
+
+	public void setValues(int[] keys, int[] values, int count) {
+		for (int i = 0; i < count; i++)
+			setValue(keys[i], 0, values[i]);
+	}
+
+	/**
+	 * @return the last value set for an option key, for checking what the frontend pushed.
+	 */
+	public int getOption(int key) {
+		return key >= 0 && key < NUM_VALUES ? values[key] : 0;
+	}
+
+	public int setKeyData(int keyCode, int keyAction, char keyChar) {
+		return 0;
+	}
+
+	public void setNativeAudio(boolean enable) {
+	}
+
+	public void pauseNativeAudio(boolean pause) {
+	}
+
+	public void setNativeAudioStep(int step) {
+	}
+
+	public boolean setRunAhead(int frames) {
+		runAhead = Math.max(0, frames);
+		return true;
+	}
+
+	public int getStateSize() {
+		return STATE_HEADER + ram.length;
+	}
+
+	public int saveState(ByteBuffer dst) {
+		int size = getStateSize();
+		if (dst.capacity() < size)
+			return 0;
+		ByteBuffer b = dst.duplicate();
+		b.clear();
+		b.putLong(frames).putDouble(phase).putInt(inMenu ? 1 : 0).put(ram);
+		return size;
+	}
+
+	public boolean loadState(ByteBuffer src, int size) {
+		if (size != getStateSize())
+			return false;
+		//called from bitblt, the loop then finishes the saved frame and goes on from the next one
+		ByteBuffer b = src.duplicate();
+		b.clear();
+		frames = b.getLong();
+		phase = b.getDouble();
+		inMenu = b.getInt() != 0;
+		b.get(ram);
+		return true;
+	}
+}
@@ -22,6 +22,7 @@ import com.google.android.gms.ads.nativead.NativeAdView;
 import com.ingcorp.webhard.R;
 import com.ingcorp.webhard.base.Constants;
 import com.ingcorp.webhard.database.entity.Game;
+import com.ingcorp.webhard.helpers.StartupTracer;
 import com.ingcorp.webhard.manager.AdMobManager;
 import com.ingcorp.webhard.helpers.UtilHelper;
 import com.ingcorp.webhard.model.BaseItem;
@@ -127,6 +128,10 @@ public class GameAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
                     return;
                 }
 
+                // 시작 시간 측정 시작
+                StartupTracer.begin(game.getGameName());
+                StartupTracer.mark(StartupTracer.STAGE_CONFIRM_DIALOG);
+
                 // 확인 다이얼로그 표시
                 utilHelper.showConfirmDialog(
                         (android.app.Activity) context,
@@ -145,6 +150,8 @@ public class GameAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
         }
 
         private void proceedWithGameLaunch(Game game) {
+            StartupTracer.mark(StartupTracer.STAGE_INTERSTITIAL);
+
             // 전면광고 표시 여부 확인
             boolean shouldShowAd = utilHelper.shouldShowInterstitialAd();
 
@@ -0,0 +1,263 @@
+/*
+ * This file is part of MAME4droid.
+ *
+ * Copyright (C) 2024 David Valdeita (Seleuco)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Linking MAME4droid statically or dynamically with other modules is
+ * making a combined work based on MAME4droid. Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * In addition, as a special exception, the copyright holders of MAME4droid
+ * give you permission to combine MAME4droid with free software programs
+ * or libraries that are released under the GNU LGPL and with code included
+ * in the standard release of MAME under the MAME License (or modified
+ * versions of such code, with unchanged license). You may copy and
+ * distribute such a system following the terms of the GNU GPL for MAME4droid
+ * and the licenses of the other code concerned, provided that you include
+ * the source code of that other code when and as the GNU GPL requires
+ * distribution of source code.
+ *
+ * Note that people who make modified versions of MAME4idroid are not
+ * obligated to grant this special exception for their modified versions; it
+ * is their choice whether to do so. The GNU General Public License
+ * gives permission to release a modified version without this exception;
+ * this exception also makes it possible to release a modified version
+ * which carries forward this exception.
+ *
+ * MAME4droid is dual-licensed: Alternatively, you can license MAME4droid
+ * under a MAME license, as set out in http://mamedev.org/
+ */
+
+package com.ingcorp.webhard.audio;
+
+import android.media.AudioTrack;
+import android.os.Process;
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drains an {@link AudioRing} into an AudioTrack from its own urgent-audio thread using blocking
+ * writes, so the emulator thread never waits on the track and nothing is lost while it is full.
+ * With a {@link DynamicRateControl} the data is resampled on the way to hold the queue, track and
+ * ring together, at a target depth of a few emulated frames.
+ */
+public final class AudioPump implements Runnable {
+
+	private static final String TAG = "AudioPump";
+
+	//how long to sleep when the ring is empty and nobody wakes us up
+	private static final long IDLE_PARK_NANOS = 2000000L;
+
+	private final AudioTrack track;
+	private final AudioRing ring;
+
+	private final DynamicRateControl rateControl;
+	//sample frames of one chunk from the producer, the ring has to take a whole one
+	private final int chunkFrames;
+	private final int maxTrackFrames;
+	//what the track holds and the total depth held, grown a chunk at a time on underruns
+	private int trackFrames;
+	private int targetFrames;
+	private int lastUnderruns;
+	private final LinearResampler resampler;
+	private final ByteBuffer resampled;
+	private final ShortBuffer resampledShorts;
+	private long framesWritten = 0;
+
+	private volatile Thread thread = null;
+	private volatile boolean running = false;
+	private volatile boolean paused = false;
+	private volatile boolean discard = false;
+	private volatile boolean resync = false;
+
+	private volatile int underruns = 0;
+
+	public AudioPump(AudioTrack track, AudioRing ring) {
+		this(track, ring, null, 0, 0);
+	}
+
+	/**
+	 * With rate control the track buffer is shrunk so that it and the ring together hold about
+	 * targetFrames: blocking writes keep the track full, the rest waits in the ring.
+	 *
+	 * @param rateControl  null to pass the samples through untouched.
+	 * @param targetFrames sample frames queued in total, track and ring.
+	 * @param chunkFrames  sample frames the producer writes at a time.
+	 */
+	public AudioPump(AudioTrack track, AudioRing ring, DynamicRateControl rateControl, int targetFrames, int chunkFrames) {
+		this.track = track;
+		this.ring = ring;
+		this.rateControl = rateControl;
+		this.chunkFrames = chunkFrames;
+		maxTrackFrames = track.getBufferCapacityInFrames();
+
+		if (rateControl != null) {
+			trackFrames = track.setBufferSizeInFrames(Math.max(chunkFrames, targetFrames - chunkFrames));
+			//the device may not go that low
+			this.targetFrames = Math.max(targetFrames, trackFrames + chunkFrames);
+			lastUnderruns = track.getUnderrunCount();
+
+			int channels = ring.getFrameBytes() / 2;
+			int maxFrames = LinearResampler.maxOutputFrames(ring.getCapacity() / ring.getFrameBytes(), 1.0 + rateControl.getMaxDeviation());
+			resampler = new LinearResampler(channels);
+			resampled = ByteBuffer.allocateDirect(maxFrames * ring.getFrameBytes()).order(ByteOrder.nativeOrder());
+			resampledShorts = resampled.asShortBuffer();
+		} else {
+			resampler = null;
+			resampled = null;
+			resampledShorts = null;
+		}
+	}
+
+	public DynamicRateControl getRateControl() {
+		return rateControl;
+	}
+
+	public AudioRing getRing() {
+		return ring;
+	}
+
+	/**
+	 * Times the track ran dry, as last sampled by the pump.
+	 */
+	public int getUnderruns() {
+		return underruns;
+	}
+
+	public void start() {
+		running = true;
+		thread = new Thread(this, "AudioPump");
+		thread.start();
+	}
+
+	/**
+	 * Stops the thread. The track must be stopped right after so a blocking write returns.
+	 */
+	public void quit() {
+		running = false;
+		wakeUp();
+	}
+
+	public void join() {
+		if (thread == null)
+			return;
+		try {
+			thread.join(500);
+		} catch (InterruptedException ignored) {
+		}
+		thread = null;
+	}
+
+	/**
+	 * While paused queued data is thrown away, so resuming does not replay stale audio.
+	 */
+	public void setPaused(boolean value) {
+		paused = value;
+		if (value)
+			discard = true;
+		else
+			resync = true;
+		wakeUp();
+	}
+
+	public void wakeUp() {
+		Thread t = thread;
+		if (t != null)
+			LockSupport.unpark(t);
+	}
+
+	@Override
+	public void run() {
+		Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+
+		while (running) {
+			if (discard) {
+				ring.discard();
+				discard = false;
+			}
+			if (resync) {
+				//the track was flushed, start counting from where it is now
+				framesWritten = track.getPlaybackHeadPosition() & 0xffffffffL;
+				if (rateControl != null) {
+					rateControl.reset();
+					resampler.reset();
+				}
+				resync = false;
+			}
+
+			ByteBuffer region = paused ? null : ring.readRegion();
+			if (region == null) {
+				if (!paused)
+					underruns = track.getUnderrunCount();
+				LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+				continue;
+			}
+
+			if (rateControl != null) {
+				writeResampled(region);
+				continue;
+			}
+
+			int n = track.write(region, region.remaining(), AudioTrack.WRITE_BLOCKING);
+			if (n < 0) {
+				Log.e(TAG, "AudioTrack write error " + n);
+				LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+				continue;
+			}
+			ring.advance(n);
+		}
+	}
+
+	private void writeResampled(ByteBuffer region) {
+		int frameBytes = ring.getFrameBytes();
+
+		//too tight for this device, give the track one more chunk
+		int u = track.getUnderrunCount();
+		if (u > lastUnderruns && trackFrames < maxTrackFrames) {
+			trackFrames = track.setBufferSizeInFrames(Math.min(maxTrackFrames, trackFrames + chunkFrames));
+			targetFrames = Math.max(targetFrames, trackFrames + chunkFrames);
+			Log.d(TAG, "underrun, track buffer " + trackFrames + " frames, target " + targetFrames);
+		}
+		lastUnderruns = u;
+
+		int queued = (int) (framesWritten - (track.getPlaybackHeadPosition() & 0xffffffffL));
+		queued = Math.max(0, Math.min(queued, trackFrames));
+		int fill = ring.getFill() / frameBytes + queued;
+
+		double ratio = rateControl.update(fill, targetFrames);
+
+		int inBytes = region.remaining();
+		resampledShorts.clear();
+		int frames = resampler.process(region, resampledShorts, ratio);
+		ring.advance(inBytes);
+
+		resampled.clear();
+		resampled.limit(frames * frameBytes);
+		while (resampled.hasRemaining() && running) {
+			int n = track.write(resampled, resampled.remaining(), AudioTrack.WRITE_BLOCKING);
+			if (n < 0) {
+				Log.e(TAG, "AudioTrack write error " + n);
+				break;
+			}
+		}
+		framesWritten += frames;
+	}
+}
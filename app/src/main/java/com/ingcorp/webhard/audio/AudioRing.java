@@ -0,0 +1,196 @@
+/*
+ * This file is part of MAME4droid.
+ *
+ * Copyright (C) 2024 David Valdeita (Seleuco)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Linking MAME4droid statically or dynamically with other modules is
+ * making a combined work based on MAME4droid. Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * In addition, as a special exception, the copyright holders of MAME4droid
+ * give you permission to combine MAME4droid with free software programs
+ * or libraries that are released under the GNU LGPL and with code included
+ * in the standard release of MAME under the MAME License (or modified
+ * versions of such code, with unchanged license). You may copy and
+ * distribute such a system following the terms of the GNU GPL for MAME4droid
+ * and the licenses of the other code concerned, provided that you include
+ * the source code of that other code when and as the GNU GPL requires
+ * distribution of source code.
+ *
+ * Note that people who make modified versions of MAME4idroid are not
+ * obligated to grant this special exception for their modified versions; it
+ * is their choice whether to do so. The GNU General Public License
+ * gives permission to release a modified version without this exception;
+ * this exception also makes it possible to release a modified version
+ * which carries forward this exception.
+ *
+ * MAME4droid is dual-licensed: Alternatively, you can license MAME4droid
+ * under a MAME license, as set out in http://mamedev.org/
+ */
+
+package com.ingcorp.webhard.audio;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Single producer / single consumer byte ring for PCM data, backed by direct memory so the
+ * consumer can hand its regions straight to AudioTrack.write(ByteBuffer, ...).
+ * The emulator thread is the only producer and the audio pump the only consumer.
+ */
+public final class AudioRing {
+
+	private final ByteBuffer data;
+	private final int capacity;
+	private final int mask;
+	private final int frameBytes;
+
+	//each side moves its own view, so positions and limits never race
+	private final ByteBuffer producerView;
+	private final ByteBuffer consumerView;
+
+	//view over the last source, the bridge hands the same buffer for every chunk
+	private ByteBuffer source = null;
+	private ByteBuffer sourceView = null;
+
+	//monotonic byte counters, only written by their owner
+	private final AtomicLong writePos = new AtomicLong(0);
+	private final AtomicLong readPos = new AtomicLong(0);
+
+	private volatile long overruns = 0;
+	private volatile long droppedBytes = 0;
+
+	/**
+	 * @param minCapacity bytes, rounded up to a power of two.
+	 * @param frameBytes  bytes of one sample frame (all channels), writes never split one.
+	 */
+	public AudioRing(int minCapacity, int frameBytes) {
+		int c = Integer.highestOneBit(Math.max(minCapacity, frameBytes * 2) - 1) << 1;
+		capacity = c;
+		mask = c - 1;
+		this.frameBytes = frameBytes;
+		data = ByteBuffer.allocateDirect(c).order(ByteOrder.nativeOrder());
+		producerView = data.duplicate().order(ByteOrder.nativeOrder());
+		consumerView = data.duplicate().order(ByteOrder.nativeOrder());
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public int getFrameBytes() {
+		return frameBytes;
+	}
+
+	/**
+	 * Bytes waiting to be played. Safe from any thread.
+	 */
+	public int getFill() {
+		return (int) (writePos.get() - readPos.get());
+	}
+
+	public float getFillRatio() {
+		return getFill() / (float) capacity;
+	}
+
+	public long getOverruns() {
+		return overruns;
+	}
+
+	public long getDroppedBytes() {
+		return droppedBytes;
+	}
+
+	//PRODUCER
+
+	/**
+	 * Copies size bytes from src starting at its position 0. What does not fit is dropped and counted
+	 * as an overrun, the producer never waits.
+	 *
+	 * @return bytes actually queued.
+	 */
+	public int write(ByteBuffer src, int size) {
+		long w = writePos.get();
+		int free = capacity - (int) (w - readPos.get());
+
+		int n = size;
+		if (n > free) {
+			n = free - free % frameBytes;
+			overruns++;
+			droppedBytes += size - n;
+		}
+		if (n <= 0)
+			return 0;
+
+		int offset = (int) (w & mask);
+		int first = Math.min(n, capacity - offset);
+
+		if (src != source) {
+			source = src;
+			sourceView = src.duplicate();
+		}
+		ByteBuffer s = sourceView;
+		s.clear();
+
+		s.limit(first);
+		producerView.clear();
+		producerView.position(offset);
+		producerView.put(s);
+
+		if (first < n) {
+			s.limit(n);
+			producerView.clear();
+			producerView.put(s);
+		}
+
+		writePos.lazySet(w + n);
+		return n;
+	}
+
+	//CONSUMER
+
+	/**
+	 * Returns a view over the largest contiguous readable region, or null if the ring is empty.
+	 * The caller consumes from the view and then calls {@link #advance(int)}.
+	 */
+	public ByteBuffer readRegion() {
+		long r = readPos.get();
+		int available = (int) (writePos.get() - r);
+		if (available <= 0)
+			return null;
+
+		int offset = (int) (r & mask);
+		int n = Math.min(available, capacity - offset);
+
+		consumerView.clear();
+		consumerView.position(offset);
+		consumerView.limit(offset + n);
+		return consumerView;
+	}
+
+	public void advance(int n) {
+		readPos.lazySet(readPos.get() + n);
+	}
+
+	/**
+	 * Drops everything queued. Consumer side only.
+	 */
+	public void discard() {
+		readPos.set(writePos.get());
+	}
+}
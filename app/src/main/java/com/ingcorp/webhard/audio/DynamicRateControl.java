@@ -0,0 +1,157 @@
+/*
+ * This file is part of MAME4droid.
+ *
+ * Copyright (C) 2024 David Valdeita (Seleuco)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Linking MAME4droid statically or dynamically with other modules is
+ * making a combined work based on MAME4droid. Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * In addition, as a special exception, the copyright holders of MAME4droid
+ * give you permission to combine MAME4droid with free software programs
+ * or libraries that are released under the GNU LGPL and with code included
+ * in the standard release of MAME under the MAME License (or modified
+ * versions of such code, with unchanged license). You may copy and
+ * distribute such a system following the terms of the GNU GPL for MAME4droid
+ * and the licenses of the other code concerned, provided that you include
+ * the source code of that other code when and as the GNU GPL requires
+ * distribution of source code.
+ *
+ * Note that people who make modified versions of MAME4idroid are not
+ * obligated to grant this special exception for their modified versions; it
+ * is their choice whether to do so. The GNU General Public License
+ * gives permission to release a modified version without this exception;
+ * this exception also makes it possible to release a modified version
+ * which carries forward this exception.
+ *
+ * MAME4droid is dual-licensed: Alternatively, you can license MAME4droid
+ * under a MAME license, as set out in http://mamedev.org/
+ */
+
+package com.ingcorp.webhard.audio;
+
+/**
+ * Dynamic rate control: keeps the queued audio around a target depth by nudging the resampling
+ * ratio a fraction of a percent, which is inaudible but absorbs the drift between the rate the
+ * game produces samples at and the rate the device consumes them.
+ */
+public final class DynamicRateControl {
+
+	public static final double DEFAULT_MAX_DEVIATION = 0.005;
+
+	//smoothing for the measured fill, blocking writes make it quite jumpy
+	private static final double FILL_ALPHA = 0.05;
+
+	private final double maxDeviation;
+
+	private double smoothedFill = -1;
+	private double ratio = 1.0;
+
+	//drift statistics
+	private long updates = 0;
+	private double ratioSum = 0;
+	private double minRatio = 1.0;
+	private double maxRatio = 1.0;
+	private long clampedUpdates = 0;
+
+	public DynamicRateControl() {
+		this(DEFAULT_MAX_DEVIATION);
+	}
+
+	public DynamicRateControl(double maxDeviation) {
+		this.maxDeviation = maxDeviation;
+	}
+
+	/**
+	 * @param fillFrames   sample frames queued and not played yet.
+	 * @param targetFrames depth to hold the queue at.
+	 * @return output frames to produce per input frame.
+	 */
+	public double update(int fillFrames, int targetFrames) {
+		if (targetFrames <= 0)
+			return ratio;
+
+		if (smoothedFill < 0)
+			smoothedFill = fillFrames;
+		else
+			smoothedFill += (fillFrames - smoothedFill) * FILL_ALPHA;
+
+		//below target stretch the audio a little, above it shrink it
+		double error = (targetFrames - smoothedFill) / targetFrames;
+		if (error > 1.0) {
+			error = 1.0;
+			clampedUpdates++;
+		} else if (error < -1.0) {
+			error = -1.0;
+			clampedUpdates++;
+		}
+		ratio = 1.0 + maxDeviation * error;
+
+		updates++;
+		ratioSum += ratio;
+		if (ratio < minRatio) minRatio = ratio;
+		if (ratio > maxRatio) maxRatio = ratio;
+
+		return ratio;
+	}
+
+	public void reset() {
+		smoothedFill = -1;
+		ratio = 1.0;
+	}
+
+	public double getMaxDeviation() {
+		return maxDeviation;
+	}
+
+	public double getRatio() {
+		return ratio;
+	}
+
+	public double getSmoothedFill() {
+		return smoothedFill;
+	}
+
+	public long getUpdates() {
+		return updates;
+	}
+
+	/**
+	 * Average correction applied so far, in parts per million. It is the measured clock drift.
+	 */
+	public double getAverageDriftPpm() {
+		return updates == 0 ? 0 : (ratioSum / updates - 1.0) * 1e6;
+	}
+
+	public double getMinRatio() {
+		return minRatio;
+	}
+
+	public double getMaxRatio() {
+		return maxRatio;
+	}
+
+	public long getClampedUpdates() {
+		return clampedUpdates;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("drc ratio:%.5f avg drift:%.0fppm min:%.5f max:%.5f clamped:%d/%d",
+			ratio, getAverageDriftPpm(), minRatio, maxRatio, clampedUpdates, updates);
+	}
+}
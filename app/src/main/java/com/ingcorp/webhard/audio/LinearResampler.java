@@ -0,0 +1,123 @@
+/*
+ * This file is part of MAME4droid.
+ *
+ * Copyright (C) 2024 David Valdeita (Seleuco)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Linking MAME4droid statically or dynamically with other modules is
+ * making a combined work based on MAME4droid. Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * In addition, as a special exception, the copyright holders of MAME4droid
+ * give you permission to combine MAME4droid with free software programs
+ * or libraries that are released under the GNU LGPL and with code included
+ * in the standard release of MAME under the MAME License (or modified
+ * versions of such code, with unchanged license). You may copy and
+ * distribute such a system following the terms of the GNU GPL for MAME4droid
+ * and the licenses of the other code concerned, provided that you include
+ * the source code of that other code when and as the GNU GPL requires
+ * distribution of source code.
+ *
+ * Note that people who make modified versions of MAME4idroid are not
+ * obligated to grant this special exception for their modified versions; it
+ * is their choice whether to do so. The GNU General Public License
+ * gives permission to release a modified version without this exception;
+ * this exception also makes it possible to release a modified version
+ * which carries forward this exception.
+ *
+ * MAME4droid is dual-licensed: Alternatively, you can license MAME4droid
+ * under a MAME license, as set out in http://mamedev.org/
+ */
+
+package com.ingcorp.webhard.audio;
+
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * Streaming linear interpolation resampler for interleaved 16 bit PCM. The ratios used by
+ * {@link DynamicRateControl} are so close to 1 that linear interpolation is transparent.
+ * State carries over between calls, so chunks can be fed as they come.
+ */
+public final class LinearResampler {
+
+	private final int channels;
+	private final short[] prev;
+	private boolean havePrev = false;
+
+	//position of the next output frame between prev (0) and the next input frame (1)
+	private double pos = 0;
+
+	public LinearResampler(int channels) {
+		this.channels = channels;
+		prev = new short[channels];
+	}
+
+	public int getChannels() {
+		return channels;
+	}
+
+	/**
+	 * Output frames needed at most for inFrames input frames at the given ratio.
+	 */
+	public static int maxOutputFrames(int inFrames, double ratio) {
+		return (int) Math.ceil(inFrames * ratio) + 2;
+	}
+
+	/**
+	 * Resamples every frame between src position and limit into dst from its position, advancing both.
+	 *
+	 * @param ratio output frames per input frame.
+	 * @return frames written to dst.
+	 */
+	public int process(ByteBuffer src, ShortBuffer dst, double ratio) {
+		double step = 1.0 / ratio;
+		int written = 0;
+		int frameBytes = channels * 2;
+
+		while (src.remaining() >= frameBytes) {
+			int base = src.position();
+			src.position(base + frameBytes);
+
+			if (!havePrev) {
+				for (int c = 0; c < channels; c++)
+					prev[c] = src.getShort(base + c * 2);
+				havePrev = true;
+				continue;
+			}
+
+			while (pos <= 1.0 && dst.remaining() >= channels) {
+				for (int c = 0; c < channels; c++) {
+					int a = prev[c];
+					int b = src.getShort(base + c * 2);
+					dst.put((short) (a + (b - a) * pos));
+				}
+				pos += step;
+				written++;
+			}
+			pos -= 1.0;
+
+			for (int c = 0; c < channels; c++)
+				prev[c] = src.getShort(base + c * 2);
+		}
+		return written;
+	}
+
+	public void reset() {
+		havePrev = false;
+		pos = 0;
+	}
+}
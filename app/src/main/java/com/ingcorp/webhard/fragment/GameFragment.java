@@ -17,6 +17,7 @@ import com.ingcorp.webhard.R;
 import com.ingcorp.webhard.adapter.GameAdapter;
 import com.ingcorp.webhard.base.Constants;
 import com.ingcorp.webhard.database.entity.Game;
+import com.ingcorp.webhard.helpers.StartupTracer;
 import com.ingcorp.webhard.helpers.UtilHelper;
 import com.ingcorp.webhard.manager.GameListManager;
 import com.ingcorp.webhard.model.AdItem;
@@ -286,6 +287,7 @@ public class GameFragment extends Fragment {
     }
 
     private void launchGame(Game game, String romFilePath) {
+        StartupTracer.mark(StartupTracer.STAGE_INTENT);
         try {
             android.content.Intent intent = new android.content.Intent(getContext(), MAME4droid.class);
             intent.setAction(android.content.Intent.ACTION_VIEW);
@@ -299,6 +301,7 @@ public class GameFragment extends Fragment {
 
         } catch (Exception e) {
             Log.e(TAG, "Error launching game", e);
+            StartupTracer.cancel();
             showToast("Failed to launch game: " + e.getMessage());
         }
     }
@@ -376,6 +379,7 @@ public class GameFragment extends Fragment {
     }
 
     private void checkRomAndLaunchGame(Game game) {
+        StartupTracer.mark(StartupTracer.STAGE_CHECK_ROM);
         if (getContext() == null) return;
 
         String romFileName = game.getGameRom();
@@ -509,6 +513,7 @@ public class GameFragment extends Fragment {
     }
 
     private void downloadAndLaunchGameWithProgress(Game game, String romFileName, String romsPath) {
+        StartupTracer.mark(StartupTracer.STAGE_DOWNLOAD);
         if (!preDownloadCheck(game, romFileName, romsPath)) {
             return;
         }
@@ -644,6 +649,7 @@ public class GameFragment extends Fragment {
     }
 
     private void handleDownloadFailure(Game game, String romFileName, String errorMessage) {
+        StartupTracer.cancel();
         UtilHelper utilHelper = UtilHelper.getInstance(getContext());
         utilHelper.saveDownloadState(romFileName, "failed");
 
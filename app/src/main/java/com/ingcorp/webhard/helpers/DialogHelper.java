@@ -51,14 +51,23 @@ import android.app.Dialog;
 import android.content.ActivityNotFoundException;
 import android.content.DialogInterface;
 import android.content.Intent;
+import android.graphics.Bitmap;
+import android.view.Gravity;
 import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.ImageView;
+import android.widget.LinearLayout;
+import android.widget.TextView;
 
 import com.ingcorp.webhard.Emulator;
 import com.ingcorp.webhard.MAME4droid;
 import com.ingcorp.webhard.input.ControlCustomizer;
 import com.ingcorp.webhard.views.IEmuView;
 
+import java.text.DateFormat;
 import java.util.Arrays;
+import java.util.Date;
 
 public class DialogHelper {
 
@@ -74,6 +83,9 @@ public class DialogHelper {
 	public final static int DIALOG_EMU_RESTART = 11;
 	public final static int DIALOG_NO_PERMISSIONS = 12;
 	public final static int DIALOG_ROMs = 13;
+	public final static int DIALOG_RUNAHEAD = 14;
+	public final static int DIALOG_SAVE_STATE = 15;
+	public final static int DIALOG_LOAD_STATE = 16;
 
 	protected MAME4droid mm = null;
 
@@ -237,15 +249,17 @@ public class DialogHelper {
 				break;
 			case DIALOG_OPTIONS:
 			case DIALOG_FULLSCREEN:
-				CharSequence[] items1 = {"Load State", "Save State", "Help", "Settings", "Keyboard"};
+				String ff = Emulator.isFastForward() ? "Normal Speed" : "Fast Forward";
+				String ra = "Run-Ahead (" + (Emulator.getRunAhead().getFrames() == 0 ? "Off" : Emulator.getRunAhead().getFrames()) + ")";
+				CharSequence[] items1 = {"Load State", "Save State", ff, ra, "Help", "Settings", "Keyboard"};
 				CharSequence[] items2 = {"Help", "Settings", "Keyboard"};
-				CharSequence[] items3 = {"Exit", "Load State", "Save State", "Help", "Settings", "Keyboard"};
+				CharSequence[] items3 = {"Exit", "Load State", "Save State", ff, ra, "Help", "Settings", "Keyboard"};
 				CharSequence[] items4 = {"Exit", "Help", "Settings", "Keyboard"};
 
 				boolean saveload = Emulator.isInGameButNotInMenu() && Emulator.getValue(Emulator.PAUSE)!=1;
 
 				final int a = id == DIALOG_FULLSCREEN ? 0 : 1;
-				final int b =  saveload ? 0 : 2;
+				final int b =  saveload ? 0 : 4;
 
 				if (a == 1)
 					builder.setTitle("Choose an option from the menu.");
@@ -289,6 +303,8 @@ public class DialogHelper {
 								Emulator.setValue(Emulator.EXIT_GAME, 0);
 							}
 							 */
+						} else if (item == 1 - a && b == 0 && Emulator.hasMemoryStates()) {
+							mm.showDialog(DialogHelper.DIALOG_LOAD_STATE);
 						} else if (item == 1 - a && b == 0) {
 							Emulator.resume();
 							Emulator.setValue(Emulator.LOADSTATE, 1);
@@ -299,6 +315,8 @@ public class DialogHelper {
 							} catch (InterruptedException e) {
 							}
 							Emulator.setValue(Emulator.LOADSTATE, 0);
+						} else if (item == 2 - a && b == 0 && Emulator.hasMemoryStates()) {
+							mm.showDialog(DialogHelper.DIALOG_SAVE_STATE);
 						} else if (item == 2 - a && b == 0) {
 							Emulator.resume();
 							Emulator.setValue(Emulator.SAVESTATE, 1);
@@ -309,11 +327,16 @@ public class DialogHelper {
 							} catch (InterruptedException e) {
 							}
 							Emulator.setValue(Emulator.SAVESTATE, 0);
-						} else if (item == 3 - a - b) {
+						} else if (item == 3 - a && b == 0) {
+							Emulator.setFastForward(!Emulator.isFastForward());
+							Emulator.resume();
+						} else if (item == 4 - a && b == 0) {
+							mm.showDialog(DialogHelper.DIALOG_RUNAHEAD);
+						} else if (item == 5 - a - b) {
 							mm.getMainHelper().showHelp();
-						} else if (item == 4 - a - b) {
+						} else if (item == 6 - a - b) {
 							mm.getMainHelper().showSettings();
-						} else if (item == 5 - a - b) {
+						} else if (item == 7 - a - b) {
 							((IEmuView) mm.getEmuView()).showSoftKeyboard();
 							Emulator.resume();
 						}
@@ -340,6 +363,55 @@ public class DialogHelper {
 				});
 				dialog = builder.create();
 				break;
+			case DIALOG_RUNAHEAD:
+				CharSequence[] frames = {"Off", "1 frame", "2 frames", "3 frames", "4 frames"};
+				builder.setTitle("Run-ahead for this game")
+					.setSingleChoiceItems(frames, Emulator.getRunAhead().getFrames(), new DialogInterface.OnClickListener() {
+						public void onClick(DialogInterface dialog, int item) {
+							mm.getPrefsHelper().setRunAheadFrames(Emulator.getValueStr(Emulator.ROM_NAME), item);
+							Emulator.setRunAheadFrames(item);
+							Emulator.resume();
+							DialogHelper.savedDialog = DIALOG_NONE;
+							mm.removeDialog(DIALOG_RUNAHEAD);
+						}
+					})
+					.setOnCancelListener(new DialogInterface.OnCancelListener() {
+						@Override
+						public void onCancel(DialogInterface dialog) {
+							Emulator.resume();
+							DialogHelper.savedDialog = DIALOG_NONE;
+							mm.removeDialog(DIALOG_RUNAHEAD);
+						}
+					});
+				dialog = builder.create();
+				break;
+			case DIALOG_SAVE_STATE:
+			case DIALOG_LOAD_STATE:
+				final int stateDialog = id;
+				final String game = Emulator.getValueStr(Emulator.ROM_NAME);
+				final SaveStateHelper.Slot[] slots = mm.getSaveStateHelper().getSlots(game);
+				builder.setTitle(id == DIALOG_SAVE_STATE ? "Save State" : "Load State")
+					.setAdapter(new SlotAdapter(game, slots), new DialogInterface.OnClickListener() {
+						public void onClick(DialogInterface dialog, int item) {
+							if (stateDialog == DIALOG_SAVE_STATE)
+								mm.getSaveStateHelper().save(item);
+							else if (slots[item] != null)
+								mm.getSaveStateHelper().load(item);
+							Emulator.resume();
+							DialogHelper.savedDialog = DIALOG_NONE;
+							mm.removeDialog(stateDialog);
+						}
+					})
+					.setOnCancelListener(new DialogInterface.OnCancelListener() {
+						@Override
+						public void onCancel(DialogInterface dialog) {
+							Emulator.resume();
+							DialogHelper.savedDialog = DIALOG_NONE;
+							mm.removeDialog(stateDialog);
+						}
+					});
+				dialog = builder.create();
+				break;
 			case DIALOG_EMU_RESTART:
 				builder.setTitle("Restart needed!")
 					.setMessage("MAME4droid needs to restart for the changes to take effect.")
@@ -392,6 +464,12 @@ public class DialogHelper {
 		} else if (id == DIALOG_FULLSCREEN) {
 			Emulator.pause();
 			DialogHelper.savedDialog = DIALOG_FULLSCREEN;
+		} else if (id == DIALOG_RUNAHEAD) {
+			Emulator.pause();
+			DialogHelper.savedDialog = DIALOG_RUNAHEAD;
+		} else if (id == DIALOG_SAVE_STATE || id == DIALOG_LOAD_STATE) {
+			Emulator.pause();
+			DialogHelper.savedDialog = id;
 		} else if (id == DIALOG_ROMs) {
 			DialogHelper.savedDialog = DIALOG_ROMs;
 		} else if (id == DIALOG_FINISH_CUSTOM_LAYOUT) {
@@ -404,6 +482,58 @@ public class DialogHelper {
 
 	}
 
+	//a row per slot with its thumbnail, date and size
+	protected class SlotAdapter extends BaseAdapter {
+
+		private final String game;
+		private final SaveStateHelper.Slot[] slots;
+
+		SlotAdapter(String game, SaveStateHelper.Slot[] slots) {
+			this.game = game;
+			this.slots = slots;
+		}
+
+		public int getCount() {
+			return slots.length;
+		}
+
+		public Object getItem(int position) {
+			return slots[position];
+		}
+
+		public long getItemId(int position) {
+			return position;
+		}
+
+		public View getView(int position, View convertView, ViewGroup parent) {
+			float density = mm.getResources().getDisplayMetrics().density;
+			int pad = (int) (8 * density);
+
+			LinearLayout row = new LinearLayout(mm);
+			row.setOrientation(LinearLayout.HORIZONTAL);
+			row.setGravity(Gravity.CENTER_VERTICAL);
+			row.setPadding(pad * 2, pad, pad * 2, pad);
+
+			SaveStateHelper.Slot slot = slots[position];
+			ImageView image = new ImageView(mm);
+			image.setScaleType(ImageView.ScaleType.FIT_CENTER);
+			Bitmap thumbnail = mm.getSaveStateHelper().getThumbnail(game, slot);
+			if (thumbnail != null)
+				image.setImageBitmap(thumbnail);
+			row.addView(image, new LinearLayout.LayoutParams((int) (80 * density), (int) (60 * density)));
+
+			TextView text = new TextView(mm);
+			text.setPadding(pad * 2, 0, 0, 0);
+			String info = "Empty";
+			if (slot != null)
+				info = DateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.SHORT).format(new Date(slot.time))
+					+ " - " + (slot.stored + 1023) / 1024 + " KB";
+			text.setText("Slot " + (position + 1) + "\n" + info);
+			row.addView(text);
+			return row;
+		}
+	}
+
 	public void removeDialogs() {
 		if (savedDialog == DIALOG_FINISH_CUSTOM_LAYOUT) {
 			mm.removeDialog(DIALOG_FINISH_CUSTOM_LAYOUT);
@@ -93,6 +93,7 @@ import android.widget.FrameLayout;
 import android.widget.Toast;
 
 import com.ingcorp.webhard.Emulator;
+import com.ingcorp.webhard.EmulatorConfig;
 import com.ingcorp.webhard.MAME4droid;
 import com.ingcorp.webhard.R;
 import com.ingcorp.webhard.WebHelpActivity;
@@ -447,92 +448,16 @@ public class MainHelper {
         }
     }
 
-    public void updateEmuValues() {
-
-        PrefsHelper prefsHelper = mm.getPrefsHelper();
-
-        Emulator.setValue(Emulator.SHOW_FPS,
-                prefsHelper.isFPSShowed() ? 1 : 0);
-
-		Emulator.setValue(Emulator.ZOOM_TO_WINDOW,
-			prefsHelper.isZoomToWindow() ? 1 : 0);
-
-		Emulator.setValue(Emulator.AUTO_FRAMESKIP,
-			prefsHelper.isAutoFrameSkip() ? 1 : 0);
-
-		Emulator.setValue(Emulator.CHEATS,
-			prefsHelper.isCheats() ? 1 : 0);
-
-		Emulator.setValue(Emulator.SKIP_GAMEINFO,
-			prefsHelper.isSkipGameInfo() ? 1 : 0);
-
-		Emulator.setValue(Emulator.DISABLE_DRC,
-			prefsHelper.isDisabledDRC() ? 1 : 0);
-
-		Emulator.setValue(Emulator.DRC_USE_C,
-			prefsHelper.isDRCUseC() ? 1 : 0);
-
-		Emulator.setValue(Emulator.NUM_PROCESSORS,
-			prefsHelper.getNumProcessors());
-
-		Emulator.setValue(Emulator.SIMPLE_UI,
-			prefsHelper.isSimpleUI() ? 1 : 0);
-
-        Emulator.setValue(Emulator.EMU_RESOLUTION,
-                prefsHelper.getEmulatedResolution());
-
-		Emulator.setValue(Emulator.OSD_RESOLUTION,
-			prefsHelper.getOSDResolution());
-
-		Emulator.setValue(Emulator.WARN_ON_EXIT,
-			prefsHelper.isWarnOnExit() ? 1 : 0);
-
-        Emulator.setValue(Emulator.DOUBLE_BUFFER, mm.getPrefsHelper()
-                .isDoubleBuffer() ? 1 : 0);
-        Emulator.setValue(Emulator.PXASP1, mm.getPrefsHelper()
-                .isPlayerXasPlayer1() ? 1 : 0);
-		Emulator.setValue(Emulator.NODEADZONEANDSAT, mm.getPrefsHelper()
-			.isOverrideDZandSAT() ? 1 : 0);
-
-		Emulator.setValue(Emulator.MAMEINI, mm.getPrefsHelper()
-			.isUsedMAMEini() ? 1 : 0);
-
-		Emulator.setValue(Emulator.SPEED_HACKS, mm.getPrefsHelper()
-			.isSpeedHacks() ? 1 : 0);
-
-		Emulator.setValue(Emulator.AUTOFIRE, mm.getPrefsHelper()
-			.isAutofire() ? 1 : 0);
-
-		Emulator.setValue(Emulator.INPUTMACRO, mm.getPrefsHelper()
-			.isInputMacro() ? 1 : 0);
-
-		Emulator.setValue(Emulator.HISCORE, mm.getPrefsHelper()
-			.isHiscore() ? 1 : 0);
-
-        Emulator.setValue(Emulator.VBEAM2X, mm.getPrefsHelper()
-                .isVectorBeam2x() ? 1 : 0);
-        Emulator.setValue(Emulator.VFLICKER, mm.getPrefsHelper()
-                .isVectorFlicker() ? 1 : 0);
-
-        Emulator.setValue(
-                Emulator.SAVESATES_IN_ROM_PATH,
-                mm.getPrefsHelper().areSavesInRomPath() ? 1 : 0);
-
-        Emulator.setValue(Emulator.MOUSE,
-                mm.getPrefsHelper().isMouseEnabled() || mm.getPrefsHelper().isTouchMouseEnabled() ? 1 : 0);
-
-		Emulator.setValue(Emulator.KEYBOARD,
-			mm.getPrefsHelper().isKeyboardEnabled() || mm.getPrefsHelper().isVirtualKeyboardEnabled() ? 1 : 0);
-
-        Emulator.setValue(Emulator.SOUND_ENGINE, mm.getPrefsHelper()
-                .getSoundEngine() > 2 ? 2 : 1);
+    //device audio properties never change while the process lives, so they are read once
+    private static int outputFramesPerBuffer = -1;
+    private static int outputSampleRate = -1;
 
-        AudioManager am = (AudioManager) mm
-                .getSystemService(Context.AUDIO_SERVICE);
-        int sfr = 512;//10ms a 48000khz
-
-        if (mm.getPrefsHelper().getSoundEngine() == PrefsHelper.PREF_SNDENG_OPENSL_LOW) {
+    private int getOutputFramesPerBuffer() {
+        if (outputFramesPerBuffer == -1) {
+            int sfr = 512;//10ms a 48000khz
             try {
+                AudioManager am = (AudioManager) mm
+                        .getSystemService(Context.AUDIO_SERVICE);
                 sfr = Integer
                         .valueOf(
                                 am.getProperty(AudioManager.PROPERTY_OUTPUT_FRAMES_PER_BUFFER))
@@ -540,41 +465,111 @@ public class MainHelper {
                 System.out.println("PROPERTY_OUTPUT_FRAMES_PER_BUFFER:" + sfr);
             } catch (Throwable e) {
             }
+            outputFramesPerBuffer = sfr;
         }
+        return outputFramesPerBuffer;
+    }
 
-        Emulator.setValue(Emulator.SOUND_OPTIMAL_FRAMES, sfr);
-
-        int sr = 44100;
+    private int getOutputSampleRate() {
+        if (outputSampleRate == -1) {
+            int sr = 44100;
+            try {
+                AudioManager am = (AudioManager) mm
+                        .getSystemService(Context.AUDIO_SERVICE);
+                sr = Integer.valueOf(
+                        am.getProperty(AudioManager.PROPERTY_OUTPUT_SAMPLE_RATE))
+                        .intValue();
+                System.out.println("PROPERTY_OUTPUT_SAMPLE_RATE:" + sr);
+            } catch (Throwable e) {
+            }
+            outputSampleRate = sr;
 
-        try {
-            sr = Integer.valueOf(
-                    am.getProperty(AudioManager.PROPERTY_OUTPUT_SAMPLE_RATE))
-                    .intValue();
-            System.out.println("PROPERTY_OUTPUT_SAMPLE_RATE:" + sr);
-        } catch (Throwable e) {
+            Context context = mm.getApplicationContext();
+            SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+            if (!prefs.getBoolean("sound_rate", false)) {
+                SharedPreferences.Editor edit = prefs.edit();
+                edit.putBoolean("sound_rate", true);
+                if (sr == 48000)//sino defecto 44100
+                    edit.putString(PrefsHelper.PREF_EMU_SOUND, sr + "");
+                edit.commit();
+            }
         }
+        return outputSampleRate;
+    }
 
-        Context context = mm.getApplicationContext();
-        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
-        if (!prefs.getBoolean("sound_rate", false)) {
-            SharedPreferences.Editor edit = prefs.edit();
-            edit.putBoolean("sound_rate", true);
-            if (sr == 48000)//sino defecto 44100
-                edit.putString(PrefsHelper.PREF_EMU_SOUND, sr + "");
-            edit.commit();
-        }
+    /**
+     * Stages every option in the config model and sends the ones that changed since the last
+     * push in a single call to the core.
+     */
+    public void updateEmuValues() {
+
+        PrefsHelper prefsHelper = mm.getPrefsHelper();
+        EmulatorConfig config = Emulator.getConfig();
+
+        config.put(Emulator.SHOW_FPS, prefsHelper.isFPSShowed());
+		config.put(Emulator.ZOOM_TO_WINDOW, prefsHelper.isZoomToWindow());
+		config.put(Emulator.AUTO_FRAMESKIP, prefsHelper.isAutoFrameSkip());
+		config.put(Emulator.CHEATS, prefsHelper.isCheats());
+		config.put(Emulator.SKIP_GAMEINFO, prefsHelper.isSkipGameInfo());
+		config.put(Emulator.DISABLE_DRC, prefsHelper.isDisabledDRC());
+		config.put(Emulator.DRC_USE_C, prefsHelper.isDRCUseC());
+		config.put(Emulator.NUM_PROCESSORS, prefsHelper.getNumProcessors());
+		config.put(Emulator.SIMPLE_UI, prefsHelper.isSimpleUI());
+        config.put(Emulator.EMU_RESOLUTION, prefsHelper.getEmulatedResolution());
+		config.put(Emulator.OSD_RESOLUTION, prefsHelper.getOSDResolution());
+		config.put(Emulator.WARN_ON_EXIT, prefsHelper.isWarnOnExit());
+
+        config.put(Emulator.DOUBLE_BUFFER, prefsHelper.isDoubleBuffer());
+        config.put(Emulator.PXASP1, prefsHelper.isPlayerXasPlayer1());
+		config.put(Emulator.NODEADZONEANDSAT, prefsHelper.isOverrideDZandSAT());
+		config.put(Emulator.MAMEINI, prefsHelper.isUsedMAMEini());
+		config.put(Emulator.SPEED_HACKS, prefsHelper.isSpeedHacks());
+		config.put(Emulator.AUTOFIRE, prefsHelper.isAutofire());
+		config.put(Emulator.INPUTMACRO, prefsHelper.isInputMacro());
+		config.put(Emulator.HISCORE, prefsHelper.isHiscore());
+
+        config.put(Emulator.VBEAM2X, prefsHelper.isVectorBeam2x());
+        config.put(Emulator.VFLICKER, prefsHelper.isVectorFlicker());
+
+        config.put(Emulator.SAVESATES_IN_ROM_PATH, prefsHelper.areSavesInRomPath());
+
+        config.put(Emulator.MOUSE,
+                prefsHelper.isMouseEnabled() || prefsHelper.isTouchMouseEnabled());
+		config.put(Emulator.KEYBOARD,
+			prefsHelper.isKeyboardEnabled() || prefsHelper.isVirtualKeyboardEnabled());
+
+        int soundEngine = prefsHelper.getSoundEngine();
+
+        //AAudio lives in the bridge, so the core keeps handing its buffers to us as with AudioTrack
+        config.put(Emulator.SOUND_ENGINE,
+                soundEngine == PrefsHelper.PREF_SNDENG_OPENSL || soundEngine == PrefsHelper.PREF_SNDENG_OPENSL_LOW ? 2 : 1);
+        Emulator.getCore().setNativeAudio(soundEngine == PrefsHelper.PREF_SNDENG_AAUDIO);
 
-        if (mm.getPrefsHelper().getSoundEngine() == PrefsHelper.PREF_SNDENG_OPENSL)
-            sr = mm.getPrefsHelper().getSoundValue();
+        int sfr = 512;//10ms a 48000khz
+        if (soundEngine == PrefsHelper.PREF_SNDENG_OPENSL_LOW || soundEngine == PrefsHelper.PREF_SNDENG_AAUDIO)
+            sfr = getOutputFramesPerBuffer();
+
+        config.put(Emulator.SOUND_OPTIMAL_FRAMES, sfr);
+
+        int sr = getOutputSampleRate();
+
+        if (soundEngine == PrefsHelper.PREF_SNDENG_OPENSL)
+            sr = prefsHelper.getSoundValue();
 		/*
 		else is PrefsHelper.PREF_SNDENG_OPENSL_LOW fixed at PROPERTY_OUTPUT_SAMPLE_RATE
 		 */
 
-        Emulator.setValue(Emulator.SOUND_VALUE, prefsHelper.getSoundValue());
-        Emulator.setValue(Emulator.SOUND_OPTIMAL_SAMPLERATE, sr);
+        config.put(Emulator.SOUND_VALUE, prefsHelper.getSoundValue());
+        config.put(Emulator.SOUND_OPTIMAL_SAMPLERATE, sr);
+
+        Emulator.pushFastForward(config);
+
+        int sent = config.commit();
+        if (Emulator.isDebug())
+            Log.d("MainHelper", "updateEmuValues sent " + sent + " values");
 
-		if(!mm.getPrefsHelper().getOverlayFilterValue().equals(PrefsHelper.PREF_OVERLAY_NONE))
-		   Emulator.setValueStr(Emulator.OVERLAY_EFECT,mm.getPrefsHelper().getOverlayFilterValue());
+		if(!prefsHelper.getOverlayFilterValue().equals(PrefsHelper.PREF_OVERLAY_NONE))
+		   config.putStr(Emulator.OVERLAY_EFECT, prefsHelper.getOverlayFilterValue());
     }
 
     public void updateMAME4droid() {
@@ -752,7 +747,7 @@ galaxy sde	   --> 2560x1600 16:10
             }
         }
 
-        oldInGame = Emulator.getValue(Emulator.IN_GAME);
+        oldInGame = Emulator.isInGame() ? 1 : 0;
 
         if (state != TouchController.STATE_SHOWING_CONTROLLER
                 && ControlCustomizer.isEnabled()) {
@@ -52,6 +52,7 @@ import android.preference.PreferenceManager;
 import com.ingcorp.webhard.Emulator;
 import com.ingcorp.webhard.MAME4droid;
 import com.ingcorp.webhard.input.GameController;
+import com.ingcorp.webhard.render.RendererSettings;
 
 public class PrefsHelper implements OnSharedPreferenceChangeListener {
 	final static public String PREF_ROMsDIR = "PREF_ROMsDIR_2";
@@ -88,6 +89,7 @@ public class PrefsHelper implements OnSharedPreferenceChangeListener {
 	final static public String PREF_SHADER_EFFECT = "PREF_SHADER_EFFECT";
 	final static public String PREF_SHADER_IN_FRONTEND = "PREF_SHADER_IN_FRONTEND";
 	final static public String PREF_SHADER_30 = "PREF_SHADER_30";
+	final static public String PREF_RECENT_SHADERS = "PREF_RECENT_SHADERS";
 
 	final static public String PREF_SCRAPE_ENABLED = "PREF_SCRAPE_ENABLED";
 	final static public String PREF_SCRAPE_ICONS = "PREF_SCRAPE_ICONS";
@@ -152,6 +154,23 @@ public class PrefsHelper implements OnSharedPreferenceChangeListener {
 	final static public String PREF_STICK_SIZE = "PREF_STICK_SIZE";
 	final static public String PREF_MAIN_THREAD_PRIORITY = "PREF_MAIN_THREAD_PRIORITY";
 	final static public String PREF_SOUND_ENGINE = "PREF_SOUND_ENGINE";
+	final static public String PREF_SOUND_RATE_CONTROL = "PREF_SOUND_RATE_CONTROL";
+	final static public String PREF_REUSE_SESSION = "PREF_REUSE_SESSION";
+	final static public String PREF_FAST_FORWARD_SPEED = "PREF_FAST_FORWARD_SPEED";
+	final static public String PREF_FAST_FORWARD_AUDIO = "PREF_FAST_FORWARD_AUDIO";
+	final static public String PREF_FAST_FORWARD_KEY = "PREF_FAST_FORWARD_KEY";
+	final static public String PREF_FAST_FORWARD_HOLD = "PREF_FAST_FORWARD_HOLD";
+	final static public String PREF_RUNAHEAD = "PREF_RUNAHEAD";
+	final static public String PREF_RUNAHEAD_AUTO = "PREF_RUNAHEAD_AUTO";
+	final static public String PREF_VSYNC_PACING = "PREF_VSYNC_PACING";
+	final static public String PREF_MATCH_REFRESH_RATE = "PREF_MATCH_REFRESH_RATE";
+	final static public String PREF_LATE_LATCH = "PREF_LATE_LATCH";
+	final static public String PREF_PBO_UPLOAD = "PREF_PBO_UPLOAD";
+	final static public String PREF_REWIND = "PREF_REWIND";
+	final static public String PREF_REWIND_MEMORY = "PREF_REWIND_MEMORY";
+	final static public String PREF_REWIND_INTERVAL = "PREF_REWIND_INTERVAL";
+	final static public String PREF_REWIND_KEY = "PREF_REWIND_KEY";
+	final static public String PREF_REWIND_TOUCH = "PREF_REWIND_TOUCH";
 
 	final static public String PREF_DOUBLE_BUFFER = "PREF_DOUBLE_BUFFER";
 
@@ -211,6 +230,7 @@ public class PrefsHelper implements OnSharedPreferenceChangeListener {
 	final public static int PREF_SNDENG_AUDIOTRACK_HIGH = 2;
 	final public static int PREF_SNDENG_OPENSL = 3;
 	final public static int PREF_SNDENG_OPENSL_LOW = 4;
+	final public static int PREF_SNDENG_AAUDIO = 5;
 
 	final public static int PREF_NAVBAR_VISIBLE = 0;
 	final public static int PREF_NAVBAR_DIMM_OR_HIDE = 1;
@@ -218,15 +238,30 @@ public class PrefsHelper implements OnSharedPreferenceChangeListener {
 
 	protected MAME4droid mm = null;
 
+	//null when it has to be taken again
+	private volatile RendererSettings rendererSettings = null;
+
 	public PrefsHelper(MAME4droid value) {
 		mm = value;
 	}
 
 	public void onSharedPreferenceChanged(SharedPreferences sharedPreferences,
 										  String key) {
+		if (key == null || RendererSettings.isRendererKey(key))
+			rendererSettings = null;
+		if (key == null || key.equals(PREF_REWIND_TOUCH))
+			updateTouchController();
+	}
+
+	private void updateTouchController() {
+		if (mm.getInputHandler() != null && mm.getInputHandler().getTouchController() != null)
+			mm.getInputHandler().getTouchController().updateRewindButton();
 	}
 
 	public void resume() {
+		//the listener is not registered while paused, e.g. while the settings screen is open
+		rendererSettings = null;
+		updateTouchController();
 		Context context = mm.getApplicationContext();
 		SharedPreferences prefs =
 			PreferenceManager.getDefaultSharedPreferences(context);
@@ -241,6 +276,18 @@ public class PrefsHelper implements OnSharedPreferenceChangeListener {
 		prefs.unregisterOnSharedPreferenceChangeListener(this);
 	}
 
+	/**
+	 * @return the preferences of the renderer, the same instance until one of them changes.
+	 */
+	public RendererSettings getRendererSettings() {
+		RendererSettings s = rendererSettings;
+		if (s == null) {
+			s = RendererSettings.from(this);
+			rendererSettings = s;
+		}
+		return s;
+	}
+
 	public SharedPreferences getSharedPreferences() {
 		Context context = mm.getApplicationContext();
 		return PreferenceManager.getDefaultSharedPreferences(context);
@@ -404,7 +451,7 @@ public class PrefsHelper implements OnSharedPreferenceChangeListener {
 
 		if (enabled &&
 
-			(Emulator.getValue(Emulator.IS_LIGHTGUN) == 1 || isTouchLightgunForced())
+			(Emulator.getState().isLightgun() || isTouchLightgunForced())
 
 			&& !this.isTiltSensorEnabled() && !mm.getInputHandler().getMouse().isEnabled())
 			return true;
@@ -458,7 +505,7 @@ public class PrefsHelper implements OnSharedPreferenceChangeListener {
 		if (isTouchLightgun())
 			return false;
 
-		return Emulator.getValue(Emulator.IS_MOUSE) == 1 || isTouchGameMouseForced();
+		return Emulator.getState().isMouse() || isTouchGameMouseForced();
 
 	}
 
@@ -626,6 +673,91 @@ public class PrefsHelper implements OnSharedPreferenceChangeListener {
 		return Integer.valueOf(getSharedPreferences().getString(PREF_SOUND_ENGINE, "1")).intValue();
 	}
 
+	public boolean isSoundRateControl() {
+		return getSharedPreferences().getBoolean(PREF_SOUND_RATE_CONTROL, true);
+	}
+
+	public boolean isReuseSession() {
+		return getSharedPreferences().getBoolean(PREF_REUSE_SESSION, false);
+	}
+
+	public int getFastForwardSpeed() {
+		return Integer.valueOf(getSharedPreferences().getString(PREF_FAST_FORWARD_SPEED, "0")).intValue();
+	}
+
+	public int getFastForwardAudio() {
+		return Integer.valueOf(getSharedPreferences().getString(PREF_FAST_FORWARD_AUDIO, "1")).intValue();
+	}
+
+	public int getFastForwardKey() {
+		return Integer.valueOf(getSharedPreferences().getString(PREF_FAST_FORWARD_KEY, "-1")).intValue();
+	}
+
+	public boolean isFastForwardHold() {
+		return getSharedPreferences().getBoolean(PREF_FAST_FORWARD_HOLD, true);
+	}
+
+	/**
+	 * @return the run-ahead frames set for a game from the in-game menu, or the default one.
+	 */
+	public int getRunAheadFrames(String game) {
+		int def = Integer.valueOf(getSharedPreferences().getString(PREF_RUNAHEAD, "0")).intValue();
+		if (game == null || game.length() == 0)
+			return def;
+		return getSharedPreferences().getInt(PREF_RUNAHEAD + "_" + game, def);
+	}
+
+	public void setRunAheadFrames(String game, int frames) {
+		if (game == null || game.length() == 0)
+			return;
+		SharedPreferences.Editor editor = getSharedPreferences().edit();
+		editor.putInt(PREF_RUNAHEAD + "_" + game, frames);
+		editor.commit();
+	}
+
+	public boolean isRunAheadAuto() {
+		return getSharedPreferences().getBoolean(PREF_RUNAHEAD_AUTO, true);
+	}
+
+	public boolean isVsyncPacing() {
+		return getSharedPreferences().getBoolean(PREF_VSYNC_PACING, true);
+	}
+
+	public boolean isMatchRefreshRate() {
+		return getSharedPreferences().getBoolean(PREF_MATCH_REFRESH_RATE, true);
+	}
+
+	public boolean isLateLatch() {
+		return getSharedPreferences().getBoolean(PREF_LATE_LATCH, false);
+	}
+
+	public boolean isPboUpload() {
+		return getSharedPreferences().getBoolean(PREF_PBO_UPLOAD, true);
+	}
+
+	public boolean isRewind() {
+		return getSharedPreferences().getBoolean(PREF_REWIND, false);
+	}
+
+	//MB for the compressed states
+	public int getRewindMemory() {
+		return Integer.valueOf(getSharedPreferences().getString(PREF_REWIND_MEMORY, "64")).intValue();
+	}
+
+	//a state is kept every n frames
+	public int getRewindInterval() {
+		return Integer.valueOf(getSharedPreferences().getString(PREF_REWIND_INTERVAL, "2")).intValue();
+	}
+
+	public int getRewindKey() {
+		return Integer.valueOf(getSharedPreferences().getString(PREF_REWIND_KEY, "-1")).intValue();
+	}
+
+	//touch button used to rewind instead of its game button, -1 none
+	public int getRewindTouchButton() {
+		return Integer.valueOf(getSharedPreferences().getString(PREF_REWIND_TOUCH, "-1")).intValue();
+	}
+
 	public boolean isDoubleBuffer() {
 		return getSharedPreferences().getBoolean(PREF_DOUBLE_BUFFER, true);
 	}
@@ -747,6 +879,30 @@ public class PrefsHelper implements OnSharedPreferenceChangeListener {
 		return getSharedPreferences().getBoolean(PREF_SHADER_30, false);
 	}
 
+	final public static int MAX_RECENT_SHADERS = 4;
+
+	/**
+	 * @return the ids in shaders.cfg of the last effects used, the latest first.
+	 */
+	public String[] getRecentShaders() {
+		String value = getSharedPreferences().getString(PREF_RECENT_SHADERS, "");
+		return value.isEmpty() ? new String[0] : value.split(";");
+	}
+
+	public void addRecentShader(String id) {
+		StringBuilder sb = new StringBuilder(id);
+		int n = 1;
+		for (String s : getRecentShaders()) {
+			if (n == MAX_RECENT_SHADERS)
+				break;
+			if (!s.equals(id)) {
+				sb.append(';').append(s);
+				n++;
+			}
+		}
+		getSharedPreferences().edit().putString(PREF_RECENT_SHADERS, sb.toString()).apply();
+	}
+
 	public boolean isScrapingEnabled() {
 		return getSharedPreferences().getBoolean(PREF_SCRAPE_ENABLED, false);
 	}
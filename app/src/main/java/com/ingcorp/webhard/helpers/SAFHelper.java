@@ -62,21 +62,6 @@ import java.util.ArrayList;
 import java.util.Hashtable;
 import java.util.List;
 
-class DirEntry {
-	String name;
-	long size;
-	long modified;
-	boolean isDir;
-}
-
-class DirEntries {
-	private static int lastId = 1;
-	DirEntries(){this.id = lastId++;}
-	int id = 0;
-	int dirEntIdx = 0;
-	ArrayList<DirEntry> dirEntries = null;
-}
-
 public class SAFHelper {
 
 	private static final String TAG = "SAF";
@@ -84,8 +69,7 @@ public class SAFHelper {
     protected MAME4droid mm = null;
 
 	static Uri uri = null;
-    static protected Hashtable<String, String> fileIDs = null; //hago estatico para evitar reloads si la actividad se recrea
-    static protected Hashtable<String,ArrayList<DirEntry>> dirFiles = null;
+    static protected SAFIndex index = null; //hago estatico para evitar reloads si la actividad se recrea
 
 	protected Hashtable<Integer, DirEntries> openDirs = new Hashtable<Integer, DirEntries>();
 
@@ -104,13 +88,13 @@ public class SAFHelper {
     }
 
 	public ArrayList<String> getRomsFileNames(){
-		if (dirFiles == null) {//safety
+		if (index == null) {//safety
 			listUriFiles(true);
 		}
 
 		ArrayList<String> fileNames = null;
 
-		ArrayList<DirEntry> dirEntries =  dirFiles.get("/");
+		ArrayList<DirEntry> dirEntries =  index.getRoot();
 		if(dirEntries!=null)
 		{
 			fileNames = new ArrayList<>();
@@ -125,15 +109,13 @@ public class SAFHelper {
 	public int readDir(String dirName) {
 		int res = 0;
 
-		if (dirFiles == null) {//safety
+		if (index == null) {//safety
 			listUriFiles(true);
 		}
 
-		ArrayList<DirEntry>  folderFiles = dirFiles.get(dirName);
-		if(folderFiles!=null)
+		DirEntries entries = index.openDir(dirName);
+		if(entries!=null)
 		{
-			DirEntries entries = new DirEntries();
-			entries.dirEntries = folderFiles;
 			openDirs.put(entries.id,entries);
 			res = entries.id;
 		}
@@ -161,11 +143,7 @@ public class SAFHelper {
 		if(openDirs!=null) {
 			DirEntries dirEntries = openDirs.get(id);
 			if (dirEntries != null) {
-				if (dirEntries.dirEntIdx < dirEntries.dirEntries.size()) {
-					DirEntry entry = dirEntries.dirEntries.get(dirEntries.dirEntIdx);
-					dirEntries.dirEntIdx++;
-					entryRes = new String[]{entry.name,String.valueOf(entry.size),String.valueOf(entry.modified),entry.isDir ? "D":"F"};
-				}
+				entryRes = SAFIndex.nextEntry(dirEntries);
 			}
 		}
         return entryRes;
@@ -176,22 +154,18 @@ public class SAFHelper {
 
 		Log.d(TAG, "openRomUriFd "+pathName+" "+flags);
 
-        if (fileIDs == null) {//safety
+        if (index == null) {//safety
             //return -1;
             listUriFiles(true);
         }
 
         String fileid = null;
 
-        fileid = (String) fileIDs.get(pathName);
+        fileid = index.getId(pathName);
 
-		String path = "";
-		String name = pathName;
-		int i = pathName.lastIndexOf("/");
-		if (i != -1) {
-			name = pathName.substring(i + 1, pathName.length());
-			path = pathName.substring(0, i + 1);
-		}
+		String[] split = SAFIndex.splitPath(pathName);
+		String path = split[0];
+		String name = split[1];
 
         if (fileid == null && flags.contains("w")) {
             String mimeType = "application/octet-stream";
@@ -204,13 +178,7 @@ public class SAFHelper {
 
                     Uri docUri = DocumentsContract.createDocument(mm.getContentResolver(), dirUri, mimeType, name);
                     fileid = DocumentsContract.getDocumentId(docUri);
-                    fileIDs.put(pathName, fileid);
-					DirEntry newFile = new DirEntry();
-					newFile.name = name;
-					newFile.isDir = false;
-					newFile.modified = System.currentTimeMillis();
-					newFile.size = 1;//how to??
-					dirFiles.get(path).add(newFile);
+					index.addFile(path, fileid, name, 1/*how to??*/, System.currentTimeMillis());
                 }
             } catch (Exception e) {
                 e.printStackTrace();
@@ -221,13 +189,7 @@ public class SAFHelper {
             final Uri fileUri = DocumentsContract.buildDocumentUriUsingTree(uri, fileid);
             try {
 				if(flags.contains("w") && !flags.contains("t") ){
-					ArrayList<DirEntry> files = dirFiles.get(path);
-					for (DirEntry e: files) {
-						if(e.name.equals(name)) {
-							e.modified = System.currentTimeMillis();
-							break;
-						}
-					}
+					index.touch(path, name);
 				}
                 return mm.getContentResolver().openFileDescriptor(fileUri, flags).detachFd();
             } catch (Exception e) {
@@ -242,7 +204,7 @@ public class SAFHelper {
         if (path == null || path.isEmpty())
             return null;
 
-        String id = (String) fileIDs.get(path);
+        String id = index.getId(path);
         if (id != null || path.equals("/")) {
             //System.out.println("Encuentro id para "+path+" "+id);
             return id;
@@ -267,15 +229,7 @@ public class SAFHelper {
                     Uri parentDirUri = DocumentsContract.buildDocumentUriUsingTree(uri, id);
                     Uri newDirUri = DocumentsContract.createDocument(mm.getContentResolver(), parentDirUri, DocumentsContract.Document.MIME_TYPE_DIR, dirName);
                     id = DocumentsContract.getDocumentId(newDirUri);
-                    fileIDs.put(path, id);
-					ArrayList<DirEntry> newFolderFiles = new ArrayList<DirEntry>();
-					dirFiles.put(path,newFolderFiles);
-					DirEntry newDir = new DirEntry();
-					newDir.name = dirName;
-					newDir.isDir = true;
-					newDir.modified = System.currentTimeMillis();
-					newDir.size = 1;//how to??
-					dirFiles.get(newPath).add(newDir);
+					index.addDir(newPath, id, dirName, 1/*how to??*/, System.currentTimeMillis());
 
                     return id;
                 } catch (Exception e) {
@@ -292,10 +246,7 @@ public class SAFHelper {
 		pw = new WarnWidget(mm,"Caching SAF files."," Reading, please wait...", Color.WHITE,false,false);
 		pw.init();
 
-        if (fileIDs != null && !reload) return true;
-
-        fileIDs = new Hashtable<String, String>();
-		dirFiles = new Hashtable<String,ArrayList<DirEntry>>();
+        if (index != null && !reload) return true;
 
         if (uri == null) {
             Log.e("SAF", "SAF URI NOT SET!!!");
@@ -304,14 +255,12 @@ public class SAFHelper {
         }
 
         String id = DocumentsContract.getTreeDocumentId(uri);
-        fileIDs.put("/", id);
-		ArrayList<DirEntry> entries = new ArrayList<DirEntry>();
-		dirFiles.put("/",entries);
+        index = new SAFIndex(id);
 
         System.out.println("path " + pathFromDocumentUri(uri));
         System.out.println("tree document id " + id);
 
-        boolean res =  listUriFilesRecursive(entries,   uri, "", 0);
+        boolean res =  listUriFilesRecursive(index.getRoot(), uri, "", 0);
 
 		pw.end();
 
@@ -348,30 +297,15 @@ public class SAFHelper {
                 final String filepath = path + "/" + displayName;
                 //System.out.println(documentId+ " "+displayName+" "+" "+mimeType+" "+isDir+" "+documentUri);
                 if (!isDir) {
-                    fileIDs.put(filepath, documentId);
                     //System.out.println(documentId+ " "+filepath+" "+" "+mimeType+" "+documentUri);
-					DirEntry dirEntry = new DirEntry();
-					dirEntry.name = displayName;
-					dirEntry.modified = modified;
-					dirEntry.size = size;
-					dirEntry.isDir = false;
-					folderFiles.add(dirEntry);
+					index.addFile(folderFiles, path + "/", documentId, displayName, size, modified);
 
 					if(pw!=null) {
 						pw.notifyText("Caching: " + displayName);
 					}
                 } else {
 
-					String dirPath = filepath + "/";
-					ArrayList<DirEntry> newFolderFiles = new ArrayList<DirEntry>();
-                    fileIDs.put(dirPath, documentId);
-					DirEntry dirEntry = new DirEntry();
-					dirEntry.name = displayName;
-					dirEntry.modified = modified;
-					dirEntry.size = size;
-					dirEntry.isDir = true;
-					folderFiles.add(dirEntry);
-					dirFiles.put(dirPath,newFolderFiles);
+					ArrayList<DirEntry> newFolderFiles = index.addDir(folderFiles, path + "/", documentId, displayName, size, modified);
                     //System.out.println(documentId+ " "+filepath+" "+" "+mimeType+" "+documentUri);
                     listUriFilesRecursive(newFolderFiles, documentUri, filepath, p + 1);
                 }
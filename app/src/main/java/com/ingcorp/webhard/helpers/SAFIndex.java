@@ -0,0 +1,178 @@
+/*
+ * This file is part of MAME4droid.
+ *
+ * Copyright (C) 2024 David Valdeita (Seleuco)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Linking MAME4droid statically or dynamically with other modules is
+ * making a combined work based on MAME4droid. Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * In addition, as a special exception, the copyright holders of MAME4droid
+ * give you permission to combine MAME4droid with free software programs
+ * or libraries that are released under the GNU LGPL and with code included
+ * in the standard release of MAME under the MAME License (or modified
+ * versions of such code, with unchanged license). You may copy and
+ * distribute such a system following the terms of the GNU GPL for MAME4droid
+ * and the licenses of the other code concerned, provided that you include
+ * the source code of that other code when and as the GNU GPL requires
+ * distribution of source code.
+ *
+ * Note that people who make modified versions of MAME4idroid are not
+ * obligated to grant this special exception for their modified versions; it
+ * is their choice whether to do so. The GNU General Public License
+ * gives permission to release a modified version without this exception;
+ * this exception also makes it possible to release a modified version
+ * which carries forward this exception.
+ *
+ * MAME4droid is dual-licensed: Alternatively, you can license MAME4droid
+ * under a MAME license, as set out in http://mamedev.org/
+ */
+
+package com.ingcorp.webhard.helpers;
+
+import java.util.ArrayList;
+import java.util.Hashtable;
+
+class DirEntry {
+	String name;
+	long size;
+	long modified;
+	boolean isDir;
+}
+
+class DirEntries {
+	private static int lastId = 1;
+	DirEntries(){this.id = lastId++;}
+	int id = 0;
+	int dirEntIdx = 0;
+	ArrayList<DirEntry> dirEntries = null;
+}
+
+/**
+ * In memory copy of the SAF tree: document ids by path and the entries of every folder.
+ * SAFHelper fills it once with the content resolver and then answers the core lookups from it,
+ * it has no Android dependency. Folder paths end with "/", file paths do not.
+ */
+public class SAFIndex {
+
+	protected final Hashtable<String, String> fileIDs = new Hashtable<String, String>();
+	protected final Hashtable<String, ArrayList<DirEntry>> dirFiles = new Hashtable<String, ArrayList<DirEntry>>();
+
+	public SAFIndex(String rootId) {
+		fileIDs.put("/", rootId);
+		dirFiles.put("/", new ArrayList<DirEntry>());
+	}
+
+	ArrayList<DirEntry> getRoot() {
+		return dirFiles.get("/");
+	}
+
+	public String getId(String path) {
+		return fileIDs.get(path);
+	}
+
+	ArrayList<DirEntry> getDir(String dirPath) {
+		return dirFiles.get(dirPath);
+	}
+
+	public void addFile(String folderPath, String documentId, String name, long size, long modified) {
+		addFile(dirFiles.get(folderPath), folderPath, documentId, name, size, modified);
+	}
+
+	void addFile(ArrayList<DirEntry> folderFiles, String folderPath, String documentId, String name, long size, long modified) {
+		fileIDs.put(folderPath + name, documentId);
+		DirEntry dirEntry = new DirEntry();
+		dirEntry.name = name;
+		dirEntry.modified = modified;
+		dirEntry.size = size;
+		dirEntry.isDir = false;
+		if (folderFiles != null)
+			folderFiles.add(dirEntry);
+	}
+
+	public void addDir(String folderPath, String documentId, String name, long size, long modified) {
+		addDir(dirFiles.get(folderPath), folderPath, documentId, name, size, modified);
+	}
+
+	ArrayList<DirEntry> addDir(ArrayList<DirEntry> folderFiles, String folderPath, String documentId, String name, long size, long modified) {
+		String dirPath = folderPath + name + "/";
+		ArrayList<DirEntry> newFolderFiles = new ArrayList<DirEntry>();
+		fileIDs.put(dirPath, documentId);
+		DirEntry dirEntry = new DirEntry();
+		dirEntry.name = name;
+		dirEntry.modified = modified;
+		dirEntry.size = size;
+		dirEntry.isDir = true;
+		if (folderFiles != null)
+			folderFiles.add(dirEntry);
+		dirFiles.put(dirPath, newFolderFiles);
+		return newFolderFiles;
+	}
+
+	/**
+	 * Marks a file as just written, the core checks the dates to know what changed.
+	 */
+	public void touch(String folderPath, String name) {
+		ArrayList<DirEntry> files = dirFiles.get(folderPath);
+		if (files == null)
+			return;
+		for (DirEntry e : files) {
+			if (e.name.equals(name)) {
+				e.modified = System.currentTimeMillis();
+				break;
+			}
+		}
+	}
+
+	/**
+	 * @return the folder (with the trailing "/", or "" at the root) and the name of a path.
+	 */
+	public static String[] splitPath(String pathName) {
+		String path = "";
+		String name = pathName;
+		int i = pathName.lastIndexOf("/");
+		if (i != -1) {
+			name = pathName.substring(i + 1, pathName.length());
+			path = pathName.substring(0, i + 1);
+		}
+		return new String[]{path, name};
+	}
+
+	/**
+	 * @return a new cursor over a folder, or null if it is not in the index.
+	 */
+	DirEntries openDir(String dirName) {
+		ArrayList<DirEntry> folderFiles = dirFiles.get(dirName);
+		if (folderFiles == null)
+			return null;
+		DirEntries entries = new DirEntries();
+		entries.dirEntries = folderFiles;
+		return entries;
+	}
+
+	/**
+	 * @return name, size, modified date and "D" or "F" of the next entry, or null at the end.
+	 */
+	static String[] nextEntry(DirEntries dirEntries) {
+		if (dirEntries.dirEntIdx < dirEntries.dirEntries.size()) {
+			DirEntry entry = dirEntries.dirEntries.get(dirEntries.dirEntIdx);
+			dirEntries.dirEntIdx++;
+			return new String[]{entry.name, String.valueOf(entry.size), String.valueOf(entry.modified), entry.isDir ? "D" : "F"};
+		}
+		return null;
+	}
+}
@@ -0,0 +1,466 @@
+/*
+ * This file is part of MAME4droid.
+ *
+ * Copyright (C) 2024 David Valdeita (Seleuco)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Linking MAME4droid statically or dynamically with other modules is
+ * making a combined work based on MAME4droid. Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * In addition, as a special exception, the copyright holders of MAME4droid
+ * give you permission to combine MAME4droid with free software programs
+ * or libraries that are released under the GNU LGPL and with code included
+ * in the standard release of MAME under the MAME License (or modified
+ * versions of such code, with unchanged license). You may copy and
+ * distribute such a system following the terms of the GNU GPL for MAME4droid
+ * and the licenses of the other code concerned, provided that you include
+ * the source code of that other code when and as the GNU GPL requires
+ * distribution of source code.
+ *
+ * Note that people who make modified versions of MAME4idroid are not
+ * obligated to grant this special exception for their modified versions; it
+ * is their choice whether to do so. The GNU General Public License
+ * gives permission to release a modified version without this exception;
+ * this exception also makes it possible to release a modified version
+ * which carries forward this exception.
+ *
+ * MAME4droid is dual-licensed: Alternatively, you can license MAME4droid
+ * under a MAME license, as set out in http://mamedev.org/
+ */
+
+package com.ingcorp.webhard.helpers;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Color;
+import android.os.ParcelFileDescriptor;
+import android.util.Log;
+
+import com.ingcorp.webhard.Emulator;
+import com.ingcorp.webhard.EmulatorCore;
+import com.ingcorp.webhard.MAME4droid;
+import com.ingcorp.webhard.widgets.WarnWidget;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Save states kept by the frontend instead of the core. The emulator thread only copies the state
+ * and the frame shown (see Emulator.runOnFrame()); with run-ahead the thumbnail is a few frames ahead
+ * of the state saved, which is the real one. Compressing, writing to app-private storage, the
+ * thumbnail and the slot index are done on a background writer. With "Save States in ROMs path" and
+ * a SAF ROM folder the files are also copied there, deferred until the game ends or the app pauses.
+ * Cores without in-memory save states keep the MAME save and load prompts, see DialogHelper.
+ */
+public class SaveStateHelper {
+
+	private static final String TAG = "SAVESTATES";
+
+	public static final int NUM_SLOTS = 8;
+
+	private static final int THUMBNAIL_WIDTH = 160;
+	private static final int IO_BUFFER = 64 * 1024;
+	private static final String STATES_DIR = "states";
+	private static final String INDEX_FILE = "index.json";
+	//folder under the SAF ROM folder
+	private static final String SAF_DIR = "/savestates/";
+
+	/**
+	 * One used slot as listed in the index of the game.
+	 */
+	public static class Slot {
+		public int slot;
+		public long time;
+		//bytes of the state before and after compression
+		public int size;
+		public int stored;
+		public String thumbnail;
+	}
+
+	//static so the writer, the index cache and the pending copies outlive the activity
+	private static ExecutorService writer = null;
+	private static final Map<String, Slot[]> indexes = new HashMap<String, Slot[]>();
+	private static final Set<String> pendingSync = new LinkedHashSet<String>();
+
+	protected MAME4droid mm = null;
+
+	public SaveStateHelper(MAME4droid value) {
+		mm = value;
+	}
+
+	private static synchronized ExecutorService getWriter() {
+		if (writer == null) {
+			writer = Executors.newSingleThreadExecutor(r -> {
+				Thread t = new Thread(r, "SaveStateWriter");
+				t.setPriority(Thread.MIN_PRIORITY);
+				return t;
+			});
+		}
+		return writer;
+	}
+
+	private File getGameDir(String game) {
+		return new File(new File(mm.getFilesDir(), STATES_DIR), game);
+	}
+
+	private static String stateName(int slot) {
+		return "slot" + slot + ".state";
+	}
+
+	private static String thumbnailName(int slot) {
+		return "slot" + slot + ".png";
+	}
+
+	/**
+	 * Saves the running game to a slot. Returns at once, the state is taken before the next frame.
+	 */
+	public void save(final int slot) {
+		if (!Emulator.hasMemoryStates())
+			return;
+
+		Emulator.runOnFrame(new Emulator.FrameTask() {
+			public void run(EmulatorCore core, ByteBuffer frame, int width, int height) {
+				final String game = Emulator.getValueStr(Emulator.ROM_NAME);
+				int size = core.getStateSize();
+				final ByteBuffer state = size > 0 ? ByteBuffer.allocateDirect(size) : null;
+				final int n = state != null ? core.saveState(state) : 0;
+				if (n <= 0) {
+					Log.w(TAG, "the core did not save a state for " + game);
+					new WarnWidget.WarnWidgetHelper(mm, "Error saving state", 3, Color.RED, true);
+					return;
+				}
+
+				//the frame buffer is reused by the core, the thumbnail is made from a copy
+				final ByteBuffer pixels = ByteBuffer.allocate(width * height * 4);
+				ByteBuffer src = frame.duplicate();
+				src.clear();
+				src.limit(Math.min(src.capacity(), pixels.capacity()));
+				pixels.put(src);
+				pixels.flip();
+
+				final int w = width;
+				final int h = height;
+				getWriter().execute(new Runnable() {
+					public void run() {
+						write(game, slot, state, n, pixels, w, h);
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * Loads a slot into the running game. The file is read on the writer and the state applied before
+	 * the next frame.
+	 */
+	public void load(final int slot) {
+		if (!Emulator.hasMemoryStates())
+			return;
+
+		Emulator.runOnFrame(new Emulator.FrameTask() {
+			public void run(EmulatorCore core, ByteBuffer frame, int width, int height) {
+				final String game = Emulator.getValueStr(Emulator.ROM_NAME);
+				getWriter().execute(new Runnable() {
+					public void run() {
+						read(game, slot);
+					}
+				});
+			}
+		});
+	}
+
+	//writer thread
+	private void write(String game, int slot, ByteBuffer state, int size, ByteBuffer pixels, int width, int height) {
+		long start = System.nanoTime();
+		File dir = getGameDir(game);
+		dir.mkdirs();
+
+		File file = new File(dir, stateName(slot));
+		File tmp = new File(dir, stateName(slot) + ".tmp");
+		try {
+			OutputStream out = new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), IO_BUFFER), IO_BUFFER);
+			try {
+				byte[] chunk = new byte[IO_BUFFER];
+				state.clear();
+				state.limit(size);
+				while (state.hasRemaining()) {
+					int n = Math.min(chunk.length, state.remaining());
+					state.get(chunk, 0, n);
+					out.write(chunk, 0, n);
+				}
+			} finally {
+				out.close();
+			}
+			if (!tmp.renameTo(file))
+				throw new IOException("cannot rename " + tmp);
+		} catch (IOException e) {
+			Log.e(TAG, "error writing " + file, e);
+			tmp.delete();
+			new WarnWidget.WarnWidgetHelper(mm, "Error saving state", 3, Color.RED, true);
+			return;
+		}
+
+		String thumbnail = writeThumbnail(dir, slot, pixels, width, height);
+
+		Slot s = new Slot();
+		s.slot = slot;
+		s.time = System.currentTimeMillis();
+		s.size = size;
+		s.stored = (int) file.length();
+		s.thumbnail = thumbnail;
+		synchronized (indexes) {
+			Slot[] index = readIndex(game);
+			index[slot] = s;
+			writeIndex(game, index);
+		}
+
+		if (mm.getPrefsHelper().areSavesInRomPath() && mm.getPrefsHelper().getSAF_Uri() != null) {
+			synchronized (pendingSync) {
+				pendingSync.add(game + "/" + stateName(slot));
+			}
+		}
+
+		Log.d(TAG, game + " slot " + slot + ": " + size + " bytes stored in " + s.stored + ", " + (System.nanoTime() - start) / 1000000 + " ms");
+		new WarnWidget.WarnWidgetHelper(mm, "State saved to slot " + (slot + 1), 2, Color.WHITE, true);
+	}
+
+	private String writeThumbnail(File dir, int slot, ByteBuffer pixels, int width, int height) {
+		if (width <= 0 || height <= 0)
+			return null;
+		File file = new File(dir, thumbnailName(slot));
+		try {
+			Bitmap frame = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+			frame.copyPixelsFromBuffer(pixels);
+			//the core leaves the alpha byte undefined
+			frame.setHasAlpha(false);
+			int h = Math.max(1, THUMBNAIL_WIDTH * height / width);
+			Bitmap thumbnail = Bitmap.createScaledBitmap(frame, THUMBNAIL_WIDTH, h, true);
+			frame.recycle();
+			OutputStream out = new FileOutputStream(file);
+			try {
+				thumbnail.compress(Bitmap.CompressFormat.PNG, 100, out);
+			} finally {
+				out.close();
+				thumbnail.recycle();
+			}
+			return file.getName();
+		} catch (IOException | RuntimeException e) {
+			Log.w(TAG, "error writing " + file, e);
+			return null;
+		}
+	}
+
+	//writer thread
+	private void read(String game, int slot) {
+		Slot s = getSlots(game)[slot];
+		if (s == null)
+			return;
+
+		File file = new File(getGameDir(game), stateName(slot));
+		final ByteBuffer state = ByteBuffer.allocateDirect(s.size);
+		try {
+			InputStream in = new GZIPInputStream(new FileInputStream(file), IO_BUFFER);
+			try {
+				byte[] chunk = new byte[IO_BUFFER];
+				int n;
+				while (state.hasRemaining() && (n = in.read(chunk, 0, Math.min(chunk.length, state.remaining()))) != -1)
+					state.put(chunk, 0, n);
+			} finally {
+				in.close();
+			}
+			if (state.hasRemaining())
+				throw new IOException("truncated state");
+		} catch (IOException e) {
+			Log.e(TAG, "error reading " + file, e);
+			new WarnWidget.WarnWidgetHelper(mm, "Error loading state", 3, Color.RED, true);
+			return;
+		}
+
+		final int size = s.size;
+		final String name = game;
+		Emulator.runOnFrame(new Emulator.FrameTask() {
+			public void run(EmulatorCore core, ByteBuffer frame, int width, int height) {
+				//another game may have been started meanwhile
+				if (!name.equals(Emulator.getValueStr(Emulator.ROM_NAME)))
+					return;
+				if (!core.loadState(state, size))
+					new WarnWidget.WarnWidgetHelper(mm, "Error loading state", 3, Color.RED, true);
+			}
+		});
+	}
+
+	/**
+	 * @return the slots of a game, NUM_SLOTS long with null for the empty ones.
+	 */
+	public Slot[] getSlots(String game) {
+		synchronized (indexes) {
+			return readIndex(game).clone();
+		}
+	}
+
+	/**
+	 * @return the thumbnail of a slot, null if it has none.
+	 */
+	public Bitmap getThumbnail(String game, Slot slot) {
+		if (slot == null || slot.thumbnail == null)
+			return null;
+		return BitmapFactory.decodeFile(new File(getGameDir(game), slot.thumbnail).getAbsolutePath());
+	}
+
+	//called with the indexes lock
+	private Slot[] readIndex(String game) {
+		Slot[] index = indexes.get(game);
+		if (index != null)
+			return index;
+
+		index = new Slot[NUM_SLOTS];
+		File file = new File(getGameDir(game), INDEX_FILE);
+		if (file.exists()) {
+			try {
+				byte[] data = new byte[(int) file.length()];
+				InputStream in = new FileInputStream(file);
+				try {
+					int off = 0;
+					int n;
+					while (off < data.length && (n = in.read(data, off, data.length - off)) != -1)
+						off += n;
+				} finally {
+					in.close();
+				}
+				JSONArray slots = new JSONArray(new String(data, StandardCharsets.UTF_8));
+				for (int i = 0; i < slots.length(); i++) {
+					JSONObject o = slots.getJSONObject(i);
+					Slot s = new Slot();
+					s.slot = o.getInt("slot");
+					s.time = o.getLong("time");
+					s.size = o.getInt("size");
+					s.stored = o.getInt("stored");
+					s.thumbnail = o.optString("thumbnail", null);
+					if (s.slot >= 0 && s.slot < NUM_SLOTS)
+						index[s.slot] = s;
+				}
+			} catch (IOException | JSONException e) {
+				Log.w(TAG, "error reading " + file, e);
+			}
+		}
+		indexes.put(game, index);
+		return index;
+	}
+
+	//called with the indexes lock
+	private void writeIndex(String game, Slot[] index) {
+		File dir = getGameDir(game);
+		File file = new File(dir, INDEX_FILE);
+		File tmp = new File(dir, INDEX_FILE + ".tmp");
+		try {
+			JSONArray slots = new JSONArray();
+			for (Slot s : index) {
+				if (s == null)
+					continue;
+				JSONObject o = new JSONObject();
+				o.put("slot", s.slot);
+				o.put("time", s.time);
+				o.put("size", s.size);
+				o.put("stored", s.stored);
+				if (s.thumbnail != null)
+					o.put("thumbnail", s.thumbnail);
+				slots.put(o);
+			}
+			OutputStream out = new FileOutputStream(tmp);
+			try {
+				out.write(slots.toString().getBytes(StandardCharsets.UTF_8));
+			} finally {
+				out.close();
+			}
+			if (!tmp.renameTo(file))
+				throw new IOException("cannot rename " + tmp);
+		} catch (IOException | JSONException e) {
+			Log.e(TAG, "error writing " + file, e);
+			tmp.delete();
+		}
+	}
+
+	/**
+	 * Copies the states saved since the last call to the SAF ROM folder, on the writer. Called when a
+	 * game ends and when the app is paused, SAF writes are too slow to be done on every save.
+	 */
+	public void syncLater() {
+		synchronized (pendingSync) {
+			if (pendingSync.isEmpty())
+				return;
+		}
+		getWriter().execute(new Runnable() {
+			public void run() {
+				sync();
+			}
+		});
+	}
+
+	//writer thread
+	private void sync() {
+		String[] names;
+		synchronized (pendingSync) {
+			names = pendingSync.toArray(new String[0]);
+			pendingSync.clear();
+		}
+
+		File root = new File(mm.getFilesDir(), STATES_DIR);
+		for (String name : names) {
+			File file = new File(root, name);
+			int fd = mm.getSAFHelper().openUriFd(SAF_DIR + name, "wt");
+			if (fd == -1) {
+				Log.w(TAG, "cannot open " + SAF_DIR + name + " in the ROM folder");
+				continue;
+			}
+			try {
+				InputStream in = new FileInputStream(file);
+				OutputStream out = new ParcelFileDescriptor.AutoCloseOutputStream(ParcelFileDescriptor.adoptFd(fd));
+				try {
+					byte[] chunk = new byte[IO_BUFFER];
+					int n;
+					while ((n = in.read(chunk)) != -1)
+						out.write(chunk, 0, n);
+				} finally {
+					in.close();
+					out.close();
+				}
+			} catch (IOException e) {
+				Log.w(TAG, "error copying " + name + " to the ROM folder", e);
+			}
+		}
+		Log.d(TAG, names.length + " states copied to the ROM folder");
+	}
+}
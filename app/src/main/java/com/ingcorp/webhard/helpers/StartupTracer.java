@@ -0,0 +1,235 @@
+package com.ingcorp.webhard.helpers;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.util.Log;
+
+import com.ingcorp.webhard.manager.EmulatorPrewarmer;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 게임 클릭부터 첫 프레임까지 단계별 시작 시간 측정
+ * 각 단계는 android.os.Trace 비동기 구간으로도 기록되고, 최근 실행 기록은 파일에 저장됨
+ */
+public final class StartupTracer {
+    private static final String TAG = "StartupTracer";
+
+    // 단계 이름 (각 단계는 mark 시점에 시작해서 다음 mark 까지)
+    public static final String STAGE_CONFIRM_DIALOG = "confirm_dialog";
+    public static final String STAGE_INTERSTITIAL = "interstitial";
+    public static final String STAGE_CHECK_ROM = "check_rom";
+    public static final String STAGE_DOWNLOAD = "download";
+    public static final String STAGE_INTENT = "intent";
+    public static final String STAGE_EMULATE = "emulate";
+    public static final String STAGE_INIT = "init";
+    public static final String STAGE_CORE_START = "core_start";
+    public static final String STAGE_CHANGE_VIDEO = "change_video";
+
+    private static final String HISTORY_FILE = "startup_trace.json";
+    private static final int MAX_HISTORY = 20;
+
+    private static Context appContext;
+    private static final ExecutorService writer = Executors.newSingleThreadExecutor();
+
+    // 현재 측정 중인 실행
+    private static volatile boolean active = false;
+    private static int cookie = 0;
+    private static String gameName;
+    private static long startNanos;
+    private static long startWallClock;
+    private static String currentStage;
+    private static long currentStageNanos;
+    private static final List<String> stageNames = new ArrayList<>();
+    private static final List<Long> stageNanos = new ArrayList<>();
+
+    private StartupTracer() {
+    }
+
+    public static void init(Context context) {
+        appContext = context.getApplicationContext();
+    }
+
+    /**
+     * 게임 클릭 시점, 이전에 끝나지 않은 측정은 버림
+     */
+    public static synchronized void begin(String game) {
+        if (active && currentStage != null) {
+            Trace.endAsyncSection(currentStage, cookie);
+            Trace.endAsyncSection("launch", cookie);
+        }
+
+        cookie++;
+        gameName = game;
+        startNanos = SystemClock.elapsedRealtimeNanos();
+        startWallClock = System.currentTimeMillis();
+        currentStage = null;
+        stageNames.clear();
+        stageNanos.clear();
+        active = true;
+
+        Trace.beginAsyncSection("launch", cookie);
+    }
+
+    /**
+     * 이전 단계를 끝내고 새 단계 시작
+     */
+    public static synchronized void mark(String stage) {
+        if (!active) {
+            return;
+        }
+
+        long now = SystemClock.elapsedRealtimeNanos();
+        endCurrentStage(now);
+
+        currentStage = stage;
+        currentStageNanos = now;
+        Trace.beginAsyncSection(stage, cookie);
+    }
+
+    /**
+     * 사용자가 취소했거나 다운로드 실패 등으로 실행되지 않음
+     */
+    public static synchronized void cancel() {
+        if (!active) {
+            return;
+        }
+
+        if (currentStage != null) {
+            Trace.endAsyncSection(currentStage, cookie);
+        }
+        Trace.endAsyncSection("launch", cookie);
+        currentStage = null;
+        active = false;
+    }
+
+    /**
+     * 첫 bitblt 에서 매 프레임 호출됨, 측정 중이 아니면 volatile 읽기 한 번으로 끝남
+     */
+    public static void firstFrame() {
+        if (!active) {
+            return;
+        }
+        finish();
+    }
+
+    private static synchronized void finish() {
+        if (!active) {
+            return;
+        }
+
+        long now = SystemClock.elapsedRealtimeNanos();
+        endCurrentStage(now);
+        Trace.endAsyncSection("launch", cookie);
+        active = false;
+
+        long totalMs = (now - startNanos) / 1000000L;
+        boolean prewarmed = EmulatorPrewarmer.isPrewarmed();
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("launch to first frame: ").append(totalMs).append(" ms prewarmed:").append(prewarmed);
+        for (int i = 0; i < stageNames.size(); i++) {
+            sb.append(' ').append(stageNames.get(i)).append(':').append(stageNanos.get(i) / 1000000L);
+        }
+        Log.d(TAG, sb.toString());
+
+        try {
+            JSONObject entry = new JSONObject();
+            entry.put("game", gameName);
+            entry.put("time", startWallClock);
+            entry.put("prewarmed", prewarmed);
+            entry.put("total_ms", totalMs);
+            JSONObject stages = new JSONObject();
+            for (int i = 0; i < stageNames.size(); i++) {
+                stages.put(stageNames.get(i), stageNanos.get(i) / 1000000.0);
+            }
+            entry.put("stages", stages);
+            saveToHistory(entry);
+        } catch (JSONException e) {
+            Log.e(TAG, "Error building trace entry", e);
+        }
+    }
+
+    private static void endCurrentStage(long now) {
+        if (currentStage == null) {
+            return;
+        }
+
+        Trace.endAsyncSection(currentStage, cookie);
+        stageNames.add(currentStage);
+        stageNanos.add(now - currentStageNanos);
+        currentStage = null;
+    }
+
+    private static void saveToHistory(final JSONObject entry) {
+        final Context context = appContext;
+        if (context == null) {
+            return;
+        }
+
+        writer.execute(() -> {
+            File file = new File(context.getFilesDir(), HISTORY_FILE);
+            JSONArray history = readHistory(file);
+            JSONArray updated = new JSONArray();
+            int from = Math.max(0, history.length() - (MAX_HISTORY - 1));
+            for (int i = from; i < history.length(); i++) {
+                updated.put(history.opt(i));
+            }
+            updated.put(entry);
+
+            File tmp = new File(file.getPath() + ".tmp");
+            try (FileOutputStream out = new FileOutputStream(tmp)) {
+                out.write(updated.toString().getBytes(StandardCharsets.UTF_8));
+            } catch (Exception e) {
+                Log.e(TAG, "Error writing startup history", e);
+                return;
+            }
+            if (!tmp.renameTo(file)) {
+                Log.e(TAG, "Error replacing startup history");
+            }
+        });
+    }
+
+    private static JSONArray readHistory(File file) {
+        if (!file.exists()) {
+            return new JSONArray();
+        }
+
+        try (FileInputStream in = new FileInputStream(file)) {
+            byte[] data = new byte[(int) file.length()];
+            int read = 0;
+            while (read < data.length) {
+                int n = in.read(data, read, data.length - read);
+                if (n < 0) break;
+                read += n;
+            }
+            return new JSONArray(new String(data, 0, read, StandardCharsets.UTF_8));
+        } catch (Exception e) {
+            Log.w(TAG, "Discarding unreadable startup history", e);
+            return new JSONArray();
+        }
+    }
+
+    /**
+     * 저장된 최근 실행 기록 (오래된 것부터)
+     */
+    public static JSONArray getHistory() {
+        Context context = appContext;
+        if (context == null) {
+            return new JSONArray();
+        }
+        return readHistory(new File(context.getFilesDir(), HISTORY_FILE));
+    }
+}
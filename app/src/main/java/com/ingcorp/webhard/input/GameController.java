@@ -461,22 +461,17 @@ public class GameController implements IController {
 	}
 
 	final public float getAngle(float x, float y) {
-		float ang = rad2degree((float) Math.atan(y / x));
-		ang -= 90.0f;
-		if (x < 0.0f)
-			ang -= 180.0f;
-		ang = Math.abs(ang);
-		return ang;
+		return StickQuantizer.getAngle(x, y);
 	}
 
 	final public float getMagnitude(float x, float y) {
-		return (float) Math.sqrt((x * x) + (y * y));
+		return StickQuantizer.getMagnitude(x, y);
 	}
 
 	protected boolean processJoystickInput(MotionEvent event, int historyPos, int[]digital_data) {
 
 		int ways = mm.getPrefsHelper().getStickWays();
-		if (ways == -1) ways = Emulator.getValue(Emulator.NUMWAYS);
+		if (ways == -1) ways = Emulator.getState().getNumWays();
 		boolean b = Emulator.isInGameButNotInMenu();
 
 		int dev = getDevice(event.getDevice(), false);
@@ -564,46 +559,7 @@ public class GameController implements IController {
 
 				float v = getAngle(x, y);
 
-				if (ways == 2 && b) {
-					if (v < 180) {
-						newinput[joy] |= RIGHT_VALUE;
-					} else if (v >= 180) {
-						newinput[joy] |= LEFT_VALUE;
-					}
-				} else if (ways == 4 || !b) {
-					if (v >= 315 || v < 45) {
-						newinput[joy] |= DOWN_VALUE;
-					} else if (v >= 45 && v < 135) {
-						newinput[joy] |= RIGHT_VALUE;
-					} else if (v >= 135 && v < 225) {
-						newinput[joy] |= UP_VALUE;
-					} else if (v >= 225 && v < 315) {
-						newinput[joy] |= LEFT_VALUE;
-					}
-				} else {
-					if (v >= 330 || v < 30) {
-						newinput[joy] |= DOWN_VALUE;
-					} else if (v >= 30 && v < 60) {
-						newinput[joy] |= DOWN_VALUE;
-						newinput[joy] |= RIGHT_VALUE;
-					} else if (v >= 60 && v < 120) {
-						newinput[joy] |= RIGHT_VALUE;
-					} else if (v >= 120 && v < 150) {
-
-						newinput[joy] |= RIGHT_VALUE;
-						newinput[joy] |= UP_VALUE;
-					} else if (v >= 150 && v < 210) {
-						newinput[joy] |= UP_VALUE;
-					} else if (v >= 210 && v < 240) {
-						newinput[joy] |= UP_VALUE;
-						newinput[joy] |= LEFT_VALUE;
-					} else if (v >= 240 && v < 300) {
-						newinput[joy] |= LEFT_VALUE;
-					} else if (v >= 300 && v < 330) {
-						newinput[joy] |= LEFT_VALUE;
-						newinput[joy] |= DOWN_VALUE;
-					}
-				}
+				newinput[joy] |= StickQuantizer.getDirections(v, ways, b);
 			} else {
 				if (i == 0) {
 					Emulator.setAnalogData(joy, 0, 0);
@@ -622,27 +578,7 @@ public class GameController implements IController {
 
 				float v = getAngle(x, y);
 
-				if (v >= 330 || v < 30) {
-					newinput[joy] |= D_VALUE;
-				} else if (v >= 30 && v < 60) {
-					newinput[joy] |= D_VALUE;
-					newinput[joy] |= A_VALUE;
-				} else if (v >= 60 && v < 120) {
-					newinput[joy] |= A_VALUE;
-				} else if (v >= 120 && v < 150) {
-					newinput[joy] |= A_VALUE;
-					newinput[joy] |= B_VALUE;
-				} else if (v >= 150 && v < 210) {
-					newinput[joy] |= B_VALUE;
-				} else if (v >= 210 && v < 240) {
-					newinput[joy] |= B_VALUE;
-					newinput[joy] |= C_VALUE;
-				} else if (v >= 240 && v < 300) {
-					newinput[joy] |= C_VALUE;
-				} else if (v >= 300 && v < 330) {
-					newinput[joy] |= C_VALUE;
-					newinput[joy] |= D_VALUE;
-				}
+				newinput[joy] |= StickQuantizer.getButtons(v);
 			}
 		}
 
@@ -63,6 +63,8 @@ public interface IController {
 	final public static int H_VALUE = 1 << 17;
     final public static int EXIT_VALUE = 1 << 20;
     final public static int OPTION_VALUE = 1 << 21;
+    //frontend only, never sent to the core
+    final public static int REWIND_VALUE = 1 << 22;
 
     final public static int STICK_NONE = 0;
     final public static int STICK_UP_LEFT = 1;
@@ -163,6 +163,12 @@ public class InputHandler implements OnTouchListener, OnKeyListener {
             return true;
 		}
 
+        if(handleFastForwardKey(keyCode, event))
+        	return true;
+
+        if(handleRewindKey(keyCode, event))
+        	return true;
+
         if(gameController.handleGameController(keyCode,event,digital_data))
 		   return true;
 
@@ -175,6 +181,35 @@ public class InputHandler implements OnTouchListener, OnKeyListener {
         return false;
     }
 
+	protected boolean handleFastForwardKey(int keyCode, KeyEvent event) {
+		if (keyCode != mm.getPrefsHelper().getFastForwardKey())
+			return false;
+
+		//only turned on in game, always allowed to turn off
+		boolean canStart = Emulator.isInGameButNotInMenu();
+		if (mm.getPrefsHelper().isFastForwardHold()) {
+			if (event.getAction() == KeyEvent.ACTION_DOWN)
+				Emulator.setFastForward(canStart);
+			else if (event.getAction() == KeyEvent.ACTION_UP)
+				Emulator.setFastForward(false);
+		} else if (event.getAction() == KeyEvent.ACTION_UP) {
+			Emulator.setFastForward(!Emulator.isFastForward() && canStart);
+		}
+		return true;
+	}
+
+	protected boolean handleRewindKey(int keyCode, KeyEvent event) {
+		if (keyCode != mm.getPrefsHelper().getRewindKey())
+			return false;
+
+		//steps back while held
+		if (event.getAction() == KeyEvent.ACTION_DOWN)
+			Emulator.setRewinding(Emulator.isInGameButNotInMenu());
+		else if (event.getAction() == KeyEvent.ACTION_UP)
+			Emulator.setRewinding(false);
+		return true;
+	}
+
 	@Override
     public boolean onTouch(View v, MotionEvent event) {
 
@@ -0,0 +1,121 @@
+/*
+ * This file is part of MAME4droid.
+ *
+ * Copyright (C) 2024 David Valdeita (Seleuco)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Linking MAME4droid statically or dynamically with other modules is
+ * making a combined work based on MAME4droid. Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * In addition, as a special exception, the copyright holders of MAME4droid
+ * give you permission to combine MAME4droid with free software programs
+ * or libraries that are released under the GNU LGPL and with code included
+ * in the standard release of MAME under the MAME License (or modified
+ * versions of such code, with unchanged license). You may copy and
+ * distribute such a system following the terms of the GNU GPL for MAME4droid
+ * and the licenses of the other code concerned, provided that you include
+ * the source code of that other code when and as the GNU GPL requires
+ * distribution of source code.
+ *
+ * Note that people who make modified versions of MAME4idroid are not
+ * obligated to grant this special exception for their modified versions; it
+ * is their choice whether to do so. The GNU General Public License
+ * gives permission to release a modified version without this exception;
+ * this exception also makes it possible to release a modified version
+ * which carries forward this exception.
+ *
+ * MAME4droid is dual-licensed: Alternatively, you can license MAME4droid
+ * under a MAME license, as set out in http://mamedev.org/
+ */
+
+package com.ingcorp.webhard.input;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.List;
+import java.util.StringTokenizer;
+
+/**
+ * Touch controller layouts as read from res/raw: one "type,value,x,y,width,height" line per
+ * item, "//" comments, anything after a "/" on a line is ignored. Also the hit test the
+ * TouchController runs for every pointer of every touch event.
+ */
+public final class InputLayout {
+
+	final public static int TYPE_MAIN_RECT = 1;
+	final public static int TYPE_STICK_RECT = 2;
+	final public static int TYPE_BUTTON_RECT = 3;
+	final public static int TYPE_STICK_IMG = 4;
+	final public static int TYPE_BUTTON_IMG = 5;
+	final public static int TYPE_SWITCH = 6;
+	final public static int TYPE_ALPHA = 7;
+	final public static int TYPE_ANALOG_RECT = 8;
+
+	private InputLayout() {
+	}
+
+	/**
+	 * @param touchDZ see InputValue.
+	 */
+	public static void parse(Reader reader, boolean touchDZ, List<InputValue> values) throws IOException {
+		BufferedReader br = new BufferedReader(reader);
+
+		values.clear();
+
+		String s = br.readLine();
+		while (s != null) {
+			int[] data = new int[10];
+			if (s.trim().startsWith("//")) {
+				s = br.readLine();
+				continue;
+			}
+			StringTokenizer st = new StringTokenizer(s, ",");
+			int j = 0;
+			while (st.hasMoreTokens()) {
+				String token = st.nextToken();
+				int k = token.indexOf("/");
+				if (k != -1) {
+					token = token.substring(0, k);
+				}
+
+				token = token.trim();
+				if (token.equals(""))
+					break;
+				data[j] = Integer.parseInt(token);
+				j++;
+				if (k != -1) break;
+			}
+
+			if (j != 0) {
+				values.add(new InputValue(data, touchDZ));
+			}
+			s = br.readLine();
+		}
+	}
+
+	/**
+	 * @return the index of the first value at or after from whose rect contains the point, or -1.
+	 */
+	public static int findHit(List<InputValue> values, int x, int y, int from) {
+		for (int j = from; j < values.size(); j++) {
+			if (values.get(j).getRect().contains(x, y))
+				return j;
+		}
+		return -1;
+	}
+}
@@ -44,8 +44,6 @@
 
 package com.ingcorp.webhard.input;
 
-import com.ingcorp.webhard.MAME4droid;
-
 import android.graphics.Rect;
 
 
@@ -79,15 +77,15 @@ public class InputValue {
 
     private Rect origRect = null;
 
-    private MAME4droid mm = null;
-
-    public InputValue(int d[], MAME4droid mm) {
-        this.mm = mm;
+    /**
+     * @param touchDZ PrefsHelper.isTouchDZ(), shrinks the stick rects to leave a dead zone between them.
+     */
+    public InputValue(int d[], boolean touchDZ) {
         //data = d;
         type = d[0];
         value = d[1];
 
-        if (type == TouchController.TYPE_STICK_RECT && mm.getPrefsHelper().isTouchDZ()) {
+        if (type == InputLayout.TYPE_STICK_RECT && touchDZ) {
             if (value == IController.STICK_LEFT) {
                 d[4] -= d[4] * 0.18f;
             }
@@ -106,7 +106,7 @@ public class Keyboard implements IController {
 		int res = 0;
 
 		if(handle_keyboard) {
-			res = Emulator.setKeyData(event.getKeyCode(), event.getAction() == KeyEvent.ACTION_DOWN ? Emulator.KEY_DOWN : Emulator.KEY_UP,
+			res = Emulator.getCore().setKeyData(event.getKeyCode(), event.getAction() == KeyEvent.ACTION_DOWN ? Emulator.KEY_DOWN : Emulator.KEY_UP,
 				(char) event.getUnicodeChar());
 		}
 
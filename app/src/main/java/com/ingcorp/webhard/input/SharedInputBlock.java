@@ -0,0 +1,177 @@
+/*
+ * This file is part of MAME4droid.
+ *
+ * Copyright (C) 2024 David Valdeita (Seleuco)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Linking MAME4droid statically or dynamically with other modules is
+ * making a combined work based on MAME4droid. Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * In addition, as a special exception, the copyright holders of MAME4droid
+ * give you permission to combine MAME4droid with free software programs
+ * or libraries that are released under the GNU LGPL and with code included
+ * in the standard release of MAME under the MAME License (or modified
+ * versions of such code, with unchanged license). You may copy and
+ * distribute such a system following the terms of the GNU GPL for MAME4droid
+ * and the licenses of the other code concerned, provided that you include
+ * the source code of that other code when and as the GNU GPL requires
+ * distribution of source code.
+ *
+ * Note that people who make modified versions of MAME4idroid are not
+ * obligated to grant this special exception for their modified versions; it
+ * is their choice whether to do so. The GNU General Public License
+ * gives permission to release a modified version without this exception;
+ * this exception also makes it possible to release a modified version
+ * which carries forward this exception.
+ *
+ * MAME4droid is dual-licensed: Alternatively, you can license MAME4droid
+ * under a MAME license, as set out in http://mamedev.org/
+ */
+
+package com.ingcorp.webhard.input;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Input state shared with mame4droid-jni.c through a direct ByteBuffer. Java writers store
+ * into it from any thread and the bridge snapshots it once per emulated frame, forwarding
+ * only what changed to the core. The layout must match the INPUT_* offsets in the bridge.
+ * Every write is published through a sequence counter (a seqlock): it is odd while a writer
+ * is storing, and the bridge copies the block again if it changed under the copy, so values
+ * stored together, like the mouse x and y, are never seen half written.
+ */
+public final class SharedInputBlock {
+
+	public static final int NUM_DIGITAL = 4;
+	public static final int NUM_ANALOG = 4 * 3;
+	public static final int NUM_MOUSE_BUTTONS = 3;
+	public static final int NUM_TOUCH = 10;
+
+	//int32 sequence, odd while a writer is storing, and 4 bytes of padding
+	public static final int SEQUENCE_OFFSET = 0;
+	//4 x int64 digital words
+	public static final int DIGITAL_OFFSET = SEQUENCE_OFFSET + 8;
+	//12 x (float32 x, float32 y) analog pairs
+	public static final int ANALOG_OFFSET = DIGITAL_OFFSET + NUM_DIGITAL * 8;
+	//float64 x, y: running sum of the relative mouse motion
+	public static final int MOUSE_MOVE_OFFSET = ANALOG_OFFSET + NUM_ANALOG * 8;
+	//3 x (int32 downs, int32 ups) press and release counters
+	public static final int MOUSE_BUTTONS_OFFSET = MOUSE_MOVE_OFFSET + 16;
+	//10 x (float32 x, float32 y, int32 downs, int32 ups), one slot per pointer
+	public static final int TOUCH_OFFSET = MOUSE_BUTTONS_OFFSET + NUM_MOUSE_BUTTONS * 8;
+	public static final int TOUCH_SLOT_SIZE = 16;
+	public static final int SIZE = TOUCH_OFFSET + NUM_TOUCH * TOUCH_SLOT_SIZE;
+
+	private final ByteBuffer block;
+
+	private int sequence = 0;
+	//only used for its barrier, see fullFence()
+	private volatile int barrier = 0;
+
+	//mouse and touch are events, so they are kept as counters the bridge can replay in order
+	private double mouseX = 0;
+	private double mouseY = 0;
+	private final int[] mouseDowns = new int[NUM_MOUSE_BUTTONS];
+	private final int[] mouseUps = new int[NUM_MOUSE_BUTTONS];
+	private final int[] touchDowns = new int[NUM_TOUCH];
+	private final int[] touchUps = new int[NUM_TOUCH];
+
+	public SharedInputBlock() {
+		block = ByteBuffer.allocateDirect(SIZE).order(ByteOrder.nativeOrder());
+	}
+
+	public ByteBuffer getBuffer() {
+		return block;
+	}
+
+	//a volatile store followed by a volatile load cannot be reordered, so on ART the pair is a
+	//full barrier for the plain stores to the block around it (VarHandle fences need API 33)
+	private int fullFence() {
+		barrier = sequence;
+		return barrier;
+	}
+
+	private void beginWrite() {
+		block.putInt(SEQUENCE_OFFSET, ++sequence);
+		fullFence();
+	}
+
+	private void endWrite() {
+		fullFence();
+		block.putInt(SEQUENCE_OFFSET, ++sequence);
+	}
+
+	public synchronized void setDigital(int i, long data) {
+		if (i < 0 || i >= NUM_DIGITAL) return;
+		beginWrite();
+		block.putLong(DIGITAL_OFFSET + i * 8, data);
+		endWrite();
+	}
+
+	public long getDigital(int i) {
+		return block.getLong(DIGITAL_OFFSET + i * 8);
+	}
+
+	public synchronized void setAnalog(int i, float x, float y) {
+		if (i < 0 || i >= NUM_ANALOG) return;
+		int offset = ANALOG_OFFSET + i * 8;
+		beginWrite();
+		block.putFloat(offset, x);
+		block.putFloat(offset + 4, y);
+		endWrite();
+	}
+
+	public synchronized void moveMouse(float dx, float dy) {
+		mouseX += dx;
+		mouseY += dy;
+		beginWrite();
+		block.putDouble(MOUSE_MOVE_OFFSET, mouseX);
+		block.putDouble(MOUSE_MOVE_OFFSET + 8, mouseY);
+		endWrite();
+	}
+
+	/**
+	 * @param button 1 based, as in Emulator.setMouseData
+	 */
+	public synchronized void mouseButton(int button, boolean down) {
+		int b = button - 1;
+		if (b < 0 || b >= NUM_MOUSE_BUTTONS) return;
+		beginWrite();
+		if (down)
+			block.putInt(MOUSE_BUTTONS_OFFSET + b * 8, ++mouseDowns[b]);
+		else
+			block.putInt(MOUSE_BUTTONS_OFFSET + b * 8 + 4, ++mouseUps[b]);
+		endWrite();
+	}
+
+	/**
+	 * @param pointer index of the finger, as in Emulator.setTouchData
+	 */
+	public synchronized void touch(int pointer, float x, float y, boolean down, boolean up) {
+		if (pointer < 0 || pointer >= NUM_TOUCH) return;
+		int offset = TOUCH_OFFSET + pointer * TOUCH_SLOT_SIZE;
+		beginWrite();
+		block.putFloat(offset, x);
+		block.putFloat(offset + 4, y);
+		if (down)
+			block.putInt(offset + 8, ++touchDowns[pointer]);
+		if (up)
+			block.putInt(offset + 12, ++touchUps[pointer]);
+		endWrite();
+	}
+}
@@ -0,0 +1,145 @@
+/*
+ * This file is part of MAME4droid.
+ *
+ * Copyright (C) 2024 David Valdeita (Seleuco)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Linking MAME4droid statically or dynamically with other modules is
+ * making a combined work based on MAME4droid. Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * In addition, as a special exception, the copyright holders of MAME4droid
+ * give you permission to combine MAME4droid with free software programs
+ * or libraries that are released under the GNU LGPL and with code included
+ * in the standard release of MAME under the MAME License (or modified
+ * versions of such code, with unchanged license). You may copy and
+ * distribute such a system following the terms of the GNU GPL for MAME4droid
+ * and the licenses of the other code concerned, provided that you include
+ * the source code of that other code when and as the GNU GPL requires
+ * distribution of source code.
+ *
+ * Note that people who make modified versions of MAME4idroid are not
+ * obligated to grant this special exception for their modified versions; it
+ * is their choice whether to do so. The GNU General Public License
+ * gives permission to release a modified version without this exception;
+ * this exception also makes it possible to release a modified version
+ * which carries forward this exception.
+ *
+ * MAME4droid is dual-licensed: Alternatively, you can license MAME4droid
+ * under a MAME license, as set out in http://mamedev.org/
+ */
+
+package com.ingcorp.webhard.input;
+
+/**
+ * Turns a stick position into digital directions. Shared by the touch stick and the gamepad
+ * sticks so both honour the 2, 4 and 8 way restrictions of the running game the same way.
+ */
+public final class StickQuantizer {
+
+	final public static int DIRECTIONS_MASK = IController.UP_VALUE | IController.DOWN_VALUE | IController.LEFT_VALUE | IController.RIGHT_VALUE;
+
+	private static final float MY_PI = 3.14159265f;
+
+	private StickQuantizer() {
+	}
+
+	/**
+	 * @return the clockwise angle in degrees, 0 pointing down, 90 right, 180 up, in [0, 360).
+	 */
+	public static float getAngle(float x, float y) {
+		float ang = ((float) Math.atan(y / x) * 180.0f) / MY_PI;
+		ang -= 90.0f;
+		if (x < 0.0f)
+			ang -= 180.0f;
+		ang = Math.abs(ang);
+		return ang;
+	}
+
+	public static float getMagnitude(float x, float y) {
+		return (float) Math.sqrt((x * x) + (y * y));
+	}
+
+	/**
+	 * @param ways 2, 4 or 8 as reported by the game
+	 * @param inGame true while in game and not in a menu; menus are always driven as 4 ways
+	 * @return the UP/DOWN/LEFT/RIGHT bits for the angle, 0 if the angle is not a number.
+	 */
+	public static int getDirections(float angle, int ways, boolean inGame) {
+		float v = angle;
+		if (ways == 2 && inGame) {
+			if (v < 180) {
+				return IController.RIGHT_VALUE;
+			} else if (v >= 180) {
+				return IController.LEFT_VALUE;
+			}
+		} else if (ways == 4 || !inGame) {
+			if (v >= 315 || v < 45) {
+				return IController.DOWN_VALUE;
+			} else if (v >= 45 && v < 135) {
+				return IController.RIGHT_VALUE;
+			} else if (v >= 135 && v < 225) {
+				return IController.UP_VALUE;
+			} else if (v >= 225 && v < 315) {
+				return IController.LEFT_VALUE;
+			}
+		} else {
+			if (v >= 330 || v < 30) {
+				return IController.DOWN_VALUE;
+			} else if (v >= 30 && v < 60) {
+				return IController.DOWN_VALUE | IController.RIGHT_VALUE;
+			} else if (v >= 60 && v < 120) {
+				return IController.RIGHT_VALUE;
+			} else if (v >= 120 && v < 150) {
+				return IController.RIGHT_VALUE | IController.UP_VALUE;
+			} else if (v >= 150 && v < 210) {
+				return IController.UP_VALUE;
+			} else if (v >= 210 && v < 240) {
+				return IController.UP_VALUE | IController.LEFT_VALUE;
+			} else if (v >= 240 && v < 300) {
+				return IController.LEFT_VALUE;
+			} else if (v >= 300 && v < 330) {
+				return IController.LEFT_VALUE | IController.DOWN_VALUE;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Right stick as a button ring: D down, A right, B up, C left, and the pairs in between.
+	 */
+	public static int getButtons(float angle) {
+		float v = angle;
+		if (v >= 330 || v < 30) {
+			return IController.D_VALUE;
+		} else if (v >= 30 && v < 60) {
+			return IController.D_VALUE | IController.A_VALUE;
+		} else if (v >= 60 && v < 120) {
+			return IController.A_VALUE;
+		} else if (v >= 120 && v < 150) {
+			return IController.A_VALUE | IController.B_VALUE;
+		} else if (v >= 150 && v < 210) {
+			return IController.B_VALUE;
+		} else if (v >= 210 && v < 240) {
+			return IController.B_VALUE | IController.C_VALUE;
+		} else if (v >= 240 && v < 300) {
+			return IController.C_VALUE;
+		} else if (v >= 300 && v < 330) {
+			return IController.C_VALUE | IController.D_VALUE;
+		}
+		return 0;
+	}
+}
@@ -62,12 +62,10 @@ import com.ingcorp.webhard.helpers.PrefsHelper;
 import com.ingcorp.webhard.helpers.UtilHelper;
 import com.ingcorp.webhard.manager.AdMobManager;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
-import java.util.StringTokenizer;
 
 public class TouchController implements IController {
 
@@ -79,14 +77,14 @@ public class TouchController implements IController {
 	protected static int[] oldtouches = new int[MAX_FINGERS];
 	protected static boolean[] touchstates = new boolean[MAX_FINGERS];
 
-	final public static int TYPE_MAIN_RECT = 1;
-	final public static int TYPE_STICK_RECT = 2;
-	final public static int TYPE_BUTTON_RECT = 3;
-	final public static int TYPE_STICK_IMG = 4;
-	final public static int TYPE_BUTTON_IMG = 5;
-	final public static int TYPE_SWITCH = 6;
-	final public static int TYPE_ALPHA = 7;
-	final public static int TYPE_ANALOG_RECT = 8;
+	final public static int TYPE_MAIN_RECT = InputLayout.TYPE_MAIN_RECT;
+	final public static int TYPE_STICK_RECT = InputLayout.TYPE_STICK_RECT;
+	final public static int TYPE_BUTTON_RECT = InputLayout.TYPE_BUTTON_RECT;
+	final public static int TYPE_STICK_IMG = InputLayout.TYPE_STICK_IMG;
+	final public static int TYPE_BUTTON_IMG = InputLayout.TYPE_BUTTON_IMG;
+	final public static int TYPE_SWITCH = InputLayout.TYPE_SWITCH;
+	final public static int TYPE_ALPHA = InputLayout.TYPE_ALPHA;
+	final public static int TYPE_ANALOG_RECT = InputLayout.TYPE_ANALOG_RECT;
 
 
 	final public static int STATE_SHOWING_CONTROLLER = 1;
@@ -124,6 +122,9 @@ public class TouchController implements IController {
 
 	MAME4droid mm = null;
 
+	//touch button used to rewind, -1 none; taken from the preferences only when they change
+	protected int rewindButton = -1;
+
 	public TouchController() {
 
 		stick_state = old_stick_state = STICK_NONE;
@@ -135,6 +136,8 @@ public class TouchController implements IController {
 		mm = value;
 		if (mm == null) return;
 
+		updateRewindButton();
+
 		if (mm.getMainHelper().getscrOrientation() == Configuration.ORIENTATION_LANDSCAPE) {
 			state = mm.getPrefsHelper().isLandscapeTouchController() ? STATE_SHOWING_CONTROLLER : STATE_SHOWING_NONE;
 		} else {
@@ -151,7 +154,14 @@ public class TouchController implements IController {
 		}
 	}
 
+	public void updateRewindButton() {
+		if (mm != null)
+			rewindButton = mm.getPrefsHelper().getRewindTouchButton();
+	}
+
 	int getButtonValue(int i, boolean b) {
+		if ((i == BTN_G || i == BTN_H) && i == rewindButton)
+			return REWIND_VALUE;
 		switch (i) {
 			case 0:
 				return D_VALUE;
@@ -187,7 +197,7 @@ public class TouchController implements IController {
 
 	int getStickValue(int i) {
 		int ways = mm.getPrefsHelper().getStickWays();
-		if (ways == -1) ways = Emulator.getValue(Emulator.NUMWAYS);
+		if (ways == -1) ways = Emulator.getState().getNumWays();
 		boolean b = Emulator.isInGameButNotInMenu();
 
 		if (ways == 2 && b) {
@@ -297,10 +307,10 @@ public class TouchController implements IController {
 					|| (actionEvent == MotionEvent.ACTION_POINTER_UP && actionPointerId == pid)
 					|| actionEvent == MotionEvent.ACTION_CANCEL) {
 
-				for (int j = 0; j < values.size(); j++) {
+				for (int j = InputLayout.findHit(values, x, y, 0); j != -1; j = InputLayout.findHit(values, x, y, j + 1)) {
 					InputValue iv = values.get(j);
 
-					if (iv.getRect().contains(x, y) && isHandledTouchItem(iv) &&
+					if (isHandledTouchItem(iv) &&
 							iv.getType() == TYPE_BUTTON_RECT && iv.getValue() == BTN_COIN) {
 
 						UtilHelper utilHelper = UtilHelper.getInstance(mm);
@@ -341,10 +351,10 @@ public class TouchController implements IController {
 				touchstates[id] = true;
 				//newtouches[id] = 0;
 
-				for (int j = 0; j < values.size(); j++) {
+				for (int j = InputLayout.findHit(values, x, y, 0); j != -1; j = InputLayout.findHit(values, x, y, j + 1)) {
 					InputValue iv = values.get(j);
 
-					if (iv.getRect().contains(x, y) && isHandledTouchItem(iv)) {
+					if (isHandledTouchItem(iv)) {
 
 						//Log.d("touch","HIT "+iv.getType()+" "+iv.getRect()+ " "+iv.getOrigRect());
 
@@ -421,6 +431,11 @@ public class TouchController implements IController {
 
 		mm.getInputHandler().fixTiltCoin();
 
+		if (rewindButton != -1) {
+			Emulator.setRewinding((digital_data[0] & REWIND_VALUE) != 0 && Emulator.isInGameButNotInMenu());
+			digital_data[0] &= ~REWIND_VALUE;
+		}
+
 		Emulator.setDigitalData(0, digital_data[0]);
 
 		return handled;
@@ -577,7 +592,7 @@ public class TouchController implements IController {
 				} else {
 					n = mm.getPrefsHelper().getNumButtons();
 					if (n == -1) {
-						n = Emulator.getValue(Emulator.NUMBTNS);
+						n = Emulator.getState().getNumButtons();
 						if (n <= 2) n = 2;
 						else if (n <= 4) n = 4;
 						else n = 6;
@@ -725,45 +740,8 @@ public class TouchController implements IController {
 		System.out.println("readInputValues");
 		InputStream is = mm.getResources().openRawResource(id);
 
-		InputStreamReader isr = new InputStreamReader(is);
-		BufferedReader br = new BufferedReader(isr);
-
-		InputValue iv = null;
-		values.clear();
-
-		//int i=0;
 		try {
-			String s = br.readLine();
-			while (s != null) {
-				int[] data = new int[10];
-				if (s.trim().startsWith("//")) {
-					s = br.readLine();
-					continue;
-				}
-				StringTokenizer st = new StringTokenizer(s, ",");
-				int j = 0;
-				while (st.hasMoreTokens()) {
-					String token = st.nextToken();
-					int k = token.indexOf("/");
-					if (k != -1) {
-						token = token.substring(0, k);
-					}
-
-					token = token.trim();
-					if (token.equals(""))
-						break;
-					data[j] = Integer.parseInt(token);
-					j++;
-					if (k != -1) break;
-				}
-
-				//values.
-				if (j != 0) {
-					iv = new InputValue(data, mm);
-					values.add(iv);
-				}
-				s = br.readLine();//i++;
-			}
+			InputLayout.parse(new InputStreamReader(is), mm.getPrefsHelper().isTouchDZ(), values);
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
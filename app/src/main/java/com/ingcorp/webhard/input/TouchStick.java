@@ -170,7 +170,7 @@ public class TouchStick implements IController {
 
         if (mag >= deadZone) {
             int ways = mm.getPrefsHelper().getStickWays();
-            if (ways == -1) ways = Emulator.getValue(Emulator.NUMWAYS);
+            if (ways == -1) ways = Emulator.getState().getNumWays();
             boolean b = Emulator.isInGameButNotInMenu();
 			//boolean b = true;//digital
 
@@ -179,99 +179,9 @@ public class TouchStick implements IController {
 				return pad_data;//if analog don't set digital inputs
             }
 
-            float v = ang;
-
-            if (ways == 2 && b) {
-                if (v < 180) {
-                    pad_data |= RIGHT_VALUE;
-
-                    pad_data &= ~UP_VALUE;
-                    pad_data &= ~DOWN_VALUE;
-                    pad_data &= ~LEFT_VALUE;
-                } else if (v >= 180) {
-                    pad_data |= LEFT_VALUE;
-
-                    pad_data &= ~UP_VALUE;
-                    pad_data &= ~DOWN_VALUE;
-                    pad_data &= ~RIGHT_VALUE;
-                }
-            } else if (ways == 4 /*&& b*/ || !b) {
-                if (v >= 315 || v < 45) {
-                    pad_data |= DOWN_VALUE;
-
-                    pad_data &= ~UP_VALUE;
-                    pad_data &= ~LEFT_VALUE;
-                    pad_data &= ~RIGHT_VALUE;
-                } else if (v >= 45 && v < 135) {
-                    pad_data |= RIGHT_VALUE;
-
-                    pad_data &= ~UP_VALUE;
-                    pad_data &= ~DOWN_VALUE;
-                    pad_data &= ~LEFT_VALUE;
-                } else if (v >= 135 && v < 225) {
-                    pad_data |= UP_VALUE;
-
-                    pad_data &= ~DOWN_VALUE;
-                    pad_data &= ~LEFT_VALUE;
-                    pad_data &= ~RIGHT_VALUE;
-                } else if (v >= 225 && v < 315) {
-                    pad_data |= LEFT_VALUE;
-
-                    pad_data &= ~UP_VALUE;
-                    pad_data &= ~DOWN_VALUE;
-                    pad_data &= ~RIGHT_VALUE;
-                }
-            } else {
-                if (v >= 330 || v < 30) {
-                    pad_data |= DOWN_VALUE;
-
-                    pad_data &= ~UP_VALUE;
-                    pad_data &= ~LEFT_VALUE;
-                    pad_data &= ~RIGHT_VALUE;
-                } else if (v >= 30 && v < 60) {
-                    pad_data |= DOWN_VALUE;
-                    pad_data |= RIGHT_VALUE;
-
-                    pad_data &= ~UP_VALUE;
-                    pad_data &= ~LEFT_VALUE;
-                } else if (v >= 60 && v < 120) {
-                    pad_data |= RIGHT_VALUE;
-
-                    pad_data &= ~UP_VALUE;
-                    pad_data &= ~DOWN_VALUE;
-                    pad_data &= ~LEFT_VALUE;
-                } else if (v >= 120 && v < 150) {
-                    pad_data |= RIGHT_VALUE;
-                    pad_data |= UP_VALUE;
-
-                    pad_data &= ~DOWN_VALUE;
-                    pad_data &= ~LEFT_VALUE;
-                } else if (v >= 150 && v < 210) {
-                    pad_data |= UP_VALUE;
-
-                    pad_data &= ~DOWN_VALUE;
-                    pad_data &= ~LEFT_VALUE;
-                    pad_data &= ~RIGHT_VALUE;
-                } else if (v >= 210 && v < 240) {
-                    pad_data |= UP_VALUE;
-                    pad_data |= LEFT_VALUE;
-
-                    pad_data &= ~DOWN_VALUE;
-                    pad_data &= ~RIGHT_VALUE;
-                } else if (v >= 240 && v < 300) {
-                    pad_data |= LEFT_VALUE;
-
-                    pad_data &= ~UP_VALUE;
-                    pad_data &= ~DOWN_VALUE;
-                    pad_data &= ~RIGHT_VALUE;
-                } else if (v >= 300 && v < 330) {
-                    pad_data |= LEFT_VALUE;
-                    pad_data |= DOWN_VALUE;
-
-                    pad_data &= ~UP_VALUE;
-                    pad_data &= ~RIGHT_VALUE;
-                }
-            }
+            int directions = StickQuantizer.getDirections(ang, ways, b);
+            if (directions != 0)
+                pad_data = (pad_data & ~StickQuantizer.DIRECTIONS_MASK) | directions;
         } else {
             Emulator.setAnalogData(0, 0.0f, 0.0f);
 
@@ -320,12 +230,8 @@ public class TouchStick implements IController {
             ry = ((float) (pt.y - min.y) / (float) (center.y - min.y)) - 1.0f;
 
         /* calculate the joystick angle and magnitude */
-        ang = rad2degree((float) Math.atan(ry / rx));
-        ang -= 90.0f;
-        if (rx < 0.0f)
-            ang -= 180.0f;
-        ang = Math.abs(ang);
-        mag = (float) Math.sqrt((rx * rx) + (ry * ry));
+        ang = StickQuantizer.getAngle(rx, ry);
+        mag = StickQuantizer.getMagnitude(rx, ry);
 
     }
 
@@ -333,7 +239,7 @@ public class TouchStick implements IController {
 
 		//TODO BUG con analogico
         int ways = mm.getPrefsHelper().getStickWays();
-        if (ways == -1) ways = Emulator.getValue(Emulator.NUMWAYS);
+        if (ways == -1) ways = Emulator.getState().getNumWays();
         boolean b = Emulator.isInGameButNotInMenu();
 
         if (ways == 2 && b) {
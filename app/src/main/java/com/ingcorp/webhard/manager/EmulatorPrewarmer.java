@@ -0,0 +1,163 @@
+package com.ingcorp.webhard.manager;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.opengl.EGL14;
+import android.opengl.EGLConfig;
+import android.opengl.EGLContext;
+import android.opengl.EGLDisplay;
+import android.opengl.EGLSurface;
+import android.opengl.GLES32;
+import android.os.SystemClock;
+import android.preference.PreferenceManager;
+import android.util.Log;
+
+import com.ingcorp.webhard.Emulator;
+import com.ingcorp.webhard.helpers.PrefsHelper;
+import com.ingcorp.webhard.render.ShaderUtil;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+public class EmulatorPrewarmer {
+    private static final String TAG = "EmulatorPrewarmer";
+    private static EmulatorPrewarmer instance;
+
+    private final Context context;
+    private Thread thread;
+
+    private volatile boolean prewarmed = false;
+    private volatile boolean assetsReady = false;
+    private volatile long prewarmTimeMs = 0;
+
+    private EmulatorPrewarmer(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    public static synchronized EmulatorPrewarmer getInstance(Context context) {
+        if (instance == null) {
+            instance = new EmulatorPrewarmer(context);
+        }
+        return instance;
+    }
+
+    /**
+     * 게임 실행 전에 에뮬레이터를 미리 준비했는지 여부
+     */
+    public static boolean isPrewarmed() {
+        EmulatorPrewarmer p = instance;
+        return p != null && p.prewarmed;
+    }
+
+    public boolean isAssetsReady() {
+        return assetsReady;
+    }
+
+    public long getPrewarmTimeMs() {
+        return prewarmTimeMs;
+    }
+
+    /**
+     * 게임 목록을 보는 동안 백그라운드에서 에뮬레이터 준비 (한 번만 실행)
+     */
+    public synchronized void prewarm() {
+        if (thread != null) {
+            return;
+        }
+
+        thread = new Thread(this::run, "EmulatorPrewarm");
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    private void run() {
+        long start = SystemClock.elapsedRealtime();
+        try {
+            // 네이티브 라이브러리 로드 (Emulator 클래스 초기화 시 mame4droid-jni 로드) 후 코어 dlopen
+            Emulator.preloadCore(context.getApplicationInfo().nativeLibraryDir);
+            Log.d(TAG, "core loaded in " + (SystemClock.elapsedRealtime() - start) + " ms");
+
+            // 설치 경로 및 압축 해제된 파일 확인 (MainHelper.copyFiles 와 같은 마커 파일)
+            SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+            String installDir = prefs.getString(PrefsHelper.PREF_INSTALLATION_DIR, null);
+            if (installDir != null) {
+                String version = context.getPackageManager().getPackageInfo(context.getPackageName(), 0).versionName;
+                File marker = new File(installDir + File.separator + "saves/" + "dont-delete-" + version + ".bin");
+                assetsReady = marker.exists();
+                Log.d(TAG, "install dir: " + installDir + " assets ready: " + assetsReady);
+
+                // 기본 셰이더 컴파일로 드라이버 셰이더 캐시 준비
+                if (assetsReady) {
+                    compileStockShader(installDir + "shaders/");
+                }
+            }
+
+            prewarmed = true;
+        } catch (Throwable e) {
+            Log.e(TAG, "prewarm failed", e);
+        }
+        prewarmTimeMs = SystemClock.elapsedRealtime() - start;
+        Log.d(TAG, "prewarm finished in " + prewarmTimeMs + " ms");
+    }
+
+    private void compileStockShader(String shaderDir) {
+        EGLDisplay display = EGL14.eglGetDisplay(EGL14.EGL_DEFAULT_DISPLAY);
+        if (display == EGL14.EGL_NO_DISPLAY) {
+            return;
+        }
+
+        int[] version = new int[2];
+        if (!EGL14.eglInitialize(display, version, 0, version, 1)) {
+            return;
+        }
+
+        EGLContext eglContext = EGL14.EGL_NO_CONTEXT;
+        EGLSurface surface = EGL14.EGL_NO_SURFACE;
+        try {
+            int[] configAttribs = {
+                    EGL14.EGL_RENDERABLE_TYPE, 0x40, // EGL_OPENGL_ES3_BIT_KHR
+                    EGL14.EGL_SURFACE_TYPE, EGL14.EGL_PBUFFER_BIT,
+                    EGL14.EGL_NONE
+            };
+            EGLConfig[] configs = new EGLConfig[1];
+            int[] numConfigs = new int[1];
+            if (!EGL14.eglChooseConfig(display, configAttribs, 0, configs, 0, 1, numConfigs, 0) || numConfigs[0] == 0) {
+                return;
+            }
+
+            int[] contextAttribs = {EGL14.EGL_CONTEXT_CLIENT_VERSION, 3, EGL14.EGL_NONE};
+            eglContext = EGL14.eglCreateContext(display, configs[0], EGL14.EGL_NO_CONTEXT, contextAttribs, 0);
+            int[] surfaceAttribs = {EGL14.EGL_WIDTH, 1, EGL14.EGL_HEIGHT, 1, EGL14.EGL_NONE};
+            surface = EGL14.eglCreatePbufferSurface(display, configs[0], surfaceAttribs, 0);
+            if (eglContext == EGL14.EGL_NO_CONTEXT || surface == EGL14.EGL_NO_SURFACE
+                    || !EGL14.eglMakeCurrent(display, surface, surface, eglContext)) {
+                return;
+            }
+
+            // GLRendererES32 의 stock 프로그램과 같은 소스/디파인
+            Map<String, Integer> vertexDefines = new HashMap<>();
+            vertexDefines.put("VERTEX", 1);
+            Map<String, Integer> fragmentDefines = new HashMap<>();
+            fragmentDefines.put("FRAGMENT", 1);
+
+            int vs = ShaderUtil.loadGLShader(TAG, shaderDir, GLES32.GL_VERTEX_SHADER, "stock.glsl", vertexDefines, 1);
+            int fs = ShaderUtil.loadGLShader(TAG, shaderDir, GLES32.GL_FRAGMENT_SHADER, "stock.glsl", fragmentDefines, 1);
+            if (vs > 0 && fs > 0) {
+                int program = GLES32.glCreateProgram();
+                GLES32.glAttachShader(program, vs);
+                GLES32.glAttachShader(program, fs);
+                GLES32.glLinkProgram(program);
+                GLES32.glDeleteProgram(program);
+                Log.d(TAG, "stock shader compiled");
+            }
+            if (vs > 0) GLES32.glDeleteShader(vs);
+            if (fs > 0) GLES32.glDeleteShader(fs);
+        } finally {
+            EGL14.eglMakeCurrent(display, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_CONTEXT);
+            if (surface != EGL14.EGL_NO_SURFACE) EGL14.eglDestroySurface(display, surface);
+            if (eglContext != EGL14.EGL_NO_CONTEXT) EGL14.eglDestroyContext(display, eglContext);
+            EGL14.eglReleaseThread();
+        }
+    }
+}
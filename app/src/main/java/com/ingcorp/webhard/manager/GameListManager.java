@@ -142,19 +142,7 @@ public class GameListManager {
                 database.gameDao().deleteAllGames();
 
                 // 새로운 게임 리스트 저장
-                List<Game> games = new ArrayList<>();
-                for (GameListResponse.GameItem item : gameListResponse.getList()) {
-                    Game game = new Game(
-                            item.getGameId(),
-                            item.getGameName(),
-                            item.getGameCate(),
-                            item.getGameRom(),
-                            item.getGameImg(),
-                            item.getGameCnt(),
-                            item.getGameLength()
-                    );
-                    games.add(game);
-                }
+                List<Game> games = gameListResponse.toGames();
 
                 database.gameDao().insertGames(games);
 
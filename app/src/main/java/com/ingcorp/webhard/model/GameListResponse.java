@@ -1,6 +1,9 @@
 package com.ingcorp.webhard.model;
 
 import com.google.gson.annotations.SerializedName;
+import com.ingcorp.webhard.database.entity.Game;
+
+import java.util.ArrayList;
 import java.util.List;
 
 public class GameListResponse {
@@ -38,6 +41,26 @@ public class GameListResponse {
         this.list = list;
     }
 
+    /**
+     * 서버 응답 목록을 DB 엔티티로 변환
+     */
+    public List<Game> toGames() {
+        List<Game> games = new ArrayList<>(list != null ? list.size() : 0);
+        if (list == null) return games;
+        for (GameItem item : list) {
+            games.add(new Game(
+                    item.getGameId(),
+                    item.getGameName(),
+                    item.getGameCate(),
+                    item.getGameRom(),
+                    item.getGameImg(),
+                    item.getGameCnt(),
+                    item.getGameLength()
+            ));
+        }
+        return games;
+    }
+
     public static class GameItem {
         @SerializedName("game_id")
         private String gameId;
@@ -96,6 +96,14 @@ public class UserPreferences extends PreferenceActivity implements OnSharedPrefe
 
     protected ListPreference mPrefMainThPr;
     protected ListPreference mPrefSoundEngine;
+    protected ListPreference mPrefFastForwardSpeed;
+    protected ListPreference mPrefFastForwardAudio;
+    protected ListPreference mPrefFastForwardKey;
+    protected ListPreference mPrefRunAhead;
+    protected ListPreference mPrefRewindMemory;
+    protected ListPreference mPrefRewindInterval;
+    protected ListPreference mPrefRewindKey;
+    protected ListPreference mPrefRewindTouch;
 
     protected ListPreference mPrefNavbar;
     protected EditTextPreference mPrefInstPath;
@@ -136,6 +144,14 @@ public class UserPreferences extends PreferenceActivity implements OnSharedPrefe
         mPrefSizeStick = (ListPreference)getPreferenceScreen().findPreference(PrefsHelper.PREF_STICK_SIZE);
         mPrefMainThPr = (ListPreference)getPreferenceScreen().findPreference(PrefsHelper.PREF_MAIN_THREAD_PRIORITY);
         mPrefSoundEngine = (ListPreference)getPreferenceScreen().findPreference(PrefsHelper.PREF_SOUND_ENGINE);
+        mPrefFastForwardSpeed = (ListPreference)getPreferenceScreen().findPreference(PrefsHelper.PREF_FAST_FORWARD_SPEED);
+        mPrefFastForwardAudio = (ListPreference)getPreferenceScreen().findPreference(PrefsHelper.PREF_FAST_FORWARD_AUDIO);
+        mPrefFastForwardKey = (ListPreference)getPreferenceScreen().findPreference(PrefsHelper.PREF_FAST_FORWARD_KEY);
+        mPrefRunAhead = (ListPreference)getPreferenceScreen().findPreference(PrefsHelper.PREF_RUNAHEAD);
+        mPrefRewindMemory = (ListPreference)getPreferenceScreen().findPreference(PrefsHelper.PREF_REWIND_MEMORY);
+        mPrefRewindInterval = (ListPreference)getPreferenceScreen().findPreference(PrefsHelper.PREF_REWIND_INTERVAL);
+        mPrefRewindKey = (ListPreference)getPreferenceScreen().findPreference(PrefsHelper.PREF_REWIND_KEY);
+        mPrefRewindTouch = (ListPreference)getPreferenceScreen().findPreference(PrefsHelper.PREF_REWIND_TOUCH);
 
 		//mPrefOverlayInt = (ListPreference)getPreferenceScreen().findPreference(PrefsHelper.PREF_OVERLAY_INTENSITY);
 
@@ -177,6 +193,14 @@ public class UserPreferences extends PreferenceActivity implements OnSharedPrefe
 	        mPrefSizeStick.setSummary("Current value is '" + mPrefSizeStick.getEntry()+"'");
 	        mPrefMainThPr.setSummary("Current value is '" + mPrefMainThPr.getEntry()+"'");
 	        mPrefSoundEngine.setSummary("Current value is '" + mPrefSoundEngine.getEntry()+"'");
+	        mPrefFastForwardSpeed.setSummary("Current value is '" + mPrefFastForwardSpeed.getEntry()+"'");
+	        mPrefFastForwardAudio.setSummary("Current value is '" + mPrefFastForwardAudio.getEntry()+"'");
+	        mPrefFastForwardKey.setSummary("Current value is '" + mPrefFastForwardKey.getEntry()+"'");
+	        mPrefRunAhead.setSummary("Current value is '" + mPrefRunAhead.getEntry()+"'");
+	        mPrefRewindMemory.setSummary("Current value is '" + mPrefRewindMemory.getEntry()+"'");
+	        mPrefRewindInterval.setSummary("Current value is '" + mPrefRewindInterval.getEntry()+"'");
+	        mPrefRewindKey.setSummary("Current value is '" + mPrefRewindKey.getEntry()+"'");
+	        mPrefRewindTouch.setSummary("Current value is '" + mPrefRewindTouch.getEntry()+"'");
 	        mPrefNavbar.setSummary("Current value is '" + mPrefNavbar.getEntry()+"'");
 			mPrefInstPath.setSummary("Current value is '" + mPrefInstPath.getText()+"'");
 		    mPrefShader.setSummary("Current value is '" + mPrefShader.getEntry()+"'");
@@ -283,6 +307,38 @@ public class UserPreferences extends PreferenceActivity implements OnSharedPrefe
 		    {
 	            mPrefSoundEngine.setSummary("Current value is '" + mPrefSoundEngine.getEntry()+"'");
 		    }
+		    else if(key.equals(PrefsHelper.PREF_FAST_FORWARD_SPEED))
+		    {
+	            mPrefFastForwardSpeed.setSummary("Current value is '" + mPrefFastForwardSpeed.getEntry()+"'");
+		    }
+		    else if(key.equals(PrefsHelper.PREF_FAST_FORWARD_AUDIO))
+		    {
+	            mPrefFastForwardAudio.setSummary("Current value is '" + mPrefFastForwardAudio.getEntry()+"'");
+		    }
+		    else if(key.equals(PrefsHelper.PREF_FAST_FORWARD_KEY))
+		    {
+	            mPrefFastForwardKey.setSummary("Current value is '" + mPrefFastForwardKey.getEntry()+"'");
+		    }
+		    else if(key.equals(PrefsHelper.PREF_RUNAHEAD))
+		    {
+	            mPrefRunAhead.setSummary("Current value is '" + mPrefRunAhead.getEntry()+"'");
+		    }
+		    else if(key.equals(PrefsHelper.PREF_REWIND_MEMORY))
+		    {
+	            mPrefRewindMemory.setSummary("Current value is '" + mPrefRewindMemory.getEntry()+"'");
+		    }
+		    else if(key.equals(PrefsHelper.PREF_REWIND_INTERVAL))
+		    {
+	            mPrefRewindInterval.setSummary("Current value is '" + mPrefRewindInterval.getEntry()+"'");
+		    }
+		    else if(key.equals(PrefsHelper.PREF_REWIND_KEY))
+		    {
+	            mPrefRewindKey.setSummary("Current value is '" + mPrefRewindKey.getEntry()+"'");
+		    }
+		    else if(key.equals(PrefsHelper.PREF_REWIND_TOUCH))
+		    {
+	            mPrefRewindTouch.setSummary("Current value is '" + mPrefRewindTouch.getEntry()+"'");
+		    }
 		    else if(key.equals(PrefsHelper.PREF_GLOBAL_NAVBAR_MODE))
 		    {
 		    	mPrefNavbar.setSummary("Current value is '" + mPrefNavbar.getEntry()+"'");
@@ -0,0 +1,194 @@
+/*
+ * This file is part of MAME4droid.
+ *
+ * Copyright (C) 2024 David Valdeita (Seleuco)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Linking MAME4droid statically or dynamically with other modules is
+ * making a combined work based on MAME4droid. Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * In addition, as a special exception, the copyright holders of MAME4droid
+ * give you permission to combine MAME4droid with free software programs
+ * or libraries that are released under the GNU LGPL and with code included
+ * in the standard release of MAME under the MAME License (or modified
+ * versions of such code, with unchanged license). You may copy and
+ * distribute such a system following the terms of the GNU GPL for MAME4droid
+ * and the licenses of the other code concerned, provided that you include
+ * the source code of that other code when and as the GNU GPL requires
+ * distribution of source code.
+ *
+ * Note that people who make modified versions of MAME4idroid are not
+ * obligated to grant this special exception for their modified versions; it
+ * is their choice whether to do so. The GNU General Public License
+ * gives permission to release a modified version without this exception;
+ * this exception also makes it possible to release a modified version
+ * which carries forward this exception.
+ *
+ * MAME4droid is dual-licensed: Alternatively, you can license MAME4droid
+ * under a MAME license, as set out in http://mamedev.org/
+ */
+
+package com.ingcorp.webhard.render;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lock-free triple buffer between the emulator thread (producer) and the GL thread (consumer).
+ * The producer always owns the back frame, the consumer the front one, and the third one is
+ * exchanged through a single atomic index, so neither side ever waits for the other.
+ */
+public final class FrameExchange {
+
+	public static final int NUM_BUFFERS = 3;
+
+	private static final int INDEX_MASK = 0x3;
+	private static final int FRESH = 0x4;
+
+	public static final class Frame {
+		private ByteBuffer buffer = null;
+		private int width = 0;
+		private int height = 0;
+		private long sequence = 0;
+		private long publishedAt = 0;
+
+		public ByteBuffer getBuffer() {
+			return buffer;
+		}
+
+		public int getWidth() {
+			return width;
+		}
+
+		public int getHeight() {
+			return height;
+		}
+
+		public long getSequence() {
+			return sequence;
+		}
+
+		/**
+		 * @return System.nanoTime() when the core published it.
+		 */
+		public long getPublishedAt() {
+			return publishedAt;
+		}
+	}
+
+	private final Frame[] frames = new Frame[NUM_BUFFERS];
+	private final FrameStats stats = new FrameStats();
+
+	//index of the last published frame, plus FRESH if the consumer has not picked it yet
+	private final AtomicInteger ready = new AtomicInteger(1);
+
+	//producer side
+	private int back = 0;
+	private long published = 0;
+	private volatile long droppedFrames = 0;
+	private volatile long skippedFrames = 0;
+
+	//consumer side
+	private int front = 2;
+	private volatile long duplicatedFrames = 0;
+
+	public FrameExchange() {
+		for (int i = 0; i < NUM_BUFFERS; i++)
+			frames[i] = new Frame();
+	}
+
+	/**
+	 * Publishes the frame just written into the back buffer. Called from the emulator thread.
+	 *
+	 * @return the index of the buffer the producer must fill next.
+	 */
+	public int publish(ByteBuffer buffer, int width, int height) {
+		Frame f = frames[back];
+		f.buffer = buffer;
+		f.width = width;
+		f.height = height;
+		f.sequence = ++published;
+		f.publishedAt = System.nanoTime();
+
+		int prev = ready.getAndSet(back | FRESH);
+		if ((prev & FRESH) != 0)
+			droppedFrames++;//the renderer never saw the previous one
+
+		back = prev & INDEX_MASK;
+		return back;
+	}
+
+	/**
+	 * Drops the frame just written into the back buffer without publishing it, e.g. while
+	 * fast-forwarding. Called from the emulator thread.
+	 *
+	 * @return the index of the buffer the producer must fill next, the same one.
+	 */
+	public int skip() {
+		skippedFrames++;
+		return back;
+	}
+
+	/**
+	 * Returns the latest complete frame, or null if nothing has been published yet. Called from the GL thread.
+	 * The returned frame stays valid until the next call.
+	 */
+	public Frame acquire() {
+		if ((ready.get() & FRESH) == 0) {
+			Frame f = frames[front];
+			if (f.buffer == null)
+				return null;
+			duplicatedFrames++;
+			return f;
+		}
+		int prev = ready.getAndSet(front);
+		front = prev & INDEX_MASK;
+		Frame f = frames[front];
+		stats.onPresent(System.nanoTime(), f.publishedAt);
+		return f;
+	}
+
+	/**
+	 * @return true if a frame was published that acquire() has not returned yet.
+	 */
+	public boolean hasFreshFrame() {
+		return (ready.get() & FRESH) != 0;
+	}
+
+	/**
+	 * @return the presentation statistics, recorded as the consumer picks up new frames.
+	 */
+	public FrameStats getStats() {
+		return stats;
+	}
+
+	public long getPublishedFrames() {
+		return published;
+	}
+
+	public long getDroppedFrames() {
+		return droppedFrames;
+	}
+
+	public long getSkippedFrames() {
+		return skippedFrames;
+	}
+
+	public long getDuplicatedFrames() {
+		return duplicatedFrames;
+	}
+}
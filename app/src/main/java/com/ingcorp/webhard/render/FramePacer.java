@@ -0,0 +1,277 @@
+/*
+ * This file is part of MAME4droid.
+ *
+ * Copyright (C) 2024 David Valdeita (Seleuco)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Linking MAME4droid statically or dynamically with other modules is
+ * making a combined work based on MAME4droid. Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * In addition, as a special exception, the copyright holders of MAME4droid
+ * give you permission to combine MAME4droid with free software programs
+ * or libraries that are released under the GNU LGPL and with code included
+ * in the standard release of MAME under the MAME License (or modified
+ * versions of such code, with unchanged license). You may copy and
+ * distribute such a system following the terms of the GNU GPL for MAME4droid
+ * and the licenses of the other code concerned, provided that you include
+ * the source code of that other code when and as the GNU GPL requires
+ * distribution of source code.
+ *
+ * Note that people who make modified versions of MAME4idroid are not
+ * obligated to grant this special exception for their modified versions; it
+ * is their choice whether to do so. The GNU General Public License
+ * gives permission to release a modified version without this exception;
+ * this exception also makes it possible to release a modified version
+ * which carries forward this exception.
+ *
+ * MAME4droid is dual-licensed: Alternatively, you can license MAME4droid
+ * under a MAME license, as set out in http://mamedev.org/
+ */
+
+package com.ingcorp.webhard.render;
+
+import android.app.Activity;
+import android.opengl.GLSurfaceView;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.util.Log;
+import android.view.Choreographer;
+import android.view.Display;
+import android.view.Surface;
+import android.view.WindowManager;
+
+import com.ingcorp.webhard.Emulator;
+import com.ingcorp.webhard.EmulatorState;
+
+import java.util.ArrayList;
+
+/**
+ * Presents the emulated frames on vsync instead of as soon as the core ends them. Choreographer calls
+ * back at every vsync of the display, on a thread of its own so the UI cannot delay it, and the GL
+ * view is asked to render when a new frame is ready and the one on screen has been shown for its
+ * number of vsyncs. The surface also asks the display for the refresh rate of the game, so that
+ * number is the same for every frame (one at 60 Hz for a 60 Hz game, two at 120 Hz).
+ * <p>
+ * With late latch the render is not asked for at the vsync but just before the next one, so the
+ * renderer picks up the newest frame the core had time to end and the texture upload happens as
+ * late as it can: the margin left is the measured delay for the GL thread to pick the frame up,
+ * plus the time to draw it.
+ */
+public class FramePacer implements Choreographer.FrameCallback {
+
+	private static final String TAG = "FramePacer";
+
+	//time left for the upload, the draw and the swap before the vsync deadline
+	private static final long DRAW_MARGIN_NS = 4000000L;
+
+	private final GLSurfaceView view;
+	private final boolean pace;
+	private final boolean matchRefresh;
+	private final boolean lateLatch;
+
+	private HandlerThread thread = null;
+	private Handler handler = null;
+	private volatile boolean running = false;
+	private Surface surface = null;
+
+	//pacer thread
+	private Choreographer choreographer = null;
+	private long lastVsync = 0;
+	private int vsyncsShown = 0;
+	private int interval = 1;
+	private int requestedRefresh = -1;
+
+	private final Runnable latch = new Runnable() {
+		public void run() {
+			if (running && Emulator.getFrameExchange().hasFreshFrame())
+				present();
+		}
+	};
+
+	/**
+	 * @param pace         render on vsync, otherwise the emulator thread keeps asking for renders.
+	 * @param matchRefresh ask the display for the refresh rate of the game.
+	 * @param lateLatch    render just before the vsync deadline instead of on vsync.
+	 */
+	public FramePacer(GLSurfaceView view, boolean pace, boolean matchRefresh, boolean lateLatch) {
+		this.view = view;
+		this.pace = pace;
+		this.matchRefresh = matchRefresh;
+		this.lateLatch = lateLatch;
+	}
+
+	public boolean isPacing() {
+		return pace && running;
+	}
+
+	/**
+	 * @return the vsyncs each emulated frame is shown for.
+	 */
+	public int getInterval() {
+		return interval;
+	}
+
+	public synchronized void start(Surface surface) {
+		if (running)
+			return;
+		this.surface = surface;
+		thread = new HandlerThread("FramePacer", Process.THREAD_PRIORITY_DISPLAY);
+		thread.start();
+		handler = new Handler(thread.getLooper());
+		running = true;
+		handler.post(new Runnable() {
+			public void run() {
+				choreographer = Choreographer.getInstance();
+				lastVsync = 0;
+				vsyncsShown = 0;
+				requestedRefresh = -1;
+				choreographer.postFrameCallback(FramePacer.this);
+			}
+		});
+	}
+
+	/**
+	 * Stops pacing, the surface is about to go.
+	 */
+	public synchronized void stop() {
+		if (!running)
+			return;
+		running = false;
+		final HandlerThread t = thread;
+		final Handler h = handler;
+		h.post(new Runnable() {
+			public void run() {
+				if (choreographer != null)
+					choreographer.removeFrameCallback(FramePacer.this);
+				h.removeCallbacks(latch);
+				t.quit();
+			}
+		});
+		thread = null;
+		handler = null;
+		surface = null;
+	}
+
+	@Override
+	public void doFrame(long frameTimeNanos) {
+		if (!running)
+			return;
+
+		Display display = view.getDisplay();
+		float displayHz = display != null ? display.getRefreshRate() : 60;
+		long period = (long) (1000000000L / displayHz);
+
+		//a late callback spans several vsyncs
+		if (lastVsync != 0)
+			vsyncsShown += Math.max(1, Math.round((frameTimeNanos - lastVsync) / (float) period));
+		lastVsync = frameTimeNanos;
+
+		EmulatorState state = Emulator.getState();
+		int refresh = state.isInGame() ? state.getRefresh() : 0;
+		if (matchRefresh && refresh != requestedRefresh) {
+			requestedRefresh = refresh;
+			requestFrameRate(refresh, display);
+		}
+
+		int n = RefreshRateMatch.getInterval(refresh, displayHz);
+		if (n != interval) {
+			interval = n;
+			Log.d(TAG, "game " + refresh + " Hz on a " + displayHz + " Hz display, " + n + " vsyncs per frame");
+		}
+
+		FrameStats stats = Emulator.getFrameExchange().getStats();
+		stats.setExpectedInterval(refresh > 0 ? n * period : 0);
+
+		if (pace && vsyncsShown >= interval) {
+			if (lateLatch) {
+				//the frame is picked when the latch runs, whatever the core published meanwhile
+				long margin = stats.getWakeDelay() + DRAW_MARGIN_NS;
+				long delay = (frameTimeNanos + period - margin - System.nanoTime()) / 1000000L;
+				handler.removeCallbacks(latch);
+				if (delay > 0)
+					handler.postDelayed(latch, delay);
+				else
+					latch.run();
+			} else if (Emulator.getFrameExchange().hasFreshFrame()) {
+				present();
+			}
+		}
+
+		choreographer.postFrameCallback(this);
+	}
+
+	//pacer thread
+	private void present() {
+		Emulator.getFrameExchange().getStats().onRenderRequested(System.nanoTime());
+		view.requestRender();
+		vsyncsShown = 0;
+	}
+
+	//pacer thread, 0 drops the request
+	private void requestFrameRate(int refresh, Display display) {
+		Surface s = surface;
+		try {
+			if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
+				//switching modes blanks the screen for a moment, still better than judder for the whole game
+				s.setFrameRate(refresh, Surface.FRAME_RATE_COMPATIBILITY_FIXED_SOURCE, Surface.CHANGE_FRAME_RATE_ALWAYS);
+			} else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+				s.setFrameRate(refresh, Surface.FRAME_RATE_COMPATIBILITY_FIXED_SOURCE);
+			} else if (display != null) {
+				requestDisplayMode(refresh, display);
+			}
+		} catch (RuntimeException e) {
+			//the surface may be going away
+			Log.w(TAG, "cannot request " + refresh + " Hz: " + e.getMessage());
+		}
+	}
+
+	//before Android 11 the window picks the display mode, among the ones with the current resolution
+	private void requestDisplayMode(int refresh, Display display) {
+		Display.Mode current = display.getMode();
+		ArrayList<Display.Mode> modes = new ArrayList<Display.Mode>();
+		for (Display.Mode m : display.getSupportedModes()) {
+			if (m.getPhysicalWidth() == current.getPhysicalWidth() && m.getPhysicalHeight() == current.getPhysicalHeight())
+				modes.add(m);
+		}
+		float[] rates = new float[modes.size()];
+		for (int i = 0; i < rates.length; i++)
+			rates[i] = modes.get(i).getRefreshRate();
+
+		float rate = refresh > 0 ? RefreshRateMatch.pickDisplayRate(refresh, rates) : 0;
+		int id = 0;
+		for (Display.Mode m : modes) {
+			if (m.getRefreshRate() == rate)
+				id = m.getModeId();
+		}
+
+		final int modeId = id;
+		view.post(new Runnable() {
+			public void run() {
+				if (!(view.getContext() instanceof Activity))
+					return;
+				Activity a = (Activity) view.getContext();
+				WindowManager.LayoutParams lp = a.getWindow().getAttributes();
+				if (lp.preferredDisplayModeId != modeId) {
+					lp.preferredDisplayModeId = modeId;
+					a.getWindow().setAttributes(lp);
+				}
+			}
+		});
+	}
+}
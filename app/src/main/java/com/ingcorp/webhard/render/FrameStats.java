@@ -0,0 +1,263 @@
+/*
+ * This file is part of MAME4droid.
+ *
+ * Copyright (C) 2024 David Valdeita (Seleuco)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Linking MAME4droid statically or dynamically with other modules is
+ * making a combined work based on MAME4droid. Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * In addition, as a special exception, the copyright holders of MAME4droid
+ * give you permission to combine MAME4droid with free software programs
+ * or libraries that are released under the GNU LGPL and with code included
+ * in the standard release of MAME under the MAME License (or modified
+ * versions of such code, with unchanged license). You may copy and
+ * distribute such a system following the terms of the GNU GPL for MAME4droid
+ * and the licenses of the other code concerned, provided that you include
+ * the source code of that other code when and as the GNU GPL requires
+ * distribution of source code.
+ *
+ * Note that people who make modified versions of MAME4idroid are not
+ * obligated to grant this special exception for their modified versions; it
+ * is their choice whether to do so. The GNU General Public License
+ * gives permission to release a modified version without this exception;
+ * this exception also makes it possible to release a modified version
+ * which carries forward this exception.
+ *
+ * MAME4droid is dual-licensed: Alternatively, you can license MAME4droid
+ * under a MAME license, as set out in http://mamedev.org/
+ */
+
+package com.ingcorp.webhard.render;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Presentation statistics of a game: a histogram of the time every frame stayed on screen, how
+ * many of them stayed longer than they should have (jank) and a histogram of the latency from
+ * the core publishing a frame to the renderer picking it up, plus the time spent updating the
+ * texture with it. Only the GL thread records, other
+ * threads may read at any time and get a slightly stale picture.
+ */
+public final class FrameStats {
+
+	public static final int BUCKET_NS = 250000;
+	//up to 100 ms, the last bucket takes everything longer
+	public static final int NUM_BUCKETS = 400;
+
+	//longer gaps are pauses, dialogs or loads, not jank
+	private static final long GAP_NS = 250000000L;
+
+	private final int[] frameTimes = new int[NUM_BUCKETS];
+	private final int[] latencies = new int[NUM_BUCKETS];
+
+	private volatile long expected = 0;
+	private volatile boolean resetPending = false;
+
+	//GL thread
+	private long lastPresent = 0;
+	private volatile long renderRequested = 0;
+	private volatile int frames = 0;
+	private volatile int janks = 0;
+	private volatile int missedVsyncs = 0;
+	private volatile long wakeDelay = 0;
+	private volatile int uploads = 0;
+	private volatile int bufferedUploads = 0;
+	private volatile long uploadTime = 0;
+	private volatile long maxUpload = 0;
+
+	/**
+	 * @param ns how long every frame should stay on screen, 0 if not known. Frames longer than
+	 *           one and a half times that are counted as jank.
+	 */
+	public void setExpectedInterval(long ns) {
+		expected = ns;
+	}
+
+	public long getExpectedInterval() {
+		return expected;
+	}
+
+	/**
+	 * Clears everything before the next frame is recorded, from any thread.
+	 */
+	public void reset() {
+		resetPending = true;
+	}
+
+	/**
+	 * Called by whoever asks for a render, the delay until the frame is picked up tells how
+	 * early a late latch has to wake up.
+	 */
+	public void onRenderRequested(long now) {
+		renderRequested = now;
+	}
+
+	/**
+	 * Called from the GL thread when a new frame is picked up for presentation.
+	 *
+	 * @param published when the core published it, 0 if not known.
+	 */
+	public void onPresent(long now, long published) {
+		if (resetPending) {
+			resetPending = false;
+			Arrays.fill(frameTimes, 0);
+			Arrays.fill(latencies, 0);
+			lastPresent = 0;
+			frames = 0;
+			janks = 0;
+			missedVsyncs = 0;
+			uploads = 0;
+			bufferedUploads = 0;
+			uploadTime = 0;
+			maxUpload = 0;
+		}
+
+		long requested = renderRequested;
+		if (requested != 0 && now >= requested) {
+			//moving average over about 8 frames
+			wakeDelay += (now - requested - wakeDelay) / 8;
+			renderRequested = 0;
+		}
+
+		if (published != 0 && now >= published)
+			latencies[bucket(now - published)]++;
+
+		long interval = now - lastPresent;
+		boolean counted = lastPresent != 0 && interval < GAP_NS;
+		lastPresent = now;
+		if (!counted)
+			return;
+
+		frameTimes[bucket(interval)]++;
+		frames++;
+		long e = expected;
+		if (e > 0 && interval > e + e / 2) {
+			janks++;
+			missedVsyncs += (int) ((interval + e / 2) / e) - 1;
+		}
+	}
+
+	/**
+	 * Called from the GL thread after the texture of a new frame has been updated.
+	 *
+	 * @param ns       time the GL thread spent on it.
+	 * @param buffered true if it went through a pixel buffer, false if it was copied directly.
+	 */
+	public void onUpload(long ns, boolean buffered) {
+		uploads++;
+		if (buffered)
+			bufferedUploads++;
+		uploadTime += ns;
+		if (ns > maxUpload)
+			maxUpload = ns;
+	}
+
+	/**
+	 * @return the average time the GL thread spent updating the texture, in ns.
+	 */
+	public long getAverageUpload() {
+		int n = uploads;
+		return n > 0 ? uploadTime / n : 0;
+	}
+
+	public long getMaxUpload() {
+		return maxUpload;
+	}
+
+	/**
+	 * @return the uploads that went through a pixel buffer.
+	 */
+	public int getBufferedUploads() {
+		return bufferedUploads;
+	}
+
+	private static int bucket(long ns) {
+		return (int) Math.min(NUM_BUCKETS - 1, ns / BUCKET_NS);
+	}
+
+	/**
+	 * @return the frame times recorded so far.
+	 */
+	public int getFrames() {
+		return frames;
+	}
+
+	public int getJanks() {
+		return janks;
+	}
+
+	/**
+	 * @return the vsyncs that showed an old frame instead of a new one, summed over all janks.
+	 */
+	public int getMissedVsyncs() {
+		return missedVsyncs;
+	}
+
+	/**
+	 * @return the average delay from asking for a render to the frame being picked up.
+	 */
+	public long getWakeDelay() {
+		return wakeDelay;
+	}
+
+	/**
+	 * @param p from 0 to 1.
+	 * @return the time a frame stayed on screen at percentile p, in ns, 0 without frames.
+	 */
+	public long getFrameTimePercentile(double p) {
+		return percentile(frameTimes, p);
+	}
+
+	/**
+	 * @param p from 0 to 1.
+	 * @return the publish to present latency at percentile p, in ns, 0 without frames.
+	 */
+	public long getLatencyPercentile(double p) {
+		return percentile(latencies, p);
+	}
+
+	//upper edge of the bucket holding the percentile
+	private static long percentile(int[] histogram, double p) {
+		long total = 0;
+		for (int n : histogram)
+			total += n;
+		if (total == 0)
+			return 0;
+		long rank = Math.max(1, (long) Math.ceil(total * p));
+		long seen = 0;
+		for (int i = 0; i < histogram.length; i++) {
+			seen += histogram[i];
+			if (seen >= rank)
+				return (i + 1) * (long) BUCKET_NS;
+		}
+		return histogram.length * (long) BUCKET_NS;
+	}
+
+	private static String ms(long ns) {
+		return String.format(Locale.US, "%.2f", ns / 1000000f);
+	}
+
+	@Override
+	public String toString() {
+		return "frames:" + frames + " jank:" + janks + " missed vsyncs:" + missedVsyncs
+			+ " frame time p50/p95/p99:" + ms(getFrameTimePercentile(0.5)) + "/" + ms(getFrameTimePercentile(0.95)) + "/" + ms(getFrameTimePercentile(0.99)) + " ms"
+			+ " latency p50/p95/p99:" + ms(getLatencyPercentile(0.5)) + "/" + ms(getLatencyPercentile(0.95)) + "/" + ms(getLatencyPercentile(0.99)) + " ms"
+			+ " upload avg/max:" + ms(getAverageUpload()) + "/" + ms(maxUpload) + " ms (" + bufferedUploads + "/" + uploads + " buffered)";
+	}
+}
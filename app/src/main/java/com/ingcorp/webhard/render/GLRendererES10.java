@@ -70,7 +70,7 @@ public class GLRendererES10 implements Renderer, IGLRenderer {
 	protected int ax = 0;
 	protected int ay = 0;
 
-	protected ByteBuffer byteBuffer = null;
+	protected long uploadedFrame = -1;
 	protected boolean emuTextureInit = false;
 	protected boolean isAltPath = false;
 
@@ -80,6 +80,14 @@ public class GLRendererES10 implements Renderer, IGLRenderer {
 
 	protected boolean warn = false;
 
+	//there is no geometry to keep on the GPU with draw_texture, only the per frame state calls
+	//that change nothing are skipped
+	private final GLCallStats callStats = new GLCallStats();
+	private boolean clearColorSet = false;
+	private int boundTexture = -1;
+	private int cropWidth = -1;
+	private int cropHeight = -1;
+
 	public void setMAME4droid(MAME4droid mm) {
 		this.mm = mm;
 		if (mm == null) return;
@@ -92,12 +100,13 @@ public class GLRendererES10 implements Renderer, IGLRenderer {
 	}
 
 	public void changedEmulatedSize() {
-		//Log.v("mm","changedEmulatedSize "+shortBuffer+" "+Emulator.getScreenBuffer());
-		if (Emulator.getScreenBuffer() == null) return;
-		byteBuffer = Emulator.getScreenBuffer();
 		emuTextureInit = false;
 	}
 
+	public GLCallStats getCallStats() {
+		return callStats;
+	}
+
 	private int getP2Size(GL10 gl, int size) {
 		//String exts = gl.glGetString(GL10.GL_EXTENSIONS);
 		//if(exts.indexOf("GL_ARB_texture_non_power_of_two")!=-1 )
@@ -139,6 +148,9 @@ public class GLRendererES10 implements Renderer, IGLRenderer {
 		gl.glDisable(GL10.GL_DEPTH_TEST);
 		gl.glDisable(GL10.GL_MULTISAMPLE);
 
+		clearColorSet = false;
+		boundTexture = -1;
+		cropWidth = -1;
 		emuTextureInit = false;
 	}
 
@@ -156,6 +168,7 @@ public class GLRendererES10 implements Renderer, IGLRenderer {
 		gl.glClearColor(0.5f, 0.5f, 0.5f, 1);
 		gl.glClear(GL10.GL_COLOR_BUFFER_BIT | GL10.GL_DEPTH_BUFFER_BIT);
 
+		clearColorSet = false;
 		emuTextureInit = false;
 	}
 
@@ -189,6 +202,8 @@ public class GLRendererES10 implements Renderer, IGLRenderer {
 
 				textureId = mTextureNameWorkspace[0];
 				gl.glBindTexture(GL10.GL_TEXTURE_2D, textureId);
+				boundTexture = textureId;
+				cropWidth = -1;
 
 				smooth = isSmooth();
 
@@ -208,6 +223,7 @@ public class GLRendererES10 implements Renderer, IGLRenderer {
 
 			if (!emuTextureInit) {
 				gl.glBindTexture(GL10.GL_TEXTURE_2D, emuTextureId);
+				boundTexture = emuTextureId;
 
 				ByteBuffer tmp = ByteBuffer.allocate(getP2Size(gl, Emulator.getEmulatedWidth()) * getP2Size(gl, Emulator.getEmulatedHeight()) * 4 /* RGB*/);
 				byte[] a = tmp.array();
@@ -220,9 +236,11 @@ public class GLRendererES10 implements Renderer, IGLRenderer {
 					GL10.GL_UNSIGNED_BYTE, tmp);
 
 				emuTextureInit = true;
+				uploadedFrame = -1;
 			}
 
 			final int error = gl.glGetError();
+			callStats.count(1);
 			if (error != GL10.GL_NO_ERROR) {
 				Log.e("GLRender", "createEmuTexture GLError: " + error);
 			}
@@ -231,11 +249,18 @@ public class GLRendererES10 implements Renderer, IGLRenderer {
 
 	//long target = -1;
 
-	synchronized public void onDrawFrame(GL10 gl) {
+	public void onDrawFrame(GL10 gl) {
 		// Log.v("mm","onDrawFrame called "+shortBuffer);
+		callStats.beginFrame();
 		//gl.glClearColor(255, 255, 255, 1.0f);
-		gl.glClearColor(0, 0, 0, 1.0f);
+		if (!clearColorSet) {
+			gl.glClearColor(0, 0, 0, 1.0f);
+			clearColorSet = true;
+			callStats.count(1);
+		} else
+			callStats.skip(1);
 		gl.glClear(GL10.GL_COLOR_BUFFER_BIT | GL10.GL_DEPTH_BUFFER_BIT);
+		callStats.count(1);
 
         /*while(target != -1){
         	if(System.nanoTime() > target)
@@ -243,14 +268,8 @@ public class GLRendererES10 implements Renderer, IGLRenderer {
         }
         target = System.nanoTime() + 1000000000/60;*/
 
-		if (byteBuffer == null) {
-			ByteBuffer buf = Emulator.getScreenBuffer();
-			if (buf == null) return;
-			byteBuffer = buf;
-		}
-
-		byteBuffer.rewind();
-		byteBuffer.order(ByteOrder.nativeOrder());
+		FrameExchange.Frame emuFrame = Emulator.getFrameExchange().acquire();
+		if (emuFrame == null) return;
 
 		try {
 			createEmuTexture(gl);
@@ -261,22 +280,45 @@ public class GLRendererES10 implements Renderer, IGLRenderer {
 			return;
 		}
 
-		gl.glBindTexture(GL10.GL_TEXTURE_2D, emuTextureId);
+		if (boundTexture != emuTextureId) {
+			gl.glBindTexture(GL10.GL_TEXTURE_2D, emuTextureId);
+			boundTexture = emuTextureId;
+			callStats.count(1);
+		} else
+			callStats.skip(1);
 
 		int width = Emulator.getEmulatedWidth();
 		int height = Emulator.getEmulatedHeight();
 
-		gl.glTexSubImage2D(GL11.GL_TEXTURE_2D, 0, 0, 0, width, height,
-			GL10.GL_RGBA, GL10.GL_UNSIGNED_BYTE, byteBuffer);
+		if (emuFrame.getSequence() != uploadedFrame
+			&& emuFrame.getWidth() == width && emuFrame.getHeight() == height) {
+			long start = System.nanoTime();
+			ByteBuffer byteBuffer = emuFrame.getBuffer();
+			byteBuffer.rewind();
+			byteBuffer.order(ByteOrder.nativeOrder());
+			gl.glTexSubImage2D(GL11.GL_TEXTURE_2D, 0, 0, 0, width, height,
+				GL10.GL_RGBA, GL10.GL_UNSIGNED_BYTE, byteBuffer);
+			Emulator.getFrameExchange().getStats().onUpload(System.nanoTime() - start, false);
+			callStats.count(1);
+			uploadedFrame = emuFrame.getSequence();
+		}
 
-		mCrop[0] = 0; // u
-		mCrop[1] = height; // v
-		mCrop[2] = width; // w
-		mCrop[3] = -height; // h
+		//the crop rectangle is state of the texture
+		if (cropWidth != width || cropHeight != height) {
+			mCrop[0] = 0; // u
+			mCrop[1] = height; // v
+			mCrop[2] = width; // w
+			mCrop[3] = -height; // h
 
-		((GL11) gl).glTexParameteriv(GL10.GL_TEXTURE_2D, GL11Ext.GL_TEXTURE_CROP_RECT_OES, mCrop, 0);
+			((GL11) gl).glTexParameteriv(GL10.GL_TEXTURE_2D, GL11Ext.GL_TEXTURE_CROP_RECT_OES, mCrop, 0);
+			cropWidth = width;
+			cropHeight = height;
+			callStats.count(1);
+		} else
+			callStats.skip(1);
 
 		((GL11Ext) gl).glDrawTexiOES(0, 0, 0, Emulator.getWindow_width(), Emulator.getWindow_height());
+		callStats.count(1);
 
 	}
 }
@@ -51,17 +51,19 @@ import android.opengl.Matrix;
 import android.opengl.GLSurfaceView.Renderer;
 import android.util.Log;
 
+import com.ingcorp.webhard.BuildConfig;
 import com.ingcorp.webhard.Emulator;
 import com.ingcorp.webhard.MAME4droid;
 import com.ingcorp.webhard.widgets.WarnWidget;
 
+import java.io.File;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
@@ -75,9 +77,12 @@ public class GLRendererES32 implements Renderer, IGLRenderer {
 	private int filter = FILTER_NO_DEFINED;
 
 	protected int emuTextureId = -1;
-	protected ByteBuffer byteBuffer = null;
+	protected long uploadedFrame = -1;
 	protected boolean emuTextureInit = false;
 
+	//null when frames are uploaded straight from the emulator buffer
+	protected PboRing pboRing = null;
+
 	protected boolean smooth = false;
 
 	protected MAME4droid mm = null;
@@ -86,6 +91,34 @@ public class GLRendererES32 implements Renderer, IGLRenderer {
 
 	private static final String TAG = "GLRendererES32";
 
+	private static final String PROGRAMS_DIR = "programs";
+	private static final String SOURCES_DIR = "shader_sources";
+
+	private ProgramCache programCache = null;
+
+	//builds the effects off the GL thread, null if the driver cannot share a context
+	private ShaderCompiler shaderCompiler = null;
+	private int contextGeneration = 0;
+
+	static final class CompiledEffect {
+		final String id;
+		final ShaderConf conf;
+		final int version;
+		final int program;
+		final int generation;
+
+		CompiledEffect(String id, ShaderConf conf, int version, int program, int generation) {
+			this.id = id;
+			this.conf = conf;
+			this.version = version;
+			this.program = program;
+			this.generation = generation;
+		}
+	}
+
+	//set by the compiler, taken by the next draw, which keeps the current effect until then
+	private final AtomicReference<CompiledEffect> compiledEffect = new AtomicReference<>();
+
 	private final float[] projectionMatrix = new float[16];
 
 	private int quadPositionStockHandle = -1;
@@ -118,8 +151,16 @@ public class GLRendererES32 implements Renderer, IGLRenderer {
 
 	private boolean isEffectProgramFailed = false;
 
-	private final FloatBuffer vertices;
-	private final FloatBuffer texcoords;
+	private final DrawAllocationCheck allocationCheck = BuildConfig.DEBUG ? new DrawAllocationCheck(TAG) : null;
+
+	//quad positions followed by texture coordinates, in a buffer object once the context exists
+	private final FloatBuffer geometry;
+
+	private final GLStateCache glState = new GLStateCache();
+
+	private int geometryBuffer = -1;
+	private int stockVertexArray = -1;
+	private int effectVertexArray = -1;
 
 	//private FloatBuffer color;
 
@@ -163,18 +204,55 @@ public class GLRendererES32 implements Renderer, IGLRenderer {
 	public void setMAME4droid(MAME4droid mm) {
 		this.mm = mm;
 		if (mm == null) return;
+		programCache = new ProgramCache(new File(mm.getCacheDir(), PROGRAMS_DIR));
+		ShaderUtil.setSourceCacheDir(new File(mm.getCacheDir(), SOURCES_DIR));
 		fillShaderConfs();
 	}
 
+	//0 if the shader cannot be read, compiled or linked
+	private int buildProgram(String name, int version) {
+		return programCache.getProgram(TAG, ShaderUtil.getShaderDir(mm), name, version);
+	}
+
 	public GLRendererES32() {
-		this.vertices = convertFloatArrayToFloatBuffer(vertexes_flipped);
-		this.texcoords = convertFloatArrayToFloatBuffer(tex_coords);
+		float[] quad = new float[vertexes_flipped.length + tex_coords.length];
+		System.arraycopy(vertexes_flipped, 0, quad, 0, vertexes_flipped.length);
+		System.arraycopy(tex_coords, 0, quad, vertexes_flipped.length, tex_coords.length);
+		this.geometry = convertFloatArrayToFloatBuffer(quad);
+	}
+
+	public GLCallStats getCallStats() {
+		return glState.getStats();
+	}
+
+	//the quad never changes, so it goes to the GPU once and each program gets a vertex array over it
+	private int createVertexArray(int quadPositionHandle, int texPositionHandle) {
+		if (geometryBuffer == -1) {
+			int[] ids = new int[1];
+			GLES32.glGenBuffers(1, ids, 0);
+			geometryBuffer = ids[0];
+			GLES32.glBindBuffer(GLES32.GL_ARRAY_BUFFER, geometryBuffer);
+			GLES32.glBufferData(GLES32.GL_ARRAY_BUFFER, geometry.capacity() * 4, geometry, GLES32.GL_STATIC_DRAW);
+		}
+
+		int[] ids = new int[1];
+		GLES32.glGenVertexArrays(1, ids, 0);
+		glState.bindVertexArray(ids[0]);
+		GLES32.glBindBuffer(GLES32.GL_ARRAY_BUFFER, geometryBuffer);
+		if (quadPositionHandle >= 0) {
+			GLES32.glVertexAttribPointer(quadPositionHandle, 2, GLES32.GL_FLOAT, false, 0, 0);
+			GLES32.glEnableVertexAttribArray(quadPositionHandle);
+		}
+		if (texPositionHandle >= 0) {
+			GLES32.glVertexAttribPointer(texPositionHandle, 2, GLES32.GL_FLOAT, false, 0, vertexes_flipped.length * 4);
+			GLES32.glEnableVertexAttribArray(texPositionHandle);
+		}
+		glState.bindVertexArray(0);
+		GLES32.glBindBuffer(GLES32.GL_ARRAY_BUFFER, 0);
+		return ids[0];
 	}
 
 	public void changedEmulatedSize() {
-		//Log.v("mm","changedEmulatedSize "+shortBuffer+" "+Emulator.getScreenBuffer());
-		if (Emulator.getScreenBuffer() == null) return;
-		byteBuffer = Emulator.getScreenBuffer();
 		emuTextureInit = false;
 	}
 
@@ -182,6 +260,14 @@ public class GLRendererES32 implements Renderer, IGLRenderer {
 
 		Log.v("mm", "onSurfaceCreated ");
 
+		//a new context, nothing of the old one is left
+		glState.reset();
+		geometryBuffer = -1;
+		stockVertexArray = -1;
+		effectVertexArray = -1;
+		effectProgram = -1;
+		effectProgramId = NO_EFFECT;
+
 		int[] vers = new int[2];
 		GLES32.glGetIntegerv(GLES32.GL_MAJOR_VERSION, vers, 0);
 		GLES32.glGetIntegerv(GLES32.GL_MINOR_VERSION, vers, 1);
@@ -196,36 +282,24 @@ public class GLRendererES32 implements Renderer, IGLRenderer {
 
 		GLES32.glClearColor(255.0F, 255.0F, 255.0F, 1.0F);
 
-		int vertexShader =
-			ShaderUtil.loadGLShader(TAG, mm, GLES32.GL_VERTEX_SHADER, "stock.glsl",
-				new HashMap<String, Integer>() {{
-					put("VERTEX", (Integer) 1);
-				}}
-				, 1
-			);
-		int fragmentShader =
-			ShaderUtil.loadGLShader(TAG, mm, GLES32.GL_FRAGMENT_SHADER, "stock.glsl",
-				new HashMap<String, Integer>() {{
-					put("FRAGMENT", (Integer) 1);
-				}},
-				1
-			);
-
-		if (vertexShader <= 0 || fragmentShader <= 0) {
+		if (programCache != null)
+			programCache.onContextCreated();
+
+		//the worker shares the objects of this context, a new one needs a new worker
+		if (shaderCompiler != null)
+			shaderCompiler.release();
+		shaderCompiler = null;
+		compiledEffect.set(null);
+		contextGeneration++;
+
+		this.stockProgram = buildProgram("stock.glsl", 1);
+
+		if (this.stockProgram <= 0) {
 			new WarnWidget.WarnWidgetHelper(mm, "Error creating stock shaders!", 5, Color.RED, false);
 			return;
 		}
 
-		this.stockProgram = GLES32.glCreateProgram();
-		GLES32.glAttachShader(this.stockProgram, vertexShader);
-		GLES32.glAttachShader(this.stockProgram, fragmentShader);
-		GLES32.glLinkProgram(this.stockProgram);
-		GLES32.glDetachShader(this.stockProgram, vertexShader);
-		GLES32.glDetachShader(this.stockProgram, fragmentShader);
-		GLES32.glDeleteShader(vertexShader);
-		GLES32.glDeleteShader(fragmentShader);
-
-		GLES32.glUseProgram(this.stockProgram);
+		glState.useProgram(this.stockProgram);
 
 		if (GLES32.glGetError() != GLES32.GL_NO_ERROR) {
 			new WarnWidget.WarnWidgetHelper(mm, "Error creating stock shader program!", 3, Color.RED, false);
@@ -240,6 +314,17 @@ public class GLRendererES32 implements Renderer, IGLRenderer {
 		//View projection transformation matrix handler
 		viewProjectionMatrixStockHandle = GLES32.glGetUniformLocation(stockProgram, "MVPMatrix");
 
+		stockVertexArray = createVertexArray(quadPositionStockHandle, texPositionStockHandle);
+
+		if (mm != null) {
+			shaderCompiler = ShaderCompiler.start(programCache, ShaderUtil.getShaderDir(mm));
+			if (shaderCompiler != null)
+				precompileRecentEffects();
+		}
+
+		if (pboRing != null)
+			pboRing.abandon();
+
 		emuTextureInit = false;
 	}
 
@@ -260,53 +345,90 @@ public class GLRendererES32 implements Renderer, IGLRenderer {
 		return Emulator.isEmuFiltering();
 	}
 
+	private void precompileRecentEffects() {
+		boolean as30 = mm.getPrefsHelper().getRendererSettings().isShadersAs30();
+		for (String id : mm.getPrefsHelper().getRecentShaders()) {
+			ShaderConf c = (ShaderConf) shaderConfs.get(id);
+			if (c != null)
+				shaderCompiler.precompile(c.fileName, as30 ? 3 : c.version);
+		}
+	}
+
+	//the draws go on with the current effect meanwhile
+	private void requestEffect(final String id, final ShaderConf c, int version) {
+		final ShaderCompiler compiler = shaderCompiler;
+		final int generation = contextGeneration;
+		compiler.compile(c.fileName, version, (fileName, v, program) -> {
+			CompiledEffect old = compiledEffect.getAndSet(new CompiledEffect(id, c, v, program, generation));
+			//never drawn, another effect was picked before it got there
+			if (old != null && old.generation == generation)
+				compiler.discard(old.program);
+		});
+	}
+
+	private void onEffectCompiled(CompiledEffect compiled) {
+		//made for a context that is gone, and its program with it
+		if (compiled.generation != contextGeneration)
+			return;
+		if (!compiled.id.equals(effectProgramId)) {
+			shaderCompiler.discard(compiled.program);
+			return;
+		}
+		int program = compiled.program;
+		if (program == ShaderCompiler.NOT_BUILT)
+			program = buildProgram(compiled.conf.fileName, compiled.version);
+		filter = compiled.conf.smooth ? FILTER_ON : FILTER_OFF;
+		isEffectProgramFailed = !installEffectProgram(program);
+		if (!isEffectProgramFailed)
+			mm.getPrefsHelper().addRecentShader(compiled.id);
+	}
+
 	public void dispose(GL10 gl) {
+		if (shaderCompiler != null)
+			shaderCompiler.release();
+		shaderCompiler = null;
 		if (emuTextureId != -1)
 			GLES32.glDeleteTextures(1, new int[]{emuTextureId}, 0);
 		if (stockProgram >= 0)
 			GLES32.glDeleteProgram(stockProgram);
 		if (effectProgram >= 0)
 			GLES32.glDeleteProgram(effectProgram);
+		if (stockVertexArray != -1)
+			GLES32.glDeleteVertexArrays(1, new int[]{stockVertexArray}, 0);
+		if (effectVertexArray != -1)
+			GLES32.glDeleteVertexArrays(1, new int[]{effectVertexArray}, 0);
+		if (geometryBuffer != -1)
+			GLES32.glDeleteBuffers(1, new int[]{geometryBuffer}, 0);
+		glState.reset();
 	}
 
 	protected boolean createEffectShader(String name, int version) {
+		return installEffectProgram(buildProgram(name, version));
+	}
 
-		if (effectProgram >= 0)
+	//replaces the effect program with a linked one, false if there is none
+	private boolean installEffectProgram(int program) {
+
+		if (effectProgram >= 0) {
 			GLES32.glDeleteProgram(effectProgram);
+			glState.forgetProgram(effectProgram);
+		}
+		if (effectVertexArray != -1) {
+			GLES32.glDeleteVertexArrays(1, new int[]{effectVertexArray}, 0);
+			glState.forgetVertexArray(effectVertexArray);
+		}
 
 		effectProgram = -1;
+		effectVertexArray = -1;
 
-		int vertexShader =
-			ShaderUtil.loadGLShader(TAG, mm, GLES32.GL_VERTEX_SHADER, name,
-				new HashMap<String, Integer>() {{
-					put("VERTEX", (Integer) 1);
-				}}
-				, version
-			);
-		int fragmentShader =
-			ShaderUtil.loadGLShader(TAG, mm, GLES32.GL_FRAGMENT_SHADER, name,
-				new HashMap<String, Integer>() {{
-					put("FRAGMENT", (Integer) 1);
-				}},
-				version
-			);
-
-		if (vertexShader <= 0 || fragmentShader <= 0) {
+		if (program <= 0) {
 			new WarnWidget.WarnWidgetHelper(mm, "Error creating effect shader... reverting to stock shader!", 3, Color.RED, false);
 			return false;
 		}
 
-		this.effectProgram = GLES32.glCreateProgram();
-
-		GLES32.glAttachShader(this.effectProgram, vertexShader);
-		GLES32.glAttachShader(this.effectProgram, fragmentShader);
-		GLES32.glLinkProgram(this.effectProgram);
-		GLES32.glDetachShader(this.effectProgram, vertexShader);
-		GLES32.glDetachShader(this.effectProgram, fragmentShader);
-		GLES32.glDeleteShader(vertexShader);
-		GLES32.glDeleteShader(fragmentShader);
+		this.effectProgram = program;
 
-		GLES32.glUseProgram(this.effectProgram);
+		glState.useProgram(this.effectProgram);
 
 		final int error = GLES32.glGetError();
 		if (error != GLES32.GL_NO_ERROR) {
@@ -326,6 +448,8 @@ public class GLRendererES32 implements Renderer, IGLRenderer {
 		frame_countHandle = GLES32.glGetUniformLocation(effectProgram, "FrameCount");
 		colorHandle = GLES32.glGetUniformLocation(effectProgram, "COLOR");
 
+		effectVertexArray = createVertexArray(quadPositionEffectHandle, texPositionEffectHandle);
+
 		return true;
 	}
 
@@ -342,12 +466,13 @@ public class GLRendererES32 implements Renderer, IGLRenderer {
 
 			if (emuTextureId != -1) {
 				GLES32.glDeleteTextures(1, new int[]{emuTextureId}, 0);
+				glState.forgetTexture(emuTextureId);
 			}
 
 			GLES32.glGenTextures(1, textureUnit, 0);
 
 			textureId = textureUnit[0];
-			GLES32.glBindTexture(GLES32.GL_TEXTURE_2D, textureId);
+			glState.bindTexture(textureId);
 
 			smooth = (isSmooth() && request_filter == FILTER_NO_DEFINED) || request_filter == FILTER_ON;
 
@@ -365,7 +490,7 @@ public class GLRendererES32 implements Renderer, IGLRenderer {
 
 		if (!emuTextureInit) {
 
-			GLES32.glBindTexture(GLES32.GL_TEXTURE_2D, emuTextureId);
+			glState.bindTexture(emuTextureId);
 
 			ByteBuffer tmp = ByteBuffer.allocate(Emulator.getEmulatedWidth() * Emulator.getEmulatedHeight() * 4 /* RGB*/);
 			byte[] a = tmp.array();
@@ -380,6 +505,17 @@ public class GLRendererES32 implements Renderer, IGLRenderer {
 				GLES32.GL_UNSIGNED_BYTE, tmp);
 
 			emuTextureInit = true;
+			uploadedFrame = -1;
+
+			if (mm != null && mm.getPrefsHelper().getRendererSettings().isPboUpload()) {
+				if (pboRing == null)
+					pboRing = new PboRing();
+				if (!pboRing.allocate(Emulator.getEmulatedWidth(), Emulator.getEmulatedHeight()))
+					pboRing = null;
+			} else if (pboRing != null) {
+				pboRing.release();
+				pboRing = null;
+			}
 
 		}
 
@@ -390,92 +526,105 @@ public class GLRendererES32 implements Renderer, IGLRenderer {
 
 	}
 
-	synchronized public void onDrawFrame(GL10 unused) {
+	public void onDrawFrame(GL10 unused) {
 		// Log.v("mm","onDrawFrame called "+shortBuffer);
 
+		if (allocationCheck != null)
+			allocationCheck.begin();
+
+		glState.getStats().beginFrame();
+
 		try {
 
 			frame++;
 
-			String effectId = mm.getPrefsHelper().getShaderEffectSelected();
+			RendererSettings settings = mm.getPrefsHelper().getRendererSettings();
+			String effectId = settings.getShaderEffect();
 
 			if (!effectId.equals(NO_EFFECT) && !effectProgramId.equals(effectId)) {
 				effectProgramId = effectId;
 				ShaderConf c = (ShaderConf) shaderConfs.get(effectProgramId);
 				if (c != null) {
-					filter = c.smooth ? FILTER_ON : FILTER_OFF;
-					int version = mm.getPrefsHelper().isShadersAs30() ? 3 : c.version;
-					isEffectProgramFailed = !createEffectShader(c.fileName, version);
+					int version = settings.isShadersAs30() ? 3 : c.version;
+					if (shaderCompiler != null) {
+						requestEffect(effectId, c, version);
+					} else {
+						filter = c.smooth ? FILTER_ON : FILTER_OFF;
+						isEffectProgramFailed = !createEffectShader(c.fileName, version);
+						if (!isEffectProgramFailed)
+							mm.getPrefsHelper().addRecentShader(effectId);
+					}
 				} else {
 					isEffectProgramFailed = true;
 					new WarnWidget.WarnWidgetHelper(mm, "Not found shader configuration... reverting to stock shader!", 3, Color.RED, false);
 				}
 			}
 
-			boolean effect = (Emulator.isInGame() || mm.getPrefsHelper().isShadersUsedInFrontend()) && !isEffectProgramFailed && !effectId.equals(NO_EFFECT);
+			CompiledEffect compiled = compiledEffect.getAndSet(null);
+			if (compiled != null)
+				onEffectCompiled(compiled);
 
-			if (byteBuffer == null) {
-				ByteBuffer buf = Emulator.getScreenBuffer();
-				if (buf == null) return;
-				byteBuffer = buf;
-			}
+			boolean effect = (Emulator.isInGame() || settings.isShadersInFrontend()) && !isEffectProgramFailed && !effectId.equals(NO_EFFECT)
+				&& effectProgram > 0;
 
-			byteBuffer.rewind();
-			byteBuffer.order(ByteOrder.nativeOrder());
+			FrameExchange.Frame emuFrame = Emulator.getFrameExchange().acquire();
+			if (emuFrame == null) return;
 
 			createEmuTexture(effect ? filter : FILTER_NO_DEFINED);
 
 			// Use the GL clear color specified in onSurfaceCreated() to erase the GL surface.
 			GLES32.glClear(GLES32.GL_COLOR_BUFFER_BIT | GLES32.GL_DEPTH_BUFFER_BIT);
+			glState.count(1);
 
-			GLES32.glUseProgram(effect ? effectProgram : stockProgram);
+			//the cache drops the program, texture and uniform changes that change nothing
+			glState.useProgram(effect ? effectProgram : stockProgram);
 
 			int textureUniformHandle = effect ? textureUniformEffectHandle : textureUniformStockHandle;
 
 			// Attach the object texture.
-			GLES32.glBindTexture(GL10.GL_TEXTURE_2D, emuTextureId);
-			GLES32.glUniform1i(textureUniformHandle, 0);
+			glState.bindTexture(emuTextureId);
+			glState.uniform1i(textureUniformHandle, 0);
 
 			int emuWidth = Emulator.getEmulatedWidth();
 			int emuHeight = Emulator.getEmulatedHeight();
 
-			GLES32.glTexSubImage2D(GLES32.GL_TEXTURE_2D, 0, 0, 0, emuWidth, emuHeight,
-				GLES32.GL_RGBA, GLES32.GL_UNSIGNED_BYTE, byteBuffer);
+			//skip the upload when the frame is already in the texture or was produced for another video mode
+			if (emuFrame.getSequence() != uploadedFrame
+				&& emuFrame.getWidth() == emuWidth && emuFrame.getHeight() == emuHeight) {
+				long start = System.nanoTime();
+				ByteBuffer byteBuffer = emuFrame.getBuffer();
+				boolean pbo = pboRing != null && pboRing.upload(byteBuffer, emuWidth, emuHeight);
+				if (!pbo) {
+					byteBuffer.rewind();
+					byteBuffer.order(ByteOrder.nativeOrder());
+					GLES32.glTexSubImage2D(GLES32.GL_TEXTURE_2D, 0, 0, 0, emuWidth, emuHeight,
+						GLES32.GL_RGBA, GLES32.GL_UNSIGNED_BYTE, byteBuffer);
+				}
+				glState.count(pbo ? pboRing.getLastCalls() : 1);
+				Emulator.getFrameExchange().getStats().onUpload(System.nanoTime() - start, pbo);
+				uploadedFrame = emuFrame.getSequence();
+			}
 
 			int viewProjectionMatrixHandle = effect ? viewProjectionMatrixEffectHandle : viewProjectionMatrixStockHandle;
 
-			GLES32.glUniformMatrix4fv(viewProjectionMatrixHandle, 1, false, projectionMatrix, 0);
-
-			float[] input_size = new float[]{emuWidth, emuHeight};
-			float[] output_size = new float[]{width, height};
-			float[] color = new float[]{255.0f, 255.0f, 255.0f, 255.0f};
+			glState.uniformMatrix4fv(viewProjectionMatrixHandle, projectionMatrix);
 
 			if (effect) {
-				GLES32.glUniform2fv(texture_sizeHandle, 1, input_size, 0);
-				GLES32.glUniform2fv(input_sizeHandle, 1, input_size, 0);
-				GLES32.glUniform2fv(output_sizeHandle, 1, output_size, 0);
-				GLES32.glUniform1i(frame_countHandle, frame);
-				GLES32.glUniform4fv(colorHandle, 1, color, 0);
+				glState.uniform2f(texture_sizeHandle, emuWidth, emuHeight);
+				glState.uniform2f(input_sizeHandle, emuWidth, emuHeight);
+				glState.uniform2f(output_sizeHandle, width, height);
+				glState.uniform1i(frame_countHandle, frame);
+				glState.uniform4f(colorHandle, 255.0f, 255.0f, 255.0f, 255.0f);
 			}
 
-			int texPositionHandle = effect ? texPositionEffectHandle : texPositionStockHandle;
-			int quadPositionHandle = effect ? quadPositionEffectHandle : quadPositionStockHandle;
-
-			GLES32.glVertexAttribPointer(quadPositionHandle, 2, GLES32.GL_FLOAT, false, 0, vertices);
-			GLES32.glVertexAttribPointer(texPositionHandle, 2, GLES32.GL_FLOAT, false, 0, texcoords);
-
-			// Enable attribute handlers
-			GLES32.glEnableVertexAttribArray(quadPositionHandle);
-			GLES32.glEnableVertexAttribArray(texPositionHandle);
+			glState.bindVertexArray(effect ? effectVertexArray : stockVertexArray);
 
 			//Draw shape
 			GLES32.glDrawArrays(GLES32.GL_TRIANGLE_STRIP, 0, 4);
-
-			// Disable vertex arrays
-			GLES32.glDisableVertexAttribArray(quadPositionHandle);
-			GLES32.glDisableVertexAttribArray(texPositionHandle);
+			glState.count(1);
 
 			ShaderUtil.checkGLError(TAG, "After draw");
+			glState.count(1);
 
 		} catch (OutOfMemoryError e) {
 			if (!warn)
@@ -485,6 +634,9 @@ public class GLRendererES32 implements Renderer, IGLRenderer {
 		} catch (Throwable e) {
 			// Avoid crashing the application due to unhandled exceptions.
 			e.printStackTrace();
+		} finally {
+			if (allocationCheck != null)
+				allocationCheck.end();
 		}
 	}
 
@@ -0,0 +1,232 @@
+/*
+ * This file is part of MAME4droid.
+ *
+ * Copyright (C) 2024 David Valdeita (Seleuco)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Linking MAME4droid statically or dynamically with other modules is
+ * making a combined work based on MAME4droid. Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * In addition, as a special exception, the copyright holders of MAME4droid
+ * give you permission to combine MAME4droid with free software programs
+ * or libraries that are released under the GNU LGPL and with code included
+ * in the standard release of MAME under the MAME License (or modified
+ * versions of such code, with unchanged license). You may copy and
+ * distribute such a system following the terms of the GNU GPL for MAME4droid
+ * and the licenses of the other code concerned, provided that you include
+ * the source code of that other code when and as the GNU GPL requires
+ * distribution of source code.
+ *
+ * Note that people who make modified versions of MAME4idroid are not
+ * obligated to grant this special exception for their modified versions; it
+ * is their choice whether to do so. The GNU General Public License
+ * gives permission to release a modified version without this exception;
+ * this exception also makes it possible to release a modified version
+ * which carries forward this exception.
+ *
+ * MAME4droid is dual-licensed: Alternatively, you can license MAME4droid
+ * under a MAME license, as set out in http://mamedev.org/
+ */
+
+package com.ingcorp.webhard.render;
+
+import android.opengl.GLES32;
+
+import java.util.Arrays;
+
+/**
+ * Shadow of the GL state the ES 3 renderer changes every frame: program, texture of unit 0,
+ * vertex array and the uniforms. Changes to the value already set are not sent to the driver.
+ * All the changes have to go through here, or the shadow has to be reset, e.g. with a new context.
+ * GL thread only.
+ */
+public final class GLStateCache {
+
+	//stock and effect programs with a handful of uniforms each
+	private static final int MAX_UNIFORMS = 32;
+	private static final int MAX_COMPONENTS = 16;
+
+	private final GLCallStats stats = new GLCallStats();
+
+	private int program = -1;
+	private int texture = -1;
+	private int vertexArray = -1;
+
+	private final int[] uniformPrograms = new int[MAX_UNIFORMS];
+	private final int[] uniformLocations = new int[MAX_UNIFORMS];
+	private final float[][] uniformValues = new float[MAX_UNIFORMS][MAX_COMPONENTS];
+	private int uniforms = 0;
+
+	public GLCallStats getStats() {
+		return stats;
+	}
+
+	/**
+	 * Forgets everything, the context is new or was changed behind the cache.
+	 */
+	public void reset() {
+		program = -1;
+		texture = -1;
+		vertexArray = -1;
+		uniforms = 0;
+	}
+
+	public void useProgram(int p) {
+		if (p == program) {
+			stats.skip(1);
+			return;
+		}
+		GLES32.glUseProgram(p);
+		program = p;
+		stats.count(1);
+	}
+
+	public void bindTexture(int t) {
+		if (t == texture) {
+			stats.skip(1);
+			return;
+		}
+		GLES32.glBindTexture(GLES32.GL_TEXTURE_2D, t);
+		texture = t;
+		stats.count(1);
+	}
+
+	public void bindVertexArray(int vao) {
+		if (vao == vertexArray) {
+			stats.skip(1);
+			return;
+		}
+		GLES32.glBindVertexArray(vao);
+		vertexArray = vao;
+		stats.count(1);
+	}
+
+	/**
+	 * A texture, program or vertex array was deleted, its name may come back for a new one.
+	 */
+	public void forgetTexture(int t) {
+		if (t == texture)
+			texture = -1;
+	}
+
+	public void forgetVertexArray(int vao) {
+		if (vao == vertexArray)
+			vertexArray = -1;
+	}
+
+	public void forgetProgram(int p) {
+		if (p == program)
+			program = -1;
+		int n = 0;
+		for (int i = 0; i < uniforms; i++) {
+			if (uniformPrograms[i] == p)
+				continue;
+			if (n != i) {
+				uniformPrograms[n] = uniformPrograms[i];
+				uniformLocations[n] = uniformLocations[i];
+				float[] v = uniformValues[n];
+				uniformValues[n] = uniformValues[i];
+				uniformValues[i] = v;
+			}
+			n++;
+		}
+		uniforms = n;
+	}
+
+	/**
+	 * Counts calls made directly, like draws and uploads.
+	 */
+	public void count(int n) {
+		stats.count(n);
+	}
+
+	//the uniforms belong to the program in use
+	public void uniform1i(int location, int x) {
+		//the bits are kept, a float would round the frame counter
+		if (changed(location, 1, Float.intBitsToFloat(x), 0, 0, 0))
+			GLES32.glUniform1i(location, x);
+	}
+
+	public void uniform2f(int location, float x, float y) {
+		if (changed(location, 2, x, y, 0, 0))
+			GLES32.glUniform2f(location, x, y);
+	}
+
+	public void uniform4f(int location, float x, float y, float z, float w) {
+		if (changed(location, 4, x, y, z, w))
+			GLES32.glUniform4f(location, x, y, z, w);
+	}
+
+	public void uniformMatrix4fv(int location, float[] m) {
+		if (location < 0) {
+			stats.skip(1);
+			return;
+		}
+		int i = slot(location);
+		if (i >= 0) {
+			float[] v = uniformValues[i];
+			boolean same = true;
+			for (int j = 0; j < MAX_COMPONENTS && same; j++)
+				same = v[j] == m[j];
+			if (same) {
+				stats.skip(1);
+				return;
+			}
+			System.arraycopy(m, 0, v, 0, MAX_COMPONENTS);
+		}
+		GLES32.glUniformMatrix4fv(location, 1, false, m, 0);
+		stats.count(1);
+	}
+
+	//false if the uniform already has the value, -1 locations are not in the program
+	private boolean changed(int location, int n, float x, float y, float z, float w) {
+		if (location < 0) {
+			stats.skip(1);
+			return false;
+		}
+		int i = slot(location);
+		if (i >= 0) {
+			float[] v = uniformValues[i];
+			if (v[0] == x && (n < 2 || v[1] == y) && (n < 4 || (v[2] == z && v[3] == w))) {
+				stats.skip(1);
+				return false;
+			}
+			v[0] = x;
+			v[1] = y;
+			v[2] = z;
+			v[3] = w;
+		}
+		//not cached when the table is full, then always sent
+		stats.count(1);
+		return true;
+	}
+
+	//the cache entry of a uniform of the current program, a new one starts as NaN so it is always sent
+	private int slot(int location) {
+		for (int i = 0; i < uniforms; i++) {
+			if (uniformPrograms[i] == program && uniformLocations[i] == location)
+				return i;
+		}
+		if (uniforms == MAX_UNIFORMS)
+			return -1;
+		int i = uniforms++;
+		uniformPrograms[i] = program;
+		uniformLocations[i] = location;
+		Arrays.fill(uniformValues[i], Float.NaN);
+		return i;
+	}
+}
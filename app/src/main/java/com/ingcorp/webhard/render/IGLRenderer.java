@@ -8,4 +8,9 @@ public interface IGLRenderer {
 
 	public void changedEmulatedSize();
 
+	/**
+	 * @return the GL calls of the last frame, for the debug overlay.
+	 */
+	public GLCallStats getCallStats();
+
 }
@@ -0,0 +1,155 @@
+/*
+ * This file is part of MAME4droid.
+ *
+ * Copyright (C) 2024 David Valdeita (Seleuco)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Linking MAME4droid statically or dynamically with other modules is
+ * making a combined work based on MAME4droid. Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * In addition, as a special exception, the copyright holders of MAME4droid
+ * give you permission to combine MAME4droid with free software programs
+ * or libraries that are released under the GNU LGPL and with code included
+ * in the standard release of MAME under the MAME License (or modified
+ * versions of such code, with unchanged license). You may copy and
+ * distribute such a system following the terms of the GNU GPL for MAME4droid
+ * and the licenses of the other code concerned, provided that you include
+ * the source code of that other code when and as the GNU GPL requires
+ * distribution of source code.
+ *
+ * Note that people who make modified versions of MAME4idroid are not
+ * obligated to grant this special exception for their modified versions; it
+ * is their choice whether to do so. The GNU General Public License
+ * gives permission to release a modified version without this exception;
+ * this exception also makes it possible to release a modified version
+ * which carries forward this exception.
+ *
+ * MAME4droid is dual-licensed: Alternatively, you can license MAME4droid
+ * under a MAME license, as set out in http://mamedev.org/
+ */
+
+package com.ingcorp.webhard.render;
+
+import android.opengl.GLES32;
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Streams the emulated frames into the texture through a ring of pixel unpack buffers. The frame
+ * is copied into a buffer with glBufferSubData and glTexSubImage2D reads it from there, so the call
+ * returns at once and the driver does the transfer while the GPU works, instead of copying the whole
+ * frame out of client memory on the GL thread. Each buffer is orphaned with glBufferData before it
+ * is written, so the driver hands out fresh storage instead of waiting for the GPU to be done with
+ * the old one. Nothing is mapped, so nothing is allocated on the Java side either.
+ * Everything here runs on the GL thread with the context current.
+ */
+public final class PboRing {
+
+	private static final String TAG = "PboRing";
+
+	public static final int NUM_BUFFERS = 3;
+
+	private final int[] buffers = new int[NUM_BUFFERS];
+	private int size = 0;
+	private int next = 0;
+	private boolean failed = false;
+
+	private int lastCalls = 0;
+
+	/**
+	 * (Re)creates the buffers for frames of the given size, e.g. when the video mode changes.
+	 *
+	 * @return false if the driver could not create them, the caller has to upload directly.
+	 */
+	public boolean allocate(int width, int height) {
+		release();
+		size = width * height * 4;
+		GLES32.glGenBuffers(NUM_BUFFERS, buffers, 0);
+		for (int i = 0; i < NUM_BUFFERS; i++) {
+			GLES32.glBindBuffer(GLES32.GL_PIXEL_UNPACK_BUFFER, buffers[i]);
+			GLES32.glBufferData(GLES32.GL_PIXEL_UNPACK_BUFFER, size, null, GLES32.GL_STREAM_DRAW);
+		}
+		GLES32.glBindBuffer(GLES32.GL_PIXEL_UNPACK_BUFFER, 0);
+		int error = GLES32.glGetError();
+		failed = error != GLES32.GL_NO_ERROR;
+		if (failed) {
+			Log.w(TAG, "cannot create the pixel buffers, GLError: " + error);
+			release();
+		}
+		return !failed;
+	}
+
+	public boolean isReady() {
+		return size != 0 && !failed;
+	}
+
+	/**
+	 * @return the GL calls the last upload made.
+	 */
+	public int getLastCalls() {
+		return lastCalls;
+	}
+
+	/**
+	 * Uploads a frame, from a direct buffer, into the texture bound to GL_TEXTURE_2D.
+	 *
+	 * @return false if it could not, the caller has to upload directly.
+	 */
+	public boolean upload(ByteBuffer pixels, int width, int height) {
+		if (!isReady() || width * height * 4 != size || !pixels.isDirect() || pixels.capacity() < size)
+			return false;
+
+		int i = next;
+		next = (next + 1) % NUM_BUFFERS;
+		//bind, orphan, copy, upload and unbind
+		lastCalls = 5;
+
+		GLES32.glBindBuffer(GLES32.GL_PIXEL_UNPACK_BUFFER, buffers[i]);
+		GLES32.glBufferData(GLES32.GL_PIXEL_UNPACK_BUFFER, size, null, GLES32.GL_STREAM_DRAW);
+		pixels.clear();
+		GLES32.glBufferSubData(GLES32.GL_PIXEL_UNPACK_BUFFER, 0, size, pixels);
+		//the last argument is an offset into the bound buffer
+		GLES32.glTexSubImage2D(GLES32.GL_TEXTURE_2D, 0, 0, 0, width, height,
+			GLES32.GL_RGBA, GLES32.GL_UNSIGNED_BYTE, 0);
+		GLES32.glBindBuffer(GLES32.GL_PIXEL_UNPACK_BUFFER, 0);
+		return true;
+	}
+
+	/**
+	 * Deletes the buffers of the current context.
+	 */
+	public void release() {
+		if (size != 0 && buffers[0] != 0)
+			GLES32.glDeleteBuffers(NUM_BUFFERS, buffers, 0);
+		for (int i = 0; i < NUM_BUFFERS; i++)
+			buffers[i] = 0;
+		size = 0;
+		next = 0;
+	}
+
+	/**
+	 * Forgets the buffers without deleting them, their context is gone.
+	 */
+	public void abandon() {
+		for (int i = 0; i < NUM_BUFFERS; i++)
+			buffers[i] = 0;
+		size = 0;
+		next = 0;
+		failed = false;
+	}
+}
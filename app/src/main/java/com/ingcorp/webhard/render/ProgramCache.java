@@ -0,0 +1,341 @@
+/*
+ * This file is part of MAME4droid.
+ *
+ * Copyright (C) 2024 David Valdeita (Seleuco)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Linking MAME4droid statically or dynamically with other modules is
+ * making a combined work based on MAME4droid. Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * In addition, as a special exception, the copyright holders of MAME4droid
+ * give you permission to combine MAME4droid with free software programs
+ * or libraries that are released under the GNU LGPL and with code included
+ * in the standard release of MAME under the MAME License (or modified
+ * versions of such code, with unchanged license). You may copy and
+ * distribute such a system following the terms of the GNU GPL for MAME4droid
+ * and the licenses of the other code concerned, provided that you include
+ * the source code of that other code when and as the GNU GPL requires
+ * distribution of source code.
+ *
+ * Note that people who make modified versions of MAME4idroid are not
+ * obligated to grant this special exception for their modified versions; it
+ * is their choice whether to do so. The GNU General Public License
+ * gives permission to release a modified version without this exception;
+ * this exception also makes it possible to release a modified version
+ * which carries forward this exception.
+ *
+ * MAME4droid is dual-licensed: Alternatively, you can license MAME4droid
+ * under a MAME license, as set out in http://mamedev.org/
+ */
+
+package com.ingcorp.webhard.render;
+
+import android.opengl.GLES32;
+import android.util.Log;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Linked programs kept on disk with glGetProgramBinary, so a shader is compiled once per driver
+ * instead of every time it is selected or the context is created again, which takes hundreds of
+ * ms with the bigger CRT shaders on some drivers. A binary is found by a hash of both sources as
+ * they go to the compiler (so with the version and the defines) and of the GL vendor, renderer
+ * and version strings, a driver update changes the last one. A binary the driver rejects is
+ * deleted and the program compiled again.
+ * Programs are built on the calling thread, which needs a current context: the renderer or the
+ * ShaderCompiler worker. Both can build at once, the lock only covers the driver strings and the
+ * counters, so the renderer never waits for a compile of the worker. The files are written on a
+ * thread of their own.
+ */
+public final class ProgramCache {
+
+	private static final String TAG = "ProgramCache";
+
+	private static final int MAGIC = 0x4d345042;//M4PB
+	//magic, format and length
+	private static final int HEADER_SIZE = 12;
+	//old binaries are deleted past this count
+	private static final int MAX_FILES = 32;
+
+	//every shader file holds both stages, picked with these
+	private static final Map<String, Integer> VERTEX_DEFINES = Collections.singletonMap("VERTEX", 1);
+	private static final Map<String, Integer> FRAGMENT_DEFINES = Collections.singletonMap("FRAGMENT", 1);
+
+	private static ExecutorService writer = null;
+
+	private final File dir;
+
+	//guarded by this, which is never held while the driver compiles
+	private String driver = null;
+	private int hits = 0;
+	private int misses = 0;
+
+	public ProgramCache(File dir) {
+		this.dir = dir;
+	}
+
+	private static synchronized ExecutorService getWriter() {
+		if (writer == null) {
+			writer = Executors.newSingleThreadExecutor(r -> {
+				Thread t = new Thread(r, "ProgramCacheWriter");
+				t.setPriority(Thread.MIN_PRIORITY);
+				return t;
+			});
+		}
+		return writer;
+	}
+
+	/**
+	 * The driver strings are read again, a new context may come from another driver.
+	 */
+	public synchronized void onContextCreated() {
+		driver = null;
+	}
+
+	public synchronized int getHits() {
+		return hits;
+	}
+
+	public synchronized int getMisses() {
+		return misses;
+	}
+
+	/**
+	 * @return the linked program of a shader file, or 0 if it cannot be read, compiled or linked.
+	 */
+	public int getProgram(String tag, String shaderDir, String fileName, int version) {
+		String vertexSource = ShaderUtil.loadShaderSource(tag, shaderDir, fileName, VERTEX_DEFINES, version);
+		String fragmentSource = ShaderUtil.loadShaderSource(tag, shaderDir, fileName, FRAGMENT_DEFINES, version);
+		if (vertexSource == null || fragmentSource == null)
+			return 0;
+		return getProgram(tag, vertexSource, fragmentSource);
+	}
+
+	/**
+	 * Compiles a shader file and stores its binary, unless the binary is already there.
+	 */
+	public void prepare(String tag, String shaderDir, String fileName, int version) {
+		String vertexSource = ShaderUtil.loadShaderSource(tag, shaderDir, fileName, VERTEX_DEFINES, version);
+		String fragmentSource = ShaderUtil.loadShaderSource(tag, shaderDir, fileName, FRAGMENT_DEFINES, version);
+		String driver = getDriver();
+		if (vertexSource == null || fragmentSource == null || driver.isEmpty())
+			return;
+		File file = new File(dir, key(driver, vertexSource, fragmentSource) + ".bin");
+		if (file.exists())
+			return;
+		int program = compile(tag, vertexSource, fragmentSource, true);
+		if (program != 0) {
+			store(program, file);
+			GLES32.glDeleteProgram(program);
+		}
+	}
+
+	private synchronized String getDriver() {
+		if (driver == null) {
+			int[] formats = new int[1];
+			GLES32.glGetIntegerv(GLES32.GL_NUM_PROGRAM_BINARY_FORMATS, formats, 0);
+			//without formats the driver cannot give binaries back, an empty key turns the cache off
+			driver = formats[0] == 0 ? "" : GLES32.glGetString(GLES32.GL_VENDOR) + "\n"
+				+ GLES32.glGetString(GLES32.GL_RENDERER) + "\n" + GLES32.glGetString(GLES32.GL_VERSION);
+		}
+		return driver;
+	}
+
+	/**
+	 * @return a linked program from both sources, or 0 if they do not compile or link.
+	 */
+	public int getProgram(String tag, String vertexSource, String fragmentSource) {
+		String driver = getDriver();
+
+		File file = null;
+		if (!driver.isEmpty()) {
+			file = new File(dir, key(driver, vertexSource, fragmentSource) + ".bin");
+			int program = load(file);
+			if (program != 0) {
+				synchronized (this) {
+					hits++;
+				}
+				return program;
+			}
+		}
+
+		synchronized (this) {
+			misses++;
+		}
+		long start = System.nanoTime();
+		int program = compile(tag, vertexSource, fragmentSource, file != null);
+		if (program != 0) {
+			Log.d(TAG, "program compiled in " + (System.nanoTime() - start) / 1000000 + " ms");
+			if (file != null)
+				store(program, file);
+		}
+		return program;
+	}
+
+	private static String key(String driver, String vertexSource, String fragmentSource) {
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA-256");
+			md.update(driver.getBytes(StandardCharsets.UTF_8));
+			md.update((byte) 0);
+			md.update(vertexSource.getBytes(StandardCharsets.UTF_8));
+			md.update((byte) 0);
+			md.update(fragmentSource.getBytes(StandardCharsets.UTF_8));
+			StringBuilder sb = new StringBuilder();
+			for (byte b : md.digest())
+				sb.append(String.format("%02x", b));
+			return sb.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	//0 if there is no binary or the driver does not take it
+	private int load(File file) {
+		if (!file.exists())
+			return 0;
+
+		int format;
+		byte[] data;
+		try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+			if (in.readInt() != MAGIC)
+				throw new IOException("not a program binary");
+			format = in.readInt();
+			//a damaged length must not allocate more than the file can hold
+			int length = in.readInt();
+			if (length <= 0 || length > file.length() - HEADER_SIZE)
+				throw new IOException("bad binary length " + length);
+			data = new byte[length];
+			in.readFully(data);
+		} catch (IOException e) {
+			Log.w(TAG, "cannot read " + file.getName() + ": " + e.getMessage());
+			file.delete();
+			return 0;
+		}
+
+		ByteBuffer b = ByteBuffer.allocateDirect(data.length).order(ByteOrder.nativeOrder());
+		b.put(data).position(0);
+
+		int program = GLES32.glCreateProgram();
+		GLES32.glProgramBinary(program, format, b, data.length);
+		int[] status = new int[1];
+		GLES32.glGetProgramiv(program, GLES32.GL_LINK_STATUS, status, 0);
+		if (status[0] == 0) {
+			//the driver changed without its strings changing, or the file is damaged
+			Log.w(TAG, "binary rejected, compiling again");
+			GLES32.glDeleteProgram(program);
+			GLES32.glGetError();
+			file.delete();
+			return 0;
+		}
+		file.setLastModified(System.currentTimeMillis());
+		return program;
+	}
+
+	private static int compile(String tag, String vertexSource, String fragmentSource, boolean retrievable) {
+		int vertexShader = ShaderUtil.compileShader(tag, GLES32.GL_VERTEX_SHADER, vertexSource);
+		int fragmentShader = ShaderUtil.compileShader(tag, GLES32.GL_FRAGMENT_SHADER, fragmentSource);
+		if (vertexShader <= 0 || fragmentShader <= 0) {
+			if (vertexShader > 0)
+				GLES32.glDeleteShader(vertexShader);
+			if (fragmentShader > 0)
+				GLES32.glDeleteShader(fragmentShader);
+			return 0;
+		}
+
+		int program = GLES32.glCreateProgram();
+		if (retrievable)
+			GLES32.glProgramParameteri(program, GLES32.GL_PROGRAM_BINARY_RETRIEVABLE_HINT, GLES32.GL_TRUE);
+		GLES32.glAttachShader(program, vertexShader);
+		GLES32.glAttachShader(program, fragmentShader);
+		GLES32.glLinkProgram(program);
+		GLES32.glDetachShader(program, vertexShader);
+		GLES32.glDetachShader(program, fragmentShader);
+		GLES32.glDeleteShader(vertexShader);
+		GLES32.glDeleteShader(fragmentShader);
+
+		int[] status = new int[1];
+		GLES32.glGetProgramiv(program, GLES32.GL_LINK_STATUS, status, 0);
+		if (status[0] == 0) {
+			Log.e(tag, "Error linking program: " + GLES32.glGetProgramInfoLog(program));
+			GLES32.glDeleteProgram(program);
+			return 0;
+		}
+		return program;
+	}
+
+	private void store(int program, final File file) {
+		int[] length = new int[1];
+		GLES32.glGetProgramiv(program, GLES32.GL_PROGRAM_BINARY_LENGTH, length, 0);
+		if (length[0] <= 0)
+			return;
+
+		ByteBuffer b = ByteBuffer.allocateDirect(length[0]).order(ByteOrder.nativeOrder());
+		int[] written = new int[1];
+		int[] format = new int[1];
+		GLES32.glGetProgramBinary(program, length[0], written, 0, format, 0, b);
+		if (GLES32.glGetError() != GLES32.GL_NO_ERROR || written[0] <= 0)
+			return;
+
+		final byte[] data = new byte[written[0]];
+		b.get(data);
+		final int binaryFormat = format[0];
+
+		getWriter().execute(() -> {
+			if (!dir.exists() && !dir.mkdirs())
+				return;
+			File tmp = new File(dir, file.getName() + ".tmp");
+			try (DataOutputStream out = new DataOutputStream(new FileOutputStream(tmp))) {
+				out.writeInt(MAGIC);
+				out.writeInt(binaryFormat);
+				out.writeInt(data.length);
+				out.write(data);
+			} catch (IOException e) {
+				Log.w(TAG, "cannot write " + file.getName() + ": " + e.getMessage());
+				tmp.delete();
+				return;
+			}
+			if (!tmp.renameTo(file))
+				tmp.delete();
+			prune();
+		});
+	}
+
+	//writer thread, keeps the most recently used binaries
+	private void prune() {
+		File[] files = dir.listFiles((d, name) -> name.endsWith(".bin"));
+		if (files == null || files.length <= MAX_FILES)
+			return;
+		Arrays.sort(files, (a, b) -> Long.compare(b.lastModified(), a.lastModified()));
+		for (int i = MAX_FILES; i < files.length; i++)
+			files[i].delete();
+	}
+}
@@ -0,0 +1,93 @@
+/*
+ * This file is part of MAME4droid.
+ *
+ * Copyright (C) 2024 David Valdeita (Seleuco)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Linking MAME4droid statically or dynamically with other modules is
+ * making a combined work based on MAME4droid. Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * In addition, as a special exception, the copyright holders of MAME4droid
+ * give you permission to combine MAME4droid with free software programs
+ * or libraries that are released under the GNU LGPL and with code included
+ * in the standard release of MAME under the MAME License (or modified
+ * versions of such code, with unchanged license). You may copy and
+ * distribute such a system following the terms of the GNU GPL for MAME4droid
+ * and the licenses of the other code concerned, provided that you include
+ * the source code of that other code when and as the GNU GPL requires
+ * distribution of source code.
+ *
+ * Note that people who make modified versions of MAME4idroid are not
+ * obligated to grant this special exception for their modified versions; it
+ * is their choice whether to do so. The GNU General Public License
+ * gives permission to release a modified version without this exception;
+ * this exception also makes it possible to release a modified version
+ * which carries forward this exception.
+ *
+ * MAME4droid is dual-licensed: Alternatively, you can license MAME4droid
+ * under a MAME license, as set out in http://mamedev.org/
+ */
+
+package com.ingcorp.webhard.render;
+
+/**
+ * Matches the refresh rate of the emulated screen to the display. The display runs at one of its
+ * supported rates and every emulated frame is shown for a whole number of vsyncs, so the rate to
+ * ask for is the one whose vsyncs divide into the emulated rate with the least error.
+ */
+public final class RefreshRateMatch {
+
+	private RefreshRateMatch() {
+	}
+
+	/**
+	 * @return the vsyncs each emulated frame is shown for, at least 1.
+	 */
+	public static int getInterval(float gameHz, float displayHz) {
+		if (gameHz <= 0 || displayHz <= 0)
+			return 1;
+		return Math.max(1, Math.round(displayHz / gameHz));
+	}
+
+	/**
+	 * @return the relative error between the emulated rate and the rate it is shown at.
+	 */
+	public static float getError(float gameHz, float displayHz) {
+		if (gameHz <= 0 || displayHz <= 0)
+			return 1;
+		float shown = displayHz / getInterval(gameHz, displayHz);
+		return Math.abs(shown - gameHz) / gameHz;
+	}
+
+	/**
+	 * @return the display rate with the least error for the emulated rate, the lowest one on a tie
+	 * as it draws less power, or 0 if there is none.
+	 */
+	public static float pickDisplayRate(float gameHz, float[] displayRates) {
+		float best = 0;
+		float bestError = Float.MAX_VALUE;
+		for (float r : displayRates) {
+			float e = getError(gameHz, r);
+			//rates reported for the same mode differ in the last decimals
+			if (e < bestError - 0.001f || (Math.abs(e - bestError) <= 0.001f && r < best)) {
+				best = r;
+				bestError = e;
+			}
+		}
+		return best;
+	}
+}
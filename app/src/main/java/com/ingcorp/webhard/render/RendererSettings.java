@@ -0,0 +1,98 @@
+/*
+ * This file is part of MAME4droid.
+ *
+ * Copyright (C) 2024 David Valdeita (Seleuco)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Linking MAME4droid statically or dynamically with other modules is
+ * making a combined work based on MAME4droid. Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * In addition, as a special exception, the copyright holders of MAME4droid
+ * give you permission to combine MAME4droid with free software programs
+ * or libraries that are released under the GNU LGPL and with code included
+ * in the standard release of MAME under the MAME License (or modified
+ * versions of such code, with unchanged license). You may copy and
+ * distribute such a system following the terms of the GNU GPL for MAME4droid
+ * and the licenses of the other code concerned, provided that you include
+ * the source code of that other code when and as the GNU GPL requires
+ * distribution of source code.
+ *
+ * Note that people who make modified versions of MAME4idroid are not
+ * obligated to grant this special exception for their modified versions; it
+ * is their choice whether to do so. The GNU General Public License
+ * gives permission to release a modified version without this exception;
+ * this exception also makes it possible to release a modified version
+ * which carries forward this exception.
+ *
+ * MAME4droid is dual-licensed: Alternatively, you can license MAME4droid
+ * under a MAME license, as set out in http://mamedev.org/
+ */
+
+package com.ingcorp.webhard.render;
+
+import com.ingcorp.webhard.helpers.PrefsHelper;
+
+/**
+ * The preferences the renderer reads on every frame, taken at once so the GL thread does not go
+ * through SharedPreferences (and its lock) at 60 Hz. PrefsHelper hands out the same instance until
+ * one of them changes.
+ */
+public final class RendererSettings {
+
+	private final String shaderEffect;
+	private final boolean shadersInFrontend;
+	private final boolean shadersAs30;
+	private final boolean pboUpload;
+
+	public RendererSettings(String shaderEffect, boolean shadersInFrontend, boolean shadersAs30, boolean pboUpload) {
+		this.shaderEffect = shaderEffect;
+		this.shadersInFrontend = shadersInFrontend;
+		this.shadersAs30 = shadersAs30;
+		this.pboUpload = pboUpload;
+	}
+
+	public static RendererSettings from(PrefsHelper prefs) {
+		return new RendererSettings(prefs.getShaderEffectSelected(), prefs.isShadersUsedInFrontend(),
+			prefs.isShadersAs30(), prefs.isPboUpload());
+	}
+
+	/**
+	 * @return true if a change of the given preference makes the snapshot stale.
+	 */
+	public static boolean isRendererKey(String key) {
+		return PrefsHelper.PREF_SHADER_EFFECT.equals(key)
+			|| PrefsHelper.PREF_SHADER_IN_FRONTEND.equals(key)
+			|| PrefsHelper.PREF_SHADER_30.equals(key)
+			|| PrefsHelper.PREF_PBO_UPLOAD.equals(key);
+	}
+
+	public String getShaderEffect() {
+		return shaderEffect;
+	}
+
+	public boolean isShadersInFrontend() {
+		return shadersInFrontend;
+	}
+
+	public boolean isShadersAs30() {
+		return shadersAs30;
+	}
+
+	public boolean isPboUpload() {
+		return pboUpload;
+	}
+}
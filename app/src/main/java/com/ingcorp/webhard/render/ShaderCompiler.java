@@ -0,0 +1,215 @@
+/*
+ * This file is part of MAME4droid.
+ *
+ * Copyright (C) 2024 David Valdeita (Seleuco)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Linking MAME4droid statically or dynamically with other modules is
+ * making a combined work based on MAME4droid. Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * In addition, as a special exception, the copyright holders of MAME4droid
+ * give you permission to combine MAME4droid with free software programs
+ * or libraries that are released under the GNU LGPL and with code included
+ * in the standard release of MAME under the MAME License (or modified
+ * versions of such code, with unchanged license). You may copy and
+ * distribute such a system following the terms of the GNU GPL for MAME4droid
+ * and the licenses of the other code concerned, provided that you include
+ * the source code of that other code when and as the GNU GPL requires
+ * distribution of source code.
+ *
+ * Note that people who make modified versions of MAME4idroid are not
+ * obligated to grant this special exception for their modified versions; it
+ * is their choice whether to do so. The GNU General Public License
+ * gives permission to release a modified version without this exception;
+ * this exception also makes it possible to release a modified version
+ * which carries forward this exception.
+ *
+ * MAME4droid is dual-licensed: Alternatively, you can license MAME4droid
+ * under a MAME license, as set out in http://mamedev.org/
+ */
+
+package com.ingcorp.webhard.render;
+
+import android.opengl.EGL14;
+import android.opengl.EGLConfig;
+import android.opengl.EGLContext;
+import android.opengl.EGLDisplay;
+import android.opengl.EGLSurface;
+import android.opengl.GLES32;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.util.Log;
+
+/**
+ * Compiles the effect programs on a thread of its own, with a context in the share group of the
+ * renderer one, so a shader switch does not stall the frames while the driver works. Programs are
+ * shared between the contexts; vertex arrays are not, the renderer makes those itself. The same
+ * thread fills the program cache with the shaders the user picked lately, behind any compile the
+ * renderer is waiting for.
+ */
+public final class ShaderCompiler {
+
+	private static final String TAG = "ShaderCompiler";
+
+	/**
+	 * The program could not be built on the worker, e.g. its context cannot be made current, the
+	 * caller has to build it itself.
+	 */
+	public static final int NOT_BUILT = -1;
+
+	public interface Callback {
+		/**
+		 * Called on the worker thread.
+		 *
+		 * @param program the linked program, ready to use from the renderer context, 0 if the
+		 *                shader does not compile or NOT_BUILT.
+		 */
+		void onCompiled(String fileName, int version, int program);
+	}
+
+	private final ProgramCache cache;
+	private final String shaderDir;
+	private final EGLDisplay display;
+	private final EGLContext context;
+	private final EGLConfig config;
+
+	private final HandlerThread thread;
+	private final Handler handler;
+
+	//worker thread
+	private EGLSurface surface = EGL14.EGL_NO_SURFACE;
+	private boolean tried = false;
+	private boolean current = false;
+
+	private ShaderCompiler(ProgramCache cache, String shaderDir, EGLDisplay display, EGLConfig config, EGLContext context) {
+		this.cache = cache;
+		this.shaderDir = shaderDir;
+		this.display = display;
+		this.config = config;
+		this.context = context;
+		thread = new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
+		thread.start();
+		handler = new Handler(thread.getLooper());
+		//a compile goes to the front of the queue, so every task makes the context current if needed
+		handler.post(this::isCurrent);
+	}
+
+	/**
+	 * Called from the GL thread with the renderer context current.
+	 *
+	 * @return null if no context can be shared with it.
+	 */
+	public static ShaderCompiler start(ProgramCache cache, String shaderDir) {
+		EGLDisplay display = EGL14.eglGetCurrentDisplay();
+		EGLContext shared = EGL14.eglGetCurrentContext();
+		if (display == EGL14.EGL_NO_DISPLAY || shared == EGL14.EGL_NO_CONTEXT)
+			return null;
+
+		//same config as the renderer context, shared contexts have to be compatible
+		int[] value = new int[1];
+		if (!EGL14.eglQueryContext(display, shared, EGL14.EGL_CONFIG_ID, value, 0))
+			return null;
+		int[] configAttribs = {EGL14.EGL_CONFIG_ID, value[0], EGL14.EGL_NONE};
+		EGLConfig[] configs = new EGLConfig[1];
+		int[] numConfigs = new int[1];
+		if (!EGL14.eglChooseConfig(display, configAttribs, 0, configs, 0, 1, numConfigs, 0) || numConfigs[0] == 0)
+			return null;
+
+		int[] contextAttribs = {EGL14.EGL_CONTEXT_CLIENT_VERSION, 3, EGL14.EGL_NONE};
+		EGLContext context = EGL14.eglCreateContext(display, configs[0], shared, contextAttribs, 0);
+		if (context == null || context == EGL14.EGL_NO_CONTEXT) {
+			Log.w(TAG, "cannot create a shared context: " + EGL14.eglGetError());
+			return null;
+		}
+		return new ShaderCompiler(cache, shaderDir, display, configs[0], context);
+	}
+
+	//worker thread, tries once to make the context current
+	private boolean isCurrent() {
+		if (!tried) {
+			tried = true;
+			makeCurrent();
+		}
+		return current;
+	}
+
+	//worker thread, a 1x1 pbuffer if the config has them, otherwise no surface at all
+	private void makeCurrent() {
+		int[] surfaceAttribs = {EGL14.EGL_WIDTH, 1, EGL14.EGL_HEIGHT, 1, EGL14.EGL_NONE};
+		surface = EGL14.eglCreatePbufferSurface(display, config, surfaceAttribs, 0);
+		if (surface == null)
+			surface = EGL14.EGL_NO_SURFACE;
+		current = EGL14.eglMakeCurrent(display, surface, surface, context);
+		if (!current)
+			Log.w(TAG, "cannot make the shared context current: " + EGL14.eglGetError());
+	}
+
+	/**
+	 * Builds a program before anything queued with precompile().
+	 */
+	public void compile(final String fileName, final int version, final Callback callback) {
+		handler.postAtFrontOfQueue(() -> {
+			if (!isCurrent()) {
+				callback.onCompiled(fileName, version, NOT_BUILT);
+				return;
+			}
+			long start = System.nanoTime();
+			int program = cache.getProgram(TAG, shaderDir, fileName, version);
+			//the renderer context sees the program once the work is done
+			GLES32.glFinish();
+			Log.d(TAG, fileName + " ready in " + (System.nanoTime() - start) / 1000000 + " ms");
+			callback.onCompiled(fileName, version, program);
+		});
+	}
+
+	/**
+	 * Puts the program of a shader in the cache if it is not there yet.
+	 */
+	public void precompile(final String fileName, final int version) {
+		handler.post(() -> {
+			if (isCurrent())
+				cache.prepare(TAG, shaderDir, fileName, version);
+		});
+	}
+
+	/**
+	 * Deletes a program that will not be used, from the worker so the renderer does not need to.
+	 */
+	public void discard(final int program) {
+		handler.post(() -> {
+			if (isCurrent() && program > 0)
+				GLES32.glDeleteProgram(program);
+		});
+	}
+
+	/**
+	 * Drops whatever is queued and ends the worker with its context.
+	 */
+	public void release() {
+		handler.removeCallbacksAndMessages(null);
+		handler.post(() -> {
+			EGL14.eglMakeCurrent(display, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_CONTEXT);
+			if (surface != EGL14.EGL_NO_SURFACE)
+				EGL14.eglDestroySurface(display, surface);
+			EGL14.eglDestroyContext(display, context);
+			EGL14.eglReleaseThread();
+			current = false;
+			thread.quit();
+		});
+	}
+}
@@ -0,0 +1,281 @@
+/*
+ * This file is part of MAME4droid.
+ *
+ * Copyright (C) 2024 David Valdeita (Seleuco)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Linking MAME4droid statically or dynamically with other modules is
+ * making a combined work based on MAME4droid. Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * In addition, as a special exception, the copyright holders of MAME4droid
+ * give you permission to combine MAME4droid with free software programs
+ * or libraries that are released under the GNU LGPL and with code included
+ * in the standard release of MAME under the MAME License (or modified
+ * versions of such code, with unchanged license). You may copy and
+ * distribute such a system following the terms of the GNU GPL for MAME4droid
+ * and the licenses of the other code concerned, provided that you include
+ * the source code of that other code when and as the GNU GPL requires
+ * distribution of source code.
+ *
+ * Note that people who make modified versions of MAME4idroid are not
+ * obligated to grant this special exception for their modified versions; it
+ * is their choice whether to do so. The GNU General Public License
+ * gives permission to release a modified version without this exception;
+ * this exception also makes it possible to release a modified version
+ * which carries forward this exception.
+ *
+ * MAME4droid is dual-licensed: Alternatively, you can license MAME4droid
+ * under a MAME license, as set out in http://mamedev.org/
+ */
+
+package com.ingcorp.webhard.render;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Shader sources with their #include lines expanded, kept in memory and on disk. Each expansion
+ * remembers the files it was made from (itself and everything it includes, at any depth) with
+ * their dates and sizes, and is made again only when one of them changed, so the vertex and
+ * fragment stages of a shader and the shaders sharing an include read each file once. An include
+ * of a file that is already being expanded higher up is a cycle and fails the load.
+ * No Android dependency, the methods can be called from any thread.
+ */
+public final class ShaderSourceCache {
+
+	private static final int MAGIC = 0x4d345353;//M4SS
+	//an empty path, the modified time and the length
+	private static final int MIN_DEPENDENCY_BYTES = 2 + 8 + 8;
+
+	static final class Dependency {
+		final String path;
+		final long modified;
+		final long length;
+
+		Dependency(String path, long modified, long length) {
+			this.path = path;
+			this.modified = modified;
+			this.length = length;
+		}
+
+		boolean isCurrent() {
+			File f = new File(path);
+			return f.lastModified() == modified && f.length() == length;
+		}
+	}
+
+	static final class Entry {
+		final String source;
+		final Dependency[] dependencies;
+
+		Entry(String source, Dependency[] dependencies) {
+			this.source = source;
+			this.dependencies = dependencies;
+		}
+
+		boolean isCurrent() {
+			for (Dependency d : dependencies) {
+				if (!d.isCurrent())
+					return false;
+			}
+			return true;
+		}
+	}
+
+	//by the path of the file expanded, includes have their own entries
+	private final Map<String, Entry> entries = new HashMap<String, Entry>();
+	//null keeps the expansions in memory only
+	private final File diskDir;
+
+	private int hits = 0;
+	private int diskHits = 0;
+	private int expansions = 0;
+
+	public ShaderSourceCache(File diskDir) {
+		this.diskDir = diskDir;
+	}
+
+	public File getDiskDir() {
+		return diskDir;
+	}
+
+	public synchronized int getHits() {
+		return hits;
+	}
+
+	public synchronized int getDiskHits() {
+		return diskHits;
+	}
+
+	/**
+	 * @return the files read and expanded, not found current in the cache.
+	 */
+	public synchronized int getExpansions() {
+		return expansions;
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	/**
+	 * @return the source of the file in shaderDir with its includes expanded.
+	 * @throws IOException if a file cannot be read or the includes have a cycle.
+	 */
+	public synchronized String get(String shaderDir, String filename) throws IOException {
+		String path = shaderDir + filename;
+		Entry e = entries.get(path);
+		if (e != null && e.isCurrent()) {
+			hits++;
+			return e.source;
+		}
+
+		e = readDisk(path);
+		if (e != null && e.isCurrent()) {
+			entries.put(path, e);
+			diskHits++;
+			return e.source;
+		}
+
+		e = expand(shaderDir, filename, new ArrayDeque<String>());
+		writeDisk(path, e);
+		return e.source;
+	}
+
+	private Entry expand(String shaderDir, String filename, Deque<String> including) throws IOException {
+		if (including.contains(filename)) {
+			StringBuilder chain = new StringBuilder();
+			for (Iterator<String> it = including.descendingIterator(); it.hasNext(); )
+				chain.append(it.next()).append(" -> ");
+			throw new IOException("Include cycle: " + chain + filename);
+		}
+
+		String path = shaderDir + filename;
+		Entry cached = entries.get(path);
+		if (cached != null && cached.isCurrent())
+			return cached;
+
+		expansions++;
+		including.push(filename);
+
+		//taken before reading, a change while reading shows as a changed date next time
+		File file = new File(path);
+		Map<String, Dependency> dependencies = new LinkedHashMap<String, Dependency>();
+		dependencies.put(path, new Dependency(path, file.lastModified(), file.length()));
+
+		StringBuilder sb = new StringBuilder();
+		try (InputStream inputStream = Files.newInputStream(Paths.get(path));
+			 BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] tokens = line.split(" ", -1);
+				if (tokens[0].equals("#include")) {
+					if (tokens.length < 2)
+						throw new IOException("Missing file name in " + filename + ": " + line);
+					String includeFilename = tokens[1].replace("\"", "");
+					Entry included = expand(shaderDir, includeFilename, including);
+					sb.append(included.source);
+					for (Dependency d : included.dependencies)
+						dependencies.put(d.path, d);
+				} else {
+					sb.append(line).append("\n");
+				}
+			}
+		}
+
+		including.pop();
+		Entry e = new Entry(sb.toString(), dependencies.values().toArray(new Dependency[0]));
+		entries.put(path, e);
+		return e;
+	}
+
+	private File diskFile(String path) {
+		return new File(diskDir, Integer.toHexString(path.hashCode()) + ".src");
+	}
+
+	//the disk copy is only a shortcut, anything wrong with it and the file is expanded again
+	private Entry readDisk(String path) {
+		if (diskDir == null)
+			return null;
+		File f = diskFile(path);
+		if (!f.exists())
+			return null;
+		try (DataInputStream in = new DataInputStream(new FileInputStream(f))) {
+			if (in.readInt() != MAGIC || !in.readUTF().equals(path))
+				return null;
+			//damaged counts must not allocate more than the file can hold
+			long fileLength = f.length();
+			int n = in.readInt();
+			if (n < 0 || n > fileLength / MIN_DEPENDENCY_BYTES)
+				throw new IOException("bad dependency count " + n);
+			ArrayList<Dependency> dependencies = new ArrayList<Dependency>(n);
+			for (int i = 0; i < n; i++)
+				dependencies.add(new Dependency(in.readUTF(), in.readLong(), in.readLong()));
+			int length = in.readInt();
+			if (length < 0 || length > fileLength)
+				throw new IOException("bad source length " + length);
+			byte[] source = new byte[length];
+			in.readFully(source);
+			return new Entry(new String(source, StandardCharsets.UTF_8), dependencies.toArray(new Dependency[0]));
+		} catch (IOException | RuntimeException e) {
+			f.delete();
+			return null;
+		}
+	}
+
+	private void writeDisk(String path, Entry e) {
+		if (diskDir == null || (!diskDir.exists() && !diskDir.mkdirs()))
+			return;
+		File f = diskFile(path);
+		File tmp = new File(diskDir, f.getName() + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new FileOutputStream(tmp))) {
+			out.writeInt(MAGIC);
+			out.writeUTF(path);
+			out.writeInt(e.dependencies.length);
+			for (Dependency d : e.dependencies) {
+				out.writeUTF(d.path);
+				out.writeLong(d.modified);
+				out.writeLong(d.length);
+			}
+			byte[] source = e.source.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(source.length);
+			out.write(source);
+		} catch (IOException ex) {
+			tmp.delete();
+			return;
+		}
+		if (!tmp.renameTo(f))
+			tmp.delete();
+	}
+}
@@ -5,12 +5,8 @@ import android.util.Log;
 
 import com.ingcorp.webhard.MAME4droid;
 
-import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.nio.file.Files;
-import java.nio.file.Paths;
 import java.util.Map;
 
 /**
@@ -18,15 +14,47 @@ import java.util.Map;
  */
 public final class ShaderUtil {
 
+	//expanded sources, in memory only until the renderer gives a folder for them
+	private static volatile ShaderSourceCache sourceCache = new ShaderSourceCache(null);
+
+	/**
+	 * Keeps the expanded sources also in dir, so they survive the process.
+	 */
+	public static synchronized void setSourceCacheDir(File dir) {
+		if (!dir.equals(sourceCache.getDiskDir()))
+			sourceCache = new ShaderSourceCache(dir);
+	}
+
 	public static int loadGLShader(
 		String tag, MAME4droid mm, int type, String filename, Map<String, Integer> defineValuesMap, int version) {
+		return loadGLShader(tag, getShaderDir(mm), type, filename, defineValuesMap, version);
+	}
+
+	public static int loadGLShader(
+		String tag, String shaderDir, int type, String filename, Map<String, Integer> defineValuesMap, int version) {
+		String code = loadShaderSource(tag, shaderDir, filename, defineValuesMap, version);
+		if (code == null)
+			return 0;
+		return compileShader(tag, type, code);
+	}
+
+	public static String getShaderDir(MAME4droid mm) {
+		return mm.getPrefsHelper().getInstallationDIR() + "shaders/";
+	}
+
+	/**
+	 * @return the source of a shader with its includes expanded and the version and defines
+	 * prepended, as it is given to the compiler, or null if it cannot be read.
+	 */
+	public static String loadShaderSource(
+		String tag, String shaderDir, String filename, Map<String, Integer> defineValuesMap, int version) {
 		// Load shader source code.
 		String code = null;
 		try {
-			code = readShaderFile(mm, filename);
+			code = sourceCache.get(shaderDir, filename);
 		} catch (IOException e) {
 			Log.e(tag, "Error reading shader: " + e.getMessage());
-			return 0;
+			return null;
 		}
 
 		// Prepend any #define values specified during this run.
@@ -38,8 +66,13 @@ public final class ShaderUtil {
 		for (Map.Entry<String, Integer> entry : defineValuesMap.entrySet()) {
 			defines += "#define " + entry.getKey() + " " + entry.getValue() + "\n";
 		}
-		code = defines + code;
+		return defines + code;
+	}
 
+	/**
+	 * @return the shader, or 0 if it does not compile.
+	 */
+	public static int compileShader(String tag, int type, String code) {
 		// Compiles shader code.
 		int shader = GLES32.glCreateShader(type);
 		GLES32.glShaderSource(shader, code);
@@ -71,31 +104,4 @@ public final class ShaderUtil {
 			throw new RuntimeException(label + ": glError " + lastError);
 		}
 	}
-
-	private static String readShaderFile(MAME4droid mm, String filename)
-		throws IOException {
-
-		String path = mm.getPrefsHelper().getInstallationDIR() + "shaders/" + filename;
-
-		try (InputStream inputStream = Files.newInputStream(Paths.get(path));
-			 BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream))) {
-			StringBuilder sb = new StringBuilder();
-			String line;
-			while ((line = reader.readLine()) != null) {
-				String[] tokens = line.split(" ", -1);
-				if (tokens[0].equals("#include")) {
-					String includeFilename = tokens[1];
-					includeFilename = includeFilename.replace("\"", "");
-					if (includeFilename.equals(filename)) {
-						throw new IOException("Do not include the calling file.");
-					}
-					sb.append(readShaderFile(mm, includeFilename));
-				} else {
-					sb.append(line).append("\n");
-				}
-			}
-			inputStream.close();
-			return sb.toString();
-		}
-	}
 }
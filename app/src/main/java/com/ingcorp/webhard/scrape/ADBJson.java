@@ -0,0 +1,86 @@
+/*
+ * This file is part of MAME4droid.
+ *
+ * Copyright (C) 2024 David Valdeita (Seleuco)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Linking MAME4droid statically or dynamically with other modules is
+ * making a combined work based on MAME4droid. Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * In addition, as a special exception, the copyright holders of MAME4droid
+ * give you permission to combine MAME4droid with free software programs
+ * or libraries that are released under the GNU LGPL and with code included
+ * in the standard release of MAME under the MAME License (or modified
+ * versions of such code, with unchanged license). You may copy and
+ * distribute such a system following the terms of the GNU GPL for MAME4droid
+ * and the licenses of the other code concerned, provided that you include
+ * the source code of that other code when and as the GNU GPL requires
+ * distribution of source code.
+ *
+ * Note that people who make modified versions of MAME4idroid are not
+ * obligated to grant this special exception for their modified versions; it
+ * is their choice whether to do so. The GNU General Public License
+ * gives permission to release a modified version without this exception;
+ * this exception also makes it possible to release a modified version
+ * which carries forward this exception.
+ *
+ * MAME4droid is dual-licensed: Alternatively, you can license MAME4droid
+ * under a MAME license, as set out in http://mamedev.org/
+ */
+
+package com.ingcorp.webhard.scrape;
+
+/**
+ * The few lookups ADBScraper does on the arcadeitalia answers. The service always returns the
+ * same flat shape, so a token search is enough and avoids building a JSON tree per game.
+ */
+public final class ADBJson {
+
+	private ADBJson() {
+	}
+
+	/**
+	 * @param resize true to ask the service for 300px wide images instead of the originals.
+	 * @return the image url for that type, or null if the game has none.
+	 */
+	public static String getImageURL(String imageType, String json, boolean resize) {
+		String url = null;
+		String token = "\"" + imageType + "\":";
+		int i = json.indexOf(token);
+		if (i == -1) return url;
+		i += token.length();
+		i = json.indexOf("\"", i);
+		int j = json.indexOf("\"", i + 1);
+		if (j == -1) return url;
+		url = json.substring(i + 1, j);
+		if (url.trim().length() == 0)
+			return null;
+		url = url.replace("\\", "");
+
+		if (url.endsWith("resize=0")) {
+			if (resize)
+				url = url.replace("resize=0", "resize=300");
+		} else {
+			if (resize) {
+				url += "&resize=300";
+			} else {
+				url += "&resize=0";
+			}
+		}
+		return url;
+	}
+}
@@ -303,30 +303,7 @@ public class ADBScraper implements IScraper {
 	}
 
 	protected String getImageURL(String imageType, String json) {
-		String url = null;
-		String token = "\"" + imageType + "\":";
-		int i = json.indexOf(token);
-		if (i == -1) return url;
-		i += token.length();
-		i = json.indexOf("\"", i);
-		int j = json.indexOf("\"", i + 1);
-		if (j == -1) return url;
-		url = json.substring(i + 1, j);
-		if (url.trim().length() == 0)
-			return null;
-		url = url.replace("\\", "");
-
-		if (url.endsWith("resize=0")) {
-			if (mm.getPrefsHelper().isScrapingResize())
-				url = url.replace("resize=0", "resize=300");
-		} else {
-			if (mm.getPrefsHelper().isScrapingResize()) {
-				url += "&resize=300";
-			} else {
-				url += "&resize=0";
-			}
-		}
-		return url;
+		return ADBJson.getImageURL(imageType, json, mm.getPrefsHelper().isScrapingResize());
 	}
 
 	protected boolean isEmpty(String json) {
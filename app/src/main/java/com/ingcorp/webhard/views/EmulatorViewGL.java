@@ -50,11 +50,13 @@ import android.content.Context;
 import android.opengl.GLSurfaceView;
 import android.util.AttributeSet;
 import android.view.MotionEvent;
+import android.view.SurfaceHolder;
 import android.view.inputmethod.EditorInfo;
 import android.view.inputmethod.InputConnection;
 import android.view.inputmethod.InputMethodManager;
 
 import com.ingcorp.webhard.Emulator;
+import com.ingcorp.webhard.render.FramePacer;
 import com.ingcorp.webhard.render.GLRendererES10;
 import com.ingcorp.webhard.render.GLRendererES32;
 import com.ingcorp.webhard.MAME4droid;
@@ -71,6 +73,9 @@ public class EmulatorViewGL extends GLSurfaceView implements IEmuView {
 
 	protected boolean showKeyboard = false;
 
+	//lives with the surface, null when neither pacing nor refresh matching is on
+	protected volatile FramePacer pacer = null;
+
     public Renderer getRender() {
         return render;
     }
@@ -124,6 +129,37 @@ public class EmulatorViewGL extends GLSurfaceView implements IEmuView {
         //setRenderMode(RENDERMODE_CONTINUOUSLY);
     }
 
+	/**
+	 * @return true if frames are rendered on vsync by the pacer rather than when the core ends them.
+	 */
+	public boolean isPaced() {
+		FramePacer p = pacer;
+		return p != null && p.isPacing();
+	}
+
+	@Override
+	public void surfaceCreated(SurfaceHolder holder) {
+		super.surfaceCreated(holder);
+		if (mm == null)
+			return;
+		boolean pace = mm.getPrefsHelper().isVsyncPacing();
+		boolean match = mm.getPrefsHelper().isMatchRefreshRate();
+		if (pace || match) {
+			FramePacer p = new FramePacer(this, pace, match, mm.getPrefsHelper().isLateLatch());
+			p.start(holder.getSurface());
+			pacer = p;
+		}
+	}
+
+	@Override
+	public void surfaceDestroyed(SurfaceHolder holder) {
+		FramePacer p = pacer;
+		pacer = null;
+		if (p != null)
+			p.stop();
+		super.surfaceDestroyed(holder);
+	}
+
     protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
         if (mm == null) {
             setMeasuredDimension(widthMeasureSpec, heightMeasureSpec);
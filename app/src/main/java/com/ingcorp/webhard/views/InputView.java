@@ -69,6 +69,8 @@ import com.ingcorp.webhard.input.InputHandler;
 import com.ingcorp.webhard.input.InputValue;
 import com.ingcorp.webhard.input.TiltSensor;
 import com.ingcorp.webhard.input.TouchController;
+import com.ingcorp.webhard.render.GLCallStats;
+import com.ingcorp.webhard.render.IGLRenderer;
 
 public class InputView extends ImageView {
 
@@ -400,6 +402,14 @@ public class InputView extends ImageView {
             p2.setTextSize(30);
             if (mm.getInputHandler().getTiltSensor().isEnabled() && TiltSensor.str != null)
                 canvas.drawText(TiltSensor.str, 100, 150, p2);
+
+            //calls of the last frame, redrawn twice a second while debugging
+            if (mm.getEmuView() instanceof EmulatorViewGL
+                && ((EmulatorViewGL) mm.getEmuView()).getRender() instanceof IGLRenderer) {
+                GLCallStats calls = ((IGLRenderer) ((EmulatorViewGL) mm.getEmuView()).getRender()).getCallStats();
+                canvas.drawText("GL calls/frame: " + calls.getLastFrameCalls() + " (skipped " + calls.getLastFrameSkipped() + ")", 100, 190, p2);
+                postInvalidateDelayed(500);
+            }
         }
     }
 }
@@ -17,9 +17,9 @@ LOCAL_PATH := $(call my-dir)
 
 include $(CLEAR_VARS)
 
-LOCAL_LDLIBS    := -ldl -llog
+LOCAL_LDLIBS    := -ldl -llog -laaudio
 LOCAL_MODULE    := mame4droid-jni
-LOCAL_SRC_FILES := mame4droid-jni.c
+LOCAL_SRC_FILES := mame4droid-jni.c aaudio-engine.c
 LOCAL_LDFLAGS += "-Wl,-z,max-page-size=16384" #para Android NDK r26 and lowe y soporte paginas de 16KB
 
 
@@ -0,0 +1,364 @@
+/*
+ * This file is part of MAME4droid.
+ *
+ * Copyright (C) 2024 David Valdeita (Seleuco)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ * In addition, as a special exception, Seleuco
+ * gives permission to link the code of this program with
+ * the MAME library (or with modified versions of MAME that use the
+ * same license as MAME), and distribute linked combinations including
+ * the two.  You must obey the GNU General Public License in all
+ * respects for all of the code used other than MAME.  If you modify
+ * this file, you may extend this exception to your version of the
+ * file, but you are not obligated to do so.  If you do not wish to
+ * do so, delete this exception statement from your version.
+ */
+
+#include <pthread.h>
+#include <stdatomic.h>
+#include <stdlib.h>
+#include <string.h>
+#include <android/log.h>
+#include <aaudio/AAudio.h>
+
+#include "aaudio-engine.h"
+
+//emulated frames of audio the ring can hold
+#define RING_FRAMES_OF_AUDIO 6
+
+//rate control, as DynamicRateControl.java does for AudioTrack: the ring depth found before
+//each write is held at TARGET_CHUNKS chunks from the core by resampling a fraction of a percent,
+//and a chunk that would take it past MAX_CHUNKS is cut, so the latency can not creep up.
+//At the largest correction the depth settles at twice the target, still below the cut.
+#define RATE_MAX_DEVIATION 0.005
+#define RATE_FILL_ALPHA 0.05
+#define TARGET_CHUNKS 1
+#define MAX_CHUNKS 4
+
+//the UI thread pauses while the emulator thread may be reopening the stream
+static pthread_mutex_t streamLock = PTHREAD_MUTEX_INITIALIZER;
+static AAudioStream *stream = NULL;
+static int streamRate = 0;
+static atomic_int disconnected = 0;
+
+/* SPSC ring in sample frames: the emulator thread writes, the AAudio callback reads */
+static short *ring = NULL;
+static int ringFrames = 0;//power of two
+static int ringMask = 0;
+static int channels = 0;
+static atomic_long ringWrite = 0;
+static atomic_long ringRead = 0;
+static atomic_int paused = 0;
+static atomic_int discard = 0;
+
+static long overruns = 0;
+static long droppedFrames = 0;
+static atomic_long underruns = 0;
+
+//emulator thread: rate control and the resampler state, see LinearResampler.java
+static int chunkFrames = 0;
+static double smoothedFill = -1;
+static double ratio = 1.0;
+static short prevFrame[2];
+static int havePrev = 0;
+static double resamplePos = 0;
+
+static aaudio_data_callback_result_t dataCallback(AAudioStream *s, void *userData, void *audioData, int32_t numFrames)
+{
+    short *out = (short *)audioData;
+    long r = atomic_load_explicit(&ringRead, memory_order_relaxed);
+    long w = atomic_load_explicit(&ringWrite, memory_order_acquire);
+    int isPaused = atomic_load_explicit(&paused, memory_order_relaxed);
+
+    //only the callback moves the read position, so stale data is dropped here
+    if(isPaused || atomic_exchange_explicit(&discard, 0, memory_order_relaxed))
+        r = w;
+
+    int available = (int)(w - r);
+    int n = numFrames;
+
+    if(n > available)
+    {
+        if(!isPaused)
+            atomic_fetch_add_explicit(&underruns, 1, memory_order_relaxed);
+        n = available;
+    }
+
+    int offset = (int)(r & ringMask);
+    int first = n < ringFrames - offset ? n : ringFrames - offset;
+    memcpy(out, ring + offset * channels, first * channels * sizeof(short));
+    if(first < n)
+        memcpy(out + first * channels, ring, (n - first) * channels * sizeof(short));
+
+    if(n < numFrames)
+        memset(out + n * channels, 0, (numFrames - n) * channels * sizeof(short));
+
+    atomic_store_explicit(&ringRead, r + n, memory_order_release);
+    return AAUDIO_CALLBACK_RESULT_CONTINUE;
+}
+
+static void errorCallback(AAudioStream *s, void *userData, aaudio_result_t error)
+{
+    //the stream can't be reopened from here, the next write does it
+    __android_log_print(ANDROID_LOG_WARN, "mame4droid-jni", "AAudio error %s", AAudio_convertResultToText(error));
+    atomic_store(&disconnected, 1);
+}
+
+static int openStream()
+{
+    AAudioStreamBuilder *builder;
+    aaudio_result_t result = AAudio_createStreamBuilder(&builder);
+
+    if(result != AAUDIO_OK)
+        return -1;
+
+    AAudioStreamBuilder_setDirection(builder, AAUDIO_DIRECTION_OUTPUT);
+    AAudioStreamBuilder_setSampleRate(builder, streamRate);
+    AAudioStreamBuilder_setChannelCount(builder, channels);
+    AAudioStreamBuilder_setFormat(builder, AAUDIO_FORMAT_PCM_I16);
+    AAudioStreamBuilder_setPerformanceMode(builder, AAUDIO_PERFORMANCE_MODE_LOW_LATENCY);
+    //falls back to shared when the device has no exclusive stream to give
+    AAudioStreamBuilder_setSharingMode(builder, AAUDIO_SHARING_MODE_EXCLUSIVE);
+    AAudioStreamBuilder_setUsage(builder, AAUDIO_USAGE_GAME);
+    AAudioStreamBuilder_setDataCallback(builder, dataCallback, NULL);
+    AAudioStreamBuilder_setErrorCallback(builder, errorCallback, NULL);
+
+    result = AAudioStreamBuilder_openStream(builder, &stream);
+    AAudioStreamBuilder_delete(builder);
+
+    if(result != AAUDIO_OK)
+    {
+        __android_log_print(ANDROID_LOG_ERROR, "mame4droid-jni", "AAudio open failed %s", AAudio_convertResultToText(result));
+        stream = NULL;
+        return -1;
+    }
+
+    if(AAudioStream_getSampleRate(stream) != streamRate)
+    {
+        //no resampling here, let the Java path handle it
+        __android_log_print(ANDROID_LOG_WARN, "mame4droid-jni", "AAudio rate %d instead of %d", AAudioStream_getSampleRate(stream), streamRate);
+        AAudioStream_close(stream);
+        stream = NULL;
+        return -1;
+    }
+
+    //two bursts is the usual sweet spot between latency and glitches
+    int32_t burst = AAudioStream_getFramesPerBurst(stream);
+    AAudioStream_setBufferSizeInFrames(stream, burst * 2);
+
+    __android_log_print(ANDROID_LOG_DEBUG, "mame4droid-jni", "AAudio open rate:%d channels:%d burst:%d buffer:%d exclusive:%d",
+        streamRate, channels, burst, AAudioStream_getBufferSizeInFrames(stream),
+        AAudioStream_getSharingMode(stream) == AAUDIO_SHARING_MODE_EXCLUSIVE);
+
+    atomic_store(&disconnected, 0);
+
+    if(atomic_load(&paused))
+        return 0;
+
+    result = AAudioStream_requestStart(stream);
+    if(result != AAUDIO_OK)
+    {
+        __android_log_print(ANDROID_LOG_ERROR, "mame4droid-jni", "AAudio start failed %s", AAudio_convertResultToText(result));
+        AAudioStream_close(stream);
+        stream = NULL;
+        return -1;
+    }
+    return 0;
+}
+
+static void resetRateControl()
+{
+    smoothedFill = -1;
+    ratio = 1.0;
+    havePrev = 0;
+    resamplePos = 0;
+}
+
+static void closeStream()
+{
+    if(stream != NULL)
+    {
+        AAudioStream_requestStop(stream);
+        __android_log_print(ANDROID_LOG_DEBUG, "mame4droid-jni", "AAudio close overruns:%ld dropped frames:%ld underruns:%ld xruns:%d ratio:%f",
+            overruns, droppedFrames, atomic_load(&underruns), AAudioStream_getXRunCount(stream), ratio);
+        AAudioStream_close(stream);
+        stream = NULL;
+    }
+}
+
+int aaudio_open(int rate, int stereo)
+{
+    if(ring != NULL)
+        aaudio_close();
+
+    streamRate = rate;
+    channels = stereo ? 2 : 1;
+    chunkFrames = rate / 60;
+
+    int want = chunkFrames * RING_FRAMES_OF_AUDIO;
+    ringFrames = 1;
+    while(ringFrames < want)
+        ringFrames <<= 1;
+    ringMask = ringFrames - 1;
+
+    ring = calloc(ringFrames * channels, sizeof(short));
+    if(ring == NULL)
+        return -1;
+
+    atomic_store(&ringWrite, 0);
+    atomic_store(&ringRead, 0);
+    atomic_store(&paused, 0);
+    atomic_store(&underruns, 0);
+    overruns = 0;
+    droppedFrames = 0;
+    resetRateControl();
+
+    pthread_mutex_lock(&streamLock);
+    int result = openStream();
+    pthread_mutex_unlock(&streamLock);
+
+    if(result != 0)
+    {
+        free(ring);
+        ring = NULL;
+        return -1;
+    }
+    return 0;
+}
+
+/* Nudges the resampling ratio towards holding the ring at its target depth. */
+static void updateRatio(int fill)
+{
+    double target = chunkFrames * TARGET_CHUNKS;
+
+    if(smoothedFill < 0)
+        smoothedFill = fill;
+    else
+        smoothedFill += (fill - smoothedFill) * RATE_FILL_ALPHA;
+
+    double error = (target - smoothedFill) / target;
+    if(error > 1.0)
+        error = 1.0;
+    else if(error < -1.0)
+        error = -1.0;
+    ratio = 1.0 + RATE_MAX_DEVIATION * error;
+}
+
+void aaudio_write(const void *buffer, int size)
+{
+    if(ring == NULL)
+        return;
+
+    if(atomic_load(&disconnected))
+    {
+        //headphones plugged, route changed...
+        pthread_mutex_lock(&streamLock);
+        closeStream();
+        int result = openStream();
+        pthread_mutex_unlock(&streamLock);
+        if(result != 0)
+            return;
+        resetRateControl();
+    }
+
+    const short *in = (const short *)buffer;
+    int frames = size / (int)(channels * sizeof(short));
+    long w = atomic_load_explicit(&ringWrite, memory_order_relaxed);
+    long r = atomic_load_explicit(&ringRead, memory_order_acquire);
+    int fill = (int)(w - r);
+
+    updateRatio(fill);
+
+    //never queue more than MAX_CHUNKS, whatever does not fit is the oldest latency we can shed
+    int space = chunkFrames * MAX_CHUNKS - fill;
+    if(space > ringFrames - fill)
+        space = ringFrames - fill;
+
+    double step = 1.0 / ratio;
+    int written = 0;
+    int dropped = 0;
+
+    for(int i = 0; i < frames; i++)
+    {
+        const short *cur = in + i * channels;
+
+        if(!havePrev)
+        {
+            memcpy(prevFrame, cur, channels * sizeof(short));
+            havePrev = 1;
+            continue;
+        }
+
+        while(resamplePos <= 1.0)
+        {
+            if(written < space)
+            {
+                short *out = ring + (int)((w + written) & ringMask) * channels;
+                for(int c = 0; c < channels; c++)
+                    out[c] = (short)(prevFrame[c] + (cur[c] - prevFrame[c]) * resamplePos);
+                written++;
+            }
+            else
+                dropped++;
+            resamplePos += step;
+        }
+        resamplePos -= 1.0;
+
+        memcpy(prevFrame, cur, channels * sizeof(short));
+    }
+
+    if(dropped > 0)
+    {
+        overruns++;
+        droppedFrames += dropped;
+    }
+
+    atomic_store_explicit(&ringWrite, w + written, memory_order_release);
+}
+
+void aaudio_pause(int pause)
+{
+    pthread_mutex_lock(&streamLock);
+    atomic_store(&paused, pause);
+    if(stream != NULL)
+    {
+        if(pause)
+            AAudioStream_requestPause(stream);
+        else
+        {
+            atomic_store(&discard, 1);
+            AAudioStream_requestStart(stream);
+        }
+    }
+    pthread_mutex_unlock(&streamLock);
+}
+
+void aaudio_close(void)
+{
+    pthread_mutex_lock(&streamLock);
+    closeStream();
+    pthread_mutex_unlock(&streamLock);
+    if(ring != NULL)
+    {
+        free(ring);
+        ring = NULL;
+    }
+}
+
+int aaudio_is_open(void)
+{
+    return ring != NULL;
+}
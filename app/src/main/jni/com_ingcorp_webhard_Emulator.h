@@ -93,6 +93,10 @@ extern "C" {
 #define com_ingcorp_webhard_Emulator_INPUTMACRO 72L
 #undef com_ingcorp_webhard_Emulator_HISCORE
 #define com_ingcorp_webhard_Emulator_HISCORE 73L
+#undef com_ingcorp_webhard_Emulator_THROTTLE
+#define com_ingcorp_webhard_Emulator_THROTTLE 74L
+#undef com_ingcorp_webhard_Emulator_SPEED
+#define com_ingcorp_webhard_Emulator_SPEED 75L
 #undef com_ingcorp_webhard_Emulator_SAF_PATH
 #define com_ingcorp_webhard_Emulator_SAF_PATH 1L
 #undef com_ingcorp_webhard_Emulator_ROM_NAME
@@ -141,19 +145,51 @@ JNIEXPORT void JNICALL Java_com_ingcorp_webhard_Emulator_runT
 
 /*
  * Class:     com_ingcorp_webhard_Emulator
- * Method:    setDigitalData
- * Signature: (IJ)V
+ * Method:    preload
+ * Signature: (Ljava/lang/String;)V
  */
-JNIEXPORT void JNICALL Java_com_ingcorp_webhard_Emulator_setDigitalData
-  (JNIEnv *, jclass, jint, jlong);
+JNIEXPORT void JNICALL Java_com_ingcorp_webhard_Emulator_preload
+  (JNIEnv *, jclass, jstring);
 
 /*
  * Class:     com_ingcorp_webhard_Emulator
- * Method:    setAnalogData
- * Signature: (IFF)V
+ * Method:    setInputBlock
+ * Signature: (Ljava/nio/ByteBuffer;)V
  */
-JNIEXPORT void JNICALL Java_com_ingcorp_webhard_Emulator_setAnalogData
-  (JNIEnv *, jclass, jint, jfloat, jfloat);
+JNIEXPORT void JNICALL Java_com_ingcorp_webhard_Emulator_setInputBlock
+  (JNIEnv *, jclass, jobject);
+
+/*
+ * Class:     com_ingcorp_webhard_Emulator
+ * Method:    setStateBlock
+ * Signature: (Ljava/nio/ByteBuffer;)V
+ */
+JNIEXPORT void JNICALL Java_com_ingcorp_webhard_Emulator_setStateBlock
+  (JNIEnv *, jclass, jobject);
+
+/*
+ * Class:     com_ingcorp_webhard_Emulator
+ * Method:    setNativeAudio
+ * Signature: (Z)V
+ */
+JNIEXPORT void JNICALL Java_com_ingcorp_webhard_Emulator_setNativeAudio
+  (JNIEnv *, jclass, jboolean);
+
+/*
+ * Class:     com_ingcorp_webhard_Emulator
+ * Method:    setNativeAudioStep
+ * Signature: (I)V
+ */
+JNIEXPORT void JNICALL Java_com_ingcorp_webhard_Emulator_setNativeAudioStep
+  (JNIEnv *, jclass, jint);
+
+/*
+ * Class:     com_ingcorp_webhard_Emulator
+ * Method:    pauseNativeAudio
+ * Signature: (Z)V
+ */
+JNIEXPORT void JNICALL Java_com_ingcorp_webhard_Emulator_pauseNativeAudio
+  (JNIEnv *, jclass, jboolean);
 
 /*
  * Class:     com_ingcorp_webhard_Emulator
@@ -187,6 +223,14 @@ JNIEXPORT void JNICALL Java_com_ingcorp_webhard_Emulator_setValue
 JNIEXPORT void JNICALL Java_com_ingcorp_webhard_Emulator_setValueStr
   (JNIEnv *, jclass, jint, jint, jstring);
 
+/*
+ * Class:     com_ingcorp_webhard_Emulator
+ * Method:    setValues
+ * Signature: ([I[II)V
+ */
+JNIEXPORT void JNICALL Java_com_ingcorp_webhard_Emulator_setValues
+  (JNIEnv *, jclass, jintArray, jintArray, jint);
+
 /*
  * Class:     com_ingcorp_webhard_Emulator
  * Method:    setKeyData
@@ -197,19 +241,35 @@ JNIEXPORT jint JNICALL Java_com_ingcorp_webhard_Emulator_setKeyData
 
 /*
  * Class:     com_ingcorp_webhard_Emulator
- * Method:    setMouseData
- * Signature: (IIIFF)I
+ * Method:    setRunAhead
+ * Signature: (I)Z
+ */
+JNIEXPORT jboolean JNICALL Java_com_ingcorp_webhard_Emulator_setRunAhead
+  (JNIEnv *, jclass, jint);
+
+/*
+ * Class:     com_ingcorp_webhard_Emulator
+ * Method:    getStateSize
+ * Signature: ()I
+ */
+JNIEXPORT jint JNICALL Java_com_ingcorp_webhard_Emulator_getStateSize
+  (JNIEnv *, jclass);
+
+/*
+ * Class:     com_ingcorp_webhard_Emulator
+ * Method:    saveState
+ * Signature: (Ljava/nio/ByteBuffer;)I
  */
-JNIEXPORT jint JNICALL Java_com_ingcorp_webhard_Emulator_setMouseData
-  (JNIEnv *, jclass, jint, jint, jint, jfloat, jfloat);
+JNIEXPORT jint JNICALL Java_com_ingcorp_webhard_Emulator_saveState
+  (JNIEnv *, jclass, jobject);
 
 /*
  * Class:     com_ingcorp_webhard_Emulator
- * Method:    setTouchData
- * Signature: (IIFF)I
+ * Method:    loadState
+ * Signature: (Ljava/nio/ByteBuffer;I)Z
  */
-JNIEXPORT jint JNICALL Java_com_ingcorp_webhard_Emulator_setTouchData
-  (JNIEnv *, jclass, jint, jint, jfloat, jfloat);
+JNIEXPORT jboolean JNICALL Java_com_ingcorp_webhard_Emulator_loadState
+  (JNIEnv *, jclass, jobject, jint);
 
 #ifdef __cplusplus
 }
@@ -38,6 +38,7 @@
 #include <pthread.h>
 
 #include "com_ingcorp_webhard_Emulator.h"
+#include "aaudio-engine.h"
 
 #define DEBUG 1
 
@@ -62,9 +63,16 @@ int  (*setKeyData)(int keyCode, int keyAction, char keyChar)=NULL;
 int  (*setMouseData)(int i, int mouseAction, int button, float x, float y)=NULL;
 int  (*setTouchData)(int i, int touchAction, float x, float y)=NULL;
 
+//optional in-memory save states, only called from the video callback; a load is applied by the
+//core before it emulates the next frame
+int  (*getStateMemSize)(void)=NULL;
+int  (*saveStateMem)(void *buffer, int size)=NULL;
+int  (*loadStateMem)(const void *buffer, int size)=NULL;
+
 /* Callbacks to Android */
 jmethodID android_dumpVideo;
 jmethodID android_changeVideo;
+jmethodID android_initVideo;
 jmethodID android_openAudio;
 jmethodID android_dumpAudio;
 jmethodID android_closeAudio;
@@ -76,17 +84,100 @@ jmethodID android_safCloseDir;
 
 static JavaVM *jVM = NULL;
 static void *libdl = NULL;
+static pthread_mutex_t libLock = PTHREAD_MUTEX_INITIALIZER;
 static jclass cEmulator = NULL;
 
-static jobject videoBuffer=NULL;//es un ByteBuffer wrappeando el buffer de video en la librería
+#define NUM_VIDEO_BUFFERS 3
+
+static void *coreVideoBuffer = NULL;//buffer de video en la librería, se reescribe en cada frame
+static int videoPitch = 0;
+static int videoBufferSize = 0;
+static int videoFrameSize = 0;
+static int videoCapacity = 0;//size of the buffers below, kept while new video modes fit in them
 
-static jbyteArray jbaAudioBuffer = NULL;
+//triple buffer: copiamos cada frame a uno de estos y se lo pasamos a Java como ByteBuffer directo
+static void *videoFrames[NUM_VIDEO_BUFFERS];
+static jobject videoBuffers[NUM_VIDEO_BUFFERS];
+static int videoBackIndex = 0;
 
+//audio chunks are staged here and handed to Java as the same direct ByteBuffer every time
 static jobject audioBuffer=NULL;
 static unsigned char audioByteBuffer[882 * 2 * 2 * 10];
 
+//when set, openAudio tries AAudio first and the Java AudioTrack path is only a fallback
+static int useNativeAudio = 0;
+static int nativeAudioActive = 0;
+//fast-forward filter for the native engine, set by Java from the emulator thread: 0 drops the sound,
+//n keeps one sample out of every n, the phase carries over so they stay evenly spaced across chunks
+static int nativeAudioStep = 1;
+static int nativeAudioPhase = 0;
+static int nativeAudioFrameBytes = 4;
+
+//threads we attach to the VM stay attached until they exit
+static pthread_key_t envKey;
+static pthread_once_t envKeyOnce = PTHREAD_ONCE_INIT;
+
 static pthread_t main_tid;
 
+/* Shared input block, must match SharedInputBlock.java */
+#define INPUT_NUM_DIGITAL 4
+#define INPUT_NUM_ANALOG 12
+#define INPUT_NUM_MOUSE_BUTTONS 3
+#define INPUT_NUM_TOUCH 10
+
+#define INPUT_SEQUENCE_OFFSET 0
+#define INPUT_DIGITAL_OFFSET (INPUT_SEQUENCE_OFFSET + 8)
+#define INPUT_ANALOG_OFFSET (INPUT_DIGITAL_OFFSET + INPUT_NUM_DIGITAL * 8)
+#define INPUT_MOUSE_MOVE_OFFSET (INPUT_ANALOG_OFFSET + INPUT_NUM_ANALOG * 8)
+#define INPUT_MOUSE_BUTTONS_OFFSET (INPUT_MOUSE_MOVE_OFFSET + 16)
+#define INPUT_TOUCH_OFFSET (INPUT_MOUSE_BUTTONS_OFFSET + INPUT_NUM_MOUSE_BUTTONS * 8)
+#define INPUT_TOUCH_SLOT_SIZE 16
+#define INPUT_BLOCK_SIZE (INPUT_TOUCH_OFFSET + INPUT_NUM_TOUCH * INPUT_TOUCH_SLOT_SIZE)
+
+//copies taken while a writer keeps changing the block before giving up and using the last one
+#define INPUT_SNAPSHOT_TRIES 64
+
+static unsigned char *inputBlock = NULL;
+static jobject inputBlockRef = NULL;
+static int inputSynced = 0;
+static unsigned char inputSnapshot[INPUT_BLOCK_SIZE] __attribute__((aligned(8)));
+
+static long long lastDigital[INPUT_NUM_DIGITAL];
+static float lastAnalog[INPUT_NUM_ANALOG][2];
+static double lastMouseX = 0, lastMouseY = 0;
+static int mouseDownsSeen[INPUT_NUM_MOUSE_BUTTONS];
+static int mouseUpsSeen[INPUT_NUM_MOUSE_BUTTONS];
+static int mousePressed[INPUT_NUM_MOUSE_BUTTONS];
+static float lastTouchX[INPUT_NUM_TOUCH], lastTouchY[INPUT_NUM_TOUCH];
+static int touchDownsSeen[INPUT_NUM_TOUCH], touchUpsSeen[INPUT_NUM_TOUCH], touchPressed[INPUT_NUM_TOUCH];
+
+/* Shared state block, must match EmulatorState.java */
+#define STATE_IN_GAME 0
+#define STATE_IN_MENU 1
+#define STATE_IS_LIGHTGUN 2
+#define STATE_IS_MOUSE 3
+#define STATE_NUMWAYS 4
+#define STATE_NUMBTNS 5
+#define STATE_REFRESH 6
+#define STATE_NUM_VALUES 7
+#define STATE_BLOCK_SIZE (STATE_NUM_VALUES * 4)
+
+static int *stateBlock = NULL;
+static jobject stateBlockRef = NULL;
+
+/* Run-ahead, all on the emulator thread but the request */
+static int runAheadRequest = 0;
+static int runAheadFrames = 0;
+static int runAheadStep = 0;//0 on the real timeline, 1..runAheadFrames on the frames run ahead
+//1 while the core emulates the real timeline: cleared right after the save, set again right after
+//the load, so it does not depend on where the audio callbacks fall around the video ones
+static int runAheadReal = 1;
+//1 from the last frame run ahead until it has been presented and the real timeline restored
+static int runAheadShown = 0;
+static void *runAheadState = NULL;
+static int runAheadStateSize = 0;
+static int runAheadStateLen = 0;
+
 static void load_lib(const char *str)
 {
     char str2[256];
@@ -99,13 +190,20 @@ static void load_lib(const char *str)
     __android_log_print(ANDROID_LOG_DEBUG, "mame4droid-jni", "Attempting to load %s\n", str2);
 //#endif
 
+    //the prewarm thread may get here while the emulator thread calls init
+    pthread_mutex_lock(&libLock);
+
     if(libdl!=NULL)
+    {
+        pthread_mutex_unlock(&libLock);
         return;
+    }
 
     libdl = dlopen(str2, RTLD_NOW);
     if(!libdl)
     {
         __android_log_print(ANDROID_LOG_ERROR, "mame4droid-jni", "Unable to load libMAME4droid.so: %s\n", dlerror());
+        pthread_mutex_unlock(&libLock);
         return;
     }
 
@@ -153,6 +251,69 @@ static void load_lib(const char *str)
 
     setTouchData = dlsym(libdl, "myosd_droid_setTouchData");
     __android_log_print(ANDROID_LOG_DEBUG, "mame4droid-jni", "myosd_droid_setTouchData %d\n", setTouchData != NULL);
+
+    /* Run-ahead contract, see runAhead():
+       - saveStateMem/loadStateMem snapshot and restore the whole machine, sound streams included,
+         so the sound after the save is emulated again on the real timeline after the load.
+       - The audio passed to dumpAudio is the sound emulated since the previous call. What the core
+         hands over between a save and the matching load therefore belongs to the frames run ahead,
+         whatever the order of the audio and video callbacks within a frame.
+       - The frames between a save and the load must not be throttled. A core that paces every
+         frame runs at 1/(N+1) speed with N frames ahead, and RunAhead's auto mode turns it off. */
+    getStateMemSize = dlsym(libdl, "myosd_droid_getStateMemSize");
+    saveStateMem = dlsym(libdl, "myosd_droid_saveStateMem");
+    loadStateMem = dlsym(libdl, "myosd_droid_loadStateMem");
+    __android_log_print(ANDROID_LOG_DEBUG, "mame4droid-jni", "myosd_droid_saveStateMem %d\n", saveStateMem != NULL && loadStateMem != NULL && getStateMemSize != NULL);
+
+    pthread_mutex_unlock(&libLock);
+}
+
+static void releaseVideoBuffers(JNIEnv *env)
+{
+    for(int i = 0; i < NUM_VIDEO_BUFFERS; i++)
+    {
+        if(videoBuffers[i] != NULL)
+        {
+            (*env)->DeleteGlobalRef(env, videoBuffers[i]);
+            videoBuffers[i] = NULL;
+        }
+        if(videoFrames[i] != NULL)
+        {
+            free(videoFrames[i]);
+            videoFrames[i] = NULL;
+        }
+    }
+    videoCapacity = 0;
+    videoBackIndex = 0;
+}
+
+static void detachThread(void *env)
+{
+    (*jVM)->DetachCurrentThread(jVM);
+}
+
+static void createEnvKey()
+{
+    pthread_key_create(&envKey, detachThread);
+}
+
+/* Returns the JNIEnv for the calling thread, attaching it once for its whole lifetime if needed. */
+static JNIEnv *getThreadEnv()
+{
+    JNIEnv *env = NULL;
+
+    if((*jVM)->GetEnv(jVM, (void**) &env, JNI_VERSION_1_4) == JNI_OK)
+        return env;
+
+    pthread_once(&envKeyOnce, createEnvKey);
+
+    if((*jVM)->AttachCurrentThread(jVM, (void *) &env, NULL) != JNI_OK)
+    {
+        __android_log_print(ANDROID_LOG_ERROR, "mame4droid-jni", "unable to attach thread!");
+        return NULL;
+    }
+    pthread_setspecific(envKey, env);
+    return env;
 }
 
 void myJNI_initVideo(void *buffer, int width, int height, int pitch)
@@ -163,12 +324,264 @@ void myJNI_initVideo(void *buffer, int width, int height, int pitch)
 #ifdef DEBUG
     __android_log_print(ANDROID_LOG_DEBUG, "mame4droid-jni", "initVideo");
 #endif
-    tmp = (*env)->NewDirectByteBuffer(env, buffer, width * height * pitch);
+    //the renderer may still be reading one of our buffers: Java starts a new exchange and waits
+    //for the GL thread to let go of the old one, then both sides start again from buffer 0
+    (*env)->CallStaticVoidMethod(env, cEmulator, android_initVideo);
+    videoBackIndex = 0;
+
+    coreVideoBuffer = buffer;
+    videoPitch = pitch;
+    videoBufferSize = width * height * pitch;
+    videoFrameSize = videoBufferSize;
+
+    if(videoBuffers[0] != NULL && videoBufferSize <= videoCapacity)
+        return;
+
+    releaseVideoBuffers(env);
+
+    for(int i = 0; i < NUM_VIDEO_BUFFERS; i++)
+    {
+        videoFrames[i] = calloc(1, videoBufferSize);
+        if(videoFrames[i] == NULL)
+        {
+            __android_log_print(ANDROID_LOG_ERROR, "mame4droid-jni", "yikes, unable to allocate video buffer %d", i);
+            releaseVideoBuffers(env);
+            return;
+        }
+        tmp = (*env)->NewDirectByteBuffer(env, videoFrames[i], videoBufferSize);
+        videoBuffers[i] = (jobject)(*env)->NewGlobalRef(env, tmp);
+        (*env)->DeleteLocalRef(env, tmp);
+
+        if(!videoBuffers[i])
+        {
+            __android_log_print(ANDROID_LOG_ERROR, "mame4droid-jni", "yikes, unable to initialize video buffer %d", i);
+            releaseVideoBuffers(env);
+            return;
+        }
+    }
+    videoCapacity = videoBufferSize;
+}
+
+/* Copies the shared input block while no Java writer is halfway through it, see SharedInputBlock.java. */
+static void snapshotInputBlock()
+{
+    for(int tries = 0; tries < INPUT_SNAPSHOT_TRIES; tries++)
+    {
+        int before = __atomic_load_n((int *)(inputBlock + INPUT_SEQUENCE_OFFSET), __ATOMIC_ACQUIRE);
+        if(before & 1)
+            continue;
+        memcpy(inputSnapshot, inputBlock, INPUT_BLOCK_SIZE);
+        __atomic_thread_fence(__ATOMIC_ACQUIRE);
+        if(__atomic_load_n((int *)(inputBlock + INPUT_SEQUENCE_OFFSET), __ATOMIC_RELAXED) == before)
+            return;
+    }
+    //a writer held it for the whole time, the values it is storing show up on the next frame
+    memcpy(inputSnapshot, inputBlock, INPUT_BLOCK_SIZE);
+}
+
+/* Pushes whatever changed in the shared input block to the core. Runs on the emulator thread once per frame. */
+static void syncInputBlock()
+{
+    if(inputBlock == NULL)
+        return;
+
+    snapshotInputBlock();
+    const unsigned char *in = inputSnapshot;
+
+    if(setDigitalData != NULL)
+    {
+        for(int i = 0; i < INPUT_NUM_DIGITAL; i++)
+        {
+            long long d = *(const long long *)(in + INPUT_DIGITAL_OFFSET + i * 8);
+            if(!inputSynced || d != lastDigital[i])
+            {
+                setDigitalData(i, (unsigned long)d);
+                lastDigital[i] = d;
+            }
+        }
+    }
+
+    if(setAnalogData != NULL)
+    {
+        for(int i = 0; i < INPUT_NUM_ANALOG; i++)
+        {
+            float x = *(const float *)(in + INPUT_ANALOG_OFFSET + i * 8);
+            float y = *(const float *)(in + INPUT_ANALOG_OFFSET + i * 8 + 4);
+            if(!inputSynced || x != lastAnalog[i][0] || y != lastAnalog[i][1])
+            {
+                setAnalogData(i, x, y);
+                lastAnalog[i][0] = x;
+                lastAnalog[i][1] = y;
+            }
+        }
+    }
+
+    if(setMouseData != NULL)
+    {
+        double x = *(const double *)(in + INPUT_MOUSE_MOVE_OFFSET);
+        double y = *(const double *)(in + INPUT_MOUSE_MOVE_OFFSET + 8);
+        if(x != lastMouseX || y != lastMouseY)
+        {
+            setMouseData(0, com_ingcorp_webhard_Emulator_MOUSE_MOVE, 0, (float)(x - lastMouseX), (float)(y - lastMouseY));
+            lastMouseX = x;
+            lastMouseY = y;
+        }
+
+        //replay presses and releases in order so clicks shorter than a frame are not lost
+        for(int b = 0; b < INPUT_NUM_MOUSE_BUTTONS; b++)
+        {
+            int downs = *(const int *)(in + INPUT_MOUSE_BUTTONS_OFFSET + b * 8);
+            int ups = *(const int *)(in + INPUT_MOUSE_BUTTONS_OFFSET + b * 8 + 4);
+            while(mouseDownsSeen[b] != downs || mouseUpsSeen[b] != ups)
+            {
+                if(mouseDownsSeen[b] == downs || (mousePressed[b] && mouseUpsSeen[b] != ups))
+                {
+                    setMouseData(0, com_ingcorp_webhard_Emulator_MOUSE_BTN_UP, b + 1, -1, -1);
+                    mouseUpsSeen[b]++;
+                    mousePressed[b] = 0;
+                }
+                else
+                {
+                    setMouseData(0, com_ingcorp_webhard_Emulator_MOUSE_BTN_DOWN, b + 1, -1, -1);
+                    mouseDownsSeen[b]++;
+                    mousePressed[b] = 1;
+                }
+            }
+        }
+    }
+
+    if(setTouchData != NULL)
+    {
+        for(int p = 0; p < INPUT_NUM_TOUCH; p++)
+        {
+            const unsigned char *slot = in + INPUT_TOUCH_OFFSET + p * INPUT_TOUCH_SLOT_SIZE;
+            float x = *(const float *)slot;
+            float y = *(const float *)(slot + 4);
+            int downs = *(const int *)(slot + 8);
+            int ups = *(const int *)(slot + 12);
+
+            if(x != lastTouchX[p] || y != lastTouchY[p])
+            {
+                setTouchData(p, com_ingcorp_webhard_Emulator_FINGER_MOVE, x, y);
+                lastTouchX[p] = x;
+                lastTouchY[p] = y;
+            }
+
+            while(touchDownsSeen[p] != downs || touchUpsSeen[p] != ups)
+            {
+                if(touchDownsSeen[p] == downs || (touchPressed[p] && touchUpsSeen[p] != ups))
+                {
+                    setTouchData(p, com_ingcorp_webhard_Emulator_FINGER_UP, x, y);
+                    touchUpsSeen[p]++;
+                    touchPressed[p] = 0;
+                }
+                else
+                {
+                    setTouchData(p, com_ingcorp_webhard_Emulator_FINGER_DOWN, x, y);
+                    touchDownsSeen[p]++;
+                    touchPressed[p] = 1;
+                }
+            }
+        }
+    }
+
+    inputSynced = 1;
+}
+
+/* Reads the values the Java side polls on every touch event once, so it never has to cross JNI for them. */
+static void publishState()
+{
+    if(stateBlock == NULL || getMyValue == NULL)
+        return;
+
+    stateBlock[STATE_IN_GAME] = getMyValue(com_ingcorp_webhard_Emulator_IN_GAME, 0);
+    stateBlock[STATE_IN_MENU] = getMyValue(com_ingcorp_webhard_Emulator_IN_MENU, 0);
+    stateBlock[STATE_IS_LIGHTGUN] = getMyValue(com_ingcorp_webhard_Emulator_IS_LIGHTGUN, 0);
+    stateBlock[STATE_IS_MOUSE] = getMyValue(com_ingcorp_webhard_Emulator_IS_MOUSE, 0);
+    stateBlock[STATE_NUMWAYS] = getMyValue(com_ingcorp_webhard_Emulator_NUMWAYS, 0);
+    stateBlock[STATE_NUMBTNS] = getMyValue(com_ingcorp_webhard_Emulator_NUMBTNS, 0);
+    stateBlock[STATE_REFRESH] = getMyValue(com_ingcorp_webhard_Emulator_REFRESH, 0);
+}
+
+static int canSaveStateMem()
+{
+    return getStateMemSize != NULL && saveStateMem != NULL && loadStateMem != NULL;
+}
+
+static void stopRunAhead(const char *why)
+{
+    if(runAheadFrames > 0)
+        __android_log_print(ANDROID_LOG_WARN, "mame4droid-jni", "run-ahead stopped: %s", why);
+    runAheadFrames = 0;
+    runAheadStep = 0;
+    runAheadReal = 1;
+    runAheadShown = 0;
+    __atomic_store_n(&runAheadRequest, 0, __ATOMIC_RELAXED);
+}
+
+/* After each real frame the state is saved in memory, the core runs N more frames with the same input
+   and only the last one is shown, then the saved state is loaded back, see finishRunAhead(), and the
+   next real frame runs. Returns 1 when the frame just emulated must not be presented. */
+static int runAhead()
+{
+    if(runAheadStep == 0)
+    {
+        runAheadFrames = __atomic_load_n(&runAheadRequest, __ATOMIC_RELAXED);
+        if(runAheadFrames <= 0)
+            return 0;
+
+        //never in the MAME menu, the state would be the one of the game behind it
+        if(stateBlock == NULL || !stateBlock[STATE_IN_GAME] || stateBlock[STATE_IN_MENU])
+            return 0;
+
+        int size = getStateMemSize();
+        if(size <= 0)
+            return 0;
+        if(size > runAheadStateSize)
+        {
+            void *p = realloc(runAheadState, size);
+            if(p == NULL)
+            {
+                stopRunAhead("out of memory");
+                return 0;
+            }
+            runAheadState = p;
+            runAheadStateSize = size;
+        }
 
-    videoBuffer = (jobject)(*env)->NewGlobalRef(env, tmp);
+        runAheadStateLen = saveStateMem(runAheadState, runAheadStateSize);
+        if(runAheadStateLen <= 0)
+        {
+            stopRunAhead("unable to save state");
+            return 0;
+        }
+        runAheadReal = 0;
+        runAheadStep = 1;
+        return 1;
+    }
+
+    if(runAheadStep < runAheadFrames)
+    {
+        runAheadStep++;
+        return 1;
+    }
 
-    if(!videoBuffer) __android_log_print(ANDROID_LOG_ERROR, "mame4droid-jni", "yikes, unable to initialize video buffer");
+    //show the last frame ahead, the real timeline comes back once it has been presented
+    runAheadStep = 0;
+    runAheadShown = 1;
+    return 0;
+}
 
+/* Loads the state saved before the frames run ahead, after bitblt so the state operations of the Java
+   side act on the real timeline through runAheadState, see Emulator_saveState and Emulator_loadState. */
+static void finishRunAhead()
+{
+    if(!runAheadShown)
+        return;
+    runAheadShown = 0;
+    if(loadStateMem(runAheadState, runAheadStateLen) != 0)
+        stopRunAhead("unable to load state");
+    runAheadReal = 1;
 }
 
 void myJNI_dumpVideo()
@@ -180,7 +593,26 @@ void myJNI_dumpVideo()
     //__android_log_print(ANDROID_LOG_DEBUG, "mame4droid-jni", "dumpVideo");
 #endif
 
-   (*env)->CallStaticVoidMethod(env, cEmulator,  android_dumpVideo, videoBuffer);
+    syncInputBlock();
+    publishState();
+
+    if(runAhead())
+        return;
+
+    if(coreVideoBuffer != NULL && videoBuffers[videoBackIndex] != NULL)
+    {
+        //the core reuses its buffer on the next frame, so the renderer only ever sees our private copies
+        memcpy(videoFrames[videoBackIndex], coreVideoBuffer, videoFrameSize);
+
+        jint next = (*env)->CallStaticIntMethod(env, cEmulator, android_dumpVideo, videoBuffers[videoBackIndex]);
+
+        if(next >= 0 && next < NUM_VIDEO_BUFFERS)
+            videoBackIndex = next;
+        else
+            __android_log_print(ANDROID_LOG_ERROR, "mame4droid-jni", "bitblt returned invalid buffer %d", next);
+    }
+
+    finishRunAhead();
 }
 
 void myJNI_changeVideo(int newWidth, int newHeight, int newVisWidth, int newVisHeight)
@@ -192,13 +624,34 @@ void myJNI_changeVideo(int newWidth, int newHeight, int newVisWidth, int newVisH
     __android_log_print(ANDROID_LOG_DEBUG, "mame4droid-jni", "changeVideo");
 #endif
 
+    //a new video mode means a new machine, whatever was run ahead belongs to the previous one
+    runAheadStep = 0;
+    runAheadReal = 1;
+    runAheadShown = 0;
+
+    //only copy the pixels of the current video mode
+    videoFrameSize = newWidth * newHeight * videoPitch;
+    if(videoFrameSize <= 0 || videoFrameSize > videoBufferSize)
+        videoFrameSize = videoBufferSize;
+
     (*env)->CallStaticVoidMethod(env, cEmulator, android_changeVideo, (jint)newWidth,(jint)newHeight,(jint)newVisWidth,(jint)newVisHeight );
 }
 
 void myJNI_closeAudio()
 {
     JNIEnv *env;
-    (*jVM)->GetEnv(jVM, (void**) &env, JNI_VERSION_1_4);
+
+    if(nativeAudioActive)
+    {
+        aaudio_close();
+        nativeAudioActive = 0;
+        return;
+    }
+
+    env = getThreadEnv();
+
+    if(env == NULL)
+        return;
 
 #ifdef DEBUG
     __android_log_print(ANDROID_LOG_DEBUG, "mame4droid-jni", "closeAudio");
@@ -209,21 +662,31 @@ void myJNI_closeAudio()
 
 void myJNI_openAudio(int rate, int stereo)
 {
-    JNIEnv *env;
+    JNIEnv *env = getThreadEnv();
     jobject tmp;
-    (*jVM)->GetEnv(jVM, (void**) &env, JNI_VERSION_1_4);
+
+    if(env == NULL)
+        return;
 
 #ifdef DEBUG
     __android_log_print(ANDROID_LOG_DEBUG, "mame4droid-jni", "openAudio");
 #endif
 
+    if(useNativeAudio && aaudio_open(rate, stereo) == 0)
+    {
+        nativeAudioActive = 1;
+        nativeAudioFrameBytes = stereo ? 4 : 2;
+        nativeAudioPhase = 0;
+        return;
+    }
+    nativeAudioActive = 0;
+
     (*env)->CallStaticVoidMethod(env, cEmulator, android_openAudio, (jint)rate,(jboolean)stereo);
 
-    if(jbaAudioBuffer==NULL)
+    if(audioBuffer==NULL)
     {
-        jbaAudioBuffer=(*env)->NewByteArray(env, 882*2*2*10);
-        tmp = jbaAudioBuffer;
-        jbaAudioBuffer=(jbyteArray)(*env)->NewGlobalRef(env, jbaAudioBuffer);
+        tmp = (*env)->NewDirectByteBuffer(env, audioByteBuffer, sizeof(audioByteBuffer));
+        audioBuffer = (*env)->NewGlobalRef(env, tmp);
         (*env)->DeleteLocalRef(env, tmp);
     }
 }
@@ -231,26 +694,52 @@ void myJNI_openAudio(int rate, int stereo)
 void myJNI_dumpAudio(void *buffer, int size)
 {
     JNIEnv *env;
-    (*jVM)->GetEnv(jVM, (void**) &env, JNI_VERSION_1_4);
-    int attached = 0;
 
-    if(env==NULL)
+    //only the real timeline is heard
+    if(!runAheadReal)
+        return;
+
+    if(nativeAudioActive)
     {
-        attached  = 1;
-        (*jVM)->AttachCurrentThread(jVM,(void *) &env, NULL);
+        //what FastForward.filterAudio() does on the Java path
+        int step = nativeAudioStep;
+        if(step == 0)
+            return;
+        if(step > 1)
+        {
+            int frameBytes = nativeAudioFrameBytes;
+            int frames = size / frameBytes;
+            int out = 0;
+            if(frames > (int)sizeof(audioByteBuffer) / frameBytes)
+                frames = sizeof(audioByteBuffer) / frameBytes;
+            for(int i = nativeAudioPhase; i < frames; i += step)
+                memcpy(audioByteBuffer + out++ * frameBytes, (unsigned char *)buffer + i * frameBytes, frameBytes);
+            nativeAudioPhase = (nativeAudioPhase - frames % step + step) % step;
+            buffer = audioByteBuffer;
+            size = out * frameBytes;
+        }
+        else
+            nativeAudioPhase = 0;
+        if(size > 0)
+            aaudio_write(buffer, size);
+        return;
     }
 
+    env = getThreadEnv();
+
+    if(env == NULL || audioBuffer == NULL)
+        return;
+
 #ifdef DEBUG
     //__android_log_print(ANDROID_LOG_DEBUG, "mame4droid-jni", "dumpAudio %ld %d",buffer, size);
 #endif
 
-    (*env)->SetByteArrayRegion(env, jbaAudioBuffer, 0, size, (jbyte *)buffer);
+    if(size > (int)sizeof(audioByteBuffer))
+        size = sizeof(audioByteBuffer);
 
-    (*env)->CallStaticVoidMethod(env, cEmulator, android_dumpAudio,jbaAudioBuffer,(jint)size);
+    memcpy(audioByteBuffer, buffer, size);
 
-    if (attached) {
-        (*jVM)->DetachCurrentThread(jVM);
-    }
+    (*env)->CallStaticVoidMethod(env, cEmulator, android_dumpAudio,audioBuffer,(jint)size);
 }
 
 void myJNI_initInput()
@@ -262,6 +751,7 @@ void myJNI_initInput()
     __android_log_print(ANDROID_LOG_DEBUG, "mame4droid-jni", "initInput");
 #endif
 
+    publishState();
     (*env)->CallStaticVoidMethod(env, cEmulator, android_initInput);
 }
 
@@ -430,7 +920,7 @@ int JNI_OnLoad(JavaVM* vm, void* reserved)
 
     cEmulator = (jclass) (*env)->NewGlobalRef(env,cEmulator );
 
-    android_dumpVideo = (*env)->GetStaticMethodID(env,cEmulator,"bitblt","(Ljava/nio/ByteBuffer;)V");
+    android_dumpVideo = (*env)->GetStaticMethodID(env,cEmulator,"bitblt","(Ljava/nio/ByteBuffer;)I");
 
     if(android_dumpVideo==NULL)
     {
@@ -446,8 +936,15 @@ int JNI_OnLoad(JavaVM* vm, void* reserved)
         return -1;
     }
 
-    //android_dumpAudio = (*env)->GetStaticMethodID(env,cEmulator,"writeAudio","(Ljava/nio/ByteBuffer;I)V");
-    android_dumpAudio = (*env)->GetStaticMethodID(env,cEmulator,"writeAudio","([BI)V");
+    android_initVideo= (*env)->GetStaticMethodID(env,cEmulator,"initVideo","()V");
+
+    if(android_initVideo==NULL)
+    {
+        __android_log_print(ANDROID_LOG_ERROR, "mame4droid-jni", "Failed to find method initVideo");
+        return -1;
+    }
+
+    android_dumpAudio = (*env)->GetStaticMethodID(env,cEmulator,"writeAudio","(Ljava/nio/ByteBuffer;I)V");
 
     if(android_dumpAudio==NULL)
     {
@@ -576,27 +1073,68 @@ JNIEXPORT void JNICALL Java_com_ingcorp_webhard_Emulator_init
     */
 }
 
-JNIEXPORT void JNICALL Java_com_ingcorp_webhard_Emulator_setDigitalData
-  (JNIEnv *env, jclass c, jint i,  jlong jl)
+JNIEXPORT void JNICALL Java_com_ingcorp_webhard_Emulator_preload
+  (JNIEnv *env, jclass c, jstring s1)
+{
+    const char *str1 = (*env)->GetStringUTFChars(env, s1, 0);
+
+    load_lib(str1);
+
+    (*env)->ReleaseStringUTFChars(env, s1, str1);
+}
+
+JNIEXPORT void JNICALL Java_com_ingcorp_webhard_Emulator_setInputBlock
+  (JNIEnv *env, jclass c, jobject block)
 {
-    //long 	jlong 	signed 64 bits ??? valdria con un jint
-    //__android_log_print(ANDROID_LOG_INFO, "mame4droid-jni", "setPadData");
+    if(inputBlockRef != NULL)
+        (*env)->DeleteGlobalRef(env, inputBlockRef);
 
-    unsigned long l = (unsigned long)jl;
+    inputBlockRef = (*env)->NewGlobalRef(env, block);
+    inputBlock = (unsigned char *)(*env)->GetDirectBufferAddress(env, block);
 
-    if(setDigitalData!=NULL)
-       setDigitalData(i,l);
-    else
-      __android_log_print(ANDROID_LOG_WARN, "mame4droid-jni", "error no setDigitalData!");
+    if(inputBlock == NULL || (*env)->GetDirectBufferCapacity(env, block) < INPUT_BLOCK_SIZE)
+    {
+        __android_log_print(ANDROID_LOG_ERROR, "mame4droid-jni", "invalid input block!");
+        inputBlock = NULL;
+    }
+    inputSynced = 0;
 }
 
-JNIEXPORT void JNICALL Java_com_ingcorp_webhard_Emulator_setAnalogData
-  (JNIEnv *env, jclass c, jint i, jfloat v1, jfloat v2)
+JNIEXPORT void JNICALL Java_com_ingcorp_webhard_Emulator_setStateBlock
+  (JNIEnv *env, jclass c, jobject block)
 {
-    if(setAnalogData!=NULL)
-       setAnalogData(i,v1,v2);
-    else
-      __android_log_print(ANDROID_LOG_WARN, "mame4droid-jni", "error no setAnalogData!");
+    if(stateBlockRef != NULL)
+        (*env)->DeleteGlobalRef(env, stateBlockRef);
+
+    stateBlockRef = (*env)->NewGlobalRef(env, block);
+    stateBlock = (int *)(*env)->GetDirectBufferAddress(env, block);
+
+    if(stateBlock == NULL || (*env)->GetDirectBufferCapacity(env, block) < STATE_BLOCK_SIZE)
+    {
+        __android_log_print(ANDROID_LOG_ERROR, "mame4droid-jni", "invalid state block!");
+        stateBlock = NULL;
+    }
+}
+
+JNIEXPORT void JNICALL Java_com_ingcorp_webhard_Emulator_setNativeAudio
+  (JNIEnv *env, jclass c, jboolean enable)
+{
+    //takes effect the next time the core opens audio
+    useNativeAudio = enable;
+}
+
+JNIEXPORT void JNICALL Java_com_ingcorp_webhard_Emulator_setNativeAudioStep
+  (JNIEnv *env, jclass c, jint step)
+{
+    //from bitblt, so on the same thread as dumpAudio
+    nativeAudioStep = step > 0 ? step : 0;
+}
+
+JNIEXPORT void JNICALL Java_com_ingcorp_webhard_Emulator_pauseNativeAudio
+  (JNIEnv *env, jclass c, jboolean pause)
+{
+    if(nativeAudioActive)
+        aaudio_pause(pause);
 }
 
 JNIEXPORT jint JNICALL Java_com_ingcorp_webhard_Emulator_getValue
@@ -626,6 +1164,42 @@ JNIEXPORT void JNICALL Java_com_ingcorp_webhard_Emulator_setValue
       __android_log_print(ANDROID_LOG_WARN, "mame4droid-jni", "error no setMyValue!");
 }
 
+JNIEXPORT void JNICALL Java_com_ingcorp_webhard_Emulator_setValues
+  (JNIEnv *env, jclass c, jintArray keys, jintArray values, jint count)
+{
+    if(setMyValue==NULL)
+    {
+      __android_log_print(ANDROID_LOG_WARN, "mame4droid-jni", "error no setMyValue!");
+      return;
+    }
+
+    jsize len = (*env)->GetArrayLength(env, keys);
+    if((*env)->GetArrayLength(env, values) < len)
+       len = (*env)->GetArrayLength(env, values);
+    if(count > len)
+       count = len;
+    if(count <= 0)
+       return;
+
+    jint *k = (*env)->GetIntArrayElements(env, keys, NULL);
+    jint *v = (*env)->GetIntArrayElements(env, values, NULL);
+    if(k != NULL && v != NULL)
+    {
+       int i;
+       for(i = 0; i < count; i++)
+       {
+#ifdef DEBUG
+          //__android_log_print(ANDROID_LOG_DEBUG, "mame4droid-jni", "setValues %d=%d",k[i],v[i]);
+#endif
+          setMyValue(k[i],0,v[i]);
+       }
+    }
+    if(k != NULL)
+       (*env)->ReleaseIntArrayElements(env, keys, k, JNI_ABORT);
+    if(v != NULL)
+       (*env)->ReleaseIntArrayElements(env, values, v, JNI_ABORT);
+}
+
 JNIEXPORT jstring JNICALL Java_com_ingcorp_webhard_Emulator_getValueStr
   (JNIEnv *env, jclass c, jint key, jint i)
 {
@@ -683,29 +1257,66 @@ JNIEXPORT int JNICALL Java_com_ingcorp_webhard_Emulator_setKeyData
     return 0;
 }
 
-JNIEXPORT jint JNICALL Java_com_ingcorp_webhard_Emulator_setMouseData
-        (JNIEnv *env, jclass c, jint i, jint mouseAction, jint button, jfloat cx, jfloat cy){
-#ifdef DEBUG
-    //__android_log_print(ANDROID_LOG_DEBUG, "mame4droid-jni", "setMouseData %d %d %d",mouseAction, cx, cy);
-#endif
-    if(setMouseData!=NULL)
-        return setMouseData(i, mouseAction, button , cx, cy);
-    else
-        __android_log_print(ANDROID_LOG_WARN, "mame4droid-jni", "error no setMouseData!");
-    return 0;
+JNIEXPORT jboolean JNICALL Java_com_ingcorp_webhard_Emulator_setRunAhead
+        (JNIEnv *env, jclass c, jint frames){
+    if(frames > 0 && !canSaveStateMem())
+    {
+        __android_log_print(ANDROID_LOG_WARN, "mame4droid-jni", "run-ahead needs in-memory save states, not in this core");
+        return JNI_FALSE;
+    }
+    //picked up by the emulator thread on the next real frame
+    __atomic_store_n(&runAheadRequest, frames > 0 ? frames : 0, __ATOMIC_RELAXED);
+    return JNI_TRUE;
 }
 
-JNIEXPORT jint JNICALL Java_com_ingcorp_webhard_Emulator_setTouchData
-        (JNIEnv *env, jclass c, jint i, jint touchAction, jfloat cx, jfloat cy){
-#ifdef DEBUG
-    __android_log_print(ANDROID_LOG_DEBUG, "mame4droid-jni", "setTouchData %d %d %d",touchAction, (int)cx, (int)cy);
-#endif
-    if(setTouchData!=NULL)
-        return setTouchData(i, touchAction, cx, cy);
-    else
-        __android_log_print(ANDROID_LOG_WARN, "mame4droid-jni", "error no setTouchData!");
-    return 0;
+/* In-memory save states for the Java side, only valid from inside bitblt (the video callback). When the
+   frame shown was run ahead they go through runAheadState, the real timeline finishRunAhead() restores. */
+JNIEXPORT jint JNICALL Java_com_ingcorp_webhard_Emulator_getStateSize
+        (JNIEnv *env, jclass c){
+    if(!canSaveStateMem())
+        return 0;
+    return getStateMemSize();
 }
 
+JNIEXPORT jint JNICALL Java_com_ingcorp_webhard_Emulator_saveState
+        (JNIEnv *env, jclass c, jobject buffer){
+    if(!canSaveStateMem())
+        return 0;
+    void *p = (*env)->GetDirectBufferAddress(env, buffer);
+    jlong capacity = (*env)->GetDirectBufferCapacity(env, buffer);
+    if(p == NULL || capacity <= 0)
+        return 0;
+    if(runAheadShown)
+    {
+        if(capacity < runAheadStateLen)
+            return 0;
+        memcpy(p, runAheadState, runAheadStateLen);
+        return runAheadStateLen;
+    }
+    int n = saveStateMem(p, (int)capacity);
+    return n > 0 ? n : 0;
+}
 
-
+JNIEXPORT jboolean JNICALL Java_com_ingcorp_webhard_Emulator_loadState
+        (JNIEnv *env, jclass c, jobject buffer, jint size){
+    if(!canSaveStateMem())
+        return JNI_FALSE;
+    void *p = (*env)->GetDirectBufferAddress(env, buffer);
+    if(p == NULL || size <= 0 || size > (*env)->GetDirectBufferCapacity(env, buffer))
+        return JNI_FALSE;
+    if(runAheadShown)
+    {
+        if(size > runAheadStateSize)
+        {
+            void *q = realloc(runAheadState, size);
+            if(q == NULL)
+                return JNI_FALSE;
+            runAheadState = q;
+            runAheadStateSize = size;
+        }
+        memcpy(runAheadState, p, size);
+        runAheadStateLen = size;
+        return JNI_TRUE;
+    }
+    return loadStateMem(p, size) == 0 ? JNI_TRUE : JNI_FALSE;
+}
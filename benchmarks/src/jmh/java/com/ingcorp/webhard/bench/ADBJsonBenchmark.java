@@ -0,0 +1,101 @@
+/*
+ * This file is part of MAME4droid.
+ *
+ * Copyright (C) 2024 David Valdeita (Seleuco)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Linking MAME4droid statically or dynamically with other modules is
+ * making a combined work based on MAME4droid. Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * In addition, as a special exception, the copyright holders of MAME4droid
+ * give you permission to combine MAME4droid with free software programs
+ * or libraries that are released under the GNU LGPL and with code included
+ * in the standard release of MAME under the MAME License (or modified
+ * versions of such code, with unchanged license). You may copy and
+ * distribute such a system following the terms of the GNU GPL for MAME4droid
+ * and the licenses of the other code concerned, provided that you include
+ * the source code of that other code when and as the GNU GPL requires
+ * distribution of source code.
+ *
+ * Note that people who make modified versions of MAME4idroid are not
+ * obligated to grant this special exception for their modified versions; it
+ * is their choice whether to do so. The GNU General Public License
+ * gives permission to release a modified version without this exception;
+ * this exception also makes it possible to release a modified version
+ * which carries forward this exception.
+ *
+ * MAME4droid is dual-licensed: Alternatively, you can license MAME4droid
+ * under a MAME license, as set out in http://mamedev.org/
+ */
+
+package com.ingcorp.webhard.bench;
+
+import com.ingcorp.webhard.scrape.ADBJson;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ADBScraper with "scrape all" on: every image url looked up in one arcadeitalia answer.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ADBJsonBenchmark {
+
+	private static final String[] TYPES = {
+		"url_icon", "url_image_ingame", "url_image_cpanel", "url_image_cabinet", "url_image_marquee",
+		"url_image_pcb", "url_image_flyer", "url_image_title", "url_image_end", "url_image_boss",
+		"url_image_artwork_preview", "url_image_select", "url_image_gameover", "url_image_howto",
+		"url_image_logo", "url_image_score", "url_image_versus"
+	};
+
+	private String json;
+
+	@Setup
+	public void setup() {
+		//same shape as a query_mame_media answer, urls escaped the way the service sends them
+		StringBuilder sb = new StringBuilder();
+		sb.append("{\"release\":1,\"result\":[{\"game_name\":\"sf2\",\"title\":\"Street Fighter II: The World Warrior (World 910522)\",");
+		sb.append("\"cloneof\":\"\",\"manufacturer\":\"Capcom\",\"year\":\"1991\",\"players\":2,\"buttons\":6,");
+		sb.append("\"short_description\":\"").append("Lorem ipsum dolor sit amet. ".repeat(40)).append("\",");
+		for (int i = 0; i < TYPES.length; i++) {
+			//leave a few empty as many games have no such image
+			if (i % 5 == 4)
+				sb.append('"').append(TYPES[i]).append("\":\"\",");
+			else
+				sb.append('"').append(TYPES[i]).append("\":\"http:\\/\\/adb.arcadeitalia.net\\/media\\/mame.current\\/")
+					.append(TYPES[i]).append("\\/sf2.png?release=87&resize=0\",");
+		}
+		sb.append("\"history\":\"").append("History text. ".repeat(200)).append("\"}]}");
+		json = sb.toString();
+	}
+
+	@Benchmark
+	public void getImageURLs(Blackhole bh) {
+		for (String type : TYPES)
+			bh.consume(ADBJson.getImageURL(type, json, true));
+	}
+}
@@ -0,0 +1,110 @@
+/*
+ * This file is part of MAME4droid.
+ *
+ * Copyright (C) 2024 David Valdeita (Seleuco)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Linking MAME4droid statically or dynamically with other modules is
+ * making a combined work based on MAME4droid. Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * In addition, as a special exception, the copyright holders of MAME4droid
+ * give you permission to combine MAME4droid with free software programs
+ * or libraries that are released under the GNU LGPL and with code included
+ * in the standard release of MAME under the MAME License (or modified
+ * versions of such code, with unchanged license). You may copy and
+ * distribute such a system following the terms of the GNU GPL for MAME4droid
+ * and the licenses of the other code concerned, provided that you include
+ * the source code of that other code when and as the GNU GPL requires
+ * distribution of source code.
+ *
+ * Note that people who make modified versions of MAME4idroid are not
+ * obligated to grant this special exception for their modified versions; it
+ * is their choice whether to do so. The GNU General Public License
+ * gives permission to release a modified version without this exception;
+ * this exception also makes it possible to release a modified version
+ * which carries forward this exception.
+ *
+ * MAME4droid is dual-licensed: Alternatively, you can license MAME4droid
+ * under a MAME license, as set out in http://mamedev.org/
+ */
+
+package com.ingcorp.webhard.bench;
+
+import com.google.gson.Gson;
+import com.ingcorp.webhard.database.entity.Game;
+import com.ingcorp.webhard.model.GameListResponse;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Game list update: the server answer parsed with Gson, as the Retrofit converter does, and
+ * mapped to Room entities as GameListManager does before inserting them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GameListBenchmark {
+
+	private static final String[] CATEGORIES = {"ACT", "FLY", "SPT", "FIGHT", "PUZ", "ETC"};
+
+	@Param({"500", "3000"})
+	public int games;
+
+	private final Gson gson = new Gson();
+	private String json;
+	private GameListResponse response;
+
+	@Setup
+	public void setup() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("{\"result_code\":\"0000\",\"all_total\":").append(games).append(",\"list\":[");
+		for (int i = 0; i < games; i++) {
+			if (i > 0)
+				sb.append(',');
+			sb.append("{\"game_id\":\"").append(1000 + i)
+				.append("\",\"game_name\":\"Game title number ").append(i)
+				.append("\",\"game_cate\":\"").append(CATEGORIES[i % CATEGORIES.length])
+				.append("\",\"game_rom\":\"rom").append(i).append(".zip")
+				.append("\",\"game_img\":\"https://example.com/img/rom").append(i).append(".png")
+				.append("\",\"game_cnt\":\"").append(i * 7)
+				.append("\",\"game_length\":\"").append(1024 * (i % 97 + 1)).append("\"}");
+		}
+		sb.append("]}");
+		json = sb.toString();
+		response = gson.fromJson(json, GameListResponse.class);
+	}
+
+	@Benchmark
+	public List<Game> parseAndMap() {
+		return gson.fromJson(json, GameListResponse.class).toGames();
+	}
+
+	@Benchmark
+	public List<Game> mapOnly() {
+		return response.toGames();
+	}
+}
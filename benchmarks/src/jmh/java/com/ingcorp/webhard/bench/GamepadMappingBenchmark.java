@@ -0,0 +1,106 @@
+/*
+ * This file is part of MAME4droid.
+ *
+ * Copyright (C) 2024 David Valdeita (Seleuco)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Linking MAME4droid statically or dynamically with other modules is
+ * making a combined work based on MAME4droid. Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * In addition, as a special exception, the copyright holders of MAME4droid
+ * give you permission to combine MAME4droid with free software programs
+ * or libraries that are released under the GNU LGPL and with code included
+ * in the standard release of MAME under the MAME License (or modified
+ * versions of such code, with unchanged license). You may copy and
+ * distribute such a system following the terms of the GNU GPL for MAME4droid
+ * and the licenses of the other code concerned, provided that you include
+ * the source code of that other code when and as the GNU GPL requires
+ * distribution of source code.
+ *
+ * Note that people who make modified versions of MAME4idroid are not
+ * obligated to grant this special exception for their modified versions; it
+ * is their choice whether to do so. The GNU General Public License
+ * gives permission to release a modified version without this exception;
+ * this exception also makes it possible to release a modified version
+ * which carries forward this exception.
+ *
+ * MAME4droid is dual-licensed: Alternatively, you can license MAME4droid
+ * under a MAME license, as set out in http://mamedev.org/
+ */
+
+package com.ingcorp.webhard.bench;
+
+import com.ingcorp.webhard.input.StickQuantizer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The axis to digital mapping GameController.processJoystickInput does for each motion sample:
+ * left stick and hat against the dead zone into directions, right stick into the button ring.
+ * The MotionEvent reads and the core calls around it are left out.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class GamepadMappingBenchmark {
+
+	private static final int NUM_SAMPLES = 1024;
+	//"3" in the gamepad dead zone preference
+	private static final float DEAD_ZONE = 0.2f;
+
+	//x, y, hat x, hat y, z, rz per sample
+	private final float[] axes = new float[NUM_SAMPLES * 6];
+	private int next = 0;
+
+	@Setup
+	public void setup() {
+		Random r = new Random(42);
+		for (int i = 0; i < axes.length; i++)
+			axes[i] = r.nextFloat() * 2 - 1;
+		//hats only report -1, 0 or 1
+		for (int i = 0; i < NUM_SAMPLES; i++) {
+			axes[i * 6 + 2] = Math.round(axes[i * 6 + 2]);
+			axes[i * 6 + 3] = Math.round(axes[i * 6 + 3]);
+		}
+	}
+
+	@Benchmark
+	public int map() {
+		int base = (next++ & (NUM_SAMPLES - 1)) * 6;
+		int input = 0;
+		for (int i = 0; i < 2; i++) {
+			float x = axes[base + i * 2];
+			float y = axes[base + i * 2 + 1];
+			if (StickQuantizer.getMagnitude(x, y) >= DEAD_ZONE)
+				input |= StickQuantizer.getDirections(StickQuantizer.getAngle(x, y), 8, true);
+		}
+		float z = axes[base + 4];
+		float rz = axes[base + 5] * -1;
+		if (StickQuantizer.getMagnitude(z, rz) >= DEAD_ZONE)
+			input |= StickQuantizer.getButtons(StickQuantizer.getAngle(z, rz));
+		return input;
+	}
+}
@@ -0,0 +1,105 @@
+/*
+ * This file is part of MAME4droid.
+ *
+ * Copyright (C) 2024 David Valdeita (Seleuco)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Linking MAME4droid statically or dynamically with other modules is
+ * making a combined work based on MAME4droid. Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * In addition, as a special exception, the copyright holders of MAME4droid
+ * give you permission to combine MAME4droid with free software programs
+ * or libraries that are released under the GNU LGPL and with code included
+ * in the standard release of MAME under the MAME License (or modified
+ * versions of such code, with unchanged license). You may copy and
+ * distribute such a system following the terms of the GNU GPL for MAME4droid
+ * and the licenses of the other code concerned, provided that you include
+ * the source code of that other code when and as the GNU GPL requires
+ * distribution of source code.
+ *
+ * Note that people who make modified versions of MAME4idroid are not
+ * obligated to grant this special exception for their modified versions; it
+ * is their choice whether to do so. The GNU General Public License
+ * gives permission to release a modified version without this exception;
+ * this exception also makes it possible to release a modified version
+ * which carries forward this exception.
+ *
+ * MAME4droid is dual-licensed: Alternatively, you can license MAME4droid
+ * under a MAME license, as set out in http://mamedev.org/
+ */
+
+package com.ingcorp.webhard.bench;
+
+import com.ingcorp.webhard.RewindBuffer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Emulator.rewindFrame(): one save state capture into the rewind history, for a game that writes a
+ * hot area and a few hundred scattered bytes every frame. The budget for a frame is 1 ms.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RewindCaptureBenchmark {
+
+	private static final int HOT_BYTES = 1024;
+	private static final int SCATTERED_WRITES = 512;
+
+	@Param({"262144", "1048576", "4194304"})
+	public int stateSize;
+
+	private RewindBuffer rewind;
+	private ByteBuffer state;
+	private final Random random = new Random(42);
+	private int frame = 0;
+
+	@Setup
+	public void setup() {
+		//the default budget, ten minutes of states at 60 Hz every second frame as in Emulator
+		int maxStates = 600 * 60 / 2;
+		int arenaSize = RewindBuffer.getArenaSize(64 * 1024 * 1024, stateSize, maxStates);
+		rewind = new RewindBuffer(ByteBuffer.allocateDirect(arenaSize), stateSize, maxStates);
+		state = ByteBuffer.allocateDirect(stateSize);
+		byte[] init = new byte[stateSize];
+		random.nextBytes(init);
+		state.put(init);
+		rewind.capture(state, stateSize);
+	}
+
+	@Benchmark
+	public int capture() {
+		frame++;
+		for (int i = 0; i < HOT_BYTES; i++)
+			state.put(i, (byte) (frame + i));
+		for (int i = 0; i < SCATTERED_WRITES; i++)
+			state.put(random.nextInt(stateSize), (byte) frame);
+		rewind.capture(state, stateSize);
+		return rewind.getCount();
+	}
+}
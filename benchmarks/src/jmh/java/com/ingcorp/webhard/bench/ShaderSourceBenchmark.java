@@ -0,0 +1,126 @@
+/*
+ * This file is part of MAME4droid.
+ *
+ * Copyright (C) 2024 David Valdeita (Seleuco)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Linking MAME4droid statically or dynamically with other modules is
+ * making a combined work based on MAME4droid. Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * In addition, as a special exception, the copyright holders of MAME4droid
+ * give you permission to combine MAME4droid with free software programs
+ * or libraries that are released under the GNU LGPL and with code included
+ * in the standard release of MAME under the MAME License (or modified
+ * versions of such code, with unchanged license). You may copy and
+ * distribute such a system following the terms of the GNU GPL for MAME4droid
+ * and the licenses of the other code concerned, provided that you include
+ * the source code of that other code when and as the GNU GPL requires
+ * distribution of source code.
+ *
+ * Note that people who make modified versions of MAME4idroid are not
+ * obligated to grant this special exception for their modified versions; it
+ * is their choice whether to do so. The GNU General Public License
+ * gives permission to release a modified version without this exception;
+ * this exception also makes it possible to release a modified version
+ * which carries forward this exception.
+ *
+ * MAME4droid is dual-licensed: Alternatively, you can license MAME4droid
+ * under a MAME license, as set out in http://mamedev.org/
+ */
+
+package com.ingcorp.webhard.bench;
+
+import com.ingcorp.webhard.render.ShaderSourceCache;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ShaderUtil.loadShaderSource() for both stages of an effect: a crt-like shader of a few hundred
+ * lines split over four includes, two of them shared. expand reads and expands every file as
+ * before the cache, cached finds the expansion current with a date check per file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ShaderSourceBenchmark {
+
+	private static final String[] LIBS = {"common.glsl", "color.glsl", "mask.glsl", "scanlines.glsl"};
+	private static final int LINES = 120;
+
+	private File dir;
+	private String shaderDir;
+	private ShaderSourceCache cache;
+
+	@Setup
+	public void setup() throws IOException {
+		dir = Files.createTempDirectory("shaders").toFile();
+		shaderDir = dir.getPath() + "/";
+		write("common.glsl", "", LINES);
+		write("color.glsl", "#include \"common.glsl\"\n", LINES);
+		write("mask.glsl", "#include \"common.glsl\"\n#include \"color.glsl\"\n", LINES);
+		write("scanlines.glsl", "#include \"common.glsl\"\n", LINES);
+		StringBuilder includes = new StringBuilder();
+		for (String lib : LIBS)
+			includes.append("#include \"").append(lib).append("\"\n");
+		write("crt.glsl", includes.toString(), LINES * 2);
+		cache = new ShaderSourceCache(null);
+		cache.get(shaderDir, "crt.glsl");
+	}
+
+	@TearDown
+	public void tearDown() {
+		File[] files = dir.listFiles();
+		if (files != null) {
+			for (File f : files)
+				f.delete();
+		}
+		dir.delete();
+	}
+
+	private void write(String name, String header, int lines) throws IOException {
+		StringBuilder sb = new StringBuilder(header);
+		for (int i = 0; i < lines; i++)
+			sb.append("    vec4 ").append(name.replace('.', '_')).append(i).append(" = texture(Texture, TexCoord * ").append(i).append(".0);\n");
+		Files.write(new File(dir, name).toPath(), sb.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+	@Benchmark
+	public int expand() throws IOException {
+		ShaderSourceCache fresh = new ShaderSourceCache(null);
+		int n = fresh.get(shaderDir, "crt.glsl").length();
+		fresh.clear();
+		return n + fresh.get(shaderDir, "crt.glsl").length();
+	}
+
+	@Benchmark
+	public int cached() throws IOException {
+		return cache.get(shaderDir, "crt.glsl").length() + cache.get(shaderDir, "crt.glsl").length();
+	}
+}
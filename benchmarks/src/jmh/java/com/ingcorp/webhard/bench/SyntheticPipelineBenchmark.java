@@ -0,0 +1,160 @@
+/*
+ * This file is part of MAME4droid.
+ *
+ * Copyright (C) 2024 David Valdeita (Seleuco)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Linking MAME4droid statically or dynamically with other modules is
+ * making a combined work based on MAME4droid. Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * In addition, as a special exception, the copyright holders of MAME4droid
+ * give you permission to combine MAME4droid with free software programs
+ * or libraries that are released under the GNU LGPL and with code included
+ * in the standard release of MAME under the MAME License (or modified
+ * versions of such code, with unchanged license). You may copy and
+ * distribute such a system following the terms of the GNU GPL for MAME4droid
+ * and the licenses of the other code concerned, provided that you include
+ * the source code of that other code when and as the GNU GPL requires
+ * distribution of source code.
+ *
+ * Note that people who make modified versions of MAME4idroid are not
+ * obligated to grant this special exception for their modified versions; it
+ * is their choice whether to do so. The GNU General Public License
+ * gives permission to release a modified version without this exception;
+ * this exception also makes it possible to release a modified version
+ * which carries forward this exception.
+ *
+ * MAME4droid is dual-licensed: Alternatively, you can license MAME4droid
+ * under a MAME license, as set out in http://mamedev.org/
+ */
+
+package com.ingcorp.webhard.bench;
+
+import com.ingcorp.webhard.CorePipeline;
+import com.ingcorp.webhard.EmulatorCore;
+import com.ingcorp.webhard.SyntheticEmulatorCore;
+import com.ingcorp.webhard.audio.AudioRing;
+import com.ingcorp.webhard.render.FrameExchange;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Emulator.bitblt() and writeAudio() without Android: a SyntheticEmulatorCore runs unthrottled
+ * through a CorePipeline, publishing every frame to the FrameExchange and its sound to an AudioRing,
+ * while a consumer thread takes frames and drains the sound like the GL thread and the AudioPump.
+ * Reported per emulated frame.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@OperationsPerInvocation(SyntheticPipelineBenchmark.FRAMES)
+public class SyntheticPipelineBenchmark {
+
+	static final int FRAMES = 120;
+
+	private static final int WIDTH = 320;
+	private static final int HEIGHT = 240;
+	private static final int SAMPLE_RATE = 48000;
+
+	@Param({"0", "2"})
+	public int runAhead;
+
+	private CorePipeline pipeline;
+	private SyntheticEmulatorCore core;
+	private AudioRing ring;
+	private long frames = 0;
+
+	private volatile boolean consuming;
+	private Thread consumer;
+
+	private final EmulatorCore.Host host = new EmulatorCore.Host() {
+		public void initVideo() {
+			pipeline.replaceFrameExchange();
+		}
+
+		public void changeVideo(int width, int height, int visWidth, int visHeight) {
+		}
+
+		public int bitblt(ByteBuffer frame) {
+			pipeline.updateState();
+			pipeline.getInputBlock().setDigital(0, ++frames & 1);
+			return pipeline.getFrameExchange().publish(frame, WIDTH, HEIGHT);
+		}
+
+		public void initInput() {
+		}
+
+		public void initAudio(int freq, boolean stereo) {
+		}
+
+		public void writeAudio(ByteBuffer b, int size) {
+			ring.write(b, size);
+		}
+
+		public void endAudio() {
+		}
+	};
+
+	@Setup
+	public void setup() {
+		pipeline = new CorePipeline();
+		core = new SyntheticEmulatorCore(WIDTH, HEIGHT, 0, SAMPLE_RATE);
+		core.setStateRam(256 * 1024);
+		core.setMaxFrames(FRAMES);
+		core.setRunAhead(runAhead);
+		pipeline.attach(core);
+		ring = new AudioRing(SAMPLE_RATE / 60 * 4 * 4, 4);
+
+		consuming = true;
+		consumer = new Thread(() -> {
+			while (consuming) {
+				FrameExchange exchange = pipeline.getFrameExchange();
+				if (exchange.hasFreshFrame())
+					exchange.acquire();
+				ByteBuffer region = ring.readRegion();
+				if (region != null)
+					ring.advance(region.remaining());
+				Thread.onSpinWait();
+			}
+		});
+		consumer.start();
+	}
+
+	@TearDown
+	public void tearDown() throws InterruptedException {
+		consuming = false;
+		consumer.join();
+	}
+
+	@Benchmark
+	public long run() {
+		core.run(host);
+		return core.getFrames();
+	}
+}
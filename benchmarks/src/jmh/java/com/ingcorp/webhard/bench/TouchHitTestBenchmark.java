@@ -0,0 +1,116 @@
+/*
+ * This file is part of MAME4droid.
+ *
+ * Copyright (C) 2024 David Valdeita (Seleuco)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Linking MAME4droid statically or dynamically with other modules is
+ * making a combined work based on MAME4droid. Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * In addition, as a special exception, the copyright holders of MAME4droid
+ * give you permission to combine MAME4droid with free software programs
+ * or libraries that are released under the GNU LGPL and with code included
+ * in the standard release of MAME under the MAME License (or modified
+ * versions of such code, with unchanged license). You may copy and
+ * distribute such a system following the terms of the GNU GPL for MAME4droid
+ * and the licenses of the other code concerned, provided that you include
+ * the source code of that other code when and as the GNU GPL requires
+ * distribution of source code.
+ *
+ * Note that people who make modified versions of MAME4idroid are not
+ * obligated to grant this special exception for their modified versions; it
+ * is their choice whether to do so. The GNU General Public License
+ * gives permission to release a modified version without this exception;
+ * this exception also makes it possible to release a modified version
+ * which carries forward this exception.
+ *
+ * MAME4droid is dual-licensed: Alternatively, you can license MAME4droid
+ * under a MAME license, as set out in http://mamedev.org/
+ */
+
+package com.ingcorp.webhard.bench;
+
+import com.ingcorp.webhard.input.InputLayout;
+import com.ingcorp.webhard.input.InputValue;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The rect scan TouchController.handleTouchController runs for every pointer of every touch
+ * event, over a real layout scaled to a 2400x1080 screen.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TouchHitTestBenchmark {
+
+	private static final int NUM_POINTS = 1024;
+
+	@Param({"controller_landscape", "controller_portrait"})
+	public String layout;
+
+	private final ArrayList<InputValue> values = new ArrayList<>();
+	private final int[] xs = new int[NUM_POINTS];
+	private final int[] ys = new int[NUM_POINTS];
+	private int next = 0;
+
+	@Setup
+	public void setup() throws Exception {
+		InputLayout.parse(new StringReader(Layouts.read(layout)), false, values);
+
+		//the main rect is the reference size the layout was drawn for
+		InputValue main = values.get(0);
+		int w = main.getRect().width();
+		int h = main.getRect().height();
+		int screenW = w > h ? 2400 : 1080;
+		int screenH = w > h ? 1080 : 2400;
+		for (InputValue iv : values)
+			iv.setFixData(screenW / (float) w, screenH / (float) h, 0, 0);
+
+		Random r = new Random(42);
+		for (int i = 0; i < NUM_POINTS; i++) {
+			xs[i] = r.nextInt(screenW);
+			ys[i] = r.nextInt(screenH);
+		}
+	}
+
+	/**
+	 * All the items under one pointer, as the touch loop walks them.
+	 */
+	@Benchmark
+	public int hitTest() {
+		int i = next++ & (NUM_POINTS - 1);
+		int x = xs[i];
+		int y = ys[i];
+		int hits = 0;
+		for (int j = InputLayout.findHit(values, x, y, 0); j != -1; j = InputLayout.findHit(values, x, y, j + 1))
+			hits += values.get(j).getValue();
+		return hits;
+	}
+}
@@ -0,0 +1,111 @@
+/*
+ * This file is part of MAME4droid.
+ *
+ * Copyright (C) 2024 David Valdeita (Seleuco)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ *
+ * Linking MAME4droid statically or dynamically with other modules is
+ * making a combined work based on MAME4droid. Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * In addition, as a special exception, the copyright holders of MAME4droid
+ * give you permission to combine MAME4droid with free software programs
+ * or libraries that are released under the GNU LGPL and with code included
+ * in the standard release of MAME under the MAME License (or modified
+ * versions of such code, with unchanged license). You may copy and
+ * distribute such a system following the terms of the GNU GPL for MAME4droid
+ * and the licenses of the other code concerned, provided that you include
+ * the source code of that other code when and as the GNU GPL requires
+ * distribution of source code.
+ *
+ * Note that people who make modified versions of MAME4idroid are not
+ * obligated to grant this special exception for their modified versions; it
+ * is their choice whether to do so. The GNU General Public License
+ * gives permission to release a modified version without this exception;
+ * this exception also makes it possible to release a modified version
+ * which carries forward this exception.
+ *
+ * MAME4droid is dual-licensed: Alternatively, you can license MAME4droid
+ * under a MAME license, as set out in http://mamedev.org/
+ */
+
+package com.ingcorp.webhard.helpers;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The SAF lookups the core makes through SAFHelper once the tree is cached: the id lookup of
+ * openUriFd and a full readDir / getNextDirEntrie walk. Lives in the helpers package because
+ * the directory cursors are package private.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SAFIndexBenchmark {
+
+	@Param({"1000", "10000"})
+	public int roms;
+
+	private SAFIndex index;
+	private String[] paths;
+	private int next = 0;
+
+	@Setup
+	public void setup() {
+		index = new SAFIndex("root");
+		//a typical romset folder plus the folders the core writes to
+		index.addDir("/", "roms-dir", "roms", 0, 0);
+		index.addDir("/", "cfg-dir", "cfg", 0, 0);
+		index.addDir("/", "nvram-dir", "nvram", 0, 0);
+		paths = new String[1024];
+		for (int i = 0; i < roms; i++) {
+			String name = "rom" + i + ".zip";
+			index.addFile("/", "doc" + i, name, 1024 * 1024, i);
+			if (i < paths.length)
+				paths[i] = "/" + name;
+		}
+		for (int i = roms; i < paths.length; i++)
+			paths[i] = "/missing" + i + ".zip";
+		for (int i = 0; i < 200; i++)
+			index.addFile("/cfg/", "cfg" + i, "rom" + i + ".cfg", 512, i);
+	}
+
+	@Benchmark
+	public String openUriFdLookup() {
+		String pathName = paths[next++ & (paths.length - 1)];
+		String id = index.getId(pathName);
+		String[] split = SAFIndex.splitPath(pathName);
+		return id != null ? id : split[1];
+	}
+
+	@Benchmark
+	public int readDir() {
+		DirEntries entries = index.openDir("/cfg/");
+		int n = 0;
+		while (SAFIndex.nextEntry(entries) != null)
+			n++;
+		return n;
+	}
+}